@@ -0,0 +1,116 @@
+package com.topsion.rag.service;
+
+import com.topsion.rag.config.ApplicationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-document and per-chunk CPU work of ingestion: chunking the extracted text and parsing the entity
+ * extraction answer of the LLM.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestionBenchmark {
+
+    private static final String[] WORDS = {
+        "graph", "retrieval", "entity", "relation", "community", "summary", "document", "chunk", "embedding",
+        "知识", "图谱", "检索", "实体", "关系", "社区", "摘要", "文档", "向量", "the", "of", "and", "a", "in",
+    };
+
+    @State(Scope.Benchmark)
+    public static class Text {
+
+        /** Characters of extracted text: a short note, a report, a book chapter. */
+        @Param({ "5000", "100000", "1000000" })
+        public int documentChars;
+
+        int chunkSize;
+        int chunkOverlap;
+        String content;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            ApplicationProperties.OpenAI.Rag rag = new ApplicationProperties().getOpenai().getRag();
+            chunkSize = rag.getChunkSize();
+            chunkOverlap = rag.getChunkOverlap();
+
+            Random random = new Random(42);
+            StringBuilder text = new StringBuilder(documentChars + 16);
+            while (text.length() < documentChars) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(12) == 0 ? ".\n" : " ");
+            }
+            content = text.substring(0, documentChars);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Extraction {
+
+        /** Entities in one extraction answer; relations are half as many. */
+        @Param({ "5", "40" })
+        public int entities;
+
+        String answer;
+        EntityExtractionService service;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            answer = extractionAnswer(new Random(42), entities);
+            service = new EntityExtractionService(null, null, null, new ApplicationProperties(), new SimpleMeterRegistry());
+        }
+    }
+
+    @Benchmark
+    public List<String> createTextChunks(Text text) {
+        return DocumentProcessingService.createTextChunks(text.content, text.chunkSize, text.chunkOverlap);
+    }
+
+    @Benchmark
+    public String extractJsonFromResponse(Extraction extraction) {
+        return EntityExtractionService.extractJsonFromResponse(extraction.answer);
+    }
+
+    @Benchmark
+    public EntityExtractionService.ExtractionResult parseExtractionResult(Extraction extraction) {
+        return extraction.service.parseExtractionResult(extraction.answer);
+    }
+
+    /**
+     * An answer shaped like the model's: JSON in a fenced block with a sentence before it.
+     */
+    private static String extractionAnswer(Random random, int entities) {
+        StringBuilder json = new StringBuilder("以下是抽取结果：\n```json\n{\n  \"entities\": [\n");
+        for (int i = 0; i < entities; i++) {
+            json.append("    {\"name\": \"实体").append(i)
+                .append("\", \"type\": \"").append(random.nextBoolean() ? "ORGANIZATION" : "CONCEPT")
+                .append("\", \"description\": \"").append(WORDS[random.nextInt(WORDS.length)].repeat(8))
+                .append("\"}").append(i < entities - 1 ? ",\n" : "\n");
+        }
+        json.append("  ],\n  \"relations\": [\n");
+        int relations = entities / 2;
+        for (int i = 0; i < relations; i++) {
+            json.append("    {\"source\": \"实体").append(i)
+                .append("\", \"target\": \"实体").append(entities - 1 - i)
+                .append("\", \"relationship\": \"RELATED_TO\", \"description\": \"").append(WORDS[random.nextInt(WORDS.length)].repeat(6))
+                .append("\"}").append(i < relations - 1 ? ",\n" : "\n");
+        }
+        return json.append("  ]\n}\n```").toString();
+    }
+}
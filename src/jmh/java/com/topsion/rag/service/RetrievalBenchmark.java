@@ -0,0 +1,155 @@
+package com.topsion.rag.service;
+
+import com.topsion.rag.config.ApplicationProperties;
+import com.topsion.rag.repository.projection.ChunkContext;
+import com.topsion.rag.repository.projection.EntitySummary;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-query CPU work of retrieval: converting the query embedding, cosine-based MMR selection over the
+ * candidates and packing the prompt.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RetrievalBenchmark {
+
+    // text-embedding-3-small / ada-002
+    private static final int DIMENSIONS = 1536;
+
+    @State(Scope.Benchmark)
+    public static class Embedding {
+
+        List<Double> response;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            Random random = new Random(42);
+            response = new ArrayList<>(DIMENSIONS);
+            for (int i = 0; i < DIMENSIONS; i++) {
+                response.add(random.nextGaussian());
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Candidates {
+
+        /** Candidates for MMR: the default limit times mmr-candidate-factor, a wide filter, an exact scan. */
+        @Param({ "20", "200", "2000" })
+        public int candidates;
+
+        int limit;
+        double lambda;
+        List<ChunkContext> chunks;
+        Map<Long, float[]> embeddings;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            ApplicationProperties.OpenAI.Rag rag = new ApplicationProperties().getOpenai().getRag();
+            limit = rag.getMaxContextChunks();
+            lambda = rag.getMmrLambda();
+
+            Random random = new Random(42);
+            chunks = new ArrayList<>(candidates);
+            embeddings = new HashMap<>();
+            for (long id = 0; id < candidates; id++) {
+                chunks.add(new ChunkContext(id, "", (int) id, id / 20, "doc", random.nextDouble()));
+                float[] vector = new float[DIMENSIONS];
+                for (int i = 0; i < DIMENSIONS; i++) {
+                    vector[i] = (float) random.nextGaussian();
+                }
+                embeddings.put(id, vector);
+            }
+            chunks.sort(Comparator.comparingDouble(ChunkContext::similarity).reversed());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Context {
+
+        /** Retrieved chunks handed to the packer, most of which do not fit the default budget. */
+        @Param({ "5", "20" })
+        public int chunks;
+
+        ContextPacker packer;
+        int budgetTokens;
+        int maxEntityTokens;
+        List<ChunkContext> retrieved;
+        List<EntitySummary> entities;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            ApplicationProperties applicationProperties = new ApplicationProperties();
+            ApplicationProperties.OpenAI.Rag rag = applicationProperties.getOpenai().getRag();
+            packer = new ContextPacker(new TiktokenCounter(applicationProperties));
+            budgetTokens = rag.getContextWindowTokens() - rag.getResponseReserveTokens();
+            maxEntityTokens = rag.getMaxEntityTokens();
+
+            Random random = new Random(42);
+            retrieved = new ArrayList<>(chunks);
+            for (long id = 0; id < chunks; id++) {
+                String content = "知识图谱检索增强生成 graph retrieval augmented generation ".repeat(25).substring(0, rag.getChunkSize());
+                retrieved.add(new ChunkContext(id, content, random.nextInt(100), (long) random.nextInt(3), "doc", 0.9 - id * 0.01));
+            }
+            entities = new ArrayList<>();
+            for (long id = 0; id < 20; id++) {
+                entities.add(new EntitySummary(id, "实体" + id, "CONCEPT", "an entity described in a sentence or two ".repeat(3)));
+            }
+        }
+    }
+
+    /** The conversion the services use for embedding responses. */
+    @Benchmark
+    public double[] embeddingToArrayStream(Embedding embedding) {
+        return embedding.response.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    /** An indexed loop, for comparison with the stream. */
+    @Benchmark
+    public double[] embeddingToArrayLoop(Embedding embedding) {
+        List<Double> response = embedding.response;
+        double[] vector = new double[response.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = response.get(i);
+        }
+        return vector;
+    }
+
+    @Benchmark
+    public List<ChunkContext> maximalMarginalRelevance(Candidates candidates) {
+        return MaximalMarginalRelevance.select(candidates.chunks, candidates.embeddings, candidates.limit, candidates.lambda);
+    }
+
+    @Benchmark
+    public ContextPacker.PackedContext packContext(Context context) {
+        return context.packer.pack(
+            RAGQueryService.RAG_SYSTEM_PROMPT,
+            "知识图谱如何帮助检索增强生成?",
+            context.retrieved,
+            context.entities,
+            context.budgetTokens,
+            context.maxEntityTokens
+        );
+    }
+}
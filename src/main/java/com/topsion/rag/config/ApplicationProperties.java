@@ -11,11 +11,56 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
     private final OpenAI openai = new OpenAI();
+    private final Community community = new Community();
+    private final ReportCache reportCache = new ReportCache();
+    private final Analytics analytics = new Analytics();
+    private final History history = new History();
+    private final Admission admission = new Admission();
+    private final Hedging hedging = new Hedging();
+    private final TokenCache tokenCache = new TokenCache();
+    private final SlowQuery slowQuery = new SlowQuery();
+    private final FlightRecorder flightRecorder = new FlightRecorder();
 
     public OpenAI getOpenai() {
         return openai;
     }
 
+    public Community getCommunity() {
+        return community;
+    }
+
+    public ReportCache getReportCache() {
+        return reportCache;
+    }
+
+    public Analytics getAnalytics() {
+        return analytics;
+    }
+
+    public History getHistory() {
+        return history;
+    }
+
+    public Admission getAdmission() {
+        return admission;
+    }
+
+    public Hedging getHedging() {
+        return hedging;
+    }
+
+    public TokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    public SlowQuery getSlowQuery() {
+        return slowQuery;
+    }
+
+    public FlightRecorder getFlightRecorder() {
+        return flightRecorder;
+    }
+
     public static class OpenAI {
         private String apiKey;
         private String apiUrl = "https://api.openai.com";
@@ -81,6 +126,21 @@ public class ApplicationProperties {
             private Integer chunkOverlap = 200;
             private Integer maxContextChunks = 5;
             private Double similarityThreshold = 0.7;
+            private Integer exactSearchMaxChunks = 5000;
+            private Integer filteredMaxCandidates = 1000;
+            private Double mmrLambda = 0.7;
+            private Integer mmrCandidateFactor = 4;
+            private Integer embeddingCacheSize = 5000;
+            private Integer contextWindowTokens = 4096;
+            private Integer responseReserveTokens = 1000;
+            private Integer maxEntityTokens = 400;
+            private Long queryTimeoutMs = 20000L;
+            private Long maxQueryTimeoutMs = 60000L;
+            private Long minGenerationMs = 3000L;
+            private Long entityLookupTimeoutMs = 2000L;
+            private Integer extractiveMaxSentences = 3;
+            private Double extractiveMinSimilarity = 0.85;
+            private Double extractiveMinCoverage = 0.8;
 
             public Integer getChunkSize() {
                 return chunkSize;
@@ -113,6 +173,531 @@ public class ApplicationProperties {
             public void setSimilarityThreshold(Double similarityThreshold) {
                 this.similarityThreshold = similarityThreshold;
             }
+
+            public Integer getExactSearchMaxChunks() {
+                return exactSearchMaxChunks;
+            }
+
+            public void setExactSearchMaxChunks(Integer exactSearchMaxChunks) {
+                this.exactSearchMaxChunks = exactSearchMaxChunks;
+            }
+
+            public Integer getFilteredMaxCandidates() {
+                return filteredMaxCandidates;
+            }
+
+            public void setFilteredMaxCandidates(Integer filteredMaxCandidates) {
+                this.filteredMaxCandidates = filteredMaxCandidates;
+            }
+
+            public Double getMmrLambda() {
+                return mmrLambda;
+            }
+
+            public void setMmrLambda(Double mmrLambda) {
+                this.mmrLambda = mmrLambda;
+            }
+
+            public Integer getMmrCandidateFactor() {
+                return mmrCandidateFactor;
+            }
+
+            public void setMmrCandidateFactor(Integer mmrCandidateFactor) {
+                this.mmrCandidateFactor = mmrCandidateFactor;
+            }
+
+            public Integer getEmbeddingCacheSize() {
+                return embeddingCacheSize;
+            }
+
+            public void setEmbeddingCacheSize(Integer embeddingCacheSize) {
+                this.embeddingCacheSize = embeddingCacheSize;
+            }
+
+            public Integer getContextWindowTokens() {
+                return contextWindowTokens;
+            }
+
+            public void setContextWindowTokens(Integer contextWindowTokens) {
+                this.contextWindowTokens = contextWindowTokens;
+            }
+
+            public Integer getResponseReserveTokens() {
+                return responseReserveTokens;
+            }
+
+            public void setResponseReserveTokens(Integer responseReserveTokens) {
+                this.responseReserveTokens = responseReserveTokens;
+            }
+
+            public Integer getMaxEntityTokens() {
+                return maxEntityTokens;
+            }
+
+            public void setMaxEntityTokens(Integer maxEntityTokens) {
+                this.maxEntityTokens = maxEntityTokens;
+            }
+
+            public Long getQueryTimeoutMs() {
+                return queryTimeoutMs;
+            }
+
+            public void setQueryTimeoutMs(Long queryTimeoutMs) {
+                this.queryTimeoutMs = queryTimeoutMs;
+            }
+
+            public Long getMaxQueryTimeoutMs() {
+                return maxQueryTimeoutMs;
+            }
+
+            public void setMaxQueryTimeoutMs(Long maxQueryTimeoutMs) {
+                this.maxQueryTimeoutMs = maxQueryTimeoutMs;
+            }
+
+            public Long getMinGenerationMs() {
+                return minGenerationMs;
+            }
+
+            public void setMinGenerationMs(Long minGenerationMs) {
+                this.minGenerationMs = minGenerationMs;
+            }
+
+            public Long getEntityLookupTimeoutMs() {
+                return entityLookupTimeoutMs;
+            }
+
+            public void setEntityLookupTimeoutMs(Long entityLookupTimeoutMs) {
+                this.entityLookupTimeoutMs = entityLookupTimeoutMs;
+            }
+
+            public Integer getExtractiveMaxSentences() {
+                return extractiveMaxSentences;
+            }
+
+            public void setExtractiveMaxSentences(Integer extractiveMaxSentences) {
+                this.extractiveMaxSentences = extractiveMaxSentences;
+            }
+
+            public Double getExtractiveMinSimilarity() {
+                return extractiveMinSimilarity;
+            }
+
+            public void setExtractiveMinSimilarity(Double extractiveMinSimilarity) {
+                this.extractiveMinSimilarity = extractiveMinSimilarity;
+            }
+
+            public Double getExtractiveMinCoverage() {
+                return extractiveMinCoverage;
+            }
+
+            public void setExtractiveMinCoverage(Double extractiveMinCoverage) {
+                this.extractiveMinCoverage = extractiveMinCoverage;
+            }
+        }
+    }
+
+    public static class Community {
+        private Boolean enabled = true;
+        private Long refreshIntervalMs = 600000L;
+        private Integer maxLevels = 3;
+        private Double resolution = 1.0;
+        private Integer minCommunitySize = 2;
+        private Integer maxEntitiesPerSummary = 40;
+        private Integer maxRelationsPerSummary = 60;
+        private Integer summaryConcurrency = 4;
+        private Integer globalMaxCommunities = 40;
+        private Integer globalMapBatchSize = 5;
+        private Integer globalMapConcurrency = 4;
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Long getRefreshIntervalMs() {
+            return refreshIntervalMs;
+        }
+
+        public void setRefreshIntervalMs(Long refreshIntervalMs) {
+            this.refreshIntervalMs = refreshIntervalMs;
+        }
+
+        public Integer getMaxLevels() {
+            return maxLevels;
+        }
+
+        public void setMaxLevels(Integer maxLevels) {
+            this.maxLevels = maxLevels;
+        }
+
+        public Double getResolution() {
+            return resolution;
+        }
+
+        public void setResolution(Double resolution) {
+            this.resolution = resolution;
+        }
+
+        public Integer getMinCommunitySize() {
+            return minCommunitySize;
+        }
+
+        public void setMinCommunitySize(Integer minCommunitySize) {
+            this.minCommunitySize = minCommunitySize;
+        }
+
+        public Integer getMaxEntitiesPerSummary() {
+            return maxEntitiesPerSummary;
+        }
+
+        public void setMaxEntitiesPerSummary(Integer maxEntitiesPerSummary) {
+            this.maxEntitiesPerSummary = maxEntitiesPerSummary;
+        }
+
+        public Integer getMaxRelationsPerSummary() {
+            return maxRelationsPerSummary;
+        }
+
+        public void setMaxRelationsPerSummary(Integer maxRelationsPerSummary) {
+            this.maxRelationsPerSummary = maxRelationsPerSummary;
+        }
+
+        public Integer getSummaryConcurrency() {
+            return summaryConcurrency;
+        }
+
+        public void setSummaryConcurrency(Integer summaryConcurrency) {
+            this.summaryConcurrency = summaryConcurrency;
+        }
+
+        public Integer getGlobalMaxCommunities() {
+            return globalMaxCommunities;
+        }
+
+        public void setGlobalMaxCommunities(Integer globalMaxCommunities) {
+            this.globalMaxCommunities = globalMaxCommunities;
+        }
+
+        public Integer getGlobalMapBatchSize() {
+            return globalMapBatchSize;
+        }
+
+        public void setGlobalMapBatchSize(Integer globalMapBatchSize) {
+            this.globalMapBatchSize = globalMapBatchSize;
+        }
+
+        public Integer getGlobalMapConcurrency() {
+            return globalMapConcurrency;
+        }
+
+        public void setGlobalMapConcurrency(Integer globalMapConcurrency) {
+            this.globalMapConcurrency = globalMapConcurrency;
+        }
+    }
+
+    public static class ReportCache {
+        private String directory = "reports/cache";
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+    }
+
+    public static class Analytics {
+        private Long flushIntervalMs = 10000L;
+        private Integer reportDays = 30;
+
+        public Long getFlushIntervalMs() {
+            return flushIntervalMs;
+        }
+
+        public void setFlushIntervalMs(Long flushIntervalMs) {
+            this.flushIntervalMs = flushIntervalMs;
+        }
+
+        public Integer getReportDays() {
+            return reportDays;
+        }
+
+        public void setReportDays(Integer reportDays) {
+            this.reportDays = reportDays;
+        }
+    }
+
+    public static class History {
+        private Integer bufferCapacity = 10000;
+        private Integer batchSize = 200;
+        private Long flushIntervalMs = 1000L;
+        private String overflowPolicy = "DROP_OLDEST";
+        private Integer retentionDays = 30;
+        private String archiveDirectory = "archive/query-history";
+        private Long archiveIntervalMs = 3600000L;
+        private Integer archiveBatchSize = 5000;
+
+        public Integer getBufferCapacity() {
+            return bufferCapacity;
+        }
+
+        public void setBufferCapacity(Integer bufferCapacity) {
+            this.bufferCapacity = bufferCapacity;
+        }
+
+        public Integer getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(Integer batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Long getFlushIntervalMs() {
+            return flushIntervalMs;
+        }
+
+        public void setFlushIntervalMs(Long flushIntervalMs) {
+            this.flushIntervalMs = flushIntervalMs;
+        }
+
+        public String getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public void setOverflowPolicy(String overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        public Integer getRetentionDays() {
+            return retentionDays;
+        }
+
+        public void setRetentionDays(Integer retentionDays) {
+            this.retentionDays = retentionDays;
+        }
+
+        public String getArchiveDirectory() {
+            return archiveDirectory;
+        }
+
+        public void setArchiveDirectory(String archiveDirectory) {
+            this.archiveDirectory = archiveDirectory;
+        }
+
+        public Long getArchiveIntervalMs() {
+            return archiveIntervalMs;
+        }
+
+        public void setArchiveIntervalMs(Long archiveIntervalMs) {
+            this.archiveIntervalMs = archiveIntervalMs;
+        }
+
+        public Integer getArchiveBatchSize() {
+            return archiveBatchSize;
+        }
+
+        public void setArchiveBatchSize(Integer archiveBatchSize) {
+            this.archiveBatchSize = archiveBatchSize;
+        }
+    }
+
+    public static class Admission {
+        private Integer maxConcurrent = 16;
+        private Integer maxQueueSize = 100;
+        private Integer maxQueuedPerUser = 10;
+        private Long queueTimeoutMs = 5000L;
+
+        public Integer getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(Integer maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public Integer getMaxQueueSize() {
+            return maxQueueSize;
+        }
+
+        public void setMaxQueueSize(Integer maxQueueSize) {
+            this.maxQueueSize = maxQueueSize;
+        }
+
+        public Integer getMaxQueuedPerUser() {
+            return maxQueuedPerUser;
+        }
+
+        public void setMaxQueuedPerUser(Integer maxQueuedPerUser) {
+            this.maxQueuedPerUser = maxQueuedPerUser;
+        }
+
+        public Long getQueueTimeoutMs() {
+            return queueTimeoutMs;
+        }
+
+        public void setQueueTimeoutMs(Long queueTimeoutMs) {
+            this.queueTimeoutMs = queueTimeoutMs;
+        }
+    }
+
+    public static class Hedging {
+        private Boolean enabled = true;
+        private Double percentile = 95.0;
+        private Long initialDelayMs = 2000L;
+        private Long minDelayMs = 100L;
+        private Integer minSamples = 20;
+        private Double budgetRatio = 0.1;
+        private Integer budgetBurst = 10;
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Double getPercentile() {
+            return percentile;
+        }
+
+        public void setPercentile(Double percentile) {
+            this.percentile = percentile;
+        }
+
+        public Long getInitialDelayMs() {
+            return initialDelayMs;
+        }
+
+        public void setInitialDelayMs(Long initialDelayMs) {
+            this.initialDelayMs = initialDelayMs;
+        }
+
+        public Long getMinDelayMs() {
+            return minDelayMs;
+        }
+
+        public void setMinDelayMs(Long minDelayMs) {
+            this.minDelayMs = minDelayMs;
+        }
+
+        public Integer getMinSamples() {
+            return minSamples;
+        }
+
+        public void setMinSamples(Integer minSamples) {
+            this.minSamples = minSamples;
+        }
+
+        public Double getBudgetRatio() {
+            return budgetRatio;
+        }
+
+        public void setBudgetRatio(Double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+        }
+
+        public Integer getBudgetBurst() {
+            return budgetBurst;
+        }
+
+        public void setBudgetBurst(Integer budgetBurst) {
+            this.budgetBurst = budgetBurst;
+        }
+    }
+
+    public static class TokenCache {
+        private Integer maxSize = 10000;
+
+        public Integer getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(Integer maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    public static class SlowQuery {
+        private Boolean enabled = true;
+        private Long thresholdMs = 500L;
+        private Double sampleRate = 0.1;
+        private Boolean profile = true;
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Long getThresholdMs() {
+            return thresholdMs;
+        }
+
+        public void setThresholdMs(Long thresholdMs) {
+            this.thresholdMs = thresholdMs;
+        }
+
+        public Double getSampleRate() {
+            return sampleRate;
+        }
+
+        public void setSampleRate(Double sampleRate) {
+            this.sampleRate = sampleRate;
+        }
+
+        public Boolean getProfile() {
+            return profile;
+        }
+
+        public void setProfile(Boolean profile) {
+            this.profile = profile;
+        }
+    }
+
+    public static class FlightRecorder {
+        private Boolean enabled = true;
+        private String settings = "default";
+        private Long maxAgeMinutes = 30L;
+        private Long maxSizeMb = 256L;
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getSettings() {
+            return settings;
+        }
+
+        public void setSettings(String settings) {
+            this.settings = settings;
+        }
+
+        public Long getMaxAgeMinutes() {
+            return maxAgeMinutes;
+        }
+
+        public void setMaxAgeMinutes(Long maxAgeMinutes) {
+            this.maxAgeMinutes = maxAgeMinutes;
+        }
+
+        public Long getMaxSizeMb() {
+            return maxSizeMb;
+        }
+
+        public void setMaxSizeMb(Long maxSizeMb) {
+            this.maxSizeMb = maxSizeMb;
         }
     }
 }
@@ -1,9 +1,14 @@
 package com.topsion.rag.config;
 
+import com.topsion.rag.repository.RepositoryMetricsAspect;
+import com.topsion.rag.repository.SlowQueryLog;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.neo4j.driver.Driver;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.neo4j.core.ReactiveDatabaseSelectionProvider;
+import org.springframework.data.neo4j.core.ReactiveNeo4jClient;
 import org.springframework.data.neo4j.core.transaction.ReactiveNeo4jTransactionManager;
 import org.springframework.data.neo4j.repository.config.EnableReactiveNeo4jRepositories;
 import org.springframework.data.neo4j.repository.config.ReactiveNeo4jRepositoryConfigurationExtension;
@@ -17,4 +22,17 @@ public class DatabaseConfiguration {
     public ReactiveTransactionManager transactionManager(Driver driver, ReactiveDatabaseSelectionProvider databaseNameProvider) {
         return new ReactiveNeo4jTransactionManager(driver, databaseNameProvider);
     }
+
+    /**
+     * Dependencies are resolved lazily: advisors are created while bean post-processors are still being
+     * registered, and the meter registry must not be instantiated before its own post-processing.
+     */
+    @Bean
+    public RepositoryMetricsAspect repositoryMetricsAspect(
+        ObjectProvider<MeterRegistry> meterRegistry,
+        ObjectProvider<ReactiveNeo4jClient> neo4jClient,
+        ApplicationProperties applicationProperties
+    ) {
+        return new RepositoryMetricsAspect(meterRegistry, new SlowQueryLog(neo4jClient, applicationProperties));
+    }
 }
@@ -1,6 +1,10 @@
 package com.topsion.rag.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.theokanning.openai.client.OpenAiApi;
 import com.theokanning.openai.service.OpenAiService;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
@@ -20,19 +24,36 @@ public class OpenAIConfiguration {
     @Value("${application.openai.timeout:60}")
     private Integer timeoutSeconds;
     
+    /**
+     * The Retrofit interface behind {@link OpenAiService}, for callers that need non-blocking, cancellable calls.
+     * {@code api-url} must be a host root: the interface calls absolute {@code /v1/...} paths, which would
+     * silently replace any path of the URL, so a URL with a path is rejected.
+     */
     @Bean
     @ConditionalOnProperty(name = "application.openai.api-key")
-    public OpenAiService openAiService() {
+    public OpenAiApi openAiApi() {
         if (apiKey == null || apiKey.trim().isEmpty()) {
             return null;
         }
-        
-        // Note: The OpenAiService constructor doesn't directly support custom API URLs
-        // For custom API URLs, you would need to implement a custom client
-        // This would require additional dependencies and configuration
-        // For now, we're using the standard OpenAI API endpoint
-        // If you need to use Azure OpenAI or other endpoints, you'll need to extend this configuration
-        
-        return new OpenAiService(apiKey, Duration.ofSeconds(timeoutSeconds));
+
+        // api-url 可指向兼容 OpenAI 的服务，例如压测用的本地桩服务
+        HttpUrl baseUrl = HttpUrl.get(apiUrl);
+        if (!"/".equals(baseUrl.encodedPath())) {
+            throw new IllegalStateException(
+                "application.openai.api-url must not have a path, requests go to " + baseUrl.resolve("/v1/") + "... regardless: " + apiUrl);
+        }
+        OkHttpClient client = OpenAiService.defaultClient(apiKey, Duration.ofSeconds(timeoutSeconds));
+        ObjectMapper mapper = OpenAiService.defaultObjectMapper();
+        return OpenAiService.defaultRetrofit(client, mapper)
+            .newBuilder()
+            .baseUrl(baseUrl)
+            .build()
+            .create(OpenAiApi.class);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "application.openai.api-key")
+    public OpenAiService openAiService(OpenAiApi openAiApi) {
+        return new OpenAiService(openAiApi);
     }
 }
\ No newline at end of file
@@ -0,0 +1,180 @@
+package com.topsion.rag.domain;
+
+import java.io.Serializable;
+import java.time.Instant;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.neo4j.core.schema.GeneratedValue;
+import org.springframework.data.neo4j.core.schema.Node;
+import org.springframework.data.neo4j.core.schema.Property;
+
+/**
+ * A cluster of closely related entities found by community detection.
+ * <p>
+ * Level 0 communities group {@link Entity} nodes through {@code IN_COMMUNITY} relationships, every higher
+ * level groups the communities below it through {@code PART_OF}. Both relationships are maintained by
+ * Cypher in the repository so that loading a community never hydrates its members.
+ */
+@Node("Community")
+public class Community extends AbstractAuditingEntity<Long> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Property("community_key")
+    private String communityKey; // stable hash of the member entity ids
+
+    @Property("level")
+    private Integer level;
+
+    @Property("title")
+    private String title;
+
+    @Property("summary")
+    private String summary;
+
+    @Property("entity_count")
+    private Integer entityCount;
+
+    @Property("stale")
+    private Boolean stale;
+
+    @Property("summarized_date")
+    private Instant summarizedDate;
+
+    public Community() {}
+
+    public Long getId() {
+        return this.id;
+    }
+
+    public Community id(Long id) {
+        this.setId(id);
+        return this;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getCommunityKey() {
+        return this.communityKey;
+    }
+
+    public Community communityKey(String communityKey) {
+        this.setCommunityKey(communityKey);
+        return this;
+    }
+
+    public void setCommunityKey(String communityKey) {
+        this.communityKey = communityKey;
+    }
+
+    public Integer getLevel() {
+        return this.level;
+    }
+
+    public Community level(Integer level) {
+        this.setLevel(level);
+        return this;
+    }
+
+    public void setLevel(Integer level) {
+        this.level = level;
+    }
+
+    public String getTitle() {
+        return this.title;
+    }
+
+    public Community title(String title) {
+        this.setTitle(title);
+        return this;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getSummary() {
+        return this.summary;
+    }
+
+    public Community summary(String summary) {
+        this.setSummary(summary);
+        return this;
+    }
+
+    public void setSummary(String summary) {
+        this.summary = summary;
+    }
+
+    public Integer getEntityCount() {
+        return this.entityCount;
+    }
+
+    public Community entityCount(Integer entityCount) {
+        this.setEntityCount(entityCount);
+        return this;
+    }
+
+    public void setEntityCount(Integer entityCount) {
+        this.entityCount = entityCount;
+    }
+
+    public Boolean getStale() {
+        return this.stale;
+    }
+
+    public Community stale(Boolean stale) {
+        this.setStale(stale);
+        return this;
+    }
+
+    public void setStale(Boolean stale) {
+        this.stale = stale;
+    }
+
+    public Instant getSummarizedDate() {
+        return this.summarizedDate;
+    }
+
+    public Community summarizedDate(Instant summarizedDate) {
+        this.setSummarizedDate(summarizedDate);
+        return this;
+    }
+
+    public void setSummarizedDate(Instant summarizedDate) {
+        this.summarizedDate = summarizedDate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Community)) {
+            return false;
+        }
+        return getId() != null && getId().equals(((Community) o).getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Community{" +
+            "id=" + getId() +
+            ", communityKey='" + getCommunityKey() + "'" +
+            ", level=" + getLevel() +
+            ", title='" + getTitle() + "'" +
+            ", entityCount=" + getEntityCount() +
+            ", stale=" + getStale() +
+            "}";
+    }
+}
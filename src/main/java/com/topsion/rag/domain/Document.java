@@ -3,9 +3,14 @@ package com.topsion.rag.domain;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import java.io.Serializable;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.neo4j.core.schema.CompositeProperty;
 import org.springframework.data.neo4j.core.schema.GeneratedValue;
 import org.springframework.data.neo4j.core.schema.Node;
 import org.springframework.data.neo4j.core.schema.Property;
@@ -41,6 +46,20 @@ public class Document extends AbstractAuditingEntity<Long> implements Serializab
     @Property("summary")
     private String summary;
 
+    @Property("tags")
+    private List<String> tags = new ArrayList<>();
+
+    @Property("processing_ms")
+    private Long processingMs;
+
+    // 各处理阶段耗时（毫秒），按阶段名存储为 stage_ms.<stage>
+    @CompositeProperty(prefix = "stage_ms")
+    private Map<String, Long> stageTimings = new HashMap<>();
+
+    // 分块数、token 数、实体数、LLM 调用次数等，存储为 ingestion.<name>
+    @CompositeProperty(prefix = "ingestion")
+    private Map<String, Long> ingestionCounts = new HashMap<>();
+
     @Relationship(type = "HAS_CHUNK")
     @JsonIgnoreProperties(value = { "document" }, allowSetters = true)
     private Set<DocumentChunk> chunks = new HashSet<>();
@@ -157,6 +176,58 @@ public class Document extends AbstractAuditingEntity<Long> implements Serializab
         this.summary = summary;
     }
 
+    public List<String> getTags() {
+        return this.tags;
+    }
+
+    public Document tags(List<String> tags) {
+        this.setTags(tags);
+        return this;
+    }
+
+    public void setTags(List<String> tags) {
+        this.tags = tags;
+    }
+
+    public Long getProcessingMs() {
+        return this.processingMs;
+    }
+
+    public Document processingMs(Long processingMs) {
+        this.setProcessingMs(processingMs);
+        return this;
+    }
+
+    public void setProcessingMs(Long processingMs) {
+        this.processingMs = processingMs;
+    }
+
+    public Map<String, Long> getStageTimings() {
+        return this.stageTimings;
+    }
+
+    public Document stageTimings(Map<String, Long> stageTimings) {
+        this.setStageTimings(stageTimings);
+        return this;
+    }
+
+    public void setStageTimings(Map<String, Long> stageTimings) {
+        this.stageTimings = stageTimings;
+    }
+
+    public Map<String, Long> getIngestionCounts() {
+        return this.ingestionCounts;
+    }
+
+    public Document ingestionCounts(Map<String, Long> ingestionCounts) {
+        this.setIngestionCounts(ingestionCounts);
+        return this;
+    }
+
+    public void setIngestionCounts(Map<String, Long> ingestionCounts) {
+        this.ingestionCounts = ingestionCounts;
+    }
+
     public Set<DocumentChunk> getChunks() {
         return this.chunks;
     }
@@ -215,6 +286,8 @@ public class Document extends AbstractAuditingEntity<Long> implements Serializab
             ", filePath='" + getFilePath() + "'" +
             ", status='" + getStatus() + "'" +
             ", summary='" + getSummary() + "'" +
+            ", tags=" + getTags() +
+            ", processingMs=" + getProcessingMs() +
             "}";
     }
 }
\ No newline at end of file
@@ -16,6 +16,9 @@ public class QueryHistory extends AbstractAuditingEntity<Long> implements Serial
     @GeneratedValue
     private Long id;
 
+    @Property("query_id")
+    private String queryId; // UUID assigned when the history is buffered, before Neo4j assigns the id
+
     @Property("question")
     private String question;
 
@@ -34,6 +37,9 @@ public class QueryHistory extends AbstractAuditingEntity<Long> implements Serial
     @Property("session_id")
     private String sessionId;
 
+    @Property("query_trace")
+    private String trace; // JSON of the stage timings, candidate counts and cache hits of the query
+
     public QueryHistory() {}
 
     public QueryHistory(String question, String answer) {
@@ -54,6 +60,19 @@ public class QueryHistory extends AbstractAuditingEntity<Long> implements Serial
         this.id = id;
     }
 
+    public String getQueryId() {
+        return this.queryId;
+    }
+
+    public QueryHistory queryId(String queryId) {
+        this.setQueryId(queryId);
+        return this;
+    }
+
+    public void setQueryId(String queryId) {
+        this.queryId = queryId;
+    }
+
     public String getQuestion() {
         return this.question;
     }
@@ -132,6 +151,19 @@ public class QueryHistory extends AbstractAuditingEntity<Long> implements Serial
         this.sessionId = sessionId;
     }
 
+    public String getTrace() {
+        return this.trace;
+    }
+
+    public QueryHistory trace(String trace) {
+        this.setTrace(trace);
+        return this;
+    }
+
+    public void setTrace(String trace) {
+        this.trace = trace;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -152,6 +184,7 @@ public class QueryHistory extends AbstractAuditingEntity<Long> implements Serial
     public String toString() {
         return "QueryHistory{" +
             "id=" + getId() +
+            ", queryId='" + getQueryId() + "'" +
             ", question='" + getQuestion() + "'" +
             ", answer='" + getAnswer() + "'" +
             ", responseTimeMs=" + getResponseTimeMs() +
@@ -0,0 +1,227 @@
+package com.topsion.rag.domain;
+
+import java.io.Serializable;
+import java.time.Instant;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.neo4j.core.schema.GeneratedValue;
+import org.springframework.data.neo4j.core.schema.Node;
+import org.springframework.data.neo4j.core.schema.Property;
+
+/**
+ * Query statistics pre-aggregated over one hour or one day.
+ * <p>
+ * Latencies are kept as a compressed HdrHistogram so that buckets can be merged and percentiles read without
+ * touching individual {@link QueryHistory} nodes.
+ */
+@Node("QueryRollup")
+public class QueryRollup extends AbstractAuditingEntity<Long> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Property("granularity")
+    private String granularity; // HOUR or DAY
+
+    @Property("bucket_start")
+    private Instant bucketStart;
+
+    @Property("query_count")
+    private Long queryCount;
+
+    @Property("total_response_time_ms")
+    private Long totalResponseTimeMs;
+
+    @Property("min_response_time_ms")
+    private Long minResponseTimeMs;
+
+    @Property("max_response_time_ms")
+    private Long maxResponseTimeMs;
+
+    @Property("latency_histogram")
+    private String latencyHistogram; // base64 of the compressed HdrHistogram
+
+    @Property("feedback_counts")
+    private String feedbackCounts; // JSON object of feedback value to count
+
+    @Property("cache_hit_count")
+    private Long cacheHitCount;
+
+    // 多个实例或重试并发刷新同一桶时，用乐观锁避免覆盖彼此的计数
+    @Version
+    private Long version;
+
+    public QueryRollup() {}
+
+    public Long getId() {
+        return this.id;
+    }
+
+    public QueryRollup id(Long id) {
+        this.setId(id);
+        return this;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getGranularity() {
+        return this.granularity;
+    }
+
+    public QueryRollup granularity(String granularity) {
+        this.setGranularity(granularity);
+        return this;
+    }
+
+    public void setGranularity(String granularity) {
+        this.granularity = granularity;
+    }
+
+    public Instant getBucketStart() {
+        return this.bucketStart;
+    }
+
+    public QueryRollup bucketStart(Instant bucketStart) {
+        this.setBucketStart(bucketStart);
+        return this;
+    }
+
+    public void setBucketStart(Instant bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public Long getQueryCount() {
+        return this.queryCount;
+    }
+
+    public QueryRollup queryCount(Long queryCount) {
+        this.setQueryCount(queryCount);
+        return this;
+    }
+
+    public void setQueryCount(Long queryCount) {
+        this.queryCount = queryCount;
+    }
+
+    public Long getTotalResponseTimeMs() {
+        return this.totalResponseTimeMs;
+    }
+
+    public QueryRollup totalResponseTimeMs(Long totalResponseTimeMs) {
+        this.setTotalResponseTimeMs(totalResponseTimeMs);
+        return this;
+    }
+
+    public void setTotalResponseTimeMs(Long totalResponseTimeMs) {
+        this.totalResponseTimeMs = totalResponseTimeMs;
+    }
+
+    public Long getMinResponseTimeMs() {
+        return this.minResponseTimeMs;
+    }
+
+    public QueryRollup minResponseTimeMs(Long minResponseTimeMs) {
+        this.setMinResponseTimeMs(minResponseTimeMs);
+        return this;
+    }
+
+    public void setMinResponseTimeMs(Long minResponseTimeMs) {
+        this.minResponseTimeMs = minResponseTimeMs;
+    }
+
+    public Long getMaxResponseTimeMs() {
+        return this.maxResponseTimeMs;
+    }
+
+    public QueryRollup maxResponseTimeMs(Long maxResponseTimeMs) {
+        this.setMaxResponseTimeMs(maxResponseTimeMs);
+        return this;
+    }
+
+    public void setMaxResponseTimeMs(Long maxResponseTimeMs) {
+        this.maxResponseTimeMs = maxResponseTimeMs;
+    }
+
+    public String getLatencyHistogram() {
+        return this.latencyHistogram;
+    }
+
+    public QueryRollup latencyHistogram(String latencyHistogram) {
+        this.setLatencyHistogram(latencyHistogram);
+        return this;
+    }
+
+    public void setLatencyHistogram(String latencyHistogram) {
+        this.latencyHistogram = latencyHistogram;
+    }
+
+    public String getFeedbackCounts() {
+        return this.feedbackCounts;
+    }
+
+    public QueryRollup feedbackCounts(String feedbackCounts) {
+        this.setFeedbackCounts(feedbackCounts);
+        return this;
+    }
+
+    public void setFeedbackCounts(String feedbackCounts) {
+        this.feedbackCounts = feedbackCounts;
+    }
+
+    public Long getCacheHitCount() {
+        return this.cacheHitCount;
+    }
+
+    public QueryRollup cacheHitCount(Long cacheHitCount) {
+        this.setCacheHitCount(cacheHitCount);
+        return this;
+    }
+
+    public void setCacheHitCount(Long cacheHitCount) {
+        this.cacheHitCount = cacheHitCount;
+    }
+
+    public Long getVersion() {
+        return this.version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof QueryRollup)) {
+            return false;
+        }
+        return getId() != null && getId().equals(((QueryRollup) o).getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "QueryRollup{" +
+            "id=" + getId() +
+            ", granularity='" + getGranularity() + "'" +
+            ", bucketStart=" + getBucketStart() +
+            ", queryCount=" + getQueryCount() +
+            ", totalResponseTimeMs=" + getTotalResponseTimeMs() +
+            ", minResponseTimeMs=" + getMinResponseTimeMs() +
+            ", maxResponseTimeMs=" + getMaxResponseTimeMs() +
+            ", feedbackCounts='" + getFeedbackCounts() + "'" +
+            ", cacheHitCount=" + getCacheHitCount() +
+            "}";
+    }
+}
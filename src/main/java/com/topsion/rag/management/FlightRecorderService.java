@@ -0,0 +1,111 @@
+package com.topsion.rag.management;
+
+import com.topsion.rag.config.ApplicationProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps a rolling flight recording of the application events together with the JVM's CPU samples,
+ * allocation samples and GC events, so that the last minutes before an incident can be dumped and opened
+ * in JDK Mission Control.
+ * <p>
+ * The JVM events come from the configured JFC settings ({@code default} or {@code profile}); the
+ * application events are enabled without threshold on top of them.
+ */
+@Service
+public class FlightRecorderService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FlightRecorderService.class);
+
+    public static final String RECORDING_NAME = "graphrag-rolling";
+
+    static final List<Class<? extends Event>> EVENTS = List.of(
+        QueryStageEvent.class,
+        IngestionStageEvent.class,
+        LlmCallEvent.class,
+        RepositoryCallEvent.class
+    );
+
+    private final ApplicationProperties.FlightRecorder properties;
+    private Recording recording;
+    private Path lastDump;
+
+    public FlightRecorderService(ApplicationProperties applicationProperties) {
+        this.properties = applicationProperties.getFlightRecorder();
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (!Boolean.TRUE.equals(properties.getEnabled())) {
+            return;
+        }
+        if (!FlightRecorder.isAvailable()) {
+            LOG.warn("Flight recorder is not available in this JVM, rolling recording disabled");
+            return;
+        }
+        try {
+            recording = new Recording(Configuration.getConfiguration(properties.getSettings()));
+        } catch (IOException | ParseException e) {
+            LOG.warn("Cannot load flight recorder settings '{}', rolling recording disabled: {}", properties.getSettings(), e.getMessage());
+            return;
+        }
+        recording.setName(RECORDING_NAME);
+        recording.setToDisk(true);
+        recording.setMaxAge(Duration.ofMinutes(properties.getMaxAgeMinutes()));
+        recording.setMaxSize(properties.getMaxSizeMb() * 1024 * 1024);
+        EVENTS.forEach(event -> recording.enable(event).withoutThreshold());
+        recording.start();
+        LOG.info(
+            "Started rolling flight recording with '{}' settings, keeping {} minutes or {} MB",
+            properties.getSettings(),
+            properties.getMaxAgeMinutes(),
+            properties.getMaxSizeMb()
+        );
+    }
+
+    /**
+     * Writes what the rolling recording currently holds to a temporary file. The previous dump is deleted,
+     * so at most one dump occupies disk space.
+     *
+     * @return the dump, or empty if the recording is not running.
+     */
+    public synchronized Optional<Path> dump() throws IOException {
+        if (recording == null) {
+            return Optional.empty();
+        }
+        Path dump = Files.createTempFile(RECORDING_NAME + "-", ".jfr");
+        recording.dump(dump);
+        if (lastDump != null) {
+            Files.deleteIfExists(lastDump);
+        }
+        lastDump = dump;
+        LOG.info("Dumped rolling flight recording to {}", dump);
+        return Optional.of(dump);
+    }
+
+    @PreDestroy
+    public synchronized void stop() throws IOException {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+        if (lastDump != null) {
+            Files.deleteIfExists(lastDump);
+            lastDump = null;
+        }
+    }
+}
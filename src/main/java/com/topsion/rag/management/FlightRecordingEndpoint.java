@@ -0,0 +1,28 @@
+package com.topsion.rag.management;
+
+import java.io.IOException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@code GET /management/flightrecording} downloads a dump of the rolling flight recording, to be opened
+ * in JDK Mission Control or with {@code jfr print}. Responds 404 when the recording is disabled.
+ */
+@Component
+@Endpoint(id = "flightrecording")
+public class FlightRecordingEndpoint {
+
+    private final FlightRecorderService flightRecorderService;
+
+    public FlightRecordingEndpoint(FlightRecorderService flightRecorderService) {
+        this.flightRecorderService = flightRecorderService;
+    }
+
+    @ReadOperation(produces = "application/octet-stream")
+    public Resource dump() throws IOException {
+        return flightRecorderService.dump().<Resource>map(FileSystemResource::new).orElse(null);
+    }
+}
@@ -0,0 +1,26 @@
+package com.topsion.rag.management;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One stage of ingesting a document, or one chunk's share of a per-chunk stage.
+ */
+@Name("com.topsion.rag.IngestionStage")
+@Label("Ingestion Stage")
+@Category({ "GraphRAG", "Ingestion" })
+@Description("A stage of document ingestion")
+@StackTrace(false)
+public class IngestionStageEvent extends Event {
+
+    @Label("Document Id")
+    @Description("0 if the stage does not belong to a known document")
+    public long documentId;
+
+    @Label("Stage")
+    public String stage;
+}
@@ -0,0 +1,110 @@
+package com.topsion.rag.management;
+
+import com.theokanning.openai.OpenAiHttpException;
+import com.theokanning.openai.Usage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import retrofit2.HttpException;
+
+/**
+ * One HTTP call to the OpenAI API. An event is committed once, by whichever of success, failure or
+ * cancellation comes first.
+ */
+@Name("com.topsion.rag.LlmCall")
+@Label("LLM Call")
+@Category({ "GraphRAG", "OpenAI" })
+@Description("An HTTP call to the OpenAI API")
+@StackTrace(false)
+public class LlmCallEvent extends Event {
+
+    public static final String CHAT = "chat";
+    public static final String EMBEDDING = "embedding";
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Model")
+    public String model;
+
+    @Label("Hedge")
+    @Description("Whether this call hedged a slower one")
+    public boolean hedge;
+
+    @Label("Prompt Tokens")
+    public long promptTokens;
+
+    @Label("Completion Tokens")
+    public long completionTokens;
+
+    @Label("Outcome")
+    @Description("success, error or cancelled")
+    public String outcome;
+
+    @Label("HTTP Status")
+    @Description("Status of a failed call, 0 if there was no HTTP response")
+    public int httpStatus;
+
+    private final transient AtomicBoolean committed = new AtomicBoolean();
+
+    /**
+     * A started event; the caller ends it with one of {@link #succeeded}, {@link #failed} or {@link #cancelled}.
+     */
+    public static LlmCallEvent start(String operation, String model, boolean hedge) {
+        LlmCallEvent event = new LlmCallEvent();
+        event.operation = operation;
+        event.model = model;
+        event.hedge = hedge;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Runs a blocking call of the OpenAI client as an event.
+     */
+    public static <T> T record(String operation, String model, Supplier<T> call, Function<T, Usage> usage) {
+        LlmCallEvent event = start(operation, model, false);
+        try {
+            T result = call.get();
+            event.succeeded(usage.apply(result));
+            return result;
+        } catch (RuntimeException e) {
+            event.failed(e);
+            throw e;
+        }
+    }
+
+    public void succeeded(Usage usage) {
+        if (usage != null) {
+            promptTokens = usage.getPromptTokens();
+            completionTokens = usage.getCompletionTokens();
+        }
+        finish("success");
+    }
+
+    public void failed(Throwable error) {
+        if (error instanceof OpenAiHttpException http) {
+            httpStatus = http.statusCode;
+        } else if (error instanceof HttpException http) {
+            httpStatus = http.code();
+        }
+        finish("error");
+    }
+
+    public void cancelled() {
+        finish("cancelled");
+    }
+
+    private void finish(String outcome) {
+        if (committed.compareAndSet(false, true) && shouldCommit()) {
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
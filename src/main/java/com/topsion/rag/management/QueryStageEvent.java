@@ -0,0 +1,52 @@
+package com.topsion.rag.management;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import reactor.core.publisher.SignalType;
+
+/**
+ * One stage of answering a query, from the moment its inputs were ready until it produced its result.
+ */
+@Name("com.topsion.rag.QueryStage")
+@Label("Query Stage")
+@Category({ "GraphRAG", "Query" })
+@Description("A stage of the query pipeline")
+@StackTrace(false)
+public class QueryStageEvent extends Event {
+
+    @Label("Stage")
+    public String stage;
+
+    @Label("Outcome")
+    @Description("success, fallback, error or cancelled")
+    public String outcome;
+
+    public static QueryStageEvent start(String stage) {
+        QueryStageEvent event = new QueryStageEvent();
+        event.stage = stage;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits the event with the outcome given by the signal the stage terminated with, unless an outcome
+     * was already set.
+     */
+    public void finish(SignalType signal) {
+        if (!shouldCommit()) {
+            return;
+        }
+        if (outcome == null) {
+            outcome = switch (signal) {
+                case ON_ERROR -> "error";
+                case CANCEL -> "cancelled";
+                default -> "success";
+            };
+        }
+        commit();
+    }
+}
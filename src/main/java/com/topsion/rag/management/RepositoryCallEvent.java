@@ -0,0 +1,32 @@
+package com.topsion.rag.management;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One call of a Neo4j repository method; for reactive results, from subscription until termination.
+ */
+@Name("com.topsion.rag.RepositoryCall")
+@Label("Repository Call")
+@Category({ "GraphRAG", "Neo4j" })
+@Description("A call of a Neo4j repository method")
+@StackTrace(false)
+public class RepositoryCallEvent extends Event {
+
+    @Label("Repository")
+    public String repository;
+
+    @Label("Method")
+    public String method;
+
+    @Label("Rows")
+    public long rows;
+
+    @Label("Outcome")
+    @Description("success, error or cancelled")
+    public String outcome;
+}
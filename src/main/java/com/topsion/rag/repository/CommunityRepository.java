@@ -0,0 +1,45 @@
+package com.topsion.rag.repository;
+
+import com.topsion.rag.domain.Community;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import org.springframework.data.neo4j.repository.ReactiveNeo4jRepository;
+import org.springframework.data.neo4j.repository.query.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface CommunityRepository extends ReactiveNeo4jRepository<Community, Long>, CommunityRepositoryCustom {
+
+    Flux<Community> findByLevel(Integer level);
+
+    @Query("MATCH (c:Community) WHERE NOT c.community_key IN $keys DETACH DELETE c")
+    Mono<Void> deleteByCommunityKeyNotIn(@Param("keys") Collection<String> keys);
+
+    @Query("MATCH (d:Document)-[:HAS_CHUNK]->(:DocumentChunk)-[:CONTAINS_ENTITY]->(:Entity)-[:IN_COMMUNITY]->(c:Community) " +
+           "WHERE id(d) = $documentId " +
+           "MATCH (c)-[:PART_OF*0..]->(a:Community) " +
+           "SET a.stale = true")
+    Mono<Void> markStaleByDocumentId(@Param("documentId") Long documentId);
+
+    @Query("MATCH (:Entity)-[r:IN_COMMUNITY]->(:Community) DELETE r")
+    Mono<Void> deleteEntityMemberships();
+
+    @Query("MATCH (:Community)-[r:PART_OF]->(:Community) DELETE r")
+    Mono<Void> deleteCommunityHierarchy();
+
+    @Query("UNWIND $rows AS row " +
+           "MATCH (e:Entity) WHERE id(e) = row.entityId " +
+           "MATCH (c:Community {community_key: row.communityKey}) " +
+           "MERGE (e)-[:IN_COMMUNITY]->(c)")
+    Mono<Void> linkEntities(@Param("rows") List<Map<String, Object>> rows);
+
+    @Query("UNWIND $rows AS row " +
+           "MATCH (child:Community {community_key: row.childKey}) " +
+           "MATCH (parent:Community {community_key: row.parentKey}) " +
+           "MERGE (child)-[:PART_OF]->(parent)")
+    Mono<Void> linkParents(@Param("rows") List<Map<String, Object>> rows);
+}
@@ -0,0 +1,23 @@
+package com.topsion.rag.repository;
+
+import java.util.Collection;
+import reactor.core.publisher.Flux;
+
+/**
+ * Tabular reads over the entity graph that do not map onto a domain type.
+ */
+public interface CommunityRepositoryCustom {
+
+    /**
+     * Undirected weighted edges between entities: explicit {@code RELATED_TO} relations weighted by their
+     * strength, plus co-occurrence in the same chunk weighted by the number of shared chunks. A pair may be
+     * returned more than once and callers are expected to sum the weights.
+     */
+    Flux<EntityEdge> findEntityGraphEdges();
+
+    Flux<RelationSummary> findRelationsAmong(Collection<Long> entityIds, int limit);
+
+    record EntityEdge(long source, long target, double weight) {}
+
+    record RelationSummary(String source, String target, String relationshipType, String description) {}
+}
@@ -0,0 +1,57 @@
+package com.topsion.rag.repository;
+
+import java.util.Collection;
+import java.util.Map;
+import org.springframework.data.neo4j.core.ReactiveNeo4jClient;
+import reactor.core.publisher.Flux;
+
+class CommunityRepositoryCustomImpl implements CommunityRepositoryCustom {
+
+    private static final String ENTITY_GRAPH_EDGES_QUERY =
+        "MATCH (e1:Entity)-[r:RELATED_TO]-(e2:Entity) WHERE id(e1) < id(e2) " +
+        "RETURN id(e1) AS source, id(e2) AS target, sum(coalesce(r.strength, 1.0)) AS weight " +
+        "UNION ALL " +
+        "MATCH (e1:Entity)<-[:CONTAINS_ENTITY]-(:DocumentChunk)-[:CONTAINS_ENTITY]->(e2:Entity) WHERE id(e1) < id(e2) " +
+        "RETURN id(e1) AS source, id(e2) AS target, toFloat(count(*)) AS weight";
+
+    private static final String RELATIONS_AMONG_QUERY =
+        "MATCH (e1:Entity)-[r:RELATED_TO]->(e2:Entity) " +
+        "WHERE id(e1) IN $entityIds AND id(e2) IN $entityIds " +
+        "RETURN e1.name AS source, e2.name AS target, r.relationship_type AS relationshipType, r.description AS description " +
+        "ORDER BY coalesce(r.strength, 1.0) DESC " +
+        "LIMIT $limit";
+
+    private final ReactiveNeo4jClient neo4jClient;
+
+    CommunityRepositoryCustomImpl(ReactiveNeo4jClient neo4jClient) {
+        this.neo4jClient = neo4jClient;
+    }
+
+    @Override
+    public Flux<EntityEdge> findEntityGraphEdges() {
+        return neo4jClient
+            .query(ENTITY_GRAPH_EDGES_QUERY)
+            .fetchAs(EntityEdge.class)
+            .mappedBy((typeSystem, record) ->
+                new EntityEdge(record.get("source").asLong(), record.get("target").asLong(), record.get("weight").asDouble())
+            )
+            .all();
+    }
+
+    @Override
+    public Flux<RelationSummary> findRelationsAmong(Collection<Long> entityIds, int limit) {
+        return neo4jClient
+            .query(RELATIONS_AMONG_QUERY)
+            .bindAll(Map.of("entityIds", entityIds, "limit", limit))
+            .fetchAs(RelationSummary.class)
+            .mappedBy((typeSystem, record) ->
+                new RelationSummary(
+                    record.get("source").asString(null),
+                    record.get("target").asString(null),
+                    record.get("relationshipType").asString(null),
+                    record.get("description").asString(null)
+                )
+            )
+            .all();
+    }
+}
@@ -10,7 +10,7 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Repository
-public interface DocumentChunkRepository extends ReactiveNeo4jRepository<DocumentChunk, Long> {
+public interface DocumentChunkRepository extends ReactiveNeo4jRepository<DocumentChunk, Long>, DocumentChunkRepositoryCustom {
 
     Flux<DocumentChunk> findByDocumentId(Long documentId);
 
@@ -21,21 +21,24 @@ public interface DocumentChunkRepository extends ReactiveNeo4jRepository<Documen
            "WHERE e.name = $entityName RETURN c")
     Flux<DocumentChunk> findByEntityName(@Param("entityName") String entityName);
 
-    @Query("MATCH (c:DocumentChunk) " +
-           "WHERE c.embedding IS NOT NULL " +
-           "RETURN c, " +
-           "gds.alpha.similarity.cosine(c.embedding, $queryEmbedding) AS similarity " +
-           "ORDER BY similarity DESC " +
-           "LIMIT $limit")
-    Flux<Object[]> findSimilarChunks(@Param("queryEmbedding") double[] queryEmbedding, @Param("limit") int limit);
+    // The vector index reports cosine scores normalised to [0, 1] as (1 + cos) / 2
+    @Query("CALL db.index.vector.queryNodes('document_chunk_embedding', $limit, $queryEmbedding) " +
+           "YIELD node AS c, score " +
+           "WHERE 2 * score - 1 >= $minSimilarity " +
+           "RETURN c ORDER BY score DESC")
+    Flux<DocumentChunk> findSimilarChunks(
+        @Param("queryEmbedding") double[] queryEmbedding,
+        @Param("limit") int limit,
+        @Param("minSimilarity") double minSimilarity
+    );
 
     @Query("MATCH (c:DocumentChunk)-[r:CONTAINS_ENTITY]->(e:Entity) " +
-           "WHERE c.id = $chunkId " +
+           "WHERE id(c) = $chunkId " +
            "RETURN e")
     Flux<Object> findEntitiesByChunkId(@Param("chunkId") Long chunkId);
 
     @Query("MATCH (c1:DocumentChunk)-[:CONTAINS_ENTITY]->(e:Entity)<-[:CONTAINS_ENTITY]-(c2:DocumentChunk) " +
-           "WHERE c1.id = $chunkId AND c1.id <> c2.id " +
+           "WHERE id(c1) = $chunkId AND c1 <> c2 " +
            "RETURN c2, count(e) as sharedEntities " +
            "ORDER BY sharedEntities DESC " +
            "LIMIT $limit")
@@ -0,0 +1,36 @@
+package com.topsion.rag.repository;
+
+import com.topsion.rag.repository.projection.ChunkContext;
+import com.topsion.rag.repository.projection.ChunkEmbedding;
+import com.topsion.rag.repository.projection.ChunkMembership;
+import java.util.Collection;
+import reactor.core.publisher.Flux;
+
+public interface DocumentChunkRepositoryCustom {
+
+    /**
+     * Nearest chunks to the query embedding with their document title, fetched in one query and without
+     * embeddings or entities. Similarity is the cosine similarity in [-1, 1].
+     */
+    Flux<ChunkContext> findSimilarChunkContexts(double[] queryEmbedding, int limit, double minSimilarity);
+
+    /**
+     * Exact similarity search restricted to the given chunks, for filters narrow enough that scanning them
+     * is cheaper than over-fetching from the vector index.
+     */
+    Flux<ChunkContext> findSimilarChunkContextsAmong(double[] queryEmbedding, Collection<Long> chunkIds, int limit, double minSimilarity);
+
+    /**
+     * Chunks whose lowercased content contains any of the terms, ranked by the share of terms they contain,
+     * which is reported as the similarity. Restricted to {@code chunkIds} unless it is null. Scans every
+     * chunk, so it is only meant for answering without a query embedding.
+     */
+    Flux<ChunkContext> findChunkContextsContaining(Collection<String> terms, Collection<Long> chunkIds, int limit);
+
+    /**
+     * Filterable attributes of every chunk, or of one document's chunks when {@code documentId} is given.
+     */
+    Flux<ChunkMembership> findChunkMemberships(Long documentId);
+
+    Flux<ChunkEmbedding> findChunkEmbeddings(Collection<Long> chunkIds);
+}
@@ -0,0 +1,152 @@
+package com.topsion.rag.repository;
+
+import com.topsion.rag.repository.projection.ChunkContext;
+import com.topsion.rag.repository.projection.ChunkEmbedding;
+import com.topsion.rag.repository.projection.ChunkMembership;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Value;
+import org.springframework.data.neo4j.core.ReactiveNeo4jClient;
+import reactor.core.publisher.Flux;
+
+class DocumentChunkRepositoryCustomImpl implements DocumentChunkRepositoryCustom {
+
+    // The vector index reports cosine scores normalised to [0, 1] as (1 + cos) / 2
+    private static final String SIMILAR_CHUNK_CONTEXTS_QUERY =
+        "CALL db.index.vector.queryNodes('document_chunk_embedding', $limit, $queryEmbedding) " +
+        "YIELD node AS c, score " +
+        "WITH c, 2 * score - 1 AS similarity " +
+        "WHERE similarity >= $minSimilarity " +
+        "OPTIONAL MATCH (d:Document)-[:HAS_CHUNK]->(c) " +
+        "RETURN id(c) AS id, c.content AS content, c.chunk_index AS chunkIndex, " +
+        "id(d) AS documentId, d.title AS documentTitle, similarity " +
+        "ORDER BY similarity DESC";
+
+    private static final String SIMILAR_CHUNK_CONTEXTS_AMONG_QUERY =
+        "MATCH (c:DocumentChunk) WHERE id(c) IN $chunkIds AND c.embedding IS NOT NULL " +
+        "WITH c, 2 * vector.similarity.cosine(c.embedding, $queryEmbedding) - 1 AS similarity " +
+        "WHERE similarity >= $minSimilarity " +
+        "OPTIONAL MATCH (d:Document)-[:HAS_CHUNK]->(c) " +
+        "RETURN id(c) AS id, c.content AS content, c.chunk_index AS chunkIndex, " +
+        "id(d) AS documentId, d.title AS documentTitle, similarity " +
+        "ORDER BY similarity DESC " +
+        "LIMIT $limit";
+
+    // Similarity is the share of the terms the chunk contains
+    private static final String CHUNK_CONTEXTS_CONTAINING_QUERY =
+        "MATCH (c:DocumentChunk) WHERE $chunkIds IS NULL OR id(c) IN $chunkIds " +
+        "WITH c, toLower(c.content) AS content " +
+        "WITH c, size([term IN $terms WHERE content CONTAINS term]) AS matched " +
+        "WHERE matched > 0 " +
+        "OPTIONAL MATCH (d:Document)-[:HAS_CHUNK]->(c) " +
+        "RETURN id(c) AS id, c.content AS content, c.chunk_index AS chunkIndex, " +
+        "id(d) AS documentId, d.title AS documentTitle, toFloat(matched) / size($terms) AS similarity " +
+        "ORDER BY similarity DESC " +
+        "LIMIT $limit";
+
+    private static final String CHUNK_MEMBERSHIPS_QUERY =
+        "MATCH (d:Document)-[:HAS_CHUNK]->(c:DocumentChunk) " +
+        "WHERE $documentId IS NULL OR id(d) = $documentId " +
+        "RETURN id(c) AS chunkId, id(d) AS documentId, d.content_type AS contentType, d.tags AS tags, " +
+        "d.created_date AS createdDate";
+
+    private static final String CHUNK_EMBEDDINGS_QUERY =
+        "MATCH (c:DocumentChunk) WHERE id(c) IN $chunkIds AND c.embedding IS NOT NULL " +
+        "RETURN id(c) AS chunkId, c.embedding AS embedding";
+
+    private final ReactiveNeo4jClient neo4jClient;
+
+    DocumentChunkRepositoryCustomImpl(ReactiveNeo4jClient neo4jClient) {
+        this.neo4jClient = neo4jClient;
+    }
+
+    @Override
+    public Flux<ChunkContext> findSimilarChunkContexts(double[] queryEmbedding, int limit, double minSimilarity) {
+        return neo4jClient
+            .query(SIMILAR_CHUNK_CONTEXTS_QUERY)
+            .bindAll(Map.of("queryEmbedding", queryEmbedding, "limit", limit, "minSimilarity", minSimilarity))
+            .fetchAs(ChunkContext.class)
+            .mappedBy((typeSystem, record) -> toChunkContext(record))
+            .all();
+    }
+
+    @Override
+    public Flux<ChunkContext> findSimilarChunkContextsAmong(
+        double[] queryEmbedding,
+        Collection<Long> chunkIds,
+        int limit,
+        double minSimilarity
+    ) {
+        return neo4jClient
+            .query(SIMILAR_CHUNK_CONTEXTS_AMONG_QUERY)
+            .bindAll(Map.of("queryEmbedding", queryEmbedding, "chunkIds", chunkIds, "limit", limit, "minSimilarity", minSimilarity))
+            .fetchAs(ChunkContext.class)
+            .mappedBy((typeSystem, record) -> toChunkContext(record))
+            .all();
+    }
+
+    @Override
+    public Flux<ChunkContext> findChunkContextsContaining(Collection<String> terms, Collection<Long> chunkIds, int limit) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("terms", terms);
+        parameters.put("chunkIds", chunkIds);
+        parameters.put("limit", limit);
+        return neo4jClient
+            .query(CHUNK_CONTEXTS_CONTAINING_QUERY)
+            .bindAll(parameters)
+            .fetchAs(ChunkContext.class)
+            .mappedBy((typeSystem, record) -> toChunkContext(record))
+            .all();
+    }
+
+    @Override
+    public Flux<ChunkMembership> findChunkMemberships(Long documentId) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("documentId", documentId);
+        return neo4jClient
+            .query(CHUNK_MEMBERSHIPS_QUERY)
+            .bindAll(parameters)
+            .fetchAs(ChunkMembership.class)
+            .mappedBy((typeSystem, record) ->
+                new ChunkMembership(
+                    record.get("chunkId").asLong(),
+                    record.get("documentId").asLong(),
+                    record.get("contentType").asString(null),
+                    record.get("tags").isNull() ? List.of() : record.get("tags").asList(Value::asString),
+                    record.get("createdDate").isNull() ? null : record.get("createdDate").asZonedDateTime().toInstant()
+                )
+            )
+            .all();
+    }
+
+    @Override
+    public Flux<ChunkEmbedding> findChunkEmbeddings(Collection<Long> chunkIds) {
+        return neo4jClient
+            .query(CHUNK_EMBEDDINGS_QUERY)
+            .bind(chunkIds).to("chunkIds")
+            .fetchAs(ChunkEmbedding.class)
+            .mappedBy((typeSystem, record) -> {
+                List<Object> values = record.get("embedding").asList();
+                float[] embedding = new float[values.size()];
+                for (int i = 0; i < embedding.length; i++) {
+                    embedding[i] = ((Number) values.get(i)).floatValue();
+                }
+                return new ChunkEmbedding(record.get("chunkId").asLong(), embedding);
+            })
+            .all();
+    }
+
+    private static ChunkContext toChunkContext(Record record) {
+        return new ChunkContext(
+            record.get("id").asLong(),
+            record.get("content").asString(null),
+            record.get("chunkIndex").isNull() ? null : record.get("chunkIndex").asInt(),
+            record.get("documentId").isNull() ? null : record.get("documentId").asLong(),
+            record.get("documentTitle").asString(null),
+            record.get("similarity").asDouble()
+        );
+    }
+}
@@ -2,6 +2,7 @@ package com.topsion.rag.repository;
 
 import com.topsion.rag.domain.Document;
 import java.util.List;
+import java.util.Map;
 import org.springframework.data.neo4j.repository.ReactiveNeo4jRepository;
 import org.springframework.data.neo4j.repository.query.Query;
 import org.springframework.data.repository.query.Param;
@@ -10,7 +11,7 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Repository
-public interface DocumentRepository extends ReactiveNeo4jRepository<Document, Long> {
+public interface DocumentRepository extends ReactiveNeo4jRepository<Document, Long>, DocumentRepositoryCustom {
 
     Flux<Document> findByStatus(String status);
 
@@ -19,13 +20,25 @@ public interface DocumentRepository extends ReactiveNeo4jRepository<Document, Lo
     @Query("MATCH (d:Document) WHERE d.title CONTAINS $title OR d.filename CONTAINS $title RETURN d")
     Flux<Document> findByTitleContaining(@Param("title") String title);
 
-    @Query("MATCH (d:Document)-[:HAS_CHUNK]->(c:DocumentChunk) WHERE d.id = $documentId RETURN count(c)")
+    @Query("MATCH (d:Document)-[:HAS_CHUNK]->(c:DocumentChunk) WHERE id(d) = $documentId RETURN count(c)")
     Mono<Long> countChunksByDocumentId(@Param("documentId") Long documentId);
 
-    @Query("MATCH (d:Document) WHERE d.status = 'PROCESSED' RETURN d ORDER BY d.createdDate DESC")
+    @Query("MATCH (d:Document) WHERE d.status = 'PROCESSED' RETURN d ORDER BY d.created_date DESC")
     Flux<Document> findProcessedDocuments();
 
     @Query("MATCH (d:Document)-[:HAS_CHUNK]->(c:DocumentChunk)-[:CONTAINS_ENTITY]->(e:Entity) " +
-           "WHERE d.id = $documentId RETURN DISTINCT e.name as entityName, e.type as entityType")
+           "WHERE id(d) = $documentId RETURN DISTINCT e.name as entityName, e.type as entityType")
     Flux<Object[]> findEntitiesByDocumentId(@Param("documentId") Long documentId);
-}
\ No newline at end of file
+
+    /**
+     * The document node alone, without its chunks.
+     */
+    @Query("MATCH (d:Document) WHERE id(d) = $documentId RETURN d")
+    Mono<Document> findNodeById(@Param("documentId") Long documentId);
+
+    /**
+     * Merges ingestion telemetry into the document node without re-saving its chunks.
+     */
+    @Query("MATCH (d:Document) WHERE id(d) = $documentId SET d += $properties")
+    Mono<Void> saveIngestionTelemetry(@Param("documentId") Long documentId, @Param("properties") Map<String, Object> properties);
+}
@@ -0,0 +1,15 @@
+package com.topsion.rag.repository;
+
+import com.topsion.rag.repository.projection.DocumentSummary;
+import java.time.Instant;
+import reactor.core.publisher.Flux;
+
+public interface DocumentRepositoryCustom {
+
+    /**
+     * Keyset page of documents ordered newest first, documents without a created date first. Pass the created
+     * date (null if it had none) and id of the last document of the previous page, or a {@code null} id for the
+     * first page.
+     */
+    Flux<DocumentSummary> findSummaries(Instant afterCreatedDate, Long afterId, int size);
+}
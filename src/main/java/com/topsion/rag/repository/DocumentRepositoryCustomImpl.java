@@ -0,0 +1,63 @@
+package com.topsion.rag.repository;
+
+import com.topsion.rag.repository.projection.DocumentSummary;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.neo4j.driver.Value;
+import org.springframework.data.neo4j.core.ReactiveNeo4jClient;
+import reactor.core.publisher.Flux;
+
+class DocumentRepositoryCustomImpl implements DocumentRepositoryCustom {
+
+    private static final String DOCUMENT_SUMMARIES_QUERY =
+        "MATCH (d:Document) " +
+        "WHERE $afterId IS NULL " +
+        // 没有创建时间的文档在倒序中排在最前
+        "OR ($afterCreatedDate IS NULL AND (d.created_date IS NOT NULL OR id(d) < $afterId)) " +
+        "OR d.created_date < $afterCreatedDate " +
+        "OR (d.created_date = $afterCreatedDate AND id(d) < $afterId) " +
+        "RETURN id(d) AS id, d.title AS title, d.filename AS filename, d.content_type AS contentType, " +
+        "d.file_size AS fileSize, d.status AS status, d.summary AS summary, d.tags AS tags, d.created_date AS createdDate " +
+        "ORDER BY d.created_date DESC, id(d) DESC " +
+        "LIMIT $size";
+
+    private final ReactiveNeo4jClient neo4jClient;
+
+    DocumentRepositoryCustomImpl(ReactiveNeo4jClient neo4jClient) {
+        this.neo4jClient = neo4jClient;
+    }
+
+    @Override
+    public Flux<DocumentSummary> findSummaries(Instant afterCreatedDate, Long afterId, int size) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("afterCreatedDate", afterCreatedDate != null ? afterCreatedDate.atZone(ZoneOffset.UTC) : null);
+        parameters.put("afterId", afterId);
+        parameters.put("size", size);
+
+        return neo4jClient
+            .query(DOCUMENT_SUMMARIES_QUERY)
+            .bindAll(parameters)
+            .fetchAs(DocumentSummary.class)
+            .mappedBy((typeSystem, record) ->
+                new DocumentSummary(
+                    record.get("id").asLong(),
+                    record.get("title").asString(null),
+                    record.get("filename").asString(null),
+                    record.get("contentType").asString(null),
+                    record.get("fileSize").isNull() ? null : record.get("fileSize").asLong(),
+                    record.get("status").asString(null),
+                    record.get("summary").asString(null),
+                    record.get("tags").isNull() ? List.of() : record.get("tags").asList(Value::asString),
+                    toInstant(record.get("createdDate"))
+                )
+            )
+            .all();
+    }
+
+    private static Instant toInstant(Value value) {
+        return value.isNull() ? null : value.asZonedDateTime().toInstant();
+    }
+}
@@ -1,6 +1,7 @@
 package com.topsion.rag.repository;
 
 import com.topsion.rag.domain.Entity;
+import java.util.Collection;
 import java.util.List;
 import org.springframework.data.neo4j.repository.ReactiveNeo4jRepository;
 import org.springframework.data.neo4j.repository.query.Query;
@@ -10,7 +11,7 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Repository
-public interface EntityRepository extends ReactiveNeo4jRepository<Entity, Long> {
+public interface EntityRepository extends ReactiveNeo4jRepository<Entity, Long>, EntityRepositoryCustom {
 
     Flux<Entity> findByName(String name);
 
@@ -20,30 +21,27 @@ public interface EntityRepository extends ReactiveNeo4jRepository<Entity, Long>
     Flux<Entity> findByNameContaining(@Param("name") String name);
 
     @Query("MATCH (e1:Entity)-[r:RELATED_TO]->(e2:Entity) " +
-           "WHERE e1.id = $entityId " +
+           "WHERE id(e1) = $entityId " +
            "RETURN e2, r.relationshipType as relationType, r.strength as strength " +
            "ORDER BY r.strength DESC")
     Flux<Object[]> findRelatedEntities(@Param("entityId") Long entityId);
 
     @Query("MATCH (e:Entity)-[:CONTAINS_ENTITY]-(c:DocumentChunk)-[:HAS_CHUNK]-(d:Document) " +
-           "WHERE e.id = $entityId " +
+           "WHERE id(e) = $entityId " +
            "RETURN DISTINCT d")
     Flux<Object> findDocumentsByEntityId(@Param("entityId") Long entityId);
 
     @Query("MATCH (e1:Entity)-[r1:RELATED_TO]->(e2:Entity)-[r2:RELATED_TO]->(e3:Entity) " +
-           "WHERE e1.id = $entityId AND e3.id <> $entityId " +
+           "WHERE id(e1) = $entityId AND id(e3) <> $entityId " +
            "RETURN e3, (r1.strength + r2.strength) / 2 as pathStrength " +
            "ORDER BY pathStrength DESC " +
            "LIMIT $limit")
     Flux<Object[]> findIndirectlyRelatedEntities(@Param("entityId") Long entityId, @Param("limit") int limit);
 
-    @Query("MATCH (e:Entity) " +
-           "WHERE e.embedding IS NOT NULL " +
-           "RETURN e, " +
-           "gds.alpha.similarity.cosine(e.embedding, $queryEmbedding) AS similarity " +
-           "ORDER BY similarity DESC " +
-           "LIMIT $limit")
-    Flux<Object[]> findSimilarEntities(@Param("queryEmbedding") double[] queryEmbedding, @Param("limit") int limit);
+    @Query("CALL db.index.vector.queryNodes('entity_embedding', $limit, $queryEmbedding) " +
+           "YIELD node AS e, score " +
+           "RETURN e ORDER BY score DESC")
+    Flux<Entity> findSimilarEntities(@Param("queryEmbedding") double[] queryEmbedding, @Param("limit") int limit);
 
     @Query("MATCH (e:Entity) " +
            "RETURN e.type as type, count(e) as count " +
@@ -51,4 +49,7 @@ public interface EntityRepository extends ReactiveNeo4jRepository<Entity, Long>
     Flux<Object[]> getEntityTypeStatistics();
 
     Mono<Entity> findByNameAndType(String name, String type);
+
+    @Query("MATCH (e:Entity) WHERE id(e) IN $ids RETURN e")
+    Flux<Entity> findNodesByIds(@Param("ids") Collection<Long> ids);
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package com.topsion.rag.repository;
+
+import com.topsion.rag.repository.projection.EntityReportRow;
+import com.topsion.rag.repository.projection.EntitySummary;
+import com.topsion.rag.repository.projection.TypeCount;
+import java.time.Instant;
+import java.util.Collection;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface EntityRepositoryCustom {
+
+    Flux<EntitySummary> findSimilarEntitySummaries(double[] queryEmbedding, int limit);
+
+    Flux<EntitySummary> findEntitySummariesByNameContaining(String name, int limit);
+
+    /**
+     * Vector search over {@code candidates} nearest entities, keeping those mentioned in one of the documents.
+     */
+    Flux<EntitySummary> findSimilarEntitySummariesInDocuments(double[] queryEmbedding, int candidates, int limit, Collection<Long> documentIds);
+
+    Flux<EntitySummary> findEntitySummariesByNameContainingInDocuments(String name, int limit, Collection<Long> documentIds);
+
+    Flux<TypeCount> countEntitiesByType();
+
+    /**
+     * Finds or creates the entity with this name and type in a single {@code MERGE}, so concurrent writers of
+     * the same entity share one node. An existing entity without a description gets {@code description}.
+     *
+     * @return the id of the entity.
+     */
+    Mono<Long> mergeEntity(String name, String type, String description, Instant createdDate);
+
+    /**
+     * Streams every entity ordered by id. Records are pulled from the driver as they are requested, so a
+     * subscriber that consumes slowly holds only the rows it has asked for.
+     */
+    Flux<EntityReportRow> streamEntityReportRows();
+}
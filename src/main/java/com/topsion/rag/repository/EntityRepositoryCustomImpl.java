@@ -0,0 +1,159 @@
+package com.topsion.rag.repository;
+
+import com.topsion.rag.repository.projection.EntityReportRow;
+import com.topsion.rag.repository.projection.EntitySummary;
+import com.topsion.rag.repository.projection.TypeCount;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import org.neo4j.driver.Record;
+import org.springframework.data.neo4j.core.ReactiveNeo4jClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class EntityRepositoryCustomImpl implements EntityRepositoryCustom {
+
+    private static final String SIMILAR_ENTITY_SUMMARIES_QUERY =
+        "CALL db.index.vector.queryNodes('entity_embedding', $limit, $queryEmbedding) " +
+        "YIELD node AS e, score " +
+        "RETURN id(e) AS id, e.name AS name, e.type AS type, e.description AS description " +
+        "ORDER BY score DESC";
+
+    private static final String ENTITY_SUMMARIES_BY_NAME_QUERY =
+        "MATCH (e:Entity) WHERE e.name CONTAINS $name " +
+        "RETURN id(e) AS id, e.name AS name, e.type AS type, e.description AS description " +
+        "LIMIT $limit";
+
+    private static final String SIMILAR_ENTITY_SUMMARIES_IN_DOCUMENTS_QUERY =
+        "CALL db.index.vector.queryNodes('entity_embedding', $candidates, $queryEmbedding) " +
+        "YIELD node AS e, score " +
+        "WHERE EXISTS { MATCH (d:Document)-[:HAS_CHUNK]->(:DocumentChunk)-[:CONTAINS_ENTITY]->(e) WHERE id(d) IN $documentIds } " +
+        "RETURN id(e) AS id, e.name AS name, e.type AS type, e.description AS description " +
+        "ORDER BY score DESC " +
+        "LIMIT $limit";
+
+    private static final String ENTITY_SUMMARIES_BY_NAME_IN_DOCUMENTS_QUERY =
+        "MATCH (d:Document)-[:HAS_CHUNK]->(:DocumentChunk)-[:CONTAINS_ENTITY]->(e:Entity) " +
+        "WHERE id(d) IN $documentIds AND e.name CONTAINS $name " +
+        "WITH DISTINCT e " +
+        "RETURN id(e) AS id, e.name AS name, e.type AS type, e.description AS description " +
+        "LIMIT $limit";
+
+    private static final String COUNT_BY_TYPE_QUERY =
+        "MATCH (e:Entity) RETURN e.type AS type, count(e) AS count ORDER BY count DESC";
+
+    private static final String MERGE_ENTITY_QUERY =
+        "MERGE (e:Entity {name: $name, type: $type}) " +
+        "ON CREATE SET e.description = $description, e.created_date = $createdDate " +
+        "ON MATCH SET e.description = CASE WHEN coalesce(e.description, '') = '' THEN $description ELSE e.description END " +
+        "RETURN id(e) AS id";
+
+    private static final String ENTITY_REPORT_ROWS_QUERY =
+        "MATCH (e:Entity) " +
+        "RETURN id(e) AS id, e.name AS name, e.type AS type, e.description AS description, " +
+        "COUNT { (e)<-[:CONTAINS_ENTITY]-(:DocumentChunk) } AS chunkCount " +
+        "ORDER BY id(e)";
+
+    private final ReactiveNeo4jClient neo4jClient;
+
+    EntityRepositoryCustomImpl(ReactiveNeo4jClient neo4jClient) {
+        this.neo4jClient = neo4jClient;
+    }
+
+    @Override
+    public Flux<EntitySummary> findSimilarEntitySummaries(double[] queryEmbedding, int limit) {
+        return neo4jClient
+            .query(SIMILAR_ENTITY_SUMMARIES_QUERY)
+            .bindAll(Map.of("queryEmbedding", queryEmbedding, "limit", limit))
+            .fetchAs(EntitySummary.class)
+            .mappedBy((typeSystem, record) -> toEntitySummary(record))
+            .all();
+    }
+
+    @Override
+    public Flux<EntitySummary> findEntitySummariesByNameContaining(String name, int limit) {
+        return neo4jClient
+            .query(ENTITY_SUMMARIES_BY_NAME_QUERY)
+            .bindAll(Map.of("name", name, "limit", limit))
+            .fetchAs(EntitySummary.class)
+            .mappedBy((typeSystem, record) -> toEntitySummary(record))
+            .all();
+    }
+
+    @Override
+    public Flux<EntitySummary> findSimilarEntitySummariesInDocuments(
+        double[] queryEmbedding,
+        int candidates,
+        int limit,
+        Collection<Long> documentIds
+    ) {
+        return neo4jClient
+            .query(SIMILAR_ENTITY_SUMMARIES_IN_DOCUMENTS_QUERY)
+            .bindAll(Map.of("queryEmbedding", queryEmbedding, "candidates", candidates, "limit", limit, "documentIds", documentIds))
+            .fetchAs(EntitySummary.class)
+            .mappedBy((typeSystem, record) -> toEntitySummary(record))
+            .all();
+    }
+
+    @Override
+    public Flux<EntitySummary> findEntitySummariesByNameContainingInDocuments(String name, int limit, Collection<Long> documentIds) {
+        return neo4jClient
+            .query(ENTITY_SUMMARIES_BY_NAME_IN_DOCUMENTS_QUERY)
+            .bindAll(Map.of("name", name, "limit", limit, "documentIds", documentIds))
+            .fetchAs(EntitySummary.class)
+            .mappedBy((typeSystem, record) -> toEntitySummary(record))
+            .all();
+    }
+
+    @Override
+    public Flux<TypeCount> countEntitiesByType() {
+        return neo4jClient
+            .query(COUNT_BY_TYPE_QUERY)
+            .fetchAs(TypeCount.class)
+            .mappedBy((typeSystem, record) -> new TypeCount(record.get("type").asString("UNKNOWN"), record.get("count").asLong()))
+            .all();
+    }
+
+    @Override
+    public Mono<Long> mergeEntity(String name, String type, String description, Instant createdDate) {
+        // description 可能为 null，Map.of 不接受 null 值
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("name", name);
+        parameters.put("type", type);
+        parameters.put("description", description);
+        parameters.put("createdDate", createdDate);
+        return neo4jClient
+            .query(MERGE_ENTITY_QUERY)
+            .bindAll(parameters)
+            .fetchAs(Long.class)
+            .mappedBy((typeSystem, record) -> record.get("id").asLong())
+            .one();
+    }
+
+    @Override
+    public Flux<EntityReportRow> streamEntityReportRows() {
+        return neo4jClient
+            .query(ENTITY_REPORT_ROWS_QUERY)
+            .fetchAs(EntityReportRow.class)
+            .mappedBy((typeSystem, record) ->
+                new EntityReportRow(
+                    record.get("id").asLong(),
+                    record.get("name").asString(null),
+                    record.get("type").asString(null),
+                    record.get("description").asString(null),
+                    record.get("chunkCount").asLong()
+                )
+            )
+            .all();
+    }
+
+    private static EntitySummary toEntitySummary(Record record) {
+        return new EntitySummary(
+            record.get("id").asLong(),
+            record.get("name").asString(null),
+            record.get("type").asString(null),
+            record.get("description").asString(null)
+        );
+    }
+}
@@ -10,39 +10,47 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Repository
-public interface QueryHistoryRepository extends ReactiveNeo4jRepository<QueryHistory, Long> {
+public interface QueryHistoryRepository extends ReactiveNeo4jRepository<QueryHistory, Long>, QueryHistoryRepositoryCustom {
 
     Flux<QueryHistory> findBySessionId(String sessionId);
 
+    Mono<QueryHistory> findByQueryId(String queryId);
+
     @Query("MATCH (q:QueryHistory) " +
-           "WHERE q.createdDate >= $startDate AND q.createdDate <= $endDate " +
-           "RETURN q ORDER BY q.createdDate DESC")
+           "WHERE q.created_date >= $startDate AND q.created_date <= $endDate " +
+           "RETURN q ORDER BY q.created_date DESC")
     Flux<QueryHistory> findByDateRange(@Param("startDate") Instant startDate, @Param("endDate") Instant endDate);
 
     @Query("MATCH (q:QueryHistory) " +
            "WHERE q.question CONTAINS $keyword " +
-           "RETURN q ORDER BY q.createdDate DESC")
+           "RETURN q ORDER BY q.created_date DESC")
     Flux<QueryHistory> findByQuestionContaining(@Param("keyword") String keyword);
 
     @Query("MATCH (q:QueryHistory) " +
-           "WHERE q.userFeedback = $feedback " +
-           "RETURN q ORDER BY q.createdDate DESC")
+           "WHERE q.user_feedback = $feedback " +
+           "RETURN q ORDER BY q.created_date DESC")
     Flux<QueryHistory> findByUserFeedback(@Param("feedback") String feedback);
 
     @Query("MATCH (q:QueryHistory) " +
-           "RETURN avg(q.responseTimeMs) as avgResponseTime, " +
-           "min(q.responseTimeMs) as minResponseTime, " +
-           "max(q.responseTimeMs) as maxResponseTime")
+           "RETURN avg(q.response_time_ms) as avgResponseTime, " +
+           "min(q.response_time_ms) as minResponseTime, " +
+           "max(q.response_time_ms) as maxResponseTime")
     Mono<Object[]> getResponseTimeStatistics();
 
     @Query("MATCH (q:QueryHistory) " +
-           "WHERE q.userFeedback IS NOT NULL " +
-           "RETURN q.userFeedback as feedback, count(q) as count")
+           "WHERE q.user_feedback IS NOT NULL " +
+           "RETURN q.user_feedback as feedback, count(q) as count")
     Flux<Object[]> getFeedbackStatistics();
 
     @Query("MATCH (q:QueryHistory) " +
-           "WHERE q.sessionId = $sessionId " +
-           "RETURN q ORDER BY q.createdDate DESC " +
+           "WHERE q.session_id = $sessionId " +
+           "RETURN q ORDER BY q.created_date DESC " +
            "LIMIT $limit")
     Flux<QueryHistory> findRecentQueriesBySession(@Param("sessionId") String sessionId, @Param("limit") int limit);
+
+    @Query("MATCH (q:QueryHistory) " +
+           "WHERE q.created_date < $cutoff " +
+           "RETURN q ORDER BY q.created_date " +
+           "LIMIT $limit")
+    Flux<QueryHistory> findCreatedBefore(@Param("cutoff") Instant cutoff, @Param("limit") int limit);
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package com.topsion.rag.repository;
+
+import com.topsion.rag.domain.QueryHistory;
+import java.util.List;
+import reactor.core.publisher.Mono;
+
+public interface QueryHistoryRepositoryCustom {
+
+    /**
+     * Writes all histories with a single {@code UNWIND} statement and returns the number of nodes written.
+     * Histories are merged on their query id, so writing a batch again after a failure that was in fact
+     * committed does not duplicate them.
+     */
+    Mono<Long> insertAll(List<QueryHistory> histories);
+}
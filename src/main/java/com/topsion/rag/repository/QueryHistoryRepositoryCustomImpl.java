@@ -0,0 +1,64 @@
+package com.topsion.rag.repository;
+
+import com.topsion.rag.domain.QueryHistory;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.springframework.data.neo4j.core.ReactiveNeo4jClient;
+import reactor.core.publisher.Mono;
+
+class QueryHistoryRepositoryCustomImpl implements QueryHistoryRepositoryCustom {
+
+    private static final String INSERT_ALL_QUERY =
+        "UNWIND $rows AS row " +
+        "MERGE (q:QueryHistory {query_id: row.query_id}) SET q += row " +
+        "RETURN count(q) AS created";
+
+    private final ReactiveNeo4jClient neo4jClient;
+
+    QueryHistoryRepositoryCustomImpl(ReactiveNeo4jClient neo4jClient) {
+        this.neo4jClient = neo4jClient;
+    }
+
+    @Override
+    public Mono<Long> insertAll(List<QueryHistory> histories) {
+        if (histories.isEmpty()) {
+            return Mono.just(0L);
+        }
+        List<Map<String, Object>> rows = histories.stream().map(QueryHistoryRepositoryCustomImpl::toRow).toList();
+        return neo4jClient
+            .query(INSERT_ALL_QUERY)
+            .bind(rows).to("rows")
+            .fetchAs(Long.class)
+            .mappedBy((typeSystem, record) -> record.get("created").asLong())
+            .one();
+    }
+
+    private static Map<String, Object> toRow(QueryHistory history) {
+        // 属性名与 QueryHistory 上的 @Property 保持一致，值为 null 的属性不会写入
+        Map<String, Object> row = new HashMap<>();
+        row.put("query_id", history.getQueryId());
+        row.put("question", history.getQuestion());
+        row.put("answer", history.getAnswer());
+        row.put("context_chunks", history.getContextChunks());
+        row.put("response_time_ms", history.getResponseTimeMs());
+        row.put("user_feedback", history.getUserFeedback());
+        row.put("session_id", history.getSessionId());
+        row.put("query_trace", history.getTrace());
+        row.put("created_by", history.getCreatedBy());
+        row.put("created_date", toDateTime(history.getCreatedDate()));
+        row.put("last_modified_by", history.getLastModifiedBy());
+        row.put("last_modified_date", toDateTime(history.getLastModifiedDate()));
+        // SET += 会删除值为 null 的属性，重复写入时不能覆盖已记录的反馈
+        row.values().removeIf(Objects::isNull);
+        return row;
+    }
+
+    private static ZonedDateTime toDateTime(Instant instant) {
+        return instant != null ? instant.atZone(ZoneOffset.UTC) : null;
+    }
+}
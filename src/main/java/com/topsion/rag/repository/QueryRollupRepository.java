@@ -0,0 +1,24 @@
+package com.topsion.rag.repository;
+
+import com.topsion.rag.domain.QueryRollup;
+import java.time.Instant;
+import org.springframework.data.neo4j.repository.ReactiveNeo4jRepository;
+import org.springframework.data.neo4j.repository.query.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface QueryRollupRepository extends ReactiveNeo4jRepository<QueryRollup, Long> {
+
+    @Query("MATCH (r:QueryRollup) " +
+           "WHERE r.granularity = $granularity AND r.bucket_start = $bucketStart " +
+           "RETURN r LIMIT 1")
+    Mono<QueryRollup> findBucket(@Param("granularity") String granularity, @Param("bucketStart") Instant bucketStart);
+
+    @Query("MATCH (r:QueryRollup) " +
+           "WHERE r.granularity = $granularity AND r.bucket_start >= $from AND r.bucket_start < $to " +
+           "RETURN r ORDER BY r.bucket_start")
+    Flux<QueryRollup> findBuckets(@Param("granularity") String granularity, @Param("from") Instant from, @Param("to") Instant to);
+}
@@ -0,0 +1,148 @@
+package com.topsion.rag.repository;
+
+import com.topsion.rag.management.RepositoryCallEvent;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Times every call of a repository method and counts the rows it returns.
+ * <p>
+ * For reactive return types the timer runs from subscription until the publisher terminates or is
+ * cancelled, so it measures the query rather than the assembly of the publisher, and every element emitted
+ * counts as a row. Calls are recorded as {@value #TIMER_METER_NAME} and {@value #ROWS_METER_NAME}, tagged
+ * with the repository interface, the method and the outcome, and passed on to the {@link SlowQueryLog}.
+ * Each call is also a {@link RepositoryCallEvent} for the flight recorder.
+ */
+@Aspect
+public class RepositoryMetricsAspect {
+
+    public static final String TIMER_METER_NAME = "repository.query";
+    public static final String ROWS_METER_NAME = "repository.query.rows";
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final SlowQueryLog slowQueryLog;
+    private final Map<Class<?>, String> repositoryNames = new ConcurrentHashMap<>();
+
+    public RepositoryMetricsAspect(ObjectProvider<MeterRegistry> meterRegistry, SlowQueryLog slowQueryLog) {
+        this.meterRegistry = meterRegistry;
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    @Around("execution(* com.topsion.rag.repository.*Repository+.*(..)) && !execution(* java.lang.Object.*(..))")
+    public Object measure(ProceedingJoinPoint joinPoint) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        String repository = repositoryName(joinPoint.getThis(), method);
+        Object[] args = joinPoint.getArgs();
+
+        Object result;
+        RepositoryCallEvent event = startEvent(repository, method);
+        long start = System.nanoTime();
+        try {
+            result = joinPoint.proceed();
+        } catch (Throwable e) {
+            record(repository, method, args, event, System.nanoTime() - start, 0, "error");
+            throw e;
+        }
+
+        if (result instanceof Mono<?> mono) {
+            return Mono.defer(() -> {
+                RepositoryCallEvent subscription = startEvent(repository, method);
+                long subscribed = System.nanoTime();
+                AtomicLong rows = new AtomicLong();
+                return mono
+                    .doOnNext(value -> rows.incrementAndGet())
+                    .doFinally(signal ->
+                        record(repository, method, args, subscription, System.nanoTime() - subscribed, rows.get(), outcome(signal)));
+            });
+        }
+        if (result instanceof Flux<?> flux) {
+            return Flux.defer(() -> {
+                RepositoryCallEvent subscription = startEvent(repository, method);
+                long subscribed = System.nanoTime();
+                AtomicLong rows = new AtomicLong();
+                return flux
+                    .doOnNext(value -> rows.incrementAndGet())
+                    .doFinally(signal ->
+                        record(repository, method, args, subscription, System.nanoTime() - subscribed, rows.get(), outcome(signal)));
+            });
+        }
+        record(repository, method, args, event, System.nanoTime() - start, result != null ? 1 : 0, "success");
+        return result;
+    }
+
+    private static RepositoryCallEvent startEvent(String repository, Method method) {
+        RepositoryCallEvent event = new RepositoryCallEvent();
+        event.repository = repository;
+        event.method = method.getName();
+        event.begin();
+        return event;
+    }
+
+    private void record(String repository, Method method, Object[] args, RepositoryCallEvent event, long nanos, long rows, String outcome) {
+        if (event.shouldCommit()) {
+            event.rows = rows;
+            event.outcome = outcome;
+            event.commit();
+        }
+        MeterRegistry registry = meterRegistry.getObject();
+        Duration elapsed = Duration.ofNanos(nanos);
+        Timer.builder(TIMER_METER_NAME)
+            .description("Repository method execution time")
+            .tag("repository", repository)
+            .tag("method", method.getName())
+            .tag("outcome", outcome)
+            .register(registry)
+            .record(elapsed);
+        DistributionSummary.builder(ROWS_METER_NAME)
+            .description("Rows returned by repository methods")
+            .baseUnit("rows")
+            .tag("repository", repository)
+            .tag("method", method.getName())
+            .register(registry)
+            .record(rows);
+        if ("success".equals(outcome)) {
+            slowQueryLog.record(repository, method, args, elapsed, rows);
+        }
+    }
+
+    private static String outcome(SignalType signal) {
+        return switch (signal) {
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancelled";
+            default -> "success";
+        };
+    }
+
+    /**
+     * The application's repository interface behind the proxy, rather than the Spring Data interface that
+     * declares inherited methods such as {@code save}.
+     */
+    private String repositoryName(Object proxy, Method method) {
+        if (proxy == null) {
+            return method.getDeclaringClass().getSimpleName();
+        }
+        return repositoryNames.computeIfAbsent(proxy.getClass(), type ->
+            Arrays.stream(AopProxyUtils.proxiedUserInterfaces(proxy))
+                .filter(candidate -> candidate.getPackageName().equals(RepositoryMetricsAspect.class.getPackageName()))
+                .map(Class::getSimpleName)
+                .findFirst()
+                .orElse(method.getDeclaringClass().getSimpleName())
+        );
+    }
+}
@@ -0,0 +1,209 @@
+package com.topsion.rag.repository;
+
+import com.topsion.rag.config.ApplicationProperties;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import org.neo4j.driver.summary.ProfiledPlan;
+import org.neo4j.driver.summary.ResultSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.neo4j.core.ReactiveNeo4jClient;
+import org.springframework.data.neo4j.repository.query.Query;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * Logs a sample of the repository calls that took longer than the threshold.
+ * <p>
+ * An entry has the method, its Cypher if the method is annotated with {@link Query}, and its parameters with
+ * strings, vectors and collections redacted to their size. If profiling is enabled and the query is
+ * read-only, it is re-run with {@code PROFILE} and the entry also gets the db hits per operator. Only one
+ * profile runs at a time; slow calls arriving meanwhile are logged without one. Custom fragment methods
+ * build their Cypher at run time, so they are logged without Cypher or profile.
+ */
+public class SlowQueryLog {
+
+    private static final Pattern WRITE_CLAUSE = Pattern.compile(
+        "\\b(CREATE|MERGE|DELETE|SET|REMOVE|FOREACH|LOAD\\s+CSV)\\b|\\bCALL\\s*\\{",
+        Pattern.CASE_INSENSITIVE
+    );
+
+    private final Logger log = LoggerFactory.getLogger(SlowQueryLog.class);
+
+    private final ObjectProvider<ReactiveNeo4jClient> neo4jClient;
+    private final ApplicationProperties.SlowQuery properties;
+    private final Map<Method, Optional<QueryTemplate>> templates = new ConcurrentHashMap<>();
+    private final AtomicBoolean profiling = new AtomicBoolean();
+
+    public SlowQueryLog(ObjectProvider<ReactiveNeo4jClient> neo4jClient, ApplicationProperties applicationProperties) {
+        this.neo4jClient = neo4jClient;
+        this.properties = applicationProperties.getSlowQuery();
+    }
+
+    /**
+     * Called for every completed repository call; decides itself whether the call is logged.
+     */
+    void record(String repository, Method method, Object[] args, Duration elapsed, long rows) {
+        if (!properties.getEnabled() || elapsed.toMillis() < properties.getThresholdMs()) {
+            return;
+        }
+        if (ThreadLocalRandom.current().nextDouble() >= properties.getSampleRate()) {
+            return;
+        }
+
+        String name = repository + "." + method.getName();
+        Optional<QueryTemplate> template = templates.computeIfAbsent(method, SlowQueryLog::template);
+        String cypher = template.map(QueryTemplate::cypher).orElse("<built by a custom fragment>");
+        String parameters = redact(template.map(found -> found.bind(args)).orElseGet(() -> positional(args)));
+
+        Optional<Map<String, Object>> profileParameters = template
+            .filter(found -> properties.getProfile() && isReadOnly(found.cypher()))
+            .flatMap(found -> found.profileParameters(args));
+        if (profileParameters.isEmpty() || !profiling.compareAndSet(false, true)) {
+            log.warn("Slow query {} took {} ms and returned {} rows\n  cypher: {}\n  parameters: {}",
+                name, elapsed.toMillis(), rows, cypher, parameters);
+            return;
+        }
+
+        neo4jClient.getObject()
+            .query("PROFILE " + cypher)
+            .bindAll(profileParameters.get())
+            .run()
+            .doFinally(signal -> profiling.set(false))
+            .subscribe(
+                summary -> log.warn("Slow query {} took {} ms and returned {} rows\n  cypher: {}\n  parameters: {}\n  profile: {}",
+                    name, elapsed.toMillis(), rows, cypher, parameters, describe(summary)),
+                error -> log.warn("Slow query {} took {} ms and returned {} rows\n  cypher: {}\n  parameters: {}\n  profile failed: {}",
+                    name, elapsed.toMillis(), rows, cypher, parameters, error.getMessage())
+            );
+    }
+
+    static boolean isReadOnly(String cypher) {
+        return !WRITE_CLAUSE.matcher(cypher).find();
+    }
+
+    /**
+     * Parameter values with everything that may hold user content or is large reduced to its type and size.
+     */
+    static String redact(Map<String, Object> parameters) {
+        StringBuilder redacted = new StringBuilder("{");
+        parameters.forEach((key, value) -> {
+            if (redacted.length() > 1) {
+                redacted.append(", ");
+            }
+            redacted.append(key).append('=').append(redactValue(value));
+        });
+        return redacted.append('}').toString();
+    }
+
+    private static String redactValue(Object value) {
+        if (value == null || value instanceof Number || value instanceof Boolean || value instanceof Enum<?> || value instanceof TemporalAccessor) {
+            return String.valueOf(value);
+        }
+        if (value instanceof CharSequence text) {
+            return "<string:" + text.length() + ">";
+        }
+        if (value instanceof double[] vector) {
+            return "<double[" + vector.length + "]>";
+        }
+        if (value instanceof float[] vector) {
+            return "<float[" + vector.length + "]>";
+        }
+        if (value instanceof Collection<?> collection) {
+            return "<" + collection.size() + " items>";
+        }
+        if (value instanceof Map<?, ?> map) {
+            return "<" + map.size() + " entries>";
+        }
+        return "<" + value.getClass().getSimpleName() + ">";
+    }
+
+    /**
+     * Total db hits followed by the db hits of each operator, depth first.
+     */
+    static String describe(ResultSummary summary) {
+        if (!summary.hasProfile()) {
+            return "no profile";
+        }
+        List<String> operators = new ArrayList<>();
+        long dbHits = collect(summary.profile(), operators);
+        return dbHits + " db hits [" + String.join(", ", operators) + "]";
+    }
+
+    private static long collect(ProfiledPlan plan, List<String> operators) {
+        operators.add(plan.operatorType() + "=" + plan.dbHits());
+        long dbHits = plan.dbHits();
+        for (ProfiledPlan child : plan.children()) {
+            dbHits += collect(child, operators);
+        }
+        return dbHits;
+    }
+
+    private static Map<String, Object> positional(Object[] args) {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        for (int i = 0; args != null && i < args.length; i++) {
+            parameters.put("arg" + i, args[i]);
+        }
+        return parameters;
+    }
+
+    private static Optional<QueryTemplate> template(Method method) {
+        Query query = method.getAnnotation(Query.class);
+        if (query == null || query.value().isEmpty()) {
+            return Optional.empty();
+        }
+        Parameter[] parameters = method.getParameters();
+        String[] names = new String[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            Param param = parameters[i].getAnnotation(Param.class);
+            names[i] = param != null ? param.value() : parameters[i].isNamePresent() ? parameters[i].getName() : null;
+        }
+        return Optional.of(new QueryTemplate(query.value(), names));
+    }
+
+    private record QueryTemplate(String cypher, String[] names) {
+        Map<String, Object> bind(Object[] args) {
+            Map<String, Object> parameters = new LinkedHashMap<>();
+            for (int i = 0; i < names.length; i++) {
+                parameters.put(names[i] != null ? names[i] : "arg" + i, args[i]);
+            }
+            return parameters;
+        }
+
+        /**
+         * The arguments as driver values, or empty if one of them is of a type the driver cannot take as is.
+         */
+        Optional<Map<String, Object>> profileParameters(Object[] args) {
+            Map<String, Object> parameters = new HashMap<>();
+            for (int i = 0; i < names.length; i++) {
+                Object value = args[i];
+                if (names[i] == null) {
+                    return Optional.empty();
+                }
+                if (value instanceof Instant instant) {
+                    value = instant.atZone(ZoneOffset.UTC);
+                } else if (!(value == null || value instanceof Number || value instanceof Boolean || value instanceof CharSequence
+                    || value instanceof double[] || value instanceof float[] || value instanceof Collection<?>)) {
+                    return Optional.empty();
+                }
+                parameters.put(names[i], value);
+            }
+            return Optional.of(parameters);
+        }
+    }
+}
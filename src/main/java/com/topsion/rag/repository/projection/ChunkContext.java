@@ -0,0 +1,13 @@
+package com.topsion.rag.repository.projection;
+
+/**
+ * The part of a retrieved chunk that is needed to build a prompt and cite its source.
+ */
+public record ChunkContext(
+    Long id,
+    String content,
+    Integer chunkIndex,
+    Long documentId,
+    String documentTitle,
+    double similarity
+) {}
@@ -0,0 +1,6 @@
+package com.topsion.rag.repository.projection;
+
+/**
+ * A chunk's stored embedding, narrowed to single precision for in-memory caching.
+ */
+public record ChunkEmbedding(long chunkId, float[] embedding) {}
@@ -0,0 +1,15 @@
+package com.topsion.rag.repository.projection;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The document attributes a chunk can be filtered by.
+ */
+public record ChunkMembership(
+    long chunkId,
+    long documentId,
+    String contentType,
+    List<String> tags,
+    Instant createdDate
+) {}
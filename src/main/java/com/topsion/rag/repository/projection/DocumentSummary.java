@@ -0,0 +1,19 @@
+package com.topsion.rag.repository.projection;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Document metadata for list views, read without the document's chunks.
+ */
+public record DocumentSummary(
+    Long id,
+    String title,
+    String filename,
+    String contentType,
+    Long fileSize,
+    String status,
+    String summary,
+    List<String> tags,
+    Instant createdDate
+) {}
@@ -0,0 +1,12 @@
+package com.topsion.rag.repository.projection;
+
+/**
+ * One entity line of the knowledge-graph report.
+ */
+public record EntityReportRow(
+    Long id,
+    String name,
+    String type,
+    String description,
+    long chunkCount
+) {}
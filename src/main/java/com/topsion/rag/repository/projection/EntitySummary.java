@@ -0,0 +1,11 @@
+package com.topsion.rag.repository.projection;
+
+/**
+ * Entity properties used as query context, read without chunks, relations or embedding.
+ */
+public record EntitySummary(
+    Long id,
+    String name,
+    String type,
+    String description
+) {}
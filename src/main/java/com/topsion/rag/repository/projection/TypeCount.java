@@ -0,0 +1,3 @@
+package com.topsion.rag.repository.projection;
+
+public record TypeCount(String type, long count) {}
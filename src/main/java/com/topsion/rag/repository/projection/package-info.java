@@ -0,0 +1,4 @@
+/**
+ * Read-only projections returned by the custom repository queries.
+ */
+package com.topsion.rag.repository.projection;
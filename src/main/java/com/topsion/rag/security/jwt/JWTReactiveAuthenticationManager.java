@@ -26,9 +26,7 @@ public class JWTReactiveAuthenticationManager implements ReactiveAuthenticationM
     }
 
     private Mono<Authentication> authenticateToken(BearerTokenAuthenticationToken token) {
-        String jwt = token.getToken();
-        return Mono.just(jwt)
-            .filter(tokenProvider::validateToken)
-            .map(tokenProvider::getAuthentication);
+        return Mono.fromCallable(() -> tokenProvider.authenticate(token.getToken()))
+            .flatMap(Mono::justOrEmpty);
     }
 }
\ No newline at end of file
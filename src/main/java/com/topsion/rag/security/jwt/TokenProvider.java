@@ -1,11 +1,15 @@
 package com.topsion.rag.security.jwt;
 
+import com.topsion.rag.config.ApplicationProperties;
+import com.topsion.rag.management.SecurityMetersService;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
 import io.jsonwebtoken.security.SecurityException;
 
 import javax.crypto.SecretKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
@@ -14,20 +18,40 @@ import org.springframework.security.core.userdetails.User;
 import org.springframework.stereotype.Component;
 import tech.jhipster.config.JHipsterProperties;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.stream.Collectors;
 
+/**
+ * Creates and validates JWTs.
+ * <p>
+ * Validated tokens are cached by their SHA-256 digest until they expire, so a client polling with the same
+ * token does not pay for signature verification on every request. The cache is bounded and evicts the
+ * least recently used token; tokens without an expiration are never cached.
+ */
 @Component
 public class TokenProvider {
 
     private static final String AUTHORITIES_KEY = "auth";
+    private static final String INVALID_JWT_TOKEN = "Invalid JWT token.";
+
+    private final Logger log = LoggerFactory.getLogger(TokenProvider.class);
+
     private final Key key;
     private final JwtParser jwtParser;
     private final long tokenValidityInMilliseconds;
     private final long tokenValidityInMillisecondsForRememberMe;
+    private final SecurityMetersService securityMetersService;
+    private final Map<String, CachedAuthentication> cache;
 
-    public TokenProvider(JHipsterProperties jHipsterProperties) {
+    public TokenProvider(
+        JHipsterProperties jHipsterProperties,
+        ApplicationProperties applicationProperties,
+        SecurityMetersService securityMetersService
+    ) {
         byte[] keyBytes;
         String secret = jHipsterProperties.getSecurity().getAuthentication().getJwt().getBase64Secret();
         if (secret != null) {
@@ -41,6 +65,14 @@ public class TokenProvider {
             1000 * jHipsterProperties.getSecurity().getAuthentication().getJwt().getTokenValidityInSeconds();
         this.tokenValidityInMillisecondsForRememberMe =
             1000 * jHipsterProperties.getSecurity().getAuthentication().getJwt().getTokenValidityInSecondsForRememberMe();
+        this.securityMetersService = securityMetersService;
+        int capacity = applicationProperties.getTokenCache().getMaxSize();
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedAuthentication> eldest) {
+                return size() > capacity;
+            }
+        };
     }
 
     public String createToken(Authentication authentication, boolean rememberMe) {
@@ -65,12 +97,82 @@ public class TokenProvider {
             .compact();
     }
 
+    /**
+     * The authentication of a valid token, or empty if the token is invalid or expired.
+     */
+    public Optional<Authentication> authenticate(String token) {
+        if (token == null || token.isEmpty()) {
+            return Optional.empty();
+        }
+        String digest = digest(token);
+        long now = System.currentTimeMillis();
+        CachedAuthentication cached;
+        synchronized (cache) {
+            cached = cache.get(digest);
+            if (cached != null && cached.expiresAt() <= now) {
+                cache.remove(digest);
+            }
+        }
+        if (cached != null) {
+            if (cached.expiresAt() > now) {
+                return Optional.of(cached.authentication());
+            }
+            securityMetersService.trackTokenExpired();
+            return Optional.empty();
+        }
+
+        Optional<Claims> claims = parseClaims(token);
+        if (claims.isEmpty()) {
+            return Optional.empty();
+        }
+        Authentication authentication = toAuthentication(claims.get(), token);
+        Date expiration = claims.get().getExpiration();
+        if (expiration != null) {
+            synchronized (cache) {
+                cache.put(digest, new CachedAuthentication(authentication, expiration.getTime()));
+            }
+        }
+        return Optional.of(authentication);
+    }
+
     public Authentication getAuthentication(String token) {
-        Claims claims = jwtParser.parseClaimsJws(token).getPayload();
+        return toAuthentication(jwtParser.parseClaimsJws(token).getPayload(), token);
+    }
+
+    public boolean validateToken(String authToken) {
+        return parseClaims(authToken).isPresent();
+    }
 
-        Collection<? extends GrantedAuthority> authorities = Arrays
-            .stream(claims.get(AUTHORITIES_KEY).toString().split(","))
-            .filter(auth -> !auth.trim().isEmpty())
+    private Optional<Claims> parseClaims(String token) {
+        try {
+            return Optional.of(jwtParser.parseClaimsJws(token).getPayload());
+        } catch (ExpiredJwtException e) {
+            this.securityMetersService.trackTokenExpired();
+            log.trace(INVALID_JWT_TOKEN, e);
+        } catch (UnsupportedJwtException e) {
+            this.securityMetersService.trackTokenUnsupported();
+            log.trace(INVALID_JWT_TOKEN, e);
+        } catch (MalformedJwtException e) {
+            this.securityMetersService.trackTokenMalformed();
+            log.trace(INVALID_JWT_TOKEN, e);
+        } catch (SecurityException e) {
+            this.securityMetersService.trackTokenInvalidSignature();
+            log.trace(INVALID_JWT_TOKEN, e);
+        } catch (IllegalArgumentException e) {
+            log.error("Token validation error {}", e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    private Authentication toAuthentication(Claims claims, String token) {
+        Object claim = claims.get(AUTHORITIES_KEY);
+        // 令牌中的权限可能是逗号分隔的字符串，也可能是列表
+        Collection<?> values = claim instanceof Collection<?> list ? list : claim == null ? List.of() : Arrays.asList(claim.toString().split(","));
+        Collection<? extends GrantedAuthority> authorities = values
+            .stream()
+            .map(Object::toString)
+            .map(String::trim)
+            .filter(auth -> !auth.isEmpty())
             .map(SimpleGrantedAuthority::new)
             .collect(Collectors.toList());
 
@@ -79,18 +181,14 @@ public class TokenProvider {
         return new UsernamePasswordAuthenticationToken(principal, token, authorities);
     }
 
-    public boolean validateToken(String authToken) {
+    private static String digest(String token) {
         try {
-            jwtParser.parseClaimsJws(authToken);
-            return true;
-        } catch (SecurityException | MalformedJwtException e) {
-            return false;
-        } catch (ExpiredJwtException e) {
-            return false;
-        } catch (UnsupportedJwtException e) {
-            return false;
-        } catch (IllegalArgumentException e) {
-            return false;
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
         }
     }
-}
\ No newline at end of file
+
+    private record CachedAuthentication(Authentication authentication, long expiresAt) {}
+}
@@ -0,0 +1,31 @@
+package com.topsion.rag.service;
+
+import java.util.Locale;
+
+/**
+ * How a local query is answered from the retrieved context.
+ */
+public enum AnswerMode {
+    /**
+     * Quote the best matching sentences when retrieval is confident enough, generate otherwise.
+     */
+    AUTO,
+    /**
+     * Always generate with the LLM.
+     */
+    GENERATIVE,
+    /**
+     * Always quote the best matching sentences, without calling the LLM.
+     */
+    EXTRACTIVE;
+
+    /**
+     * Parses a mode name case-insensitively; null or blank means {@link #AUTO}.
+     */
+    public static AnswerMode of(String name) {
+        if (name == null || name.isBlank()) {
+            return AUTO;
+        }
+        return valueOf(name.strip().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,125 @@
+package com.topsion.rag.service;
+
+import com.topsion.rag.repository.projection.ChunkMembership;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+/**
+ * Compressed bitmaps of chunk ids per document, tag and content type.
+ * <p>
+ * Resolving a {@link RetrievalFilter} is a few bitmap unions and intersections, so the eligible chunk set is
+ * known before any similarity search runs. Not thread-safe; {@link ChunkFilterService} guards it.
+ */
+public class ChunkBitmapIndex {
+
+    private final Map<Long, DocumentEntry> documents = new HashMap<>();
+    private final Map<String, Roaring64Bitmap> byTag = new HashMap<>();
+    private final Map<String, Roaring64Bitmap> byContentType = new HashMap<>();
+    private final Roaring64Bitmap allChunks = new Roaring64Bitmap();
+
+    public void add(ChunkMembership membership) {
+        DocumentEntry document = documents.computeIfAbsent(
+            membership.documentId(),
+            id -> new DocumentEntry(membership.contentType(), Set.copyOf(membership.tags()), membership.createdDate(), new Roaring64Bitmap())
+        );
+        document.chunks().addLong(membership.chunkId());
+        allChunks.addLong(membership.chunkId());
+        for (String tag : document.tags()) {
+            byTag.computeIfAbsent(tag, key -> new Roaring64Bitmap()).addLong(membership.chunkId());
+        }
+        if (document.contentType() != null) {
+            byContentType.computeIfAbsent(document.contentType(), key -> new Roaring64Bitmap()).addLong(membership.chunkId());
+        }
+    }
+
+    public void removeDocument(Long documentId) {
+        DocumentEntry document = documents.remove(documentId);
+        if (document == null) {
+            return;
+        }
+        allChunks.andNot(document.chunks());
+        for (String tag : document.tags()) {
+            removeFrom(byTag, tag, document.chunks());
+        }
+        if (document.contentType() != null) {
+            removeFrom(byContentType, document.contentType(), document.chunks());
+        }
+    }
+
+    public long chunkCount() {
+        return allChunks.getLongCardinality();
+    }
+
+    /**
+     * Chunk ids matching the filter. The result is a new bitmap the caller may modify.
+     */
+    public Roaring64Bitmap select(RetrievalFilter filter) {
+        Roaring64Bitmap result = allChunks.clone();
+        if (!filter.documentIds().isEmpty()) {
+            result.and(union(filter.documentIds().stream().map(documents::get).map(d -> d != null ? d.chunks() : null).toList()));
+        }
+        if (!filter.tags().isEmpty()) {
+            result.and(union(filter.tags().stream().map(byTag::get).toList()));
+        }
+        if (!filter.contentTypes().isEmpty()) {
+            result.and(union(filter.contentTypes().stream().map(byContentType::get).toList()));
+        }
+        if (filter.createdAfter() != null || filter.createdBefore() != null) {
+            result.and(union(documents.values().stream()
+                .filter(document -> filter.matchesCreatedDate(document.createdDate()))
+                .map(DocumentEntry::chunks)
+                .toList()));
+        }
+        return result;
+    }
+
+    /**
+     * Ids of the documents matching the filter, ascending.
+     */
+    public Set<Long> selectDocuments(RetrievalFilter filter) {
+        Set<Long> result = new TreeSet<>();
+        documents.forEach((id, document) -> {
+            if (
+                (filter.documentIds().isEmpty() || filter.documentIds().contains(id)) &&
+                (filter.tags().isEmpty() || document.tags().stream().anyMatch(filter.tags()::contains)) &&
+                (filter.contentTypes().isEmpty() || filter.contentTypes().contains(document.contentType())) &&
+                filter.matchesCreatedDate(document.createdDate())
+            ) {
+                result.add(id);
+            }
+        });
+        return result;
+    }
+
+    private static Roaring64Bitmap union(List<Roaring64Bitmap> bitmaps) {
+        Roaring64Bitmap result = new Roaring64Bitmap();
+        for (Roaring64Bitmap bitmap : bitmaps) {
+            if (bitmap != null) {
+                result.or(bitmap);
+            }
+        }
+        return result;
+    }
+
+    private static void removeFrom(Map<String, Roaring64Bitmap> index, String key, Roaring64Bitmap chunks) {
+        Roaring64Bitmap bitmap = index.get(key);
+        if (bitmap != null) {
+            bitmap.andNot(chunks);
+            if (bitmap.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    static List<Long> toList(Roaring64Bitmap bitmap) {
+        return Arrays.stream(bitmap.toArray()).boxed().toList();
+    }
+
+    private record DocumentEntry(String contentType, Set<String> tags, Instant createdDate, Roaring64Bitmap chunks) {}
+}
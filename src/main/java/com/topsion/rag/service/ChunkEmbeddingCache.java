@@ -0,0 +1,83 @@
+package com.topsion.rag.service;
+
+import com.topsion.rag.config.ApplicationProperties;
+import com.topsion.rag.repository.DocumentChunkRepository;
+import com.topsion.rag.repository.projection.ChunkEmbedding;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Least-recently-used cache of chunk embeddings, so re-ranking retrieved chunks does not read the same
+ * 1536-dimension vectors from Neo4j on every query.
+ */
+@Service
+public class ChunkEmbeddingCache {
+
+    private final DocumentChunkRepository documentChunkRepository;
+    private final Map<Long, float[]> cache;
+
+    public ChunkEmbeddingCache(DocumentChunkRepository documentChunkRepository, ApplicationProperties applicationProperties) {
+        this.documentChunkRepository = documentChunkRepository;
+        int capacity = applicationProperties.getOpenai().getRag().getEmbeddingCacheSize();
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, float[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Embeddings of the given chunks; chunks without an embedding are absent from the result.
+     */
+    public Mono<Map<Long, float[]>> getEmbeddings(Collection<Long> chunkIds) {
+        Map<Long, float[]> found = new HashMap<>();
+        List<Long> missing;
+        synchronized (cache) {
+            missing = chunkIds.stream().filter(id -> {
+                float[] embedding = cache.get(id);
+                if (embedding != null) {
+                    found.put(id, embedding);
+                }
+                return embedding == null;
+            }).toList();
+        }
+        if (missing.isEmpty()) {
+            return Mono.just(found);
+        }
+        return documentChunkRepository.findChunkEmbeddings(missing)
+            .doOnNext(chunk -> {
+                synchronized (cache) {
+                    cache.put(chunk.chunkId(), chunk.embedding());
+                }
+            })
+            .collectMap(ChunkEmbedding::chunkId, ChunkEmbedding::embedding)
+            .map(loaded -> {
+                found.putAll(loaded);
+                return found;
+            });
+    }
+
+    /**
+     * How many of the given chunks have their embedding cached, without counting as an access.
+     */
+    public int cachedCount(Collection<Long> chunkIds) {
+        synchronized (cache) {
+            return (int) chunkIds.stream().filter(cache::containsKey).count();
+        }
+    }
+
+    /**
+     * Neo4j reuses the ids of deleted nodes, so cached entries must not outlive their chunks.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.topsion.rag.service;
+
+import com.topsion.rag.repository.DocumentChunkRepository;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keeps the {@link ChunkBitmapIndex} in sync with the graph.
+ * <p>
+ * The index is built from all chunks on first use and afterwards updated per document when it finishes
+ * processing or is deleted.
+ */
+@Service
+public class ChunkFilterService {
+
+    private final Logger log = LoggerFactory.getLogger(ChunkFilterService.class);
+
+    private final DocumentChunkRepository documentChunkRepository;
+    private final ChunkBitmapIndex index = new ChunkBitmapIndex();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Mono<Void> loaded;
+
+    public ChunkFilterService(DocumentChunkRepository documentChunkRepository) {
+        this.documentChunkRepository = documentChunkRepository;
+        // 加载失败时不缓存错误，下次使用时重试
+        this.loaded = Mono.defer(this::load).cache(
+            value -> Duration.ofMillis(Long.MAX_VALUE),
+            error -> Duration.ZERO,
+            () -> Duration.ofMillis(Long.MAX_VALUE)
+        );
+    }
+
+    private Mono<Void> load() {
+        long start = System.currentTimeMillis();
+        return documentChunkRepository.findChunkMemberships(null)
+            .buffer(1000)
+            .doOnNext(memberships -> {
+                lock.writeLock().lock();
+                try {
+                    memberships.forEach(index::add);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            })
+            .then(Mono.fromRunnable(() -> log.info("Loaded chunk filter index with {} chunks in {} ms",
+                index.chunkCount(), System.currentTimeMillis() - start)));
+    }
+
+    /**
+     * Chunks and documents eligible under the filter, resolved against the index.
+     */
+    public Mono<FilterSelection> select(RetrievalFilter filter) {
+        return loaded.then(Mono.fromCallable(() -> {
+            lock.readLock().lock();
+            try {
+                return new FilterSelection(index.select(filter), index.selectDocuments(filter), index.chunkCount());
+            } finally {
+                lock.readLock().unlock();
+            }
+        }));
+    }
+
+    /**
+     * Re-reads the chunks of a document, replacing whatever the index held for it.
+     */
+    public Mono<Void> refreshDocument(Long documentId) {
+        return loaded
+            .then(documentChunkRepository.findChunkMemberships(documentId).collectList())
+            .doOnNext(memberships -> {
+                lock.writeLock().lock();
+                try {
+                    index.removeDocument(documentId);
+                    memberships.forEach(index::add);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            })
+            .then();
+    }
+
+    public Mono<Void> removeDocument(Long documentId) {
+        return loaded.then(Mono.fromRunnable(() -> {
+            lock.writeLock().lock();
+            try {
+                index.removeDocument(documentId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }));
+    }
+
+    public record FilterSelection(Roaring64Bitmap chunkIds, Set<Long> documentIds, long totalChunks) {}
+}
@@ -0,0 +1,431 @@
+package com.topsion.rag.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.completion.chat.ChatMessageRole;
+import com.theokanning.openai.service.OpenAiService;
+import com.topsion.rag.config.ApplicationProperties;
+import com.topsion.rag.management.LlmCallEvent;
+import com.topsion.rag.domain.Community;
+import com.topsion.rag.domain.Entity;
+import com.topsion.rag.repository.CommunityRepository;
+import com.topsion.rag.repository.CommunityRepositoryCustom.EntityEdge;
+import com.topsion.rag.repository.EntityRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains the {@link Community} hierarchy of the entity graph and one cached summary per community.
+ * <p>
+ * Detection itself is cheap and is re-run over the whole graph; communities are keyed by their membership so
+ * that only communities whose members changed, or that were marked stale by a newly processed document, get
+ * a new LLM summary.
+ */
+@Service
+public class CommunityService {
+
+    private final Logger log = LoggerFactory.getLogger(CommunityService.class);
+
+    private static final Pattern JSON_PATTERN = Pattern.compile("\\{.*\\}", Pattern.DOTALL);
+    private static final int MAX_CHILD_SUMMARY_LENGTH = 600;
+    private static final int MAX_CHILDREN_PER_SUMMARY = 30;
+
+    private final CommunityRepository communityRepository;
+    private final EntityRepository entityRepository;
+    private final OpenAiService openAiService;
+    private final ApplicationProperties applicationProperties;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final AtomicBoolean refreshRequested = new AtomicBoolean(true);
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    private static final String ENTITY_COMMUNITY_PROMPT = """
+        你是一个知识图谱分析助手。下面是知识图谱中一个社区包含的实体以及它们之间的关系。
+        请为这个社区撰写一份简洁的报告，概括它的主题、关键实体以及它们之间的重要联系。
+
+        请按以下JSON格式返回：
+        {
+          "title": "社区标题（不超过20个字）",
+          "summary": "社区摘要（不超过300个字）"
+        }
+
+        实体：
+        %s
+
+        关系：
+        %s
+        """;
+
+    private static final String PARENT_COMMUNITY_PROMPT = """
+        你是一个知识图谱分析助手。下面是一个上层社区所包含的子社区报告。
+        请综合这些子社区，为上层社区撰写一份简洁的报告，概括它的整体主题以及子社区之间的联系。
+
+        请按以下JSON格式返回：
+        {
+          "title": "社区标题（不超过20个字）",
+          "summary": "社区摘要（不超过300个字）"
+        }
+
+        子社区：
+        %s
+        """;
+
+    public CommunityService(
+        CommunityRepository communityRepository,
+        EntityRepository entityRepository,
+        @Autowired(required = false) OpenAiService openAiService,
+        ApplicationProperties applicationProperties
+    ) {
+        this.communityRepository = communityRepository;
+        this.entityRepository = entityRepository;
+        this.openAiService = openAiService;
+        this.applicationProperties = applicationProperties;
+    }
+
+    @Scheduled(
+        initialDelayString = "${application.community.refresh-interval-ms:600000}",
+        fixedDelayString = "${application.community.refresh-interval-ms:600000}"
+    )
+    public void scheduledRefresh() {
+        if (!Boolean.TRUE.equals(applicationProperties.getCommunity().getEnabled()) || openAiService == null) {
+            return;
+        }
+        if (!refreshRequested.getAndSet(false)) {
+            return;
+        }
+        try {
+            refreshCommunities().block();
+        } catch (Exception e) {
+            log.error("Community refresh failed: {}", e.getMessage(), e);
+            refreshRequested.set(true);
+        }
+    }
+
+    public void requestRefresh() {
+        refreshRequested.set(true);
+    }
+
+    public Mono<Void> markDocumentCommunitiesStale(Long documentId) {
+        return communityRepository.markStaleByDocumentId(documentId)
+            .doFinally(signal -> requestRefresh());
+    }
+
+    public Mono<Void> refreshCommunities() {
+        return Mono.defer(() -> {
+            if (!refreshing.compareAndSet(false, true)) {
+                log.debug("Community refresh already running, skipping");
+                return Mono.empty();
+            }
+            long startTime = System.currentTimeMillis();
+            return communityRepository.findEntityGraphEdges()
+                .collectList()
+                .map(this::detectCommunities)
+                .flatMap(planned -> persistCommunities(planned)
+                    .flatMap(saved -> summarizeStaleCommunities(saved, planned))
+                )
+                .doOnSuccess(v -> log.info("Community refresh finished in {} ms", System.currentTimeMillis() - startTime))
+                .doFinally(signal -> refreshing.set(false));
+        });
+    }
+
+    /**
+     * Returns the summarized communities a global query should map over: the finest level that fits into
+     * {@code globalMaxCommunities}, or the largest communities of the coarsest level if none does.
+     */
+    public Mono<List<Community>> findCommunitiesForGlobalQuery() {
+        int maxCommunities = applicationProperties.getCommunity().getGlobalMaxCommunities();
+
+        return communityRepository.findAll()
+            .filter(community -> community.getSummary() != null && !community.getSummary().isEmpty())
+            .collectList()
+            .map(communities -> {
+                TreeMap<Integer, List<Community>> byLevel = communities.stream()
+                    .collect(Collectors.groupingBy(Community::getLevel, TreeMap::new, Collectors.toList()));
+
+                for (List<Community> levelCommunities : byLevel.values()) {
+                    if (levelCommunities.size() <= maxCommunities) {
+                        return levelCommunities;
+                    }
+                }
+                if (byLevel.isEmpty()) {
+                    return Collections.<Community>emptyList();
+                }
+                return byLevel.lastEntry().getValue().stream()
+                    .sorted(Comparator.comparing(Community::getEntityCount, Comparator.nullsLast(Comparator.reverseOrder())))
+                    .limit(maxCommunities)
+                    .toList();
+            });
+    }
+
+    private List<PlannedCommunity> detectCommunities(List<EntityEdge> edges) {
+        Map<Long, Integer> index = new HashMap<>();
+        List<Long> entityIds = new ArrayList<>();
+        int[] sources = new int[edges.size()];
+        int[] targets = new int[edges.size()];
+        double[] weights = new double[edges.size()];
+
+        for (int i = 0; i < edges.size(); i++) {
+            EntityEdge edge = edges.get(i);
+            sources[i] = index.computeIfAbsent(edge.source(), id -> { entityIds.add(id); return entityIds.size() - 1; });
+            targets[i] = index.computeIfAbsent(edge.target(), id -> { entityIds.add(id); return entityIds.size() - 1; });
+            weights[i] = edge.weight();
+        }
+
+        double[] degree = new double[entityIds.size()];
+        for (int i = 0; i < edges.size(); i++) {
+            degree[sources[i]] += weights[i];
+            degree[targets[i]] += weights[i];
+        }
+
+        ApplicationProperties.Community settings = applicationProperties.getCommunity();
+        List<int[]> levels = new LouvainCommunityDetector(settings.getResolution(), settings.getMaxLevels())
+            .detect(entityIds.size(), sources, targets, weights);
+
+        List<PlannedCommunity> planned = new ArrayList<>();
+        Map<Integer, String> previousKeys = Collections.emptyMap();
+        for (int level = 0; level < levels.size(); level++) {
+            int[] membership = levels.get(level);
+            int[] previousMembership = level > 0 ? levels.get(level - 1) : null;
+
+            Map<Integer, List<Integer>> members = new HashMap<>();
+            for (int node = 0; node < membership.length; node++) {
+                members.computeIfAbsent(membership[node], c -> new ArrayList<>()).add(node);
+            }
+
+            Map<Integer, String> keys = new HashMap<>();
+            for (Map.Entry<Integer, List<Integer>> entry : members.entrySet()) {
+                List<Integer> nodes = entry.getValue();
+                if (nodes.size() < settings.getMinCommunitySize()) {
+                    continue;
+                }
+
+                List<Long> memberIds = nodes.stream().map(entityIds::get).sorted().toList();
+                String key = communityKey(level, memberIds);
+                keys.put(entry.getKey(), key);
+
+                List<Long> topEntityIds = nodes.stream()
+                    .sorted(Comparator.comparingDouble((Integer node) -> degree[node]).reversed())
+                    .limit(settings.getMaxEntitiesPerSummary())
+                    .map(entityIds::get)
+                    .toList();
+
+                Set<String> childKeys = new LinkedHashSet<>();
+                if (previousMembership != null) {
+                    for (int node : nodes) {
+                        String childKey = previousKeys.get(previousMembership[node]);
+                        if (childKey != null) {
+                            childKeys.add(childKey);
+                        }
+                    }
+                }
+
+                planned.add(new PlannedCommunity(key, level, memberIds, topEntityIds, List.copyOf(childKeys)));
+            }
+            previousKeys = keys;
+        }
+
+        log.debug("Detected {} communities over {} entities in {} levels", planned.size(), entityIds.size(), levels.size());
+        return planned;
+    }
+
+    private Mono<List<Community>> persistCommunities(List<PlannedCommunity> planned) {
+        return communityRepository.findAll()
+            .collectMap(Community::getCommunityKey)
+            .flatMap(existing -> {
+                List<Community> communities = new ArrayList<>();
+                for (PlannedCommunity plan : planned) {
+                    Community community = existing.get(plan.key());
+                    if (community == null) {
+                        community = new Community();
+                        community.setCommunityKey(plan.key());
+                        community.setCreatedDate(Instant.now());
+                    }
+                    community.setLevel(plan.level());
+                    community.setEntityCount(plan.memberIds().size());
+                    if (community.getSummary() == null || community.getStale() == null) {
+                        community.setStale(true);
+                    }
+                    communities.add(community);
+                }
+
+                Set<String> keys = planned.stream().map(PlannedCommunity::key).collect(Collectors.toSet());
+                return communityRepository.deleteByCommunityKeyNotIn(keys)
+                    .then(communityRepository.saveAll(communities).collectList())
+                    .flatMap(saved -> relinkCommunities(planned).thenReturn(saved));
+            });
+    }
+
+    private Mono<Void> relinkCommunities(List<PlannedCommunity> planned) {
+        List<Map<String, Object>> memberships = new ArrayList<>();
+        List<Map<String, Object>> parents = new ArrayList<>();
+        for (PlannedCommunity plan : planned) {
+            if (plan.level() == 0) {
+                for (Long entityId : plan.memberIds()) {
+                    memberships.add(Map.of("entityId", entityId, "communityKey", plan.key()));
+                }
+            }
+            for (String childKey : plan.childKeys()) {
+                parents.add(Map.of("childKey", childKey, "parentKey", plan.key()));
+            }
+        }
+
+        return communityRepository.deleteEntityMemberships()
+            .then(communityRepository.deleteCommunityHierarchy())
+            .then(communityRepository.linkEntities(memberships))
+            .then(communityRepository.linkParents(parents));
+    }
+
+    private Mono<Void> summarizeStaleCommunities(List<Community> communities, List<PlannedCommunity> planned) {
+        Map<String, Community> byKey = communities.stream()
+            .collect(Collectors.toMap(Community::getCommunityKey, community -> community));
+        Map<String, PlannedCommunity> plans = planned.stream()
+            .collect(Collectors.toMap(PlannedCommunity::key, plan -> plan));
+        TreeMap<Integer, List<Community>> staleByLevel = communities.stream()
+            .filter(community -> Boolean.TRUE.equals(community.getStale()))
+            .collect(Collectors.groupingBy(Community::getLevel, TreeMap::new, Collectors.toList()));
+
+        log.debug("Summarizing {} stale communities", staleByLevel.values().stream().mapToInt(List::size).sum());
+        int concurrency = applicationProperties.getCommunity().getSummaryConcurrency();
+
+        // 逐层生成摘要，上层社区依赖其子社区的摘要
+        return Flux.fromIterable(staleByLevel.values())
+            .concatMap(levelCommunities ->
+                Flux.fromIterable(levelCommunities)
+                    .flatMap(community -> summarizeCommunity(community, plans.get(community.getCommunityKey()), byKey), concurrency)
+                    .flatMap(communityRepository::save)
+                    .then()
+            )
+            .then();
+    }
+
+    private Mono<Community> summarizeCommunity(Community community, PlannedCommunity plan, Map<String, Community> byKey) {
+        Mono<CommunityReport> report;
+        if (plan.level() == 0) {
+            report = summarizeEntityCommunity(plan);
+        } else {
+            List<Community> children = plan.childKeys().stream()
+                .map(byKey::get)
+                .filter(Objects::nonNull)
+                .filter(child -> child.getSummary() != null)
+                .sorted(Comparator.comparing(Community::getEntityCount, Comparator.nullsLast(Comparator.reverseOrder())))
+                .limit(MAX_CHILDREN_PER_SUMMARY)
+                .toList();
+            if (children.size() == 1) {
+                // 与唯一子社区成员相同，直接复用子社区的摘要
+                report = Mono.just(new CommunityReport(children.get(0).getTitle(), children.get(0).getSummary()));
+            } else {
+                report = summarizeParentCommunity(children);
+            }
+        }
+
+        return report
+            .map(result -> {
+                community.setTitle(result.title());
+                community.setSummary(result.summary());
+                community.setStale(false);
+                community.setSummarizedDate(Instant.now());
+                return community;
+            })
+            .onErrorResume(error -> {
+                log.error("Failed to summarize community {}: {}", community.getCommunityKey(), error.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    private Mono<CommunityReport> summarizeEntityCommunity(PlannedCommunity plan) {
+        int maxRelations = applicationProperties.getCommunity().getMaxRelationsPerSummary();
+
+        return Mono.zip(
+            entityRepository.findNodesByIds(plan.topEntityIds()).collectList(),
+            communityRepository.findRelationsAmong(plan.topEntityIds(), maxRelations).collectList()
+        )
+        .flatMap(tuple -> {
+            String entitiesText = tuple.getT1().stream()
+                .map(entity -> String.format("- %s (%s): %s",
+                    entity.getName(),
+                    entity.getType(),
+                    entity.getDescription() != null ? entity.getDescription() : ""))
+                .collect(Collectors.joining("\n"));
+            String relationsText = tuple.getT2().stream()
+                .map(relation -> String.format("- %s -[%s]-> %s: %s",
+                    relation.source(),
+                    relation.relationshipType(),
+                    relation.target(),
+                    relation.description() != null ? relation.description() : ""))
+                .collect(Collectors.joining("\n"));
+            String fallbackTitle = tuple.getT1().stream().map(Entity::getName).limit(3).collect(Collectors.joining("、"));
+
+            return generateReport(String.format(ENTITY_COMMUNITY_PROMPT, entitiesText, relationsText), fallbackTitle);
+        });
+    }
+
+    private Mono<CommunityReport> summarizeParentCommunity(List<Community> children) {
+        String childrenText = children.stream()
+            .map(child -> String.format("- %s: %s", child.getTitle(), truncate(child.getSummary(), MAX_CHILD_SUMMARY_LENGTH)))
+            .collect(Collectors.joining("\n"));
+        String fallbackTitle = children.stream().map(Community::getTitle).limit(3).collect(Collectors.joining("、"));
+
+        return generateReport(String.format(PARENT_COMMUNITY_PROMPT, childrenText), fallbackTitle);
+    }
+
+    private Mono<CommunityReport> generateReport(String prompt, String fallbackTitle) {
+        return Mono.fromCallable(() -> {
+            ChatCompletionRequest request = ChatCompletionRequest.builder()
+                .model(applicationProperties.getOpenai().getModel().getChat())
+                .messages(List.of(
+                    new ChatMessage(ChatMessageRole.USER.value(), prompt)
+                ))
+                .temperature(0.2)
+                .maxTokens(600)
+                .build();
+
+            var response = LlmCallEvent.record(
+                    LlmCallEvent.CHAT, request.getModel(), () -> openAiService.createChatCompletion(request), ChatCompletionResult::getUsage);
+            String content = response.getChoices().get(0).getMessage().getContent();
+            return parseReport(content, fallbackTitle);
+        });
+    }
+
+    private CommunityReport parseReport(String response, String fallbackTitle) {
+        try {
+            Matcher matcher = JSON_PATTERN.matcher(response);
+            JsonNode root = objectMapper.readTree(matcher.find() ? matcher.group() : response);
+            String title = root.has("title") ? root.get("title").asText() : fallbackTitle;
+            String summary = root.has("summary") ? root.get("summary").asText() : response;
+            return new CommunityReport(title, summary);
+        } catch (Exception e) {
+            log.warn("Failed to parse community report, using raw response: {}", e.getMessage());
+            return new CommunityReport(fallbackTitle, response);
+        }
+    }
+
+    private static String communityKey(int level, List<Long> memberIds) {
+        String members = memberIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        return "L" + level + "-" + DigestUtils.md5DigestAsHex(members.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String truncate(String text, int maxLength) {
+        return text.length() > maxLength ? text.substring(0, maxLength) + "..." : text;
+    }
+
+    record PlannedCommunity(String key, int level, List<Long> memberIds, List<Long> topEntityIds, List<String> childKeys) {}
+
+    record CommunityReport(String title, String summary) {}
+}
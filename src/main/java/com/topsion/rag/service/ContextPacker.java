@@ -0,0 +1,179 @@
+package com.topsion.rag.service;
+
+import com.topsion.rag.repository.projection.ChunkContext;
+import com.topsion.rag.repository.projection.EntitySummary;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Fits retrieved chunks and entities into a prompt of at most a given number of tokens.
+ * <p>
+ * Adjacent chunks of the same document are merged into one passage with their overlap removed. Passages are
+ * added by descending similarity; the first one that does not fit is truncated if a useful part of it fits,
+ * and the rest are dropped. Entity descriptions get what is left, capped separately. The final prompt is
+ * counted again, so the budget holds even where token boundaries shift when texts are joined.
+ */
+public class ContextPacker {
+
+    // OpenAI 对每条消息额外计入的 token，以及回复前缀
+    static final int TOKENS_PER_MESSAGE = 3;
+    static final int REPLY_PRIMING_TOKENS = 3;
+
+    private static final int MIN_PARTIAL_PASSAGE_TOKENS = 50;
+    private static final int MIN_OVERLAP_CHARS = 20;
+    private static final String PASSAGE_SEPARATOR = "\n\n";
+
+    private final TokenCounter tokenCounter;
+
+    public ContextPacker(TokenCounter tokenCounter) {
+        this.tokenCounter = tokenCounter;
+    }
+
+    /**
+     * @param promptTemplate system prompt with a {@code %s} slot for the chunks and one for the entities.
+     * @param budgetTokens tokens available for the system and user messages together.
+     */
+    public PackedContext pack(
+        String promptTemplate,
+        String question,
+        List<ChunkContext> chunks,
+        List<EntitySummary> entities,
+        int budgetTokens,
+        int maxEntityTokens
+    ) {
+        int fixed = promptTokens(String.format(promptTemplate, "", ""), question);
+        int available = budgetTokens - fixed;
+        if (available <= 0) {
+            return new PackedContext(String.format(promptTemplate, "", ""), List.of(), List.of(), fixed);
+        }
+
+        List<String> entityLines = entities.stream().map(ContextPacker::entityLine).toList();
+        int entityTokens = Math.min(maxEntityTokens, tokenCounter.count(String.join("\n", entityLines)));
+
+        List<Passage> passages = new ArrayList<>();
+        int chunkBudget = available - Math.min(entityTokens, available / 2);
+        int used = 0;
+        for (Passage passage : mergeAdjacent(chunks)) {
+            int cost = tokenCounter.count(passage.text()) + (passages.isEmpty() ? 0 : tokenCounter.count(PASSAGE_SEPARATOR));
+            if (used + cost <= chunkBudget) {
+                passages.add(passage);
+                used += cost;
+                continue;
+            }
+            int remaining = chunkBudget - used - (passages.isEmpty() ? 0 : tokenCounter.count(PASSAGE_SEPARATOR));
+            if (remaining >= MIN_PARTIAL_PASSAGE_TOKENS) {
+                passages.add(passage.truncate(tokenCounter, remaining));
+                used = chunkBudget;
+            }
+            break;
+        }
+
+        int entityBudget = Math.min(maxEntityTokens, available - used);
+        int entityCount = 0;
+        while (entityCount < entityLines.size() && tokenCounter.count(String.join("\n", entityLines.subList(0, entityCount + 1))) <= entityBudget) {
+            entityCount++;
+        }
+
+        // 拼接后 token 边界可能变化，超出时先裁剪得分最低的片段，再去掉实体
+        while (true) {
+            String systemPrompt = String.format(promptTemplate, joinPassages(passages), String.join("\n", entityLines.subList(0, entityCount)));
+            int total = promptTokens(systemPrompt, question);
+            if (total <= budgetTokens || (passages.isEmpty() && entityCount == 0)) {
+                List<ChunkContext> includedChunks = passages.stream().flatMap(passage -> passage.chunks().stream()).toList();
+                return new PackedContext(systemPrompt, includedChunks, List.copyOf(entities.subList(0, entityCount)), total);
+            }
+            if (passages.isEmpty()) {
+                entityCount--;
+                continue;
+            }
+            Passage last = passages.remove(passages.size() - 1);
+            int target = tokenCounter.count(last.text()) - (total - budgetTokens);
+            if (target >= MIN_PARTIAL_PASSAGE_TOKENS) {
+                passages.add(last.truncate(tokenCounter, target));
+            }
+        }
+    }
+
+    int promptTokens(String systemPrompt, String question) {
+        return 2 * TOKENS_PER_MESSAGE + tokenCounter.count(systemPrompt) + tokenCounter.count(question) + REPLY_PRIMING_TOKENS;
+    }
+
+    /**
+     * Merges runs of consecutive chunks of a document, ordered by the best similarity in each run.
+     */
+    static List<Passage> mergeAdjacent(List<ChunkContext> chunks) {
+        Map<Object, List<ChunkContext>> byDocument = new LinkedHashMap<>();
+        for (ChunkContext chunk : chunks) {
+            Object key = chunk.documentId() != null && chunk.chunkIndex() != null ? chunk.documentId() : chunk;
+            byDocument.computeIfAbsent(key, k -> new ArrayList<>()).add(chunk);
+        }
+
+        List<Passage> passages = new ArrayList<>();
+        for (List<ChunkContext> documentChunks : byDocument.values()) {
+            documentChunks.sort(Comparator.comparing(ChunkContext::chunkIndex, Comparator.nullsFirst(Comparator.naturalOrder())));
+            List<ChunkContext> run = new ArrayList<>();
+            for (ChunkContext chunk : documentChunks) {
+                ChunkContext previous = run.isEmpty() ? null : run.get(run.size() - 1);
+                if (previous != null && (chunk.chunkIndex() == null || previous.chunkIndex() == null || chunk.chunkIndex() != previous.chunkIndex() + 1)) {
+                    passages.add(Passage.of(run));
+                    run = new ArrayList<>();
+                }
+                run.add(chunk);
+            }
+            passages.add(Passage.of(run));
+        }
+        passages.sort(Comparator.comparingDouble(Passage::score).reversed());
+        return passages;
+    }
+
+    /**
+     * Appends {@code next} to {@code text}, skipping the longest prefix of {@code next} that {@code text} ends
+     * with. Shorter matches than {@value #MIN_OVERLAP_CHARS} characters are taken as coincidence.
+     */
+    static String appendWithoutOverlap(String text, String next) {
+        for (int overlap = Math.min(text.length(), next.length()); overlap >= MIN_OVERLAP_CHARS; overlap--) {
+            if (text.regionMatches(text.length() - overlap, next, 0, overlap)) {
+                return text + next.substring(overlap);
+            }
+        }
+        return text + " " + next;
+    }
+
+    private static String joinPassages(List<Passage> passages) {
+        return passages.stream().map(Passage::text).collect(Collectors.joining(PASSAGE_SEPARATOR));
+    }
+
+    private static String entityLine(EntitySummary entity) {
+        return String.format("- %s (%s): %s", entity.name(), entity.type(), entity.description() != null ? entity.description() : "");
+    }
+
+    record Passage(List<ChunkContext> chunks, String header, String content, double score) {
+        static Passage of(List<ChunkContext> run) {
+            ChunkContext first = run.get(0);
+            ChunkContext last = run.get(run.size() - 1);
+            String header = run.size() == 1
+                ? String.format("文档片段 %d: ", first.chunkIndex())
+                : String.format("文档片段 %d-%d: ", first.chunkIndex(), last.chunkIndex());
+            String content = first.content() != null ? first.content() : "";
+            for (ChunkContext chunk : run.subList(1, run.size())) {
+                content = appendWithoutOverlap(content, chunk.content() != null ? chunk.content() : "");
+            }
+            return new Passage(List.copyOf(run), header, content, run.stream().mapToDouble(ChunkContext::similarity).max().orElse(0));
+        }
+
+        String text() {
+            return header + content;
+        }
+
+        Passage truncate(TokenCounter tokenCounter, int maxTokens) {
+            int contentTokens = maxTokens - tokenCounter.count(header);
+            return new Passage(chunks, header, tokenCounter.truncate(content, Math.max(contentTokens, 0)), score);
+        }
+    }
+
+    public record PackedContext(String systemPrompt, List<ChunkContext> chunks, List<EntitySummary> entities, int promptTokens) {}
+}
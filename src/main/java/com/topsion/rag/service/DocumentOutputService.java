@@ -1,5 +1,6 @@
 package com.topsion.rag.service;
 
+import com.topsion.rag.config.ApplicationProperties;
 import com.topsion.rag.domain.Document;
 import com.topsion.rag.domain.DocumentChunk;
 import com.topsion.rag.domain.Entity;
@@ -7,6 +8,10 @@ import com.topsion.rag.domain.QueryHistory;
 import com.topsion.rag.repository.DocumentRepository;
 import com.topsion.rag.repository.QueryHistoryRepository;
 import com.topsion.rag.repository.EntityRepository;
+import com.topsion.rag.repository.projection.EntityReportRow;
+import com.topsion.rag.repository.projection.TypeCount;
+import com.topsion.rag.service.QueryAnalyticsService.RollupSummary;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -15,13 +20,22 @@ import org.apache.poi.xwpf.usermodel.XWPFParagraph;
 import org.apache.poi.xwpf.usermodel.XWPFRun;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -34,16 +48,30 @@ public class DocumentOutputService {
     private final DocumentRepository documentRepository;
     private final QueryHistoryRepository queryHistoryRepository;
     private final EntityRepository entityRepository;
+    private final QueryAnalyticsService queryAnalyticsService;
+    private final QueryHistoryArchiveService queryHistoryArchiveService;
+    private final ApplicationProperties applicationProperties;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    private static final int REPORT_BATCH_SIZE = 256;
+    private static final int REPORT_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_REPORT_DETAIL_ENTITIES = 100;
+    private static final int MAX_SESSION_REPORT_QUERIES = 500;
+
     public DocumentOutputService(
         DocumentRepository documentRepository,
         QueryHistoryRepository queryHistoryRepository,
-        EntityRepository entityRepository
+        EntityRepository entityRepository,
+        QueryAnalyticsService queryAnalyticsService,
+        QueryHistoryArchiveService queryHistoryArchiveService,
+        ApplicationProperties applicationProperties
     ) {
         this.documentRepository = documentRepository;
         this.queryHistoryRepository = queryHistoryRepository;
         this.entityRepository = entityRepository;
+        this.queryAnalyticsService = queryAnalyticsService;
+        this.queryHistoryArchiveService = queryHistoryArchiveService;
+        this.applicationProperties = applicationProperties;
     }
 
     public Mono<byte[]> generateDocumentSummaryReport(Long documentId, String format) {
@@ -62,25 +90,53 @@ public class DocumentOutputService {
             });
     }
 
+    /**
+     * Streams the knowledge-graph report. JSON and NDJSON are written entity by entity from the Neo4j cursor,
+     * so heap usage does not depend on the size of the graph; DOCX and TXT only list the first entities and
+     * are rendered in one piece.
+     */
+    public Flux<DataBuffer> streamKnowledgeGraphReport(String format, DataBufferFactory bufferFactory) {
+        switch (format.toLowerCase()) {
+            case "json":
+                return streamKnowledgeGraphJson(bufferFactory);
+            case "ndjson":
+                return streamKnowledgeGraphNdjson(bufferFactory);
+            case "docx":
+            case "txt":
+                return generateKnowledgeGraphReport(format).map(bufferFactory::wrap).flux();
+            default:
+                return Flux.error(new IllegalArgumentException("Unsupported format: " + format));
+        }
+    }
+
     public Mono<byte[]> generateKnowledgeGraphReport(String format) {
-        return entityRepository.findAll()
-            .collectList()
-            .flatMap(entities -> {
-                switch (format.toLowerCase()) {
-                    case "json":
-                        return generateKnowledgeGraphJson(entities);
-                    case "docx":
-                        return generateKnowledgeGraphWord(entities);
-                    case "txt":
-                        return generateKnowledgeGraphText(entities);
-                    default:
-                        return Mono.error(new IllegalArgumentException("Unsupported format: " + format));
-                }
-            });
+        return Mono.zip(
+            entityRepository.countEntitiesByType().collectList(),
+            entityRepository.streamEntityReportRows().take(MAX_REPORT_DETAIL_ENTITIES).collectList()
+        )
+        .flatMap(tuple -> {
+            switch (format.toLowerCase()) {
+                case "docx":
+                    return generateKnowledgeGraphWord(tuple.getT1(), tuple.getT2());
+                case "txt":
+                    return generateKnowledgeGraphText(tuple.getT1(), tuple.getT2());
+                default:
+                    return Mono.error(new IllegalArgumentException("Unsupported format: " + format));
+            }
+        });
     }
 
+    /**
+     * Without a session the report covers the whole system and is read from the daily rollups; a session
+     * report lists that session's most recent queries.
+     */
     public Mono<byte[]> generateQueryAnalyticsReport(String sessionId, String format) {
-        return queryHistoryRepository.findBySessionId(sessionId)
+        if (sessionId == null) {
+            return generateRollupAnalyticsReport(format);
+        }
+        return queryHistoryRepository.findRecentQueriesBySession(sessionId, MAX_SESSION_REPORT_QUERIES)
+            .concatWith(Flux.defer(() -> queryHistoryArchiveService.findBySession(sessionId, MAX_SESSION_REPORT_QUERIES)))
+            .take(MAX_SESSION_REPORT_QUERIES)
             .collectList()
             .flatMap(queries -> {
                 switch (format.toLowerCase()) {
@@ -96,6 +152,135 @@ public class DocumentOutputService {
             });
     }
 
+    private Mono<byte[]> generateRollupAnalyticsReport(String format) {
+        Instant to = Instant.now();
+        Instant from = to.minus(applicationProperties.getAnalytics().getReportDays(), ChronoUnit.DAYS);
+        return Mono.zip(
+            queryAnalyticsService.getSummary(QueryAnalyticsService.DAY, from, to),
+            queryAnalyticsService.getRollups(QueryAnalyticsService.DAY, from, to).collectList()
+        )
+        .flatMap(tuple -> {
+            switch (format.toLowerCase()) {
+                case "json":
+                    return generateRollupAnalyticsJson(tuple.getT1(), tuple.getT2());
+                case "docx":
+                    return generateRollupAnalyticsWord(tuple.getT1(), tuple.getT2());
+                case "txt":
+                    return generateRollupAnalyticsText(tuple.getT1(), tuple.getT2());
+                default:
+                    return Mono.error(new IllegalArgumentException("Unsupported format: " + format));
+            }
+        });
+    }
+
+    private Mono<byte[]> generateRollupAnalyticsJson(RollupSummary total, List<RollupSummary> days) {
+        return Mono.fromCallable(() -> {
+            try {
+                ObjectNode root = objectMapper.createObjectNode();
+                root.put("from", total.bucketStart().toString());
+                root.set("total", rollupNode(total));
+                ArrayNode daysArray = objectMapper.createArrayNode();
+                days.forEach(day -> daysArray.add(rollupNode(day)));
+                root.set("days", daysArray);
+                return objectMapper.writeValueAsBytes(root);
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to generate query analytics JSON", e);
+            }
+        });
+    }
+
+    private ObjectNode rollupNode(RollupSummary rollup) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("bucketStart", rollup.bucketStart().toString());
+        node.put("totalQueries", rollup.queryCount());
+        node.put("averageResponseTimeMs", rollup.averageResponseTimeMs());
+        node.put("minResponseTimeMs", rollup.minResponseTimeMs());
+        node.put("maxResponseTimeMs", rollup.maxResponseTimeMs());
+        node.put("p50ResponseTimeMs", rollup.p50ResponseTimeMs());
+        node.put("p95ResponseTimeMs", rollup.p95ResponseTimeMs());
+        node.put("p99ResponseTimeMs", rollup.p99ResponseTimeMs());
+        node.put("cacheHitRatio", rollup.cacheHitRatio());
+        ObjectNode feedback = objectMapper.createObjectNode();
+        rollup.feedbackCounts().forEach(feedback::put);
+        node.set("feedback", feedback);
+        return node;
+    }
+
+    private Mono<byte[]> generateRollupAnalyticsWord(RollupSummary total, List<RollupSummary> days) {
+        return Mono.fromCallable(() -> {
+            try (XWPFDocument doc = new XWPFDocument();
+                 ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+
+                XWPFParagraph titlePara = doc.createParagraph();
+                XWPFRun titleRun = titlePara.createRun();
+                titleRun.setText("查询分析报告");
+                titleRun.setBold(true);
+                titleRun.setFontSize(16);
+
+                doc.createParagraph().createRun().setText("");
+                for (String line : rollupLines(total)) {
+                    doc.createParagraph().createRun().setText(line);
+                }
+
+                doc.createParagraph().createRun().setText("");
+                XWPFParagraph daysPara = doc.createParagraph();
+                XWPFRun daysRun = daysPara.createRun();
+                daysRun.setText("每日统计:");
+                daysRun.setBold(true);
+
+                for (RollupSummary day : days) {
+                    doc.createParagraph().createRun().setText("");
+                    XWPFRun dayRun = doc.createParagraph().createRun();
+                    dayRun.setText(formatDay(day.bucketStart()));
+                    dayRun.setBold(true);
+                    for (String line : rollupLines(day)) {
+                        doc.createParagraph().createRun().setText("  " + line);
+                    }
+                }
+
+                doc.write(out);
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to generate query analytics Word report", e);
+            }
+        });
+    }
+
+    private Mono<byte[]> generateRollupAnalyticsText(RollupSummary total, List<RollupSummary> days) {
+        return Mono.fromCallable(() -> {
+            StringBuilder sb = new StringBuilder();
+
+            sb.append("查询分析报告\n");
+            sb.append("=".repeat(20)).append("\n\n");
+            rollupLines(total).forEach(line -> sb.append(line).append("\n"));
+
+            sb.append("\n每日统计:\n");
+            for (RollupSummary day : days) {
+                sb.append("\n").append(formatDay(day.bucketStart())).append("\n");
+                rollupLines(day).forEach(line -> sb.append("  ").append(line).append("\n"));
+            }
+
+            return sb.toString().getBytes(StandardCharsets.UTF_8);
+        });
+    }
+
+    private List<String> rollupLines(RollupSummary rollup) {
+        List<String> lines = new ArrayList<>();
+        lines.add("总查询数: " + rollup.queryCount());
+        if (rollup.queryCount() > 0) {
+            lines.add("平均响应时间: " + String.format("%.1f", rollup.averageResponseTimeMs()) + "ms");
+            lines.add("响应时间 P50/P95/P99: " + rollup.p50ResponseTimeMs() + "ms / " +
+                rollup.p95ResponseTimeMs() + "ms / " + rollup.p99ResponseTimeMs() + "ms");
+            lines.add("缓存命中率: " + String.format("%.1f%%", rollup.cacheHitRatio() * 100));
+        }
+        rollup.feedbackCounts().forEach((feedback, count) -> lines.add("反馈 " + feedback + ": " + count));
+        return lines;
+    }
+
+    private String formatDay(Instant day) {
+        return day.atZone(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+    }
+
     private Mono<byte[]> generateJsonSummary(Document document) {
         return Mono.fromCallable(() -> {
             try {
@@ -266,39 +451,97 @@ public class DocumentOutputService {
         });
     }
 
-    private Mono<byte[]> generateKnowledgeGraphJson(List<Entity> entities) {
-        return Mono.fromCallable(() -> {
-            try {
-                ObjectNode root = objectMapper.createObjectNode();
-                root.put("totalEntities", entities.size());
-                
-                Map<String, Long> typeCount = entities.stream()
-                    .collect(Collectors.groupingBy(Entity::getType, Collectors.counting()));
-                
-                ObjectNode typeStats = objectMapper.createObjectNode();
-                typeCount.forEach(typeStats::put);
-                root.set("entityTypeStatistics", typeStats);
-                
-                ArrayNode entitiesArray = objectMapper.createArrayNode();
-                for (Entity entity : entities) {
-                    ObjectNode entityNode = objectMapper.createObjectNode();
-                    entityNode.put("id", entity.getId());
-                    entityNode.put("name", entity.getName());
-                    entityNode.put("type", entity.getType());
-                    entityNode.put("description", entity.getDescription());
-                    entityNode.put("documentCount", entity.getChunks().size());
-                    entitiesArray.add(entityNode);
+    private Flux<DataBuffer> streamKnowledgeGraphJson(DataBufferFactory bufferFactory) {
+        Mono<DataBuffer> header = entityRepository.countEntitiesByType()
+            .collectList()
+            .map(typeCounts -> writeBuffer(bufferFactory, generator -> {
+                generator.writeStartObject();
+                writeTypeStatistics(generator, typeCounts);
+                generator.writeArrayFieldStart("entities");
+            }));
+
+        Flux<DataBuffer> entities = entityRepository.streamEntityReportRows()
+            .buffer(REPORT_BATCH_SIZE)
+            .index()
+            .map(batch -> writeBuffer(bufferFactory, generator -> {
+                if (batch.getT1() > 0) {
+                    generator.writeRaw(',');
                 }
-                root.set("entities", entitiesArray);
-                
-                return objectMapper.writeValueAsBytes(root);
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to generate knowledge graph JSON", e);
-            }
-        });
+                List<EntityReportRow> rows = batch.getT2();
+                for (int i = 0; i < rows.size(); i++) {
+                    if (i > 0) {
+                        generator.writeRaw(',');
+                    }
+                    writeEntity(generator, rows.get(i));
+                }
+            }));
+
+        Mono<DataBuffer> footer = Mono.fromSupplier(() -> bufferFactory.wrap("]}".getBytes(StandardCharsets.UTF_8)));
+
+        return Flux.concat(header, entities, footer);
+    }
+
+    private Flux<DataBuffer> streamKnowledgeGraphNdjson(DataBufferFactory bufferFactory) {
+        Mono<DataBuffer> header = entityRepository.countEntitiesByType()
+            .collectList()
+            .map(typeCounts -> writeBuffer(bufferFactory, generator -> {
+                generator.writeStartObject();
+                writeTypeStatistics(generator, typeCounts);
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            }));
+
+        Flux<DataBuffer> entities = entityRepository.streamEntityReportRows()
+            .buffer(REPORT_BATCH_SIZE)
+            .map(rows -> writeBuffer(bufferFactory, generator -> {
+                for (EntityReportRow row : rows) {
+                    writeEntity(generator, row);
+                    generator.writeRaw('\n');
+                }
+            }));
+
+        return Flux.concat(header, entities);
+    }
+
+    private void writeTypeStatistics(JsonGenerator generator, List<TypeCount> typeCounts) throws IOException {
+        generator.writeNumberField("totalEntities", typeCounts.stream().mapToLong(TypeCount::count).sum());
+        generator.writeObjectFieldStart("entityTypeStatistics");
+        for (TypeCount typeCount : typeCounts) {
+            generator.writeNumberField(typeCount.type(), typeCount.count());
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeEntity(JsonGenerator generator, EntityReportRow row) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", row.id());
+        generator.writeStringField("name", row.name());
+        generator.writeStringField("type", row.type());
+        generator.writeStringField("description", row.description());
+        generator.writeNumberField("documentCount", row.chunkCount());
+        generator.writeEndObject();
+    }
+
+    private DataBuffer writeBuffer(DataBufferFactory bufferFactory, JsonWriter writer) {
+        DataBuffer buffer = bufferFactory.allocateBuffer(REPORT_BUFFER_SIZE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(buffer.asOutputStream())) {
+            // 每个缓冲区只写文档的一部分，关闭时不能补全括号，根值之间也不能插入分隔符
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            generator.setRootValueSeparator(null);
+            writer.write(generator);
+        } catch (IOException e) {
+            DataBufferUtils.release(buffer);
+            throw new UncheckedIOException("Failed to write knowledge graph report", e);
+        }
+        return buffer;
     }
 
-    private Mono<byte[]> generateKnowledgeGraphWord(List<Entity> entities) {
+    @FunctionalInterface
+    private interface JsonWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    private Mono<byte[]> generateKnowledgeGraphWord(List<TypeCount> typeCounts, List<EntityReportRow> entities) {
         return Mono.fromCallable(() -> {
             try (XWPFDocument doc = new XWPFDocument();
                  ByteArrayOutputStream out = new ByteArrayOutputStream()) {
@@ -312,10 +555,7 @@ public class DocumentOutputService {
 
                 // Statistics
                 doc.createParagraph().createRun().setText("");
-                doc.createParagraph().createRun().setText("总实体数: " + entities.size());
-
-                Map<String, Long> typeCount = entities.stream()
-                    .collect(Collectors.groupingBy(Entity::getType, Collectors.counting()));
+                doc.createParagraph().createRun().setText("总实体数: " + typeCounts.stream().mapToLong(TypeCount::count).sum());
 
                 doc.createParagraph().createRun().setText("");
                 XWPFParagraph typesPara = doc.createParagraph();
@@ -323,8 +563,8 @@ public class DocumentOutputService {
                 typesRun.setText("实体类型分布:");
                 typesRun.setBold(true);
 
-                for (Map.Entry<String, Long> entry : typeCount.entrySet()) {
-                    doc.createParagraph().createRun().setText("  " + entry.getKey() + ": " + entry.getValue());
+                for (TypeCount typeCount : typeCounts) {
+                    doc.createParagraph().createRun().setText("  " + typeCount.type() + ": " + typeCount.count());
                 }
 
                 // Entity Details
@@ -334,15 +574,13 @@ public class DocumentOutputService {
                 detailsRun.setText("实体详情:");
                 detailsRun.setBold(true);
 
-                entities.stream()
-                    .limit(100) // Limit to prevent overly large documents
-                    .forEach(entity -> {
-                        doc.createParagraph().createRun().setText("• " + entity.getName() + " (" + entity.getType() + ")");
-                        if (entity.getDescription() != null && !entity.getDescription().isEmpty()) {
-                            doc.createParagraph().createRun().setText("  描述: " + entity.getDescription());
-                        }
-                        doc.createParagraph().createRun().setText("  相关文档片段数: " + entity.getChunks().size());
-                    });
+                entities.forEach(entity -> {
+                    doc.createParagraph().createRun().setText("• " + entity.name() + " (" + entity.type() + ")");
+                    if (entity.description() != null && !entity.description().isEmpty()) {
+                        doc.createParagraph().createRun().setText("  描述: " + entity.description());
+                    }
+                    doc.createParagraph().createRun().setText("  相关文档片段数: " + entity.chunkCount());
+                });
 
                 doc.write(out);
                 return out.toByteArray();
@@ -352,34 +590,29 @@ public class DocumentOutputService {
         });
     }
 
-    private Mono<byte[]> generateKnowledgeGraphText(List<Entity> entities) {
+    private Mono<byte[]> generateKnowledgeGraphText(List<TypeCount> typeCounts, List<EntityReportRow> entities) {
         return Mono.fromCallable(() -> {
             StringBuilder sb = new StringBuilder();
             
             sb.append("知识图谱分析报告\n");
             sb.append("=".repeat(30)).append("\n\n");
             
-            sb.append("总实体数: ").append(entities.size()).append("\n\n");
-            
-            Map<String, Long> typeCount = entities.stream()
-                .collect(Collectors.groupingBy(Entity::getType, Collectors.counting()));
+            sb.append("总实体数: ").append(typeCounts.stream().mapToLong(TypeCount::count).sum()).append("\n\n");
                 
             sb.append("实体类型分布:\n");
-            for (Map.Entry<String, Long> entry : typeCount.entrySet()) {
-                sb.append("  ").append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+            for (TypeCount typeCount : typeCounts) {
+                sb.append("  ").append(typeCount.type()).append(": ").append(typeCount.count()).append("\n");
             }
             sb.append("\n");
             
             sb.append("实体详情:\n");
-            entities.stream()
-                .limit(100)
-                .forEach(entity -> {
-                    sb.append("• ").append(entity.getName()).append(" (").append(entity.getType()).append(")\n");
-                    if (entity.getDescription() != null && !entity.getDescription().isEmpty()) {
-                        sb.append("  描述: ").append(entity.getDescription()).append("\n");
-                    }
-                    sb.append("  相关文档片段数: ").append(entity.getChunks().size()).append("\n");
-                });
+            entities.forEach(entity -> {
+                sb.append("• ").append(entity.name()).append(" (").append(entity.type()).append(")\n");
+                if (entity.description() != null && !entity.description().isEmpty()) {
+                    sb.append("  描述: ").append(entity.description()).append("\n");
+                }
+                sb.append("  相关文档片段数: ").append(entity.chunkCount()).append("\n");
+            });
             
             return sb.toString().getBytes();
         });
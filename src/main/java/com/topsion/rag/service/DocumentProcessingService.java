@@ -1,14 +1,18 @@
 package com.topsion.rag.service;
 
 import com.theokanning.openai.embedding.EmbeddingRequest;
+import com.theokanning.openai.embedding.EmbeddingResult;
 import com.theokanning.openai.service.OpenAiService;
 import org.springframework.beans.factory.annotation.Autowired;
 import com.topsion.rag.config.ApplicationProperties;
+import com.topsion.rag.management.LlmCallEvent;
 import com.topsion.rag.domain.Document;
 import com.topsion.rag.domain.DocumentChunk;
 import com.topsion.rag.repository.DocumentChunkRepository;
 import com.topsion.rag.repository.DocumentRepository;
 import com.topsion.rag.repository.EntityRepository;
+import com.topsion.rag.repository.projection.DocumentSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
@@ -33,6 +37,7 @@ import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
@@ -49,6 +54,11 @@ public class DocumentProcessingService {
     private final OpenAiService openAiService;
     private final ApplicationProperties applicationProperties;
     private final EntityExtractionService entityExtractionService;
+    private final CommunityService communityService;
+    private final GraphVersionService graphVersionService;
+    private final ChunkFilterService chunkFilterService;
+    private final ChunkEmbeddingCache chunkEmbeddingCache;
+    private final MeterRegistry meterRegistry;
 
     private final Tika tika = new Tika();
 
@@ -58,7 +68,12 @@ public class DocumentProcessingService {
         EntityRepository entityRepository,
         @Autowired(required = false) OpenAiService openAiService,
         ApplicationProperties applicationProperties,
-        EntityExtractionService entityExtractionService
+        EntityExtractionService entityExtractionService,
+        CommunityService communityService,
+        GraphVersionService graphVersionService,
+        ChunkFilterService chunkFilterService,
+        ChunkEmbeddingCache chunkEmbeddingCache,
+        MeterRegistry meterRegistry
     ) {
         this.documentRepository = documentRepository;
         this.documentChunkRepository = documentChunkRepository;
@@ -66,11 +81,28 @@ public class DocumentProcessingService {
         this.openAiService = openAiService;
         this.applicationProperties = applicationProperties;
         this.entityExtractionService = entityExtractionService;
+        this.communityService = communityService;
+        this.graphVersionService = graphVersionService;
+        this.chunkFilterService = chunkFilterService;
+        this.chunkEmbeddingCache = chunkEmbeddingCache;
+        this.meterRegistry = meterRegistry;
     }
 
     public Mono<Document> uploadAndProcessDocument(FilePart filePart) {
+        return uploadAndProcessDocument(filePart, List.of());
+    }
+
+    /**
+     * Stores and processes an uploaded file; the tags can later restrict retrieval to this document.
+     */
+    public Mono<Document> uploadAndProcessDocument(FilePart filePart, List<String> tags) {
+        List<String> normalizedTags = tags.stream()
+            .map(String::trim)
+            .filter(tag -> !tag.isEmpty())
+            .distinct()
+            .toList();
         return saveFile(filePart)
-            .flatMap(this::createDocumentEntity)
+            .flatMap(filePath -> createDocumentEntity(filePath, normalizedTags))
             .flatMap(this::processDocument);
     }
 
@@ -90,7 +122,7 @@ public class DocumentProcessingService {
         );
     }
 
-    private Mono<Document> createDocumentEntity(Path filePath) {
+    private Mono<Document> createDocumentEntity(Path filePath, List<String> tags) {
         return Mono.fromCallable(() -> {
             try {
                 File file = filePath.toFile();
@@ -102,6 +134,7 @@ public class DocumentProcessingService {
                 document.setContentType(contentType);
                 document.setFileSize(file.length());
                 document.setFilePath(filePath.toString());
+                document.setTags(new ArrayList<>(tags));
                 document.setStatus("UPLOADED");
                 document.setCreatedDate(Instant.now());
 
@@ -110,30 +143,60 @@ public class DocumentProcessingService {
                 throw new RuntimeException("Failed to create document entity", e);
             }
         })
-        .flatMap(documentRepository::save);
+        .flatMap(this::saveDocument);
     }
 
     private Mono<Document> processDocument(Document document) {
+        IngestionTelemetry telemetry = new IngestionTelemetry(meterRegistry, document.getId());
         return Mono.fromCallable(() -> {
             document.setStatus("PROCESSING");
             return document;
         })
-        .flatMap(documentRepository::save)
-        .flatMap(this::extractTextContent)
-        .flatMap(this::chunkDocument)
-        .flatMap(this::generateEmbeddings)
-        .flatMap(this::extractEntities)
+        .flatMap(this::saveDocument)
+        .flatMap(doc -> telemetry.time(IngestionTelemetry.TEXT_EXTRACTION, extractTextContent(doc)))
+        .flatMap(doc -> chunkDocument(doc, telemetry))
+        .flatMap(doc -> telemetry.time(IngestionTelemetry.EMBEDDING, generateEmbeddings(doc, telemetry)))
+        .flatMap(doc -> telemetry.time(IngestionTelemetry.ENTITY_EXTRACTION, extractEntities(doc, telemetry)))
         .flatMap(doc -> {
             doc.setStatus("PROCESSED");
-            return documentRepository.save(doc);
+            return telemetry.time(IngestionTelemetry.PERSISTENCE, saveDocument(doc));
         })
+        .flatMap(doc -> telemetry.time(IngestionTelemetry.INDEX_REFRESH,
+            communityService.markDocumentCommunitiesStale(doc.getId())
+                .then(Mono.defer(() -> chunkFilterService.refreshDocument(doc.getId())))
+                .thenReturn(doc)
+        ))
+        .flatMap(doc -> saveTelemetry(doc, telemetry, "success"))
         .onErrorResume(error -> {
             log.error("Error processing document: {}", error.getMessage(), error);
             document.setStatus("ERROR");
-            return documentRepository.save(document);
+            return saveDocument(document).flatMap(doc -> saveTelemetry(doc, telemetry, "error"));
         });
     }
 
+    /**
+     * Stores the telemetry on the document node; failing to store it does not fail the ingestion.
+     */
+    private Mono<Document> saveTelemetry(Document document, IngestionTelemetry telemetry, String outcome) {
+        Map<String, Object> properties = telemetry.finish(outcome);
+        document.setProcessingMs((Long) properties.get("processing_ms"));
+        document.setStageTimings(telemetry.stageTimings());
+        document.setIngestionCounts(telemetry.counts());
+        log.info("Document {} ingested in {} ms, stages (ms): {}, counts: {}",
+            document.getId(), document.getProcessingMs(), document.getStageTimings(), document.getIngestionCounts());
+        return documentRepository.saveIngestionTelemetry(document.getId(), properties)
+            .onErrorResume(error -> {
+                log.warn("Failed to store ingestion telemetry of document {}: {}", document.getId(), error.getMessage());
+                return Mono.empty();
+            })
+            .thenReturn(document);
+    }
+
+    private Mono<Document> saveDocument(Document document) {
+        return documentRepository.save(document)
+            .doOnNext(saved -> graphVersionService.documentChanged(saved.getId()));
+    }
+
     private Mono<Document> extractTextContent(Document document) {
         return Mono.fromCallable(() -> {
             try {
@@ -182,19 +245,24 @@ public class DocumentProcessingService {
         }
     }
 
-    private Mono<Document> chunkDocument(Document document) {
+    private Mono<Document> chunkDocument(Document document, IngestionTelemetry telemetry) {
         return Mono.fromCallable(() -> {
             String content = document.getSummary();
             if (document.getSummary().endsWith("...")) {
+                // 重新提取全文计入文本提取阶段，而非分块阶段
+                IngestionTelemetry.Timing extraction = telemetry.start(IngestionTelemetry.TEXT_EXTRACTION);
                 try {
                     content = extractTextFromFile(Paths.get(document.getFilePath()));
                 } catch (IOException | TikaException e) {
                     log.error("Failed to re-extract full text content", e);
                     content = document.getSummary();
                 }
+                extraction.stop();
             }
 
-            List<String> chunks = createTextChunks(content);
+            IngestionTelemetry.Timing chunking = telemetry.start(IngestionTelemetry.CHUNKING);
+            ApplicationProperties.OpenAI.Rag rag = applicationProperties.getOpenai().getRag();
+            List<String> chunks = createTextChunks(content, rag.getChunkSize(), rag.getChunkOverlap());
             AtomicInteger index = new AtomicInteger(0);
 
             Set<DocumentChunk> documentChunks = chunks.stream()
@@ -210,14 +278,14 @@ public class DocumentProcessingService {
                 .collect(Collectors.toSet());
 
             document.setChunks(documentChunks);
+            chunking.stop();
+            telemetry.count(IngestionTelemetry.CHUNKS, documentChunks.size());
+            telemetry.count(IngestionTelemetry.CHUNK_TOKENS, documentChunks.stream().mapToLong(DocumentChunk::getTokenCount).sum());
             return document;
         });
     }
 
-    private List<String> createTextChunks(String content) {
-        int chunkSize = applicationProperties.getOpenai().getRag().getChunkSize();
-        int overlap = applicationProperties.getOpenai().getRag().getChunkOverlap();
-
+    static List<String> createTextChunks(String content, int chunkSize, int overlap) {
         List<String> chunks = new ArrayList<>();
         int start = 0;
 
@@ -242,9 +310,9 @@ public class DocumentProcessingService {
         return (int) Math.ceil(text.length() / 4.0);
     }
 
-    private Mono<Document> generateEmbeddings(Document document) {
+    private Mono<Document> generateEmbeddings(Document document, IngestionTelemetry telemetry) {
         return Flux.fromIterable(document.getChunks())
-            .flatMap(this::generateChunkEmbedding)
+            .flatMap(chunk -> generateChunkEmbedding(chunk, telemetry))
             .collectList()
             .map(chunks -> {
                 document.getChunks().clear();
@@ -253,7 +321,7 @@ public class DocumentProcessingService {
             });
     }
 
-    private Mono<DocumentChunk> generateChunkEmbedding(DocumentChunk chunk) {
+    private Mono<DocumentChunk> generateChunkEmbedding(DocumentChunk chunk, IngestionTelemetry telemetry) {
         return Mono.fromCallable(() -> {
             try {
                 if (openAiService == null) {
@@ -267,7 +335,9 @@ public class DocumentProcessingService {
                     .input(List.of(chunk.getContent()))
                     .build();
 
-                var response = openAiService.createEmbeddings(request);
+                telemetry.count(IngestionTelemetry.EMBEDDING_CALLS, 1);
+                var response = LlmCallEvent.record(
+                    LlmCallEvent.EMBEDDING, request.getModel(), () -> openAiService.createEmbeddings(request), EmbeddingResult::getUsage);
                 if (!response.getData().isEmpty()) {
                     List<Double> embedding = response.getData().get(0).getEmbedding();
                     chunk.setEmbedding(embedding.stream().mapToDouble(Double::doubleValue).toArray());
@@ -275,14 +345,15 @@ public class DocumentProcessingService {
 
                 return chunk;
             } catch (Exception e) {
+                telemetry.count(IngestionTelemetry.EMBEDDING_FAILURES, 1);
                 log.error("Failed to generate embedding for chunk: {}", e.getMessage(), e);
                 return chunk;
             }
         });
     }
 
-    private Mono<Document> extractEntities(Document document) {
-        return entityExtractionService.extractEntitiesFromDocument(document)
+    private Mono<Document> extractEntities(Document document, IngestionTelemetry telemetry) {
+        return entityExtractionService.extractEntitiesFromDocument(document, telemetry)
             .then(Mono.just(document));
     }
 
@@ -298,10 +369,21 @@ public class DocumentProcessingService {
         return documentRepository.findAll();
     }
 
+    public Flux<DocumentSummary> getDocumentSummaries(Instant afterCreatedDate, Long afterId, int size) {
+        return documentRepository.findSummaries(afterCreatedDate, afterId, size);
+    }
+
     public Mono<Document> getDocumentById(Long id) {
         return documentRepository.findById(id);
     }
 
+    /**
+     * The document with its ingestion telemetry but without its chunks.
+     */
+    public Mono<Document> getDocumentTelemetry(Long id) {
+        return documentRepository.findNodeById(id);
+    }
+
     public Mono<Void> deleteDocument(Long id) {
         return documentRepository.findById(id)
             .flatMap(document -> {
@@ -311,6 +393,12 @@ public class DocumentProcessingService {
                     log.error("Failed to delete file: {}", e.getMessage(), e);
                 }
                 return documentRepository.deleteById(id);
+            })
+            .then(chunkFilterService.removeDocument(id))
+            .doOnSuccess(v -> {
+                chunkEmbeddingCache.clear();
+                graphVersionService.documentChanged(id);
+                communityService.requestRefresh();
             });
     }
 }
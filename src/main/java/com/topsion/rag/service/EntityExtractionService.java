@@ -1,5 +1,6 @@
 package com.topsion.rag.service;
 
+import com.topsion.rag.management.LlmCallEvent;
 import com.topsion.rag.domain.Document;
 import com.topsion.rag.domain.DocumentChunk;
 import com.topsion.rag.domain.Entity;
@@ -8,12 +9,15 @@ import com.topsion.rag.repository.EntityRepository;
 import com.topsion.rag.repository.DocumentChunkRepository;
 import com.topsion.rag.config.ApplicationProperties;
 import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
 import com.theokanning.openai.completion.chat.ChatMessage;
 import com.theokanning.openai.completion.chat.ChatMessageRole;
 import com.theokanning.openai.embedding.EmbeddingRequest;
+import com.theokanning.openai.embedding.EmbeddingResult;
 import com.theokanning.openai.service.OpenAiService;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -37,6 +41,7 @@ public class EntityExtractionService {
     private final DocumentChunkRepository documentChunkRepository;
     private final OpenAiService openAiService;
     private final ApplicationProperties applicationProperties;
+    private final MeterRegistry meterRegistry;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     private static final String ENTITY_EXTRACTION_PROMPT = """
@@ -75,24 +80,37 @@ public class EntityExtractionService {
         EntityRepository entityRepository,
         DocumentChunkRepository documentChunkRepository,
         OpenAiService openAiService,
-        ApplicationProperties applicationProperties
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
     ) {
         this.entityRepository = entityRepository;
         this.documentChunkRepository = documentChunkRepository;
         this.openAiService = openAiService;
         this.applicationProperties = applicationProperties;
+        this.meterRegistry = meterRegistry;
     }
 
     public Mono<Void> extractEntitiesFromDocument(Document document) {
+        return extractEntitiesFromDocument(document, new IngestionTelemetry(meterRegistry));
+    }
+
+    /**
+     * Extracts the entities of every chunk, adding LLM and graph write timings and counts to {@code telemetry}.
+     */
+    public Mono<Void> extractEntitiesFromDocument(Document document, IngestionTelemetry telemetry) {
         return Flux.fromIterable(document.getChunks())
-            .flatMap(this::extractEntitiesFromChunk)
+            .flatMap(chunk -> extractEntitiesFromChunk(chunk, telemetry))
             .then();
     }
 
     public Mono<Void> extractEntitiesFromChunk(DocumentChunk chunk) {
-        return extractEntitiesUsingLLM(chunk.getContent())
-            .flatMap(extractionResult -> 
-                processExtractionResult(chunk, extractionResult)
+        return extractEntitiesFromChunk(chunk, new IngestionTelemetry(meterRegistry));
+    }
+
+    private Mono<Void> extractEntitiesFromChunk(DocumentChunk chunk, IngestionTelemetry telemetry) {
+        return telemetry.time(IngestionTelemetry.LLM_EXTRACTION, extractEntitiesUsingLLM(chunk.getContent(), telemetry))
+            .flatMap(extractionResult ->
+                telemetry.time(IngestionTelemetry.GRAPH_WRITE, processExtractionResult(chunk, extractionResult, telemetry))
             )
             .onErrorResume(error -> {
                 log.error("Failed to extract entities from chunk {}: {}", chunk.getId(), error.getMessage());
@@ -100,7 +118,7 @@ public class EntityExtractionService {
             });
     }
 
-    private Mono<ExtractionResult> extractEntitiesUsingLLM(String content) {
+    private Mono<ExtractionResult> extractEntitiesUsingLLM(String content, IngestionTelemetry telemetry) {
         return Mono.fromCallable(() -> {
             try {
                 String prompt = String.format(ENTITY_EXTRACTION_PROMPT, content);
@@ -114,18 +132,25 @@ public class EntityExtractionService {
                     .maxTokens(1000)
                     .build();
 
-                var response = openAiService.createChatCompletion(request);
+                telemetry.count(IngestionTelemetry.LLM_CALLS, 1);
+                var response = LlmCallEvent.record(
+                    LlmCallEvent.CHAT, request.getModel(), () -> openAiService.createChatCompletion(request), ChatCompletionResult::getUsage);
+                if (response.getUsage() != null) {
+                    telemetry.count(IngestionTelemetry.LLM_PROMPT_TOKENS, response.getUsage().getPromptTokens());
+                    telemetry.count(IngestionTelemetry.LLM_COMPLETION_TOKENS, response.getUsage().getCompletionTokens());
+                }
                 String jsonResponse = response.getChoices().get(0).getMessage().getContent();
                 
                 return parseExtractionResult(jsonResponse);
             } catch (Exception e) {
+                telemetry.count(IngestionTelemetry.LLM_FAILURES, 1);
                 log.error("Failed to extract entities using LLM: {}", e.getMessage(), e);
                 return new ExtractionResult(Collections.emptyList(), Collections.emptyList());
             }
         });
     }
 
-    private ExtractionResult parseExtractionResult(String jsonResponse) {
+    ExtractionResult parseExtractionResult(String jsonResponse) {
         try {
             String cleanJson = extractJsonFromResponse(jsonResponse);
             JsonNode rootNode = objectMapper.readTree(cleanJson);
@@ -167,7 +192,7 @@ public class EntityExtractionService {
         }
     }
 
-    private String extractJsonFromResponse(String response) {
+    static String extractJsonFromResponse(String response) {
         Pattern jsonPattern = Pattern.compile("\\{.*\\}", Pattern.DOTALL);
         Matcher matcher = jsonPattern.matcher(response);
         if (matcher.find()) {
@@ -176,42 +201,33 @@ public class EntityExtractionService {
         return response;
     }
 
-    private Mono<Void> processExtractionResult(DocumentChunk chunk, ExtractionResult result) {
+    private Mono<Void> processExtractionResult(DocumentChunk chunk, ExtractionResult result, IngestionTelemetry telemetry) {
         return Flux.fromIterable(result.entities())
-            .flatMap(entityInfo -> createOrUpdateEntity(entityInfo, chunk))
+            .flatMap(entityInfo -> createOrUpdateEntity(entityInfo, chunk, telemetry))
             .collectList()
             .flatMap(entities -> {
+                telemetry.count(IngestionTelemetry.ENTITIES, entities.size());
                 chunk.setEntities(new HashSet<>(entities));
                 return documentChunkRepository.save(chunk);
             })
-            .then(processRelations(result.relations()));
+            .then(processRelations(result.relations(), telemetry));
     }
 
-    private Mono<Entity> createOrUpdateEntity(EntityInfo entityInfo, DocumentChunk chunk) {
-        return entityRepository.findByNameAndType(entityInfo.name(), entityInfo.type())
-            .switchIfEmpty(Mono.defer(() -> createNewEntity(entityInfo)))
+    /**
+     * Chunks are processed concurrently, so the node is found or created by a single {@code MERGE} on the
+     * (name, type) uniqueness constraint rather than looked up and then saved.
+     */
+    private Mono<Entity> createOrUpdateEntity(EntityInfo entityInfo, DocumentChunk chunk, IngestionTelemetry telemetry) {
+        return entityRepository.mergeEntity(entityInfo.name(), entityInfo.type(), entityInfo.description(), Instant.now())
+            .flatMap(entityRepository::findById)
             .flatMap(entity -> {
                 entity.addChunk(chunk);
-                if (entity.getDescription() == null || entity.getDescription().isEmpty()) {
-                    entity.setDescription(entityInfo.description());
-                }
-                return generateEntityEmbedding(entity);
+                return generateEntityEmbedding(entity, telemetry);
             })
             .flatMap(entityRepository::save);
     }
 
-    private Mono<Entity> createNewEntity(EntityInfo entityInfo) {
-        return Mono.fromCallable(() -> {
-            Entity entity = new Entity();
-            entity.setName(entityInfo.name());
-            entity.setType(entityInfo.type());
-            entity.setDescription(entityInfo.description());
-            entity.setCreatedDate(Instant.now());
-            return entity;
-        });
-    }
-
-    private Mono<Entity> generateEntityEmbedding(Entity entity) {
+    private Mono<Entity> generateEntityEmbedding(Entity entity, IngestionTelemetry telemetry) {
         return Mono.fromCallable(() -> {
             try {
                 String textToEmbed = entity.getName() + " " + 
@@ -223,7 +239,9 @@ public class EntityExtractionService {
                     .input(List.of(textToEmbed))
                     .build();
                 
-                var response = openAiService.createEmbeddings(request);
+                telemetry.count(IngestionTelemetry.EMBEDDING_CALLS, 1);
+                var response = LlmCallEvent.record(
+                    LlmCallEvent.EMBEDDING, request.getModel(), () -> openAiService.createEmbeddings(request), EmbeddingResult::getUsage);
                 if (!response.getData().isEmpty()) {
                     List<Double> embedding = response.getData().get(0).getEmbedding();
                     entity.setEmbedding(embedding.stream().mapToDouble(Double::doubleValue).toArray());
@@ -231,19 +249,20 @@ public class EntityExtractionService {
                 
                 return entity;
             } catch (Exception e) {
+                telemetry.count(IngestionTelemetry.EMBEDDING_FAILURES, 1);
                 log.error("Failed to generate embedding for entity: {}", e.getMessage(), e);
                 return entity;
             }
         });
     }
 
-    private Mono<Void> processRelations(List<RelationInfo> relations) {
+    private Mono<Void> processRelations(List<RelationInfo> relations, IngestionTelemetry telemetry) {
         return Flux.fromIterable(relations)
-            .flatMap(this::createEntityRelation)
+            .flatMap(relationInfo -> createEntityRelation(relationInfo, telemetry))
             .then();
     }
 
-    private Mono<Void> createEntityRelation(RelationInfo relationInfo) {
+    private Mono<Void> createEntityRelation(RelationInfo relationInfo, IngestionTelemetry telemetry) {
         return Mono.zip(
             findEntityByName(relationInfo.source()),
             findEntityByName(relationInfo.target())
@@ -261,7 +280,9 @@ public class EntityExtractionService {
                 relation.setCreatedDate(Instant.now());
                 
                 sourceEntity.addRelation(relation);
-                return entityRepository.save(sourceEntity).then();
+                return entityRepository.save(sourceEntity)
+                    .doOnSuccess(saved -> telemetry.count(IngestionTelemetry.RELATIONS, 1))
+                    .then();
             }
             return Mono.empty();
         })
@@ -282,7 +303,6 @@ public class EntityExtractionService {
             .flatMapMany(embedding -> 
                 entityRepository.findSimilarEntities(embedding, limit)
             )
-            .map(result -> (Entity) result[0])
             .onErrorResume(error -> {
                 log.error("Failed to search similar entities: {}", error.getMessage());
                 return Flux.empty();
@@ -298,7 +318,8 @@ public class EntityExtractionService {
                     .input(List.of(query))
                     .build();
                 
-                var response = openAiService.createEmbeddings(request);
+                var response = LlmCallEvent.record(
+                    LlmCallEvent.EMBEDDING, request.getModel(), () -> openAiService.createEmbeddings(request), EmbeddingResult::getUsage);
                 if (!response.getData().isEmpty()) {
                     List<Double> embedding = response.getData().get(0).getEmbedding();
                     return embedding.stream().mapToDouble(Double::doubleValue).toArray();
@@ -0,0 +1,214 @@
+package com.topsion.rag.service;
+
+import com.topsion.rag.repository.projection.ChunkContext;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Answers by quoting the sentences of the retrieved chunks that best match the question, without an LLM.
+ * <p>
+ * Text is split into terms: lowercased words for alphabetic scripts and character bigrams for Chinese.
+ * Sentences are ranked by BM25 against the question's terms, using the candidate sentences themselves as
+ * the collection; sentences scoring under half the best one are not quoted. The confidence of an extract
+ * is its coverage: the IDF-weighted share of the question's terms that the quoted sentences contain. Words
+ * absent from the retrieved text count with the IDF of a term no sentence contains, so a partial match cannot
+ * reach full coverage. Chinese bigrams absent from the text do not count: bigrams spanning the question's
+ * word boundaries, such as 期是 in 保修期是多长, rarely occur in any text, so their absence says little
+ * about whether the text answers the question.
+ */
+public class ExtractiveAnswerer {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MIN_SENTENCE_LENGTH = 6;
+    // 排名靠后的句子得分需达到最佳句子的一半才会被引用
+    private static final double MIN_RELATIVE_SCORE = 0.5;
+    private static final Pattern SENTENCE_BOUNDARY = Pattern.compile("(?<=[。！？；!?;])|(?<=\\.)\\s+|\\n+");
+    private static final Set<String> STOP_TERMS = Set.of(
+        "什么", "怎么", "如何", "哪些", "哪个", "为什", "为何", "是否", "多少", "请问",
+        "what", "which", "who", "when", "where", "why", "how", "is", "are", "was", "were", "does", "do", "did",
+        "the", "an", "of", "to", "in", "on", "for", "and", "or", "with", "about"
+    );
+
+    /**
+     * @param answer the quoted sentences with citation markers, followed by the cited sources.
+     * @param chunks the cited chunks, in citation order.
+     * @param coverage share of the question's weighted terms found in the quoted sentences, in [0, 1].
+     */
+    public record Extract(String answer, List<ChunkContext> chunks, double coverage) {}
+
+    /**
+     * The best {@code maxSentences} sentences, or empty if no sentence shares a term with the question.
+     */
+    public Optional<Extract> extract(String question, List<ChunkContext> chunks, int maxSentences) {
+        Set<String> queryTerms = new HashSet<>(terms(question));
+        List<Sentence> sentences = sentences(chunks);
+        if (queryTerms.isEmpty() || sentences.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Map<String, Integer> documentFrequency = new HashMap<>();
+        long totalLength = 0;
+        for (Sentence sentence : sentences) {
+            totalLength += sentence.length();
+            for (String term : sentence.termFrequency().keySet()) {
+                if (queryTerms.contains(term)) {
+                    documentFrequency.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+        if (documentFrequency.isEmpty()) {
+            return Optional.empty();
+        }
+        int n = sentences.size();
+        double averageLength = (double) totalLength / n;
+        Map<String, Double> idf = new HashMap<>();
+        for (String term : queryTerms) {
+            int df = documentFrequency.getOrDefault(term, 0);
+            idf.put(term, Math.log(1 + (n - df + 0.5) / (df + 0.5)));
+        }
+
+        List<Scored> ranked = new ArrayList<>();
+        for (Sentence sentence : sentences) {
+            double score = 0;
+            for (Map.Entry<String, Double> entry : idf.entrySet()) {
+                int tf = sentence.termFrequency().getOrDefault(entry.getKey(), 0);
+                if (tf > 0) {
+                    score += entry.getValue() * tf * (K1 + 1) / (tf + K1 * (1 - B + B * sentence.length() / averageLength));
+                }
+            }
+            if (score > 0) {
+                ranked.add(new Scored(sentence, score));
+            }
+        }
+        ranked.sort(Comparator.comparingDouble(Scored::score).reversed()
+            .thenComparing(scored -> -scored.sentence().chunk().similarity()));
+
+        double minScore = ranked.get(0).score() * MIN_RELATIVE_SCORE;
+        List<Scored> selected = ranked.stream().filter(scored -> scored.score() >= minScore).limit(maxSentences).toList();
+        Set<String> covered = new HashSet<>();
+        Map<Long, Integer> citations = new LinkedHashMap<>();
+        List<ChunkContext> cited = new ArrayList<>();
+        StringBuilder answer = new StringBuilder("根据知识库中的相关内容：\n");
+        for (Scored scored : selected) {
+            Sentence sentence = scored.sentence();
+            covered.addAll(sentence.termFrequency().keySet());
+            Integer citation = citations.get(sentence.chunk().id());
+            if (citation == null) {
+                cited.add(sentence.chunk());
+                citation = cited.size();
+                citations.put(sentence.chunk().id(), citation);
+            }
+            answer.append(sentence.text()).append(" [").append(citation).append("]\n");
+        }
+        answer.append("\n来源：\n");
+        for (int i = 0; i < cited.size(); i++) {
+            ChunkContext chunk = cited.get(i);
+            String title = chunk.documentTitle() != null ? chunk.documentTitle() : "未知文档";
+            answer.append('[').append(i + 1).append("] 《").append(title).append("》 片段 ").append(chunk.chunkIndex()).append('\n');
+        }
+
+        // 只计入在检索文本中出现过的中文二元组
+        double totalWeight = idf.entrySet().stream()
+            .filter(entry -> documentFrequency.containsKey(entry.getKey()) || !isHan(entry.getKey()))
+            .mapToDouble(Map.Entry::getValue)
+            .sum();
+        double coveredWeight = idf.entrySet().stream()
+            .filter(entry -> covered.contains(entry.getKey()))
+            .mapToDouble(Map.Entry::getValue)
+            .sum();
+        return Optional.of(new Extract(answer.toString().strip(), cited, coveredWeight / totalWeight));
+    }
+
+    private static List<Sentence> sentences(List<ChunkContext> chunks) {
+        List<Sentence> sentences = new ArrayList<>();
+        // 相邻片段有重叠，同一句子只保留一次
+        Set<String> seen = new HashSet<>();
+        for (ChunkContext chunk : chunks) {
+            if (chunk.content() == null) {
+                continue;
+            }
+            for (String text : SENTENCE_BOUNDARY.split(chunk.content())) {
+                String trimmed = text.strip();
+                if (trimmed.length() < MIN_SENTENCE_LENGTH || !seen.add(trimmed)) {
+                    continue;
+                }
+                List<String> terms = terms(trimmed);
+                if (terms.isEmpty()) {
+                    continue;
+                }
+                Map<String, Integer> termFrequency = new HashMap<>();
+                terms.forEach(term -> termFrequency.merge(term, 1, Integer::sum));
+                sentences.add(new Sentence(trimmed, chunk, termFrequency, terms.size()));
+            }
+        }
+        return sentences;
+    }
+
+    /**
+     * Lowercased words of alphabetic scripts and character bigrams of Chinese runs, without stop terms.
+     */
+    static List<String> terms(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        List<String> terms = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        StringBuilder han = new StringBuilder();
+        int i = 0;
+        while (i < normalized.length()) {
+            int codePoint = normalized.codePointAt(i);
+            if (Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.HAN) {
+                flushWord(word, terms);
+                han.appendCodePoint(codePoint);
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                flushHan(han, terms);
+                word.appendCodePoint(codePoint);
+            } else {
+                flushWord(word, terms);
+                flushHan(han, terms);
+            }
+            i += Character.charCount(codePoint);
+        }
+        flushWord(word, terms);
+        flushHan(han, terms);
+        return terms;
+    }
+
+    private static boolean isHan(String term) {
+        return Character.UnicodeScript.of(term.codePointAt(0)) == Character.UnicodeScript.HAN;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> terms) {
+        if (word.length() >= 2 && !STOP_TERMS.contains(word.toString())) {
+            terms.add(word.toString());
+        }
+        word.setLength(0);
+    }
+
+    private static void flushHan(StringBuilder han, List<String> terms) {
+        int[] codePoints = han.codePoints().toArray();
+        if (codePoints.length == 1) {
+            terms.add(han.toString());
+        }
+        for (int i = 0; i + 1 < codePoints.length; i++) {
+            String bigram = new String(codePoints, i, 2);
+            if (!STOP_TERMS.contains(bigram)) {
+                terms.add(bigram);
+            }
+        }
+        han.setLength(0);
+    }
+
+    private record Sentence(String text, ChunkContext chunk, Map<String, Integer> termFrequency, int length) {}
+
+    private record Scored(Sentence sentence, double score) {}
+}
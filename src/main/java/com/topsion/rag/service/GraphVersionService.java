@@ -0,0 +1,38 @@
+package com.topsion.rag.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.stereotype.Service;
+
+/**
+ * Monotonic in-memory versions of the knowledge graph and of each document, bumped on every write.
+ * <p>
+ * Versions start from the boot time in microseconds so they keep increasing across restarts and never
+ * collide with artifacts cached by an earlier run.
+ */
+@Service
+public class GraphVersionService {
+
+    private final long initialVersion = System.currentTimeMillis() * 1000;
+    private final AtomicLong graphVersion = new AtomicLong(initialVersion);
+    private final ConcurrentMap<Long, Long> documentVersions = new ConcurrentHashMap<>();
+
+    public long getGraphVersion() {
+        return graphVersion.get();
+    }
+
+    public long getDocumentVersion(Long documentId) {
+        return documentVersions.getOrDefault(documentId, initialVersion);
+    }
+
+    /**
+     * Records a write to the document, its chunks or the entities extracted from it.
+     */
+    public void documentChanged(Long documentId) {
+        long version = graphVersion.incrementAndGet();
+        if (documentId != null) {
+            documentVersions.merge(documentId, version, Math::max);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.topsion.rag.service;
+
+import com.topsion.rag.management.IngestionStageEvent;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import reactor.core.publisher.Mono;
+
+/**
+ * Stage timings and counts of the ingestion of one document.
+ * <p>
+ * Stages that run once per document ({@link #TEXT_EXTRACTION} to {@link #INDEX_REFRESH}) are timed wall
+ * clock. The per-chunk stages inside {@link #ENTITY_EXTRACTION} ({@link #LLM_EXTRACTION},
+ * {@link #GRAPH_WRITE}) are summed over chunks; chunks are processed concurrently, so their sums can
+ * exceed the enclosing stage. Every timed run is also recorded as {@value #STAGE_METER_NAME} and as an
+ * {@link IngestionStageEvent}, and {@link #finish} records the document total and the counts.
+ */
+public class IngestionTelemetry {
+
+    public static final String STAGE_METER_NAME = "ingestion.stage";
+    public static final String DOCUMENT_METER_NAME = "ingestion.document";
+    public static final String ITEMS_METER_NAME = "ingestion.document.items";
+
+    public static final String TEXT_EXTRACTION = "text_extraction";
+    public static final String CHUNKING = "chunking";
+    public static final String EMBEDDING = "embedding";
+    public static final String ENTITY_EXTRACTION = "entity_extraction";
+    public static final String LLM_EXTRACTION = "llm_extraction";
+    public static final String GRAPH_WRITE = "graph_write";
+    public static final String PERSISTENCE = "persistence";
+    public static final String INDEX_REFRESH = "index_refresh";
+
+    public static final List<String> STAGES = List.of(
+        TEXT_EXTRACTION, CHUNKING, EMBEDDING, ENTITY_EXTRACTION, LLM_EXTRACTION, GRAPH_WRITE, PERSISTENCE, INDEX_REFRESH
+    );
+
+    /** Stages timed once per chunk and summed; they overlap each other and {@link #ENTITY_EXTRACTION}. */
+    public static final Set<String> PER_CHUNK_STAGES = Set.of(LLM_EXTRACTION, GRAPH_WRITE);
+
+    public static final String CHUNKS = "chunks";
+    public static final String CHUNK_TOKENS = "chunk_tokens";
+    public static final String EMBEDDING_CALLS = "embedding_calls";
+    public static final String EMBEDDING_FAILURES = "embedding_failures";
+    public static final String LLM_CALLS = "llm_calls";
+    public static final String LLM_FAILURES = "llm_failures";
+    public static final String LLM_PROMPT_TOKENS = "llm_prompt_tokens";
+    public static final String LLM_COMPLETION_TOKENS = "llm_completion_tokens";
+    public static final String ENTITIES = "entities";
+    public static final String RELATIONS = "relations";
+
+    public static final List<String> COUNTS = List.of(
+        CHUNKS, CHUNK_TOKENS, EMBEDDING_CALLS, EMBEDDING_FAILURES, LLM_CALLS, LLM_FAILURES,
+        LLM_PROMPT_TOKENS, LLM_COMPLETION_TOKENS, ENTITIES, RELATIONS
+    );
+
+    /** Property prefixes of the composite maps on {@link com.topsion.rag.domain.Document}. */
+    public static final String STAGE_PROPERTY_PREFIX = "stage_ms";
+    public static final String COUNT_PROPERTY_PREFIX = "ingestion";
+
+    private final MeterRegistry meterRegistry;
+    private final long documentId;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, LongAdder> stageNanos = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    public IngestionTelemetry(MeterRegistry meterRegistry) {
+        this(meterRegistry, null);
+    }
+
+    public IngestionTelemetry(MeterRegistry meterRegistry, Long documentId) {
+        this.meterRegistry = meterRegistry;
+        this.documentId = documentId != null ? documentId : 0L;
+    }
+
+    /**
+     * Times {@code stage} from subscription until the publisher terminates or is cancelled.
+     */
+    public <T> Mono<T> time(String stage, Mono<T> mono) {
+        return Mono.defer(() -> {
+            Timing timing = start(stage);
+            return mono.doFinally(signal -> timing.stop());
+        });
+    }
+
+    /**
+     * Starts timing {@code stage}; the time is recorded when the returned timing is stopped.
+     */
+    public Timing start(String stage) {
+        IngestionStageEvent event = new IngestionStageEvent();
+        event.documentId = documentId;
+        event.stage = stage;
+        event.begin();
+        return new Timing(stage, event, System.nanoTime());
+    }
+
+    public void record(String stage, long nanos) {
+        stageNanos.computeIfAbsent(stage, key -> new LongAdder()).add(nanos);
+        Timer.builder(STAGE_METER_NAME)
+            .description("Time spent in one ingestion stage")
+            .tag("stage", stage)
+            .publishPercentileHistogram()
+            .register(meterRegistry)
+            .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void count(String name, long amount) {
+        counts.computeIfAbsent(name, key -> new LongAdder()).add(amount);
+    }
+
+    /**
+     * Stage timings in milliseconds, in {@link #STAGES} order.
+     */
+    public Map<String, Long> stageTimings() {
+        Map<String, Long> timings = new LinkedHashMap<>();
+        for (String stage : STAGES) {
+            LongAdder nanos = stageNanos.get(stage);
+            if (nanos != null) {
+                timings.put(stage, Duration.ofNanos(nanos.sum()).toMillis());
+            }
+        }
+        return timings;
+    }
+
+    /**
+     * Counts in {@link #COUNTS} order; counts never incremented are zero.
+     */
+    public Map<String, Long> counts() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        for (String name : COUNTS) {
+            LongAdder count = counts.get(name);
+            snapshot.put(name, count != null ? count.sum() : 0L);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Records the document total and the counts, and returns the node properties to store them under.
+     */
+    public Map<String, Object> finish(String outcome) {
+        long totalNanos = System.nanoTime() - startNanos;
+        Timer.builder(DOCUMENT_METER_NAME)
+            .description("Time to ingest one document")
+            .tag("outcome", outcome)
+            .publishPercentileHistogram()
+            .register(meterRegistry)
+            .record(totalNanos, TimeUnit.NANOSECONDS);
+
+        Map<String, Object> properties = new LinkedHashMap<>();
+        stageTimings().forEach((stage, millis) -> properties.put(STAGE_PROPERTY_PREFIX + "." + stage, millis));
+        counts().forEach((name, count) -> {
+            properties.put(COUNT_PROPERTY_PREFIX + "." + name, count);
+            DistributionSummary.builder(ITEMS_METER_NAME)
+                .description("Items produced or consumed by the ingestion of one document")
+                .tag("kind", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(count);
+        });
+        properties.put("processing_ms", Duration.ofNanos(totalNanos).toMillis());
+        return properties;
+    }
+
+    public final class Timing {
+
+        private final String stage;
+        private final IngestionStageEvent event;
+        private final long startNanos;
+
+        private Timing(String stage, IngestionStageEvent event, long startNanos) {
+            this.stage = stage;
+            this.event = event;
+            this.startNanos = startNanos;
+        }
+
+        public void stop() {
+            record(stage, System.nanoTime() - startNanos);
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.topsion.rag.service;
+
+import java.util.Arrays;
+
+/**
+ * The most recent {@code capacity} latencies of an operation, for percentile estimates that follow changes
+ * in the provider's behaviour. The percentile is recomputed at most every {@value #RECOMPUTE_INTERVAL}
+ * samples.
+ */
+public class LatencyWindow {
+
+    private static final int RECOMPUTE_INTERVAL = 16;
+
+    private final long[] samples;
+    private final double percentile;
+    private int size;
+    private int next;
+    private int sinceRecompute = RECOMPUTE_INTERVAL;
+    private long cached;
+
+    public LatencyWindow(int capacity, double percentile) {
+        this.samples = new long[capacity];
+        this.percentile = percentile;
+    }
+
+    public synchronized void record(long latencyMs) {
+        samples[next] = latencyMs;
+        next = (next + 1) % samples.length;
+        size = Math.min(size + 1, samples.length);
+        sinceRecompute++;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * The configured percentile of the window, or -1 while it is empty.
+     */
+    public synchronized long percentile() {
+        if (size == 0) {
+            return -1;
+        }
+        if (sinceRecompute >= RECOMPUTE_INTERVAL) {
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100.0 * size) - 1;
+            cached = sorted[Math.max(0, Math.min(rank, size - 1))];
+            sinceRecompute = 0;
+        }
+        return cached;
+    }
+}
@@ -0,0 +1,204 @@
+package com.topsion.rag.service;
+
+import com.theokanning.openai.Usage;
+import com.theokanning.openai.client.OpenAiApi;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
+import com.theokanning.openai.embedding.EmbeddingRequest;
+import com.theokanning.openai.embedding.EmbeddingResult;
+import com.topsion.rag.config.ApplicationProperties;
+import com.topsion.rag.management.LlmCallEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.reactivex.Single;
+import io.reactivex.SingleObserver;
+import io.reactivex.disposables.Disposable;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Non-blocking access to the OpenAI API with request hedging.
+ * <p>
+ * If a call has not answered after the configured percentile of recently observed latencies, the same
+ * request is sent again; whichever answers first wins and the other HTTP call is cancelled. Hedges draw on a
+ * token bucket refilled by {@code budgetRatio} per call, so they add at most that fraction of extra load.
+ * A failed primary call fails immediately; a failed hedge is ignored. Every HTTP call is also an
+ * {@link LlmCallEvent} for the flight recorder.
+ */
+@Service
+public class LlmGateway {
+
+    public static final String REQUEST_METER_NAME = "llm.request";
+    public static final String HEDGE_METER_NAME = "llm.hedge";
+
+    static final String CHAT = LlmCallEvent.CHAT;
+    static final String EMBEDDING = LlmCallEvent.EMBEDDING;
+
+    private static final int LATENCY_WINDOW_SIZE = 512;
+
+    private final Logger log = LoggerFactory.getLogger(LlmGateway.class);
+
+    private final OpenAiApi openAiApi;
+    private final ApplicationProperties.Hedging properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private double hedgeTokens;
+
+    public LlmGateway(
+        @Autowired(required = false) OpenAiApi openAiApi,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.openAiApi = openAiApi;
+        this.properties = applicationProperties.getHedging();
+        this.meterRegistry = meterRegistry;
+        this.hedgeTokens = properties.getBudgetBurst();
+    }
+
+    public Mono<ChatCompletionResult> createChatCompletion(ChatCompletionRequest request) {
+        return hedged(new Call<ChatCompletionResult>(
+            CHAT, request.getModel(), () -> openAiApi.createChatCompletion(request), ChatCompletionResult::getUsage));
+    }
+
+    public Mono<EmbeddingResult> createEmbeddings(EmbeddingRequest request) {
+        return hedged(new Call<EmbeddingResult>(
+            EMBEDDING, request.getModel(), () -> openAiApi.createEmbeddings(request), EmbeddingResult::getUsage));
+    }
+
+    private <T> Mono<T> hedged(Call<T> call) {
+        if (openAiApi == null) {
+            return Mono.error(new IllegalStateException("OpenAI API is not configured"));
+        }
+        return Mono.defer(() -> {
+            depositHedgeToken();
+            if (!properties.getEnabled()) {
+                return attempt(call, false);
+            }
+
+            String operation = call.operation();
+            Duration delay = hedgeDelay(operation);
+            AtomicBoolean hedgeSent = new AtomicBoolean();
+            Mono<Attempt<T>> primary = attempt(call, false).map(value -> new Attempt<>(value, false));
+            Mono<Attempt<T>> hedge = Mono.delay(delay)
+                .filter(tick -> withdrawHedgeToken(operation))
+                .doOnNext(tick -> hedgeSent.set(true))
+                .flatMap(tick -> attempt(call, true))
+                .map(value -> new Attempt<>(value, true))
+                .onErrorResume(error -> {
+                    log.debug("Hedged {} call failed: {}", operation, error.getMessage());
+                    return Mono.empty();
+                });
+
+            // 先返回的请求获胜，另一个请求被取消
+            return Flux.merge(primary, hedge)
+                .next()
+                .doOnNext(winner -> {
+                    if (winner.hedge()) {
+                        hedgeCounter(operation, "won").increment();
+                    } else if (hedgeSent.get()) {
+                        hedgeCounter(operation, "lost").increment();
+                    }
+                })
+                .map(Attempt::value);
+        });
+    }
+
+    /**
+     * One HTTP call. Disposing the RxJava subscription cancels the underlying OkHttp call.
+     */
+    private <T> Mono<T> attempt(Call<T> call, boolean hedge) {
+        String operation = call.operation();
+        return Mono.<T>create(sink -> {
+                LlmCallEvent event = LlmCallEvent.start(operation, call.model(), hedge);
+                long start = System.nanoTime();
+                // Retrofit 的同步适配器在 subscribe 中阻塞执行请求，须在此之前登记取消
+                call.request().get().subscribe(new SingleObserver<T>() {
+                    @Override
+                    public void onSubscribe(Disposable disposable) {
+                        sink.onCancel(() -> {
+                            event.cancelled();
+                            disposable.dispose();
+                        });
+                    }
+
+                    @Override
+                    public void onSuccess(T value) {
+                        long elapsed = System.nanoTime() - start;
+                        latencyWindow(operation).record(Duration.ofNanos(elapsed).toMillis());
+                        requestTimer(operation, "success").record(Duration.ofNanos(elapsed));
+                        event.succeeded(call.usage().apply(value));
+                        sink.success(value);
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        requestTimer(operation, "error").record(Duration.ofNanos(System.nanoTime() - start));
+                        event.failed(error);
+                        sink.error(error);
+                    }
+                });
+            })
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    Duration hedgeDelay(String operation) {
+        LatencyWindow window = latencyWindow(operation);
+        if (window.size() < properties.getMinSamples()) {
+            return Duration.ofMillis(properties.getInitialDelayMs());
+        }
+        return Duration.ofMillis(Math.max(properties.getMinDelayMs(), window.percentile()));
+    }
+
+    private synchronized void depositHedgeToken() {
+        hedgeTokens = Math.min(properties.getBudgetBurst(), hedgeTokens + properties.getBudgetRatio());
+    }
+
+    private boolean withdrawHedgeToken(String operation) {
+        synchronized (this) {
+            if (hedgeTokens >= 1) {
+                hedgeTokens -= 1;
+                hedgeCounter(operation, "sent").increment();
+                return true;
+            }
+        }
+        hedgeCounter(operation, "suppressed").increment();
+        return false;
+    }
+
+    private LatencyWindow latencyWindow(String operation) {
+        return latencies.computeIfAbsent(operation, key -> new LatencyWindow(LATENCY_WINDOW_SIZE, properties.getPercentile()));
+    }
+
+    private Timer requestTimer(String operation, String outcome) {
+        return Timer.builder(REQUEST_METER_NAME)
+            .description("Latency of individual OpenAI API calls, hedges included")
+            .tag("operation", operation)
+            .tag("outcome", outcome)
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .register(meterRegistry);
+    }
+
+    private Counter hedgeCounter(String operation, String outcome) {
+        return Counter.builder(HEDGE_METER_NAME)
+            .description("Hedged OpenAI API calls by outcome: sent, won or lost against the primary, or suppressed by the budget")
+            .tag("operation", operation)
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+
+    private record Call<T>(String operation, String model, Supplier<Single<T>> request, Function<T, Usage> usage) {}
+
+    private record Attempt<T>(T value, boolean hedge) {}
+}
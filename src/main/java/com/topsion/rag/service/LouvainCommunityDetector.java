@@ -0,0 +1,219 @@
+package com.topsion.rag.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Multi-level Louvain modularity optimisation over an undirected weighted graph.
+ * <p>
+ * Every level that merges at least two nodes is reported, finest first, as an array mapping each original
+ * node index to its community index at that level.
+ */
+public class LouvainCommunityDetector {
+
+    private static final double MIN_GAIN = 1e-10;
+
+    private final double resolution;
+    private final int maxLevels;
+    private final int maxPasses;
+    private final long seed;
+
+    public LouvainCommunityDetector(double resolution, int maxLevels) {
+        this(resolution, maxLevels, 20, 42L);
+    }
+
+    public LouvainCommunityDetector(double resolution, int maxLevels, int maxPasses, long seed) {
+        this.resolution = resolution;
+        this.maxLevels = maxLevels;
+        this.maxPasses = maxPasses;
+        this.seed = seed;
+    }
+
+    public List<int[]> detect(int nodeCount, int[] sources, int[] targets, double[] weights) {
+        List<int[]> levels = new ArrayList<>();
+        if (nodeCount == 0 || sources.length == 0) {
+            return levels;
+        }
+
+        Graph graph = Graph.fromEdges(nodeCount, sources, targets, weights);
+        int[] membership = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            membership[i] = i;
+        }
+
+        Random random = new Random(seed);
+        while (levels.size() < maxLevels) {
+            int[] community = moveNodes(graph, random);
+            int communityCount = renumber(community);
+            if (communityCount == graph.nodeCount) {
+                break;
+            }
+
+            int[] next = new int[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                next[i] = community[membership[i]];
+            }
+            levels.add(next);
+            membership = next;
+            graph = graph.aggregate(community, communityCount);
+        }
+        return levels;
+    }
+
+    private int[] moveNodes(Graph graph, Random random) {
+        int n = graph.nodeCount;
+        int[] community = new int[n];
+        double[] total = Arrays.copyOf(graph.degree, n);
+        for (int i = 0; i < n; i++) {
+            community[i] = i;
+        }
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+
+        double[] neighbourWeight = new double[n];
+        Arrays.fill(neighbourWeight, -1);
+        int[] neighbourCommunities = new int[n];
+
+        for (int pass = 0; pass < maxPasses; pass++) {
+            int moves = 0;
+            for (int node : order) {
+                int current = community[node];
+                double nodeDegree = graph.degree[node];
+
+                int neighbourCount = 0;
+                for (int e = graph.offsets[node]; e < graph.offsets[node + 1]; e++) {
+                    int neighbour = graph.neighbours[e];
+                    if (neighbour == node) {
+                        continue;
+                    }
+                    int c = community[neighbour];
+                    if (neighbourWeight[c] < 0) {
+                        neighbourWeight[c] = 0;
+                        neighbourCommunities[neighbourCount++] = c;
+                    }
+                    neighbourWeight[c] += graph.weights[e];
+                }
+
+                total[current] -= nodeDegree;
+                double ownWeight = Math.max(neighbourWeight[current], 0);
+                int best = current;
+                double bestGain = ownWeight - resolution * total[current] * nodeDegree / graph.totalWeight;
+                for (int k = 0; k < neighbourCount; k++) {
+                    int c = neighbourCommunities[k];
+                    double gain = neighbourWeight[c] - resolution * total[c] * nodeDegree / graph.totalWeight;
+                    if (gain > bestGain + MIN_GAIN) {
+                        best = c;
+                        bestGain = gain;
+                    }
+                }
+                total[best] += nodeDegree;
+                community[node] = best;
+                if (best != current) {
+                    moves++;
+                }
+
+                for (int k = 0; k < neighbourCount; k++) {
+                    neighbourWeight[neighbourCommunities[k]] = -1;
+                }
+            }
+            if (moves == 0) {
+                break;
+            }
+        }
+        return community;
+    }
+
+    private static int renumber(int[] community) {
+        Map<Integer, Integer> ids = new HashMap<>();
+        for (int i = 0; i < community.length; i++) {
+            community[i] = ids.computeIfAbsent(community[i], k -> ids.size());
+        }
+        return ids.size();
+    }
+
+    /**
+     * Compressed adjacency where every undirected edge appears in both rows and a self loop once.
+     */
+    private static final class Graph {
+
+        private final int nodeCount;
+        private final int[] offsets;
+        private final int[] neighbours;
+        private final double[] weights;
+        private final double[] degree;
+        private final double totalWeight;
+
+        private Graph(List<Map<Integer, Double>> rows) {
+            this.nodeCount = rows.size();
+            this.offsets = new int[nodeCount + 1];
+            for (int i = 0; i < nodeCount; i++) {
+                offsets[i + 1] = offsets[i] + rows.get(i).size();
+            }
+            this.neighbours = new int[offsets[nodeCount]];
+            this.weights = new double[offsets[nodeCount]];
+            this.degree = new double[nodeCount];
+
+            double sum = 0;
+            for (int i = 0; i < nodeCount; i++) {
+                int e = offsets[i];
+                for (Map.Entry<Integer, Double> entry : rows.get(i).entrySet()) {
+                    neighbours[e] = entry.getKey();
+                    weights[e] = entry.getValue();
+                    degree[i] += entry.getValue();
+                    e++;
+                }
+                sum += degree[i];
+            }
+            this.totalWeight = sum;
+        }
+
+        static Graph fromEdges(int nodeCount, int[] sources, int[] targets, double[] weights) {
+            List<Map<Integer, Double>> rows = emptyRows(nodeCount);
+            for (int e = 0; e < sources.length; e++) {
+                int s = sources[e];
+                int t = targets[e];
+                double w = weights[e];
+                if (w <= 0) {
+                    continue;
+                }
+                rows.get(s).merge(t, w, Double::sum);
+                if (s != t) {
+                    rows.get(t).merge(s, w, Double::sum);
+                }
+            }
+            return new Graph(rows);
+        }
+
+        Graph aggregate(int[] community, int communityCount) {
+            List<Map<Integer, Double>> rows = emptyRows(communityCount);
+            for (int i = 0; i < nodeCount; i++) {
+                Map<Integer, Double> row = rows.get(community[i]);
+                for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                    row.merge(community[neighbours[e]], weights[e], Double::sum);
+                }
+            }
+            return new Graph(rows);
+        }
+
+        private static List<Map<Integer, Double>> emptyRows(int count) {
+            List<Map<Integer, Double>> rows = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                rows.add(new HashMap<>());
+            }
+            return rows;
+        }
+    }
+}
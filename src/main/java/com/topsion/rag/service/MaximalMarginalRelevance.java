@@ -0,0 +1,75 @@
+package com.topsion.rag.service;
+
+import com.topsion.rag.repository.projection.ChunkContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Greedy maximal-marginal-relevance selection.
+ * <p>
+ * Each step picks the candidate maximising {@code lambda * sim(query, c) - (1 - lambda) * max sim(c, s)} over
+ * the chunks {@code s} already selected, so near-duplicates of a selected chunk (e.g. overlapping neighbours)
+ * lose to slightly less similar but new text. {@code lambda = 1} keeps the similarity order.
+ */
+public final class MaximalMarginalRelevance {
+
+    private MaximalMarginalRelevance() {}
+
+    public static List<ChunkContext> select(List<ChunkContext> candidates, Map<Long, float[]> embeddings, int limit, double lambda) {
+        if (candidates.size() <= limit || lambda >= 1.0) {
+            return candidates.stream().limit(limit).toList();
+        }
+
+        int n = candidates.size();
+        float[][] vectors = new float[n][];
+        double[] norms = new double[n];
+        for (int i = 0; i < n; i++) {
+            vectors[i] = embeddings.get(candidates.get(i).id());
+            norms[i] = vectors[i] != null ? norm(vectors[i]) : 0;
+        }
+
+        // 每个候选与已选片段的最大相似度
+        double[] redundancy = new double[n];
+        boolean[] selected = new boolean[n];
+        List<ChunkContext> result = new ArrayList<>(limit);
+        while (result.size() < limit) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (selected[i]) {
+                    continue;
+                }
+                double score = lambda * candidates.get(i).similarity() - (1 - lambda) * redundancy[i];
+                if (score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            selected[best] = true;
+            result.add(candidates.get(best));
+
+            if (vectors[best] == null || norms[best] == 0) {
+                continue;
+            }
+            for (int i = 0; i < n; i++) {
+                if (!selected[i] && vectors[i] != null && norms[i] != 0) {
+                    redundancy[i] = Math.max(redundancy[i], dot(vectors[i], vectors[best]) / (norms[i] * norms[best]));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            sum += (double) a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static double norm(float[] vector) {
+        return Math.sqrt(dot(vector, vector));
+    }
+}
@@ -0,0 +1,267 @@
+package com.topsion.rag.service;
+
+import com.topsion.rag.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+/**
+ * Admission control for knowledge-base queries.
+ * <p>
+ * At most {@code maxConcurrent} queries run at once. Further queries wait in per-user FIFO queues that are
+ * served round-robin, so one user flooding the endpoint cannot starve the others. A query is rejected
+ * instead of queued when the queue is full, when its user already has {@code maxQueuedPerUser} queries
+ * waiting, or when the expected wait (queue position times the observed average query time) exceeds the
+ * queue timeout; a queued query that is still waiting when the timeout elapses is rejected as well.
+ */
+@Service
+public class QueryAdmissionService {
+
+    public static final String QUEUED_METER_NAME = "query.admission.queued";
+    public static final String ACTIVE_METER_NAME = "query.admission.active";
+    public static final String REJECTED_METER_NAME = "query.admission.rejected";
+    public static final String WAIT_METER_NAME = "query.admission.wait";
+
+    static final String REASON_QUEUE_FULL = "queue-full";
+    static final String REASON_USER_LIMIT = "user-limit";
+    static final String REASON_SLO = "slo";
+    static final String REASON_TIMEOUT = "timeout";
+
+    private static final double SERVICE_TIME_WEIGHT = 0.2;
+
+    private final Logger log = LoggerFactory.getLogger(QueryAdmissionService.class);
+
+    private final int maxConcurrent;
+    private final int maxQueueSize;
+    private final int maxQueuedPerUser;
+    private final Duration queueTimeout;
+    private final Map<String, Deque<Waiter>> queues = new LinkedHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final Timer waitTimer;
+    private int active;
+    private int queued;
+    private double averageServiceNanos;
+
+    public QueryAdmissionService(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        ApplicationProperties.Admission properties = applicationProperties.getAdmission();
+        this.maxConcurrent = properties.getMaxConcurrent();
+        this.maxQueueSize = properties.getMaxQueueSize();
+        this.maxQueuedPerUser = properties.getMaxQueuedPerUser();
+        this.queueTimeout = Duration.ofMillis(properties.getQueueTimeoutMs());
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder(QUEUED_METER_NAME, this, QueryAdmissionService::getQueued)
+            .description("Queries waiting for admission")
+            .register(meterRegistry);
+        Gauge.builder(ACTIVE_METER_NAME, this, QueryAdmissionService::getActive)
+            .description("Queries currently admitted")
+            .register(meterRegistry);
+        this.waitTimer = Timer.builder(WAIT_METER_NAME)
+            .description("Time admitted queries spent waiting in the queue")
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .register(meterRegistry);
+        for (String reason : new String[] { REASON_QUEUE_FULL, REASON_USER_LIMIT, REASON_SLO, REASON_TIMEOUT }) {
+            rejectedCounter(reason);
+        }
+    }
+
+    /**
+     * Runs {@code work} once admitted. Fails with {@link AdmissionRejectedException} if the query is shed.
+     */
+    public <T> Mono<T> admit(String user, Supplier<Mono<T>> work) {
+        return Mono.defer(() -> {
+            long enqueuedAt = System.nanoTime();
+            return acquire(user)
+                .then(Mono.defer(() -> {
+                    long admittedAt = System.nanoTime();
+                    waitTimer.record(Duration.ofNanos(admittedAt - enqueuedAt));
+                    return Mono.defer(work).doFinally(signal -> release(System.nanoTime() - admittedAt));
+                }));
+        });
+    }
+
+    private Mono<Void> acquire(String user) {
+        Waiter waiter = new Waiter(user);
+        return Mono.<Void>create(sink -> {
+            AdmissionRejectedException rejection = null;
+            boolean admitted = false;
+            synchronized (this) {
+                if (active < maxConcurrent && queued == 0) {
+                    active++;
+                    admitted = true;
+                } else {
+                    Deque<Waiter> queue = queues.get(user);
+                    Duration expectedWait = expectedWait(queued + 1);
+                    if (queued >= maxQueueSize) {
+                        rejection = reject(REASON_QUEUE_FULL, expectedWait);
+                    } else if (queue != null && queue.size() >= maxQueuedPerUser) {
+                        rejection = reject(REASON_USER_LIMIT, expectedWait);
+                    } else if (expectedWait.compareTo(queueTimeout) > 0) {
+                        rejection = reject(REASON_SLO, expectedWait);
+                    } else {
+                        waiter.sink = sink;
+                        queues.computeIfAbsent(user, key -> new ArrayDeque<>()).addLast(waiter);
+                        queued++;
+                    }
+                }
+            }
+            if (admitted) {
+                sink.success();
+            } else if (rejection != null) {
+                sink.error(rejection);
+            } else {
+                sink.onCancel(() -> abandon(waiter));
+            }
+        })
+        .timeout(queueTimeout)
+        .onErrorMap(TimeoutException.class, error -> {
+            synchronized (this) {
+                return reject(REASON_TIMEOUT, expectedWait(queued));
+            }
+        });
+    }
+
+    private void release(long serviceNanos) {
+        Waiter next;
+        synchronized (this) {
+            if (serviceNanos > 0) {
+                averageServiceNanos = averageServiceNanos == 0
+                    ? serviceNanos
+                    : SERVICE_TIME_WEIGHT * serviceNanos + (1 - SERVICE_TIME_WEIGHT) * averageServiceNanos;
+            }
+            next = pollNext();
+            if (next == null) {
+                active--;
+            }
+        }
+        if (next != null) {
+            next.sink.success();
+        }
+    }
+
+    /**
+     * Removes a waiter whose subscriber went away. If it was granted a slot at the same time, the slot is
+     * passed on.
+     */
+    private void abandon(Waiter waiter) {
+        boolean granted;
+        synchronized (this) {
+            granted = waiter.state.get() == Waiter.GRANTED;
+            if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.ABANDONED)) {
+                Deque<Waiter> queue = queues.get(waiter.user);
+                if (queue != null && queue.remove(waiter)) {
+                    queued--;
+                    if (queue.isEmpty()) {
+                        queues.remove(waiter.user);
+                    }
+                }
+            }
+        }
+        if (granted) {
+            release(0);
+        }
+    }
+
+    /**
+     * Takes the head of the first user's queue and moves that user to the back of the rotation. Must be
+     * called holding the lock.
+     */
+    private Waiter pollNext() {
+        while (!queues.isEmpty()) {
+            String user = queues.keySet().iterator().next();
+            Deque<Waiter> queue = queues.remove(user);
+            Waiter waiter = queue.pollFirst();
+            if (!queue.isEmpty()) {
+                queues.put(user, queue);
+            }
+            if (waiter == null) {
+                continue;
+            }
+            queued--;
+            if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.GRANTED)) {
+                return waiter;
+            }
+        }
+        return null;
+    }
+
+    private Duration expectedWait(int position) {
+        return Duration.ofNanos((long) Math.ceil((double) position / maxConcurrent * averageServiceNanos));
+    }
+
+    private AdmissionRejectedException reject(String reason, Duration expectedWait) {
+        rejectedCounter(reason).increment();
+        log.debug("Rejected query ({}), {} active and {} queued", reason, active, queued);
+        Duration retryAfter = expectedWait.compareTo(Duration.ofSeconds(1)) < 0 ? Duration.ofSeconds(1) : expectedWait;
+        return new AdmissionRejectedException(reason, retryAfter);
+    }
+
+    private Counter rejectedCounter(String reason) {
+        return Counter.builder(REJECTED_METER_NAME)
+            .description("Queries shed by admission control")
+            .tag("reason", reason)
+            .register(meterRegistry);
+    }
+
+    synchronized int getQueued() {
+        return queued;
+    }
+
+    synchronized int getActive() {
+        return active;
+    }
+
+    private static final class Waiter {
+
+        static final int WAITING = 0;
+        static final int GRANTED = 1;
+        static final int ABANDONED = 2;
+
+        private final String user;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private MonoSink<Void> sink;
+
+        Waiter(String user) {
+            this.user = user;
+        }
+    }
+
+    /**
+     * Thrown when a query is shed; {@link #getRetryAfter()} is the expected time until capacity frees up.
+     */
+    public static class AdmissionRejectedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String reason;
+        private final Duration retryAfter;
+
+        public AdmissionRejectedException(String reason, Duration retryAfter) {
+            super("Query rejected by admission control: " + reason);
+            this.reason = reason;
+            this.retryAfter = retryAfter;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.topsion.rag.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.topsion.rag.domain.QueryRollup;
+import com.topsion.rag.repository.QueryRollupRepository;
+import jakarta.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Maintains hourly and daily query rollups.
+ * <p>
+ * Completed queries and feedback are accumulated in memory per bucket and merged into the persisted
+ * {@link QueryRollup} nodes on a fixed delay, so analytics never scan {@code QueryHistory}. Several instances
+ * may flush the same bucket: buckets are unique per (granularity, bucket start) and versioned, and a merge
+ * that loses a race is read and applied again.
+ */
+@Service
+public class QueryAnalyticsService {
+
+    public static final String HOUR = "HOUR";
+    public static final String DAY = "DAY";
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final int MAX_MERGE_ATTEMPTS = 5;
+
+    private final Logger log = LoggerFactory.getLogger(QueryAnalyticsService.class);
+
+    private final QueryRollupRepository queryRollupRepository;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ConcurrentMap<BucketKey, Accumulator> pending = new ConcurrentHashMap<>();
+
+    public QueryAnalyticsService(QueryRollupRepository queryRollupRepository) {
+        this.queryRollupRepository = queryRollupRepository;
+    }
+
+    public void recordQuery(Instant completedAt, long responseTimeMs, boolean cacheHit) {
+        for (String granularity : List.of(HOUR, DAY)) {
+            pending.compute(new BucketKey(granularity, bucketStart(granularity, completedAt)), (key, accumulator) -> {
+                Accumulator target = accumulator != null ? accumulator : new Accumulator();
+                target.addQuery(responseTimeMs, cacheHit);
+                return target;
+            });
+        }
+    }
+
+    /**
+     * Counts feedback in the buckets of the query it belongs to, replacing any earlier feedback on that query.
+     */
+    public void recordFeedback(Instant queryCreatedDate, String previousFeedback, String feedback) {
+        if (queryCreatedDate == null) {
+            return;
+        }
+        for (String granularity : List.of(HOUR, DAY)) {
+            pending.compute(new BucketKey(granularity, bucketStart(granularity, queryCreatedDate)), (key, accumulator) -> {
+                Accumulator target = accumulator != null ? accumulator : new Accumulator();
+                if (previousFeedback != null) {
+                    target.feedbackCounts.merge(previousFeedback, -1L, Long::sum);
+                }
+                if (feedback != null) {
+                    target.feedbackCounts.merge(feedback, 1L, Long::sum);
+                }
+                return target;
+            });
+        }
+    }
+
+    @Scheduled(
+        initialDelayString = "${application.analytics.flush-interval-ms:10000}",
+        fixedDelayString = "${application.analytics.flush-interval-ms:10000}"
+    )
+    public void scheduledFlush() {
+        flush().block();
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush().block();
+    }
+
+    public Mono<Void> flush() {
+        return Flux.fromIterable(new ArrayList<>(pending.keySet()))
+            .concatMap(key -> {
+                Accumulator accumulator = pending.remove(key);
+                return accumulator == null ? Mono.empty() : persist(key, accumulator);
+            })
+            .then();
+    }
+
+    private Mono<QueryRollup> persist(BucketKey key, Accumulator delta) {
+        return Mono.defer(() ->
+                queryRollupRepository.findBucket(key.granularity(), key.bucketStart())
+                    .defaultIfEmpty(
+                        new QueryRollup()
+                            .granularity(key.granularity())
+                            .bucketStart(key.bucketStart())
+                            .queryCount(0L)
+                            .totalResponseTimeMs(0L)
+                            .cacheHitCount(0L)
+                    )
+                    .map(rollup -> merge(rollup, delta))
+                    .flatMap(queryRollupRepository::save)
+            )
+            // 版本冲突或另一个实例先创建了该桶：重新读取后再合并
+            .retryWhen(Retry.backoff(MAX_MERGE_ATTEMPTS - 1, Duration.ofMillis(20))
+                .filter(error -> error instanceof OptimisticLockingFailureException || error instanceof DataIntegrityViolationException))
+            .onErrorResume(error -> {
+                log.warn("Failed to persist {} rollup for {}, keeping it for the next flush: {}",
+                    key.granularity(), key.bucketStart(), error.getMessage());
+                pending.merge(key, delta, Accumulator::mergeFrom);
+                return Mono.empty();
+            });
+    }
+
+    private QueryRollup merge(QueryRollup rollup, Accumulator delta) {
+        rollup.setQueryCount(rollup.getQueryCount() + delta.queryCount);
+        rollup.setTotalResponseTimeMs(rollup.getTotalResponseTimeMs() + delta.totalResponseTimeMs);
+        rollup.setCacheHitCount(rollup.getCacheHitCount() + delta.cacheHitCount);
+        if (delta.queryCount > 0) {
+            rollup.setMinResponseTimeMs(rollup.getMinResponseTimeMs() == null
+                ? delta.minResponseTimeMs : Math.min(rollup.getMinResponseTimeMs(), delta.minResponseTimeMs));
+            rollup.setMaxResponseTimeMs(rollup.getMaxResponseTimeMs() == null
+                ? delta.maxResponseTimeMs : Math.max(rollup.getMaxResponseTimeMs(), delta.maxResponseTimeMs));
+
+            Histogram histogram = decodeHistogram(rollup.getLatencyHistogram());
+            histogram.add(delta.histogram);
+            rollup.setLatencyHistogram(encodeHistogram(histogram));
+        }
+        if (!delta.feedbackCounts.isEmpty()) {
+            Map<String, Long> feedbackCounts = readFeedbackCounts(rollup.getFeedbackCounts());
+            delta.feedbackCounts.forEach((feedback, count) -> feedbackCounts.merge(feedback, count, Long::sum));
+            feedbackCounts.values().removeIf(count -> count <= 0);
+            rollup.setFeedbackCounts(writeFeedbackCounts(feedbackCounts));
+        }
+        rollup.setLastModifiedDate(Instant.now());
+        return rollup;
+    }
+
+    public Flux<RollupSummary> getRollups(String granularity, Instant from, Instant to) {
+        return queryRollupRepository.findBuckets(granularity, bucketStart(granularity, from), to)
+            .map(rollup -> summarize(rollup.getBucketStart(), rollup.getGranularity(), List.of(rollup)));
+    }
+
+    /**
+     * Merges all buckets of the range into one summary, with percentiles over the combined histogram.
+     */
+    public Mono<RollupSummary> getSummary(String granularity, Instant from, Instant to) {
+        Instant start = bucketStart(granularity, from);
+        return queryRollupRepository.findBuckets(granularity, start, to)
+            .collectList()
+            .map(rollups -> summarize(start, granularity, rollups));
+    }
+
+    private RollupSummary summarize(Instant bucketStart, String granularity, List<QueryRollup> rollups) {
+        Histogram histogram = new Histogram(SIGNIFICANT_DIGITS);
+        Map<String, Long> feedbackCounts = new LinkedHashMap<>();
+        long queryCount = 0;
+        long totalResponseTime = 0;
+        long cacheHits = 0;
+        Long min = null;
+        Long max = null;
+        for (QueryRollup rollup : rollups) {
+            queryCount += rollup.getQueryCount() != null ? rollup.getQueryCount() : 0;
+            totalResponseTime += rollup.getTotalResponseTimeMs() != null ? rollup.getTotalResponseTimeMs() : 0;
+            cacheHits += rollup.getCacheHitCount() != null ? rollup.getCacheHitCount() : 0;
+            if (rollup.getMinResponseTimeMs() != null) {
+                min = min == null ? rollup.getMinResponseTimeMs() : Math.min(min, rollup.getMinResponseTimeMs());
+            }
+            if (rollup.getMaxResponseTimeMs() != null) {
+                max = max == null ? rollup.getMaxResponseTimeMs() : Math.max(max, rollup.getMaxResponseTimeMs());
+            }
+            histogram.add(decodeHistogram(rollup.getLatencyHistogram()));
+            readFeedbackCounts(rollup.getFeedbackCounts()).forEach((feedback, count) -> feedbackCounts.merge(feedback, count, Long::sum));
+        }
+
+        boolean empty = histogram.getTotalCount() == 0;
+        return new RollupSummary(
+            bucketStart,
+            granularity,
+            queryCount,
+            queryCount > 0 ? (double) totalResponseTime / queryCount : 0.0,
+            min,
+            max,
+            empty ? null : histogram.getValueAtPercentile(50),
+            empty ? null : histogram.getValueAtPercentile(95),
+            empty ? null : histogram.getValueAtPercentile(99),
+            queryCount > 0 ? (double) cacheHits / queryCount : 0.0,
+            feedbackCounts
+        );
+    }
+
+    static Instant bucketStart(String granularity, Instant instant) {
+        return instant.truncatedTo(DAY.equals(granularity) ? ChronoUnit.DAYS : ChronoUnit.HOURS);
+    }
+
+    static String encodeHistogram(Histogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        return Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), length));
+    }
+
+    static Histogram decodeHistogram(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return new Histogram(SIGNIFICANT_DIGITS);
+        }
+        try {
+            Histogram histogram = Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(Base64.getDecoder().decode(encoded)), 0);
+            histogram.setAutoResize(true);
+            return histogram;
+        } catch (Exception e) {
+            throw new IllegalStateException("Corrupt latency histogram", e);
+        }
+    }
+
+    private Map<String, Long> readFeedbackCounts(String json) {
+        if (json == null || json.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+        try {
+            return objectMapper.readValue(json, new TypeReference<LinkedHashMap<String, Long>>() {});
+        } catch (Exception e) {
+            log.warn("Failed to read feedback counts: {}", e.getMessage());
+            return new LinkedHashMap<>();
+        }
+    }
+
+    private String writeFeedbackCounts(Map<String, Long> feedbackCounts) {
+        try {
+            return objectMapper.writeValueAsString(feedbackCounts);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to write feedback counts", e);
+        }
+    }
+
+    private static final class Accumulator {
+
+        private final Histogram histogram = new Histogram(SIGNIFICANT_DIGITS);
+        private final Map<String, Long> feedbackCounts = new LinkedHashMap<>();
+        private long queryCount;
+        private long totalResponseTimeMs;
+        private long minResponseTimeMs = Long.MAX_VALUE;
+        private long maxResponseTimeMs;
+        private long cacheHitCount;
+
+        void addQuery(long responseTimeMs, boolean cacheHit) {
+            long value = Math.max(responseTimeMs, 0);
+            histogram.recordValue(value);
+            queryCount++;
+            totalResponseTimeMs += value;
+            minResponseTimeMs = Math.min(minResponseTimeMs, value);
+            maxResponseTimeMs = Math.max(maxResponseTimeMs, value);
+            if (cacheHit) {
+                cacheHitCount++;
+            }
+        }
+
+        Accumulator mergeFrom(Accumulator other) {
+            histogram.add(other.histogram);
+            other.feedbackCounts.forEach((feedback, count) -> feedbackCounts.merge(feedback, count, Long::sum));
+            queryCount += other.queryCount;
+            totalResponseTimeMs += other.totalResponseTimeMs;
+            minResponseTimeMs = Math.min(minResponseTimeMs, other.minResponseTimeMs);
+            maxResponseTimeMs = Math.max(maxResponseTimeMs, other.maxResponseTimeMs);
+            cacheHitCount += other.cacheHitCount;
+            return this;
+        }
+    }
+
+    record BucketKey(String granularity, Instant bucketStart) {}
+
+    public record RollupSummary(
+        Instant bucketStart,
+        String granularity,
+        long queryCount,
+        double averageResponseTimeMs,
+        Long minResponseTimeMs,
+        Long maxResponseTimeMs,
+        Long p50ResponseTimeMs,
+        Long p95ResponseTimeMs,
+        Long p99ResponseTimeMs,
+        double cacheHitRatio,
+        Map<String, Long> feedbackCounts
+    ) {}
+}
@@ -0,0 +1,31 @@
+package com.topsion.rag.service;
+
+import java.time.Duration;
+
+/**
+ * Point in time by which a query must be answered, shared by all of its stages.
+ */
+public record QueryDeadline(long deadlineNanos) {
+    public static QueryDeadline after(Duration budget) {
+        return new QueryDeadline(System.nanoTime() + budget.toNanos());
+    }
+
+    /**
+     * Time left, never negative.
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * Time left once {@code reserve} is set aside for later stages, never negative.
+     */
+    public Duration remainingBefore(Duration reserve) {
+        Duration remaining = remaining().minus(reserve);
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+}
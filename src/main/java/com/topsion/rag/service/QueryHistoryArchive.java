@@ -0,0 +1,238 @@
+package com.topsion.rag.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.topsion.rag.domain.QueryHistory;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only archive of query histories on local disk.
+ * <p>
+ * Every {@link #append} writes one immutable gzip-compressed NDJSON segment and then appends one line per
+ * (segment, session) to {@code index.tsv} with the segment's date range for that session. The index is kept
+ * in memory, so a lookup only decompresses the segments that can contain the session asked for. A segment
+ * that is not in the index (e.g. after a crash before the index was written) is ignored.
+ */
+public class QueryHistoryArchive {
+
+    private static final String INDEX_FILE = "index.tsv";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".jsonl.gz";
+
+    private final Path directory;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, List<IndexEntry>> indexBySession = new HashMap<>();
+    private int nextSegment;
+
+    public QueryHistoryArchive(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+            loadIndex();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open query history archive " + directory, e);
+        }
+    }
+
+    public synchronized void append(List<QueryHistory> histories) throws IOException {
+        if (histories.isEmpty()) {
+            return;
+        }
+        String segment = String.format("%s%08d%s", SEGMENT_PREFIX, nextSegment++, SEGMENT_SUFFIX);
+        Path temp = directory.resolve(segment + ".tmp");
+        Map<String, IndexEntry> entries = new LinkedHashMap<>();
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel));
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8));
+            for (QueryHistory history : histories) {
+                ArchivedQuery record = ArchivedQuery.of(history);
+                writer.write(objectMapper.writeValueAsString(record));
+                writer.newLine();
+                String session = record.sessionId() != null ? record.sessionId() : "";
+                entries.merge(
+                    session,
+                    new IndexEntry(segment, session, record.createdDate(), record.createdDate(), 1),
+                    IndexEntry::merge
+                );
+            }
+            writer.flush();
+            gzip.finish();
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(segment), StandardCopyOption.ATOMIC_MOVE);
+
+        try (FileChannel channel = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            StringBuilder lines = new StringBuilder();
+            entries.values().forEach(entry -> lines.append(entry.toLine()).append('\n'));
+            channel.write(StandardCharsets.UTF_8.encode(lines.toString()));
+            channel.force(true);
+        }
+        entries.values().forEach(this::addToIndex);
+    }
+
+    /**
+     * Archived histories of a session, newest first.
+     */
+    public synchronized List<QueryHistory> findBySession(String sessionId, int limit) throws IOException {
+        List<IndexEntry> entries = new ArrayList<>(indexBySession.getOrDefault(sessionId, List.of()));
+        entries.sort(Comparator.comparingLong(IndexEntry::maxCreated).reversed());
+        return read(entries, limit, record -> sessionId.equals(record.sessionId()));
+    }
+
+    private List<QueryHistory> read(List<IndexEntry> entries, int limit, Predicate<ArchivedQuery> filter) throws IOException {
+        List<ArchivedQuery> matches = new ArrayList<>();
+        Set<String> readSegments = new HashSet<>();
+        // 归档后、删除节点前中断会导致同一记录被再次归档
+        Set<String> seen = new HashSet<>();
+        Long oldestMatch = null;
+        for (IndexEntry entry : entries) {
+            // 条目按最新时间倒序排列，已经找够且该段不可能包含更新的记录时停止
+            if (matches.size() >= limit && oldestMatch != null && entry.maxCreated() < oldestMatch) {
+                break;
+            }
+            if (!readSegments.add(entry.segment())) {
+                continue;
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(directory.resolve(entry.segment()))), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    ArchivedQuery record = objectMapper.readValue(line, ArchivedQuery.class);
+                    if (filter.test(record) && seen.add(record.id() + "@" + record.createdDate())) {
+                        matches.add(record);
+                    }
+                }
+            }
+            matches.sort(Comparator.comparingLong(ArchivedQuery::createdDate).reversed());
+            if (matches.size() > limit) {
+                matches.subList(limit, matches.size()).clear();
+            }
+            if (!matches.isEmpty()) {
+                oldestMatch = matches.get(matches.size() - 1).createdDate();
+            }
+        }
+        return matches.stream().map(ArchivedQuery::toQueryHistory).toList();
+    }
+
+    private void loadIndex() throws IOException {
+        Path indexFile = directory.resolve(INDEX_FILE);
+        if (Files.exists(indexFile)) {
+            for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    addToIndex(IndexEntry.parse(line));
+                }
+            }
+        }
+        try (var segments = Files.list(directory)) {
+            nextSegment = segments
+                .map(path -> path.getFileName().toString())
+                .filter(name -> name.startsWith(SEGMENT_PREFIX))
+                .map(name -> name.substring(SEGMENT_PREFIX.length(), SEGMENT_PREFIX.length() + 8))
+                .mapToInt(Integer::parseInt)
+                .max()
+                .orElse(-1) + 1;
+        }
+    }
+
+    private void addToIndex(IndexEntry entry) {
+        indexBySession.computeIfAbsent(entry.sessionId(), key -> new ArrayList<>()).add(entry);
+    }
+
+    record IndexEntry(String segment, String sessionId, long minCreated, long maxCreated, int count) {
+        IndexEntry merge(IndexEntry other) {
+            return new IndexEntry(
+                segment,
+                sessionId,
+                Math.min(minCreated, other.minCreated),
+                Math.max(maxCreated, other.maxCreated),
+                count + other.count
+            );
+        }
+
+        String toLine() {
+            return String.join("\t", segment, URLEncoder.encode(sessionId, StandardCharsets.UTF_8),
+                Long.toString(minCreated), Long.toString(maxCreated), Integer.toString(count));
+        }
+
+        static IndexEntry parse(String line) {
+            String[] fields = line.split("\t", -1);
+            return new IndexEntry(
+                fields[0],
+                URLDecoder.decode(fields[1], StandardCharsets.UTF_8),
+                Long.parseLong(fields[2]),
+                Long.parseLong(fields[3]),
+                Integer.parseInt(fields[4])
+            );
+        }
+    }
+
+    record ArchivedQuery(
+        Long id,
+        String queryId,
+        String question,
+        String answer,
+        String contextChunks,
+        Long responseTimeMs,
+        String userFeedback,
+        String sessionId,
+        long createdDate,
+        String trace
+    ) {
+        static ArchivedQuery of(QueryHistory history) {
+            Instant createdDate = history.getCreatedDate() != null ? history.getCreatedDate() : Instant.EPOCH;
+            return new ArchivedQuery(
+                history.getId(),
+                history.getQueryId(),
+                history.getQuestion(),
+                history.getAnswer(),
+                history.getContextChunks(),
+                history.getResponseTimeMs(),
+                history.getUserFeedback(),
+                history.getSessionId(),
+                createdDate.toEpochMilli(),
+                history.getTrace()
+            );
+        }
+
+        QueryHistory toQueryHistory() {
+            QueryHistory history = new QueryHistory()
+                .id(id)
+                .queryId(queryId)
+                .question(question)
+                .answer(answer)
+                .contextChunks(contextChunks)
+                .responseTimeMs(responseTimeMs)
+                .userFeedback(userFeedback)
+                .sessionId(sessionId)
+                .trace(trace);
+            history.setCreatedDate(Instant.ofEpochMilli(createdDate));
+            return history;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.topsion.rag.service;
+
+import com.topsion.rag.config.ApplicationProperties;
+import com.topsion.rag.domain.QueryHistory;
+import com.topsion.rag.repository.QueryHistoryRepository;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Moves query histories older than {@code application.history.retention-days} from Neo4j into the
+ * compressed {@link QueryHistoryArchive}, and reads them back for history lookups and reports.
+ * <p>
+ * Each batch is written and indexed on disk before its nodes are deleted, so a failure in between leaves
+ * the history in the graph to be archived again on the next run.
+ */
+@Service
+public class QueryHistoryArchiveService {
+
+    private final Logger log = LoggerFactory.getLogger(QueryHistoryArchiveService.class);
+
+    private final QueryHistoryRepository queryHistoryRepository;
+    private final ApplicationProperties applicationProperties;
+    private final QueryHistoryArchive archive;
+
+    public QueryHistoryArchiveService(QueryHistoryRepository queryHistoryRepository, ApplicationProperties applicationProperties) {
+        this.queryHistoryRepository = queryHistoryRepository;
+        this.applicationProperties = applicationProperties;
+        this.archive = new QueryHistoryArchive(Paths.get(applicationProperties.getHistory().getArchiveDirectory()));
+    }
+
+    @Scheduled(
+        initialDelayString = "${application.history.archive-interval-ms:3600000}",
+        fixedDelayString = "${application.history.archive-interval-ms:3600000}"
+    )
+    public void scheduledArchive() {
+        Integer retentionDays = applicationProperties.getHistory().getRetentionDays();
+        if (retentionDays == null || retentionDays <= 0) {
+            return;
+        }
+        long archived = archiveCreatedBefore(Instant.now().minus(retentionDays, ChronoUnit.DAYS)).block();
+        if (archived > 0) {
+            log.info("Archived {} query histories older than {} days", archived, retentionDays);
+        }
+    }
+
+    public Mono<Long> archiveCreatedBefore(Instant cutoff) {
+        int batchSize = applicationProperties.getHistory().getArchiveBatchSize();
+        return archiveBatch(cutoff, batchSize)
+            .expand(archived -> archived < batchSize ? Mono.empty() : archiveBatch(cutoff, batchSize))
+            .reduce(0L, Long::sum);
+    }
+
+    private Mono<Long> archiveBatch(Instant cutoff, int batchSize) {
+        return queryHistoryRepository.findCreatedBefore(cutoff, batchSize)
+            .collectList()
+            .flatMap(histories -> {
+                if (histories.isEmpty()) {
+                    return Mono.just(0L);
+                }
+                List<Long> ids = histories.stream().map(QueryHistory::getId).toList();
+                return Mono.fromCallable(() -> {
+                        archive.append(histories);
+                        return histories.size();
+                    })
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .then(queryHistoryRepository.deleteAllById(ids))
+                    .thenReturn((long) histories.size());
+            });
+    }
+
+    /**
+     * Archived histories of a session, newest first.
+     */
+    public Flux<QueryHistory> findBySession(String sessionId, int limit) {
+        return Mono.fromCallable(() -> archive.findBySession(sessionId, limit))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMapIterable(histories -> histories);
+    }
+}
@@ -0,0 +1,259 @@
+package com.topsion.rag.service;
+
+import com.topsion.rag.config.ApplicationProperties;
+import com.topsion.rag.domain.QueryHistory;
+import com.topsion.rag.repository.QueryHistoryRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Write-behind buffer for {@link QueryHistory}.
+ * <p>
+ * Histories are appended to a bounded in-memory queue and inserted in {@code UNWIND} batches when a batch
+ * fills up or the flush interval elapses, so answering a query never waits for Neo4j. When the queue is
+ * full the configured overflow policy decides which history is dropped:
+ * <ul>
+ *     <li>{@code DROP_OLDEST} evicts the oldest buffered history to make room for the new one;</li>
+ *     <li>{@code DROP_NEWEST} rejects the new history.</li>
+ * </ul>
+ * Dropped histories are counted by the {@value #DROPPED_METER_NAME} meter. The queue is drained on shutdown.
+ * <p>
+ * Every history gets a {@link QueryHistory#getQueryId() query id} when it is appended, so it can be found
+ * and given feedback before it is persisted. A batch stays visible as pending until its insert completes.
+ */
+@Service
+public class QueryHistoryWriter {
+
+    public static final String DROPPED_METER_NAME = "query.history.dropped";
+    public static final String BUFFERED_METER_NAME = "query.history.buffered";
+    public static final String WRITTEN_METER_NAME = "query.history.written";
+
+    private static final String DROP_NEWEST = "DROP_NEWEST";
+    private static final Duration SHUTDOWN_DRAIN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final Logger log = LoggerFactory.getLogger(QueryHistoryWriter.class);
+
+    private final QueryHistoryRepository queryHistoryRepository;
+    private final BlockingQueue<QueryHistory> buffer;
+    private final int batchSize;
+    private final boolean dropNewest;
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    // 保护从缓冲区取出批次与登记 inFlight 之间的状态，以及对待写入记录的修改
+    private final Object lock = new Object();
+    private InFlight inFlight;
+    private final Counter droppedCounter;
+    private final Counter writeFailedCounter;
+    private final Counter writtenCounter;
+
+    public QueryHistoryWriter(
+        QueryHistoryRepository queryHistoryRepository,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
+        ApplicationProperties.History properties = applicationProperties.getHistory();
+        this.queryHistoryRepository = queryHistoryRepository;
+        this.buffer = new ArrayBlockingQueue<>(properties.getBufferCapacity());
+        this.batchSize = properties.getBatchSize();
+        this.dropNewest = DROP_NEWEST.equalsIgnoreCase(properties.getOverflowPolicy());
+
+        String policy = dropNewest ? "drop-newest" : "drop-oldest";
+        this.droppedCounter = Counter.builder(DROPPED_METER_NAME)
+            .description("Query histories discarded because the write-behind buffer was full")
+            .tag("policy", policy)
+            .tag("cause", "overflow")
+            .register(meterRegistry);
+        this.writeFailedCounter = Counter.builder(DROPPED_METER_NAME)
+            .description("Query histories discarded because re-buffering a failed write overflowed the buffer")
+            .tag("policy", policy)
+            .tag("cause", "write-failed")
+            .register(meterRegistry);
+        this.writtenCounter = Counter.builder(WRITTEN_METER_NAME)
+            .description("Query histories persisted by the write-behind buffer")
+            .register(meterRegistry);
+        Gauge.builder(BUFFERED_METER_NAME, buffer, BlockingQueue::size)
+            .description("Query histories waiting to be persisted")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Buffers the history without blocking and triggers a flush once a full batch is waiting.
+     */
+    public void append(QueryHistory history) {
+        if (history.getQueryId() == null) {
+            history.setQueryId(UUID.randomUUID().toString());
+        }
+        enqueue(history, droppedCounter);
+        if (buffer.size() >= batchSize) {
+            flushAsync();
+        }
+    }
+
+    /**
+     * Histories of a session that are not persisted yet, buffered or being written, newest first.
+     */
+    public List<QueryHistory> findPendingBySession(String sessionId) {
+        synchronized (lock) {
+            return pending()
+                .filter(history -> sessionId.equals(history.getSessionId()))
+                .sorted(Comparator.comparing(QueryHistory::getCreatedDate, Comparator.nullsLast(Comparator.reverseOrder())))
+                .toList();
+        }
+    }
+
+    /**
+     * Applies {@code update} to the buffered history with this query id, so that it is persisted with the
+     * update, and emits {@code true}. When the history is being written, waits for the write to end first:
+     * a failed write puts it back in the buffer, where it is updated. Emits {@code false} when no pending
+     * history has this query id, in which case the caller updates the persisted history.
+     */
+    public Mono<Boolean> updatePending(String queryId, Consumer<QueryHistory> update) {
+        return Mono.defer(() -> {
+            synchronized (lock) {
+                for (QueryHistory history : buffer) {
+                    if (queryId.equals(history.getQueryId())) {
+                        update.accept(history);
+                        return Mono.just(true);
+                    }
+                }
+                if (inFlight != null && inFlight.histories().stream().anyMatch(history -> queryId.equals(history.getQueryId()))) {
+                    return inFlight.written().asMono().then(Mono.defer(() -> updatePending(queryId, update)));
+                }
+                return Mono.just(false);
+            }
+        });
+    }
+
+    @Scheduled(
+        initialDelayString = "${application.history.flush-interval-ms:1000}",
+        fixedDelayString = "${application.history.flush-interval-ms:1000}"
+    )
+    public void scheduledFlush() {
+        flushAsync();
+    }
+
+    @PreDestroy
+    public void drain() throws InterruptedException {
+        log.debug("Draining {} buffered query histories", buffer.size());
+        long deadline = System.nanoTime() + SHUTDOWN_DRAIN_TIMEOUT.toNanos();
+        while (!buffer.isEmpty() && System.nanoTime() < deadline) {
+            if (flushing.get()) {
+                Thread.sleep(10);
+            } else {
+                flush().block(Duration.ofNanos(deadline - System.nanoTime()));
+            }
+        }
+        if (!buffer.isEmpty()) {
+            log.warn("{} query histories were not persisted before shutdown", buffer.size());
+        }
+    }
+
+    private void flushAsync() {
+        flush().subscribeOn(Schedulers.boundedElastic()).subscribe();
+    }
+
+    /**
+     * Writes batches until the buffer is empty. Only one flush runs at a time; a concurrent call returns
+     * immediately because the running flush will pick up its histories.
+     */
+    Mono<Void> flush() {
+        return Mono.defer(() -> {
+            if (!flushing.compareAndSet(false, true)) {
+                return Mono.empty();
+            }
+            return Flux.<List<QueryHistory>>generate(sink -> {
+                    List<QueryHistory> batch = new ArrayList<>(batchSize);
+                    synchronized (lock) {
+                        buffer.drainTo(batch, batchSize);
+                        if (!batch.isEmpty()) {
+                            inFlight = new InFlight(List.copyOf(batch), Sinks.empty());
+                        }
+                    }
+                    if (batch.isEmpty()) {
+                        sink.complete();
+                    } else {
+                        sink.next(batch);
+                    }
+                })
+                .concatMap(this::writeBatch)
+                // 写入失败的批次已重新放回缓冲区，等待下一次刷新
+                .onErrorResume(error -> Mono.empty())
+                .doFinally(signal -> flushing.set(false))
+                .then();
+        });
+    }
+
+    private Mono<Long> writeBatch(List<QueryHistory> batch) {
+        return queryHistoryRepository.insertAll(batch)
+            .doOnNext(created -> {
+                writtenCounter.increment(created);
+                completeInFlight(() -> {});
+            })
+            .onErrorResume(error -> {
+                log.warn("Failed to persist {} query histories, re-buffering them: {}", batch.size(), error.getMessage());
+                completeInFlight(() -> batch.forEach(history -> enqueue(history, writeFailedCounter)));
+                return Mono.error(error);
+            })
+            // 被取消的写入可能已提交，按 query_id 合并写入使重新写入不会产生重复记录
+            .doOnCancel(() -> completeInFlight(() -> batch.forEach(history -> enqueue(history, writeFailedCounter))));
+    }
+
+    /**
+     * Runs {@code action} and retires the batch being written in one step, so the histories are visible
+     * either in the batch or in the buffer throughout, then signals the end of the write.
+     */
+    private void completeInFlight(Runnable action) {
+        InFlight written;
+        synchronized (lock) {
+            action.run();
+            written = inFlight;
+            inFlight = null;
+        }
+        if (written != null) {
+            written.written().tryEmitEmpty();
+        }
+    }
+
+    private Stream<QueryHistory> pending() {
+        return inFlight != null ? Stream.concat(buffer.stream(), inFlight.histories().stream()) : buffer.stream();
+    }
+
+    private void enqueue(QueryHistory history, Counter onDrop) {
+        if (buffer.offer(history)) {
+            return;
+        }
+        if (dropNewest) {
+            onDrop.increment();
+            return;
+        }
+        while (!buffer.offer(history)) {
+            if (buffer.poll() != null) {
+                onDrop.increment();
+            }
+        }
+    }
+
+    /**
+     * The batch being inserted, and a signal emitted once the insert has succeeded or failed.
+     */
+    private record InFlight(List<QueryHistory> histories, Sinks.Empty<Void> written) {}
+}
@@ -0,0 +1,151 @@
+package com.topsion.rag.service;
+
+import com.topsion.rag.management.QueryStageEvent;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import reactor.core.publisher.Mono;
+
+/**
+ * Where one query spent its time, and what each stage worked with.
+ * <p>
+ * Stage durations exclude time spent waiting for inputs; concurrent stages overlap, so they do not add up to
+ * the total. Besides durations a trace holds what {@code explain} mode reports: candidate counts per stage,
+ * the similarity of the chunks used, the token count of the packed prompt, cache hits and misses, and the
+ * optional stages that fell back. A trace is filled by the query that computed the answer; callers that
+ * joined it get a copy with their own single-flight status.
+ */
+public class QueryTrace {
+
+    public static final String HIT = "hit";
+    public static final String MISS = "miss";
+    public static final String PARTIAL = "partial";
+
+    private final Map<String, Duration> stages = new LinkedHashMap<>();
+    private final Map<String, Integer> candidates = new LinkedHashMap<>();
+    private final Map<String, String> cache = new LinkedHashMap<>();
+    private final List<String> fallbacks = new ArrayList<>();
+    private List<Double> similarities = List.of();
+    private List<Long> retrieved = List.of();
+    private Integer promptTokens;
+
+    /**
+     * Times {@code stage} from subscription until the publisher emits or terminates, and records it as a
+     * {@link QueryStageEvent}.
+     */
+    public <T> Mono<T> time(String stage, Mono<T> mono) {
+        return Mono.defer(() -> {
+            QueryStageEvent event = QueryStageEvent.start(stage);
+            long start = System.nanoTime();
+            return mono.doFinally(signal -> {
+                stage(stage, Duration.ofNanos(System.nanoTime() - start));
+                event.finish(signal);
+            });
+        });
+    }
+
+    public synchronized QueryTrace stage(String stage, Duration duration) {
+        stages.merge(stage, duration, Duration::plus);
+        return this;
+    }
+
+    public synchronized QueryTrace candidates(String stage, int count) {
+        candidates.put(stage, count);
+        return this;
+    }
+
+    public synchronized QueryTrace cache(String name, String status) {
+        cache.put(name, status);
+        return this;
+    }
+
+    public synchronized QueryTrace fallback(String stage) {
+        fallbacks.add(stage);
+        return this;
+    }
+
+    public synchronized QueryTrace similarities(List<Double> similarities) {
+        this.similarities = List.copyOf(similarities);
+        return this;
+    }
+
+    /**
+     * Ids of the chunks the retrieval stage selected, best first; the answer may use fewer, in another order.
+     */
+    public synchronized QueryTrace retrieved(List<Long> chunkIds) {
+        this.retrieved = List.copyOf(chunkIds);
+        return this;
+    }
+
+    public synchronized List<Long> retrievedChunkIds() {
+        return retrieved;
+    }
+
+    public synchronized QueryTrace promptTokens(int promptTokens) {
+        this.promptTokens = promptTokens;
+        return this;
+    }
+
+    public synchronized QueryTrace copy() {
+        QueryTrace copy = new QueryTrace();
+        copy.stages.putAll(stages);
+        copy.candidates.putAll(candidates);
+        copy.cache.putAll(cache);
+        copy.fallbacks.addAll(fallbacks);
+        copy.similarities = similarities;
+        copy.retrieved = retrieved;
+        copy.promptTokens = promptTokens;
+        return copy;
+    }
+
+    /**
+     * Stage durations in milliseconds, in the order the stages were recorded.
+     */
+    public synchronized Map<String, Double> timings() {
+        Map<String, Double> timings = new LinkedHashMap<>();
+        stages.forEach((stage, duration) -> timings.put(stage, millis(duration)));
+        return timings;
+    }
+
+    /**
+     * The value of a {@code Server-Timing} header: one metric per stage, then {@code total}.
+     */
+    public synchronized String serverTiming(Duration total) {
+        StringBuilder header = new StringBuilder();
+        stages.forEach((stage, duration) -> header.append(stage).append(";dur=").append(format(duration)).append(", "));
+        cache.forEach((name, status) -> header.append(name).append(";desc=\"").append(status).append("\", "));
+        return header.append("total;dur=").append(format(total)).toString();
+    }
+
+    public synchronized Summary summary() {
+        return new Summary(timings(), new LinkedHashMap<>(candidates), similarities, promptTokens, new LinkedHashMap<>(cache), List.copyOf(fallbacks));
+    }
+
+    private static double millis(Duration duration) {
+        return Math.round(duration.toNanos() / 10_000.0) / 100.0;
+    }
+
+    private static String format(Duration duration) {
+        return String.format(Locale.ROOT, "%.2f", duration.toNanos() / 1_000_000.0);
+    }
+
+    /**
+     * @param timingsMs stage durations in milliseconds.
+     * @param candidates results each retrieval stage produced, before selection for the prompt.
+     * @param similarities similarity to the question of each chunk used for the answer.
+     * @param promptTokens tokens of the packed prompt, or null if the LLM was not called.
+     * @param cache hit, miss or partial (some entries cached) per cache consulted.
+     * @param fallbacks optional stages that failed or timed out and yielded their fallback.
+     */
+    public record Summary(
+        Map<String, Double> timingsMs,
+        Map<String, Integer> candidates,
+        List<Double> similarities,
+        Integer promptTokens,
+        Map<String, String> cache,
+        List<String> fallbacks
+    ) {}
+}
@@ -1,17 +1,19 @@
 package com.topsion.rag.service;
 
-import com.topsion.rag.domain.DocumentChunk;
+import com.topsion.rag.domain.Community;
 import com.topsion.rag.domain.Entity;
 import com.topsion.rag.domain.QueryHistory;
 import com.topsion.rag.repository.DocumentChunkRepository;
 import com.topsion.rag.repository.EntityRepository;
 import com.topsion.rag.repository.QueryHistoryRepository;
+import com.topsion.rag.repository.projection.ChunkContext;
+import com.topsion.rag.repository.projection.EntitySummary;
 import com.topsion.rag.config.ApplicationProperties;
 import com.theokanning.openai.completion.chat.ChatCompletionRequest;
 import com.theokanning.openai.completion.chat.ChatMessage;
 import com.theokanning.openai.completion.chat.ChatMessageRole;
 import com.theokanning.openai.embedding.EmbeddingRequest;
-import com.theokanning.openai.service.OpenAiService;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,8 +22,15 @@ import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.text.Normalizer;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Service
@@ -33,11 +42,30 @@ public class RAGQueryService {
     private final DocumentChunkRepository documentChunkRepository;
     private final EntityRepository entityRepository;
     private final QueryHistoryRepository queryHistoryRepository;
-    private final OpenAiService openAiService;
+    private final LlmGateway llmGateway;
     private final ApplicationProperties applicationProperties;
+    private final CommunityService communityService;
+    private final QueryAnalyticsService queryAnalyticsService;
+    private final QueryHistoryWriter queryHistoryWriter;
+    private final QueryHistoryArchiveService queryHistoryArchiveService;
+    private final ChunkFilterService chunkFilterService;
+    private final ChunkEmbeddingCache chunkEmbeddingCache;
+    private final ContextPacker contextPacker;
+    private final ExtractiveAnswerer extractiveAnswerer = new ExtractiveAnswerer();
+    private final SingleFlight<QueryKey, QueryResult> inFlightQueries = new SingleFlight<>();
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    private static final String RAG_SYSTEM_PROMPT = """
+    private static final Pattern JSON_PATTERN = Pattern.compile("\\{.*\\}", Pattern.DOTALL);
+    private static final int MAX_REDUCE_CONTEXT_LENGTH = 8000;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final int MAX_RELATED_ENTITIES = 10;
+    private static final Pattern LEGACY_QUERY_ID = Pattern.compile("\\d+"); // 分配 query_id 之前持久化的记录只有数值 id
+    private static final String ERROR_ANSWER = "抱歉，处理您的问题时出现了错误。请稍后重试。";
+    private static final String NO_MATCH_ANSWER = "抱歉，知识库中没有找到与您的问题相关的信息。";
+    private static final String PARTIAL_ANSWER = "抱歉，未能在规定时间内生成回答。以下是检索到的相关内容，供您参考。";
+    private static final RetrievedContext NOTHING_RETRIEVED = new RetrievedContext(List.of(), List.of(), false);
+
+    static final String RAG_SYSTEM_PROMPT = """
         你是一个专业的知识问答助手。请基于提供的上下文信息回答用户的问题。
 
         回答要求：
@@ -54,157 +82,588 @@ public class RAGQueryService {
         %s
         """;
 
+    private static final String GLOBAL_MAP_PROMPT = """
+        你是一个专业的知识问答助手。下面是知识图谱中若干社区的摘要报告。
+        请从这些报告中找出与用户问题相关的要点，并为每个要点给出0到100之间的重要性评分。
+        如果报告与问题无关，请返回空的要点列表。
+
+        请按以下JSON格式返回：
+        {
+          "points": [
+            {
+              "description": "要点描述",
+              "score": 80
+            }
+          ]
+        }
+
+        社区报告：
+        %s
+        """;
+
+    private static final String GLOBAL_REDUCE_PROMPT = """
+        你是一个专业的知识问答助手。下面是从整个知识库的各个社区中提炼出的、与用户问题相关的要点，按重要性排序。
+        请综合这些要点回答用户的问题。
+
+        回答要求：
+        1. 仅基于提供的要点回答，不要添加要点中没有的信息
+        2. 如果要点不足以回答问题，请明确说明
+        3. 回答要全面、有条理，突出主要主题
+        4. 用中文回答
+
+        要点：
+        %s
+        """;
+
     public RAGQueryService(
         DocumentChunkRepository documentChunkRepository,
         EntityRepository entityRepository,
         QueryHistoryRepository queryHistoryRepository,
-        OpenAiService openAiService,
-        ApplicationProperties applicationProperties
+        LlmGateway llmGateway,
+        ApplicationProperties applicationProperties,
+        CommunityService communityService,
+        QueryAnalyticsService queryAnalyticsService,
+        QueryHistoryWriter queryHistoryWriter,
+        QueryHistoryArchiveService queryHistoryArchiveService,
+        ChunkFilterService chunkFilterService,
+        ChunkEmbeddingCache chunkEmbeddingCache,
+        TokenCounter tokenCounter
     ) {
         this.documentChunkRepository = documentChunkRepository;
         this.entityRepository = entityRepository;
         this.queryHistoryRepository = queryHistoryRepository;
-        this.openAiService = openAiService;
+        this.llmGateway = llmGateway;
         this.applicationProperties = applicationProperties;
+        this.communityService = communityService;
+        this.queryAnalyticsService = queryAnalyticsService;
+        this.queryHistoryWriter = queryHistoryWriter;
+        this.queryHistoryArchiveService = queryHistoryArchiveService;
+        this.chunkFilterService = chunkFilterService;
+        this.chunkEmbeddingCache = chunkEmbeddingCache;
+        this.contextPacker = new ContextPacker(tokenCounter);
+    }
+
+    /**
+     * Deadline for a query starting now. A requested timeout is capped at the configured maximum; without
+     * one the configured default applies.
+     */
+    public QueryDeadline newDeadline(Long timeoutMs) {
+        ApplicationProperties.OpenAI.Rag rag = applicationProperties.getOpenai().getRag();
+        long timeout = timeoutMs != null && timeoutMs > 0 ? Math.min(timeoutMs, rag.getMaxQueryTimeoutMs()) : rag.getQueryTimeoutMs();
+        return QueryDeadline.after(Duration.ofMillis(timeout));
     }
 
     public Mono<QueryResult> queryKnowledgeBase(String question, String sessionId) {
-        long startTime = System.currentTimeMillis();
+        return queryKnowledgeBase(question, sessionId, RetrievalFilter.NONE);
+    }
+
+    public Mono<QueryResult> queryKnowledgeBase(String question, String sessionId, RetrievalFilter filter) {
+        return queryKnowledgeBase(question, sessionId, filter, AnswerMode.AUTO, newDeadline(null));
+    }
 
-        return generateQueryEmbedding(question)
-            .flatMap(embedding -> retrieveRelevantContext(embedding, question))
-            .flatMap(context -> generateAnswer(question, context))
-            .flatMap(result -> {
+    /**
+     * Answers from the chunks and entities most similar to the question, considering only documents that
+     * match the filter. Identical questions with the same filter that arrive while one is being answered
+     * share its answer, each waiting no longer than its own deadline: a caller whose deadline passes first
+     * gets a partial result without context, and one that gets a partial result cut short by an earlier
+     * deadline answers on its own if enough of its deadline is left.
+     * <p>
+     * Every stage runs within what is left of the deadline. Retrieval stops early enough to leave
+     * {@code minGenerationMs} for the answer; if that much time is no longer left, or generation itself runs
+     * out of time, the result is partial: quoted sentences if any match, otherwise just the retrieved context.
+     * <p>
+     * Extractive answers quote the best matching sentences of the retrieved chunks instead of calling the LLM.
+     * They are used when requested, in {@link AnswerMode#AUTO} when retrieval is confident, and whenever the
+     * LLM fails. Without a query embedding, chunks are retrieved by the question's terms instead.
+     */
+    public Mono<QueryResult> queryKnowledgeBase(
+        String question,
+        String sessionId,
+        RetrievalFilter filter,
+        AnswerMode answerMode,
+        QueryDeadline deadline
+    ) {
+        long startTime = System.currentTimeMillis();
+        Supplier<Mono<QueryResult>> answer = () -> answerLocal(question, filter, answerMode, deadline);
+        long minGenerationMs = applicationProperties.getOpenai().getRag().getMinGenerationMs();
+
+        return inFlightQueries.execute(QueryKey.local(question, filter, answerMode), answer,
+                joined -> joined.timeout(deadline.remaining(), Mono.fromSupplier(() -> partialResult(NOTHING_RETRIEVED, Optional.empty()))))
+            .flatMap(shared -> shared.joined() && shared.value().partial() && deadline.remaining().toMillis() >= minGenerationMs
+                ? answer.get().map(result -> new SingleFlight.Shared<>(result, false))
+                : Mono.just(shared))
+            .flatMap(shared -> {
                 long responseTime = System.currentTimeMillis() - startTime;
-                return saveQueryHistory(question, result.answer(), result.contextChunks(), responseTime, sessionId)
+                QueryResult result = traced(shared);
+                return saveQueryHistory(question, result.answer(), result.contextChunks(), responseTime, sessionId, shared.joined(), result.trace())
                     .thenReturn(result);
             })
             .onErrorResume(error -> {
                 log.error("Error processing query: {}", error.getMessage(), error);
-                return Mono.just(new QueryResult(
-                    "抱歉，处理您的问题时出现了错误。请稍后重试。",
-                    Collections.emptyList(),
-                    Collections.emptyList()
-                ));
+                return Mono.just(new QueryResult(ERROR_ANSWER, Collections.emptyList(), Collections.emptyList()));
             });
     }
 
-    private Mono<double[]> generateQueryEmbedding(String query) {
+    /**
+     * Runs the local pipeline as a stage graph. Only the embedding and the answer are on the critical path:
+     * the filter selection and the keyword entity lookup start immediately, and chunk and similar-entity
+     * retrieval start as soon as the embedding is available. Retrieval stages are optional and give up once
+     * only {@code minGenerationMs} is left before the deadline, entity lookups after {@code entityLookupTimeoutMs}.
+     */
+    private Mono<QueryResult> answerLocal(String question, RetrievalFilter filter, AnswerMode answerMode, QueryDeadline deadline) {
+        ApplicationProperties.OpenAI.Rag rag = applicationProperties.getOpenai().getRag();
+        int maxChunks = rag.getMaxContextChunks();
+        // 多取候选片段，再用 MMR 选出多样化的结果
+        int candidates = rag.getMmrLambda() < 1.0 ? maxChunks * rag.getMmrCandidateFactor() : maxChunks;
+        Duration reserve = Duration.ofMillis(rag.getMinGenerationMs());
+        Supplier<Duration> retrievalBudget = () -> deadline.remainingBefore(reserve);
+        Supplier<Duration> entityBudget = () -> {
+            Duration budget = retrievalBudget.get();
+            Duration timeout = Duration.ofMillis(rag.getEntityLookupTimeoutMs());
+            return timeout.compareTo(budget) < 0 ? timeout : budget;
+        };
+
+        StageGraph graph = new StageGraph();
+        QueryTrace trace = new QueryTrace();
+        StageGraph.Stage<Optional<double[]>> embedding = graph.required("embedding",
+            results -> generateQueryEmbedding(question)
+                .timeout(retrievalBudget.get())
+                .map(Optional::of)
+                .onErrorResume(error -> {
+                    log.warn("Query embedding unavailable, retrieving chunks by terms: {}", error.toString());
+                    trace.fallback("embedding");
+                    return Mono.just(Optional.<double[]>empty());
+                }));
+        StageGraph.Stage<Optional<ChunkFilterService.FilterSelection>> selection = graph.required("filter",
+            results -> filter.isEmpty()
+                ? Mono.just(Optional.<ChunkFilterService.FilterSelection>empty())
+                : chunkFilterService.select(filter)
+                    .doOnNext(eligible -> trace.candidates("filter", (int) eligible.chunkIds().getLongCardinality()))
+                    .map(Optional::of));
+        StageGraph.Stage<List<ChunkContext>> chunks = graph.optional("chunks", retrievalBudget, List.of(),
+            results -> retrieveChunks(results.get(embedding), question, candidates, results.get(selection))
+                .doOnNext(retrieved -> trace.candidates("chunks", retrieved.size()))
+                .flatMap(retrieved -> diversify(retrieved, maxChunks, trace))
+                .doOnNext(selected -> trace.retrieved(selected.stream().map(ChunkContext::id).toList())),
+            embedding, selection);
+        StageGraph.Stage<List<EntitySummary>> similarEntities = graph.optional("similar-entities", entityBudget, List.of(),
+            results -> results.get(embedding)
+                .map(queryEmbedding -> retrieveSimilarEntities(queryEmbedding, MAX_RELATED_ENTITIES / 2, results.get(selection)))
+                .orElseGet(() -> Mono.just(Collections.emptyList()))
+                .doOnNext(found -> trace.candidates("similar-entities", found.size())),
+            embedding, selection);
+        StageGraph.Stage<List<EntitySummary>> keywordEntities = graph.optional("keyword-entities", entityBudget, List.of(),
+            results -> retrieveKeywordEntities(question, MAX_RELATED_ENTITIES / 2, results.get(selection))
+                .doOnNext(found -> trace.candidates("keyword-entities", found.size())),
+            selection);
+        StageGraph.Stage<QueryResult> answer = graph.required("generation",
+            results -> generateAnswer(
+                question,
+                new RetrievedContext(
+                    results.get(chunks),
+                    combineEntities(results.get(similarEntities), results.get(keywordEntities)),
+                    results.get(embedding).isEmpty()
+                ),
+                answerMode,
+                deadline,
+                trace
+            ),
+            chunks, similarEntities, keywordEntities);
+
+        return graph.run(answer).map(result -> {
+            // 按流水线顺序记录各阶段耗时
+            Map<String, Duration> timings = graph.timings();
+            for (StageGraph.Stage<?> stage : List.of(embedding, selection, chunks, similarEntities, keywordEntities, answer)) {
+                Duration elapsed = timings.get(stage.name());
+                if (elapsed != null) {
+                    trace.stage(stage.name(), elapsed);
+                }
+            }
+            graph.fallbacks().forEach(trace::fallback);
+            trace.similarities(result.contextChunks().stream().map(ChunkContext::similarity).toList());
+            return result.withTrace(trace);
+        });
+    }
+
+    /**
+     * The result with a trace of its own, recording whether it was shared with a concurrent identical query.
+     */
+    private static QueryResult traced(SingleFlight.Shared<QueryResult> shared) {
+        QueryResult result = shared.value();
+        return result.withTrace(result.trace().copy().cache("single-flight", shared.joined() ? QueryTrace.HIT : QueryTrace.MISS));
+    }
+
+    /**
+     * Answers corpus-wide questions by map-reduce over the precomputed community summaries instead of
+     * retrieving individual chunks.
+     */
+    public Mono<QueryResult> queryGlobal(String question, String sessionId) {
+        return queryGlobal(question, sessionId, newDeadline(null));
+    }
+
+    /**
+     * Like {@link #queryGlobal(String, String)}, failing with the error answer once the deadline passes. A
+     * shared answer is awaited until each caller's own deadline, and keeps running while any caller waits.
+     */
+    public Mono<QueryResult> queryGlobal(String question, String sessionId, QueryDeadline deadline) {
+        long startTime = System.currentTimeMillis();
+
+        return inFlightQueries.execute(QueryKey.global(question), () -> answerGlobal(question))
+            .timeout(Mono.defer(() -> Mono.delay(deadline.remaining())))
+            .flatMap(shared -> {
+                long responseTime = System.currentTimeMillis() - startTime;
+                QueryResult result = traced(shared);
+                return saveQueryHistory(question, result.answer(), result.contextChunks(), responseTime, sessionId, shared.joined(), result.trace())
+                    .thenReturn(result);
+            })
+            .onErrorResume(error -> {
+                log.error("Error processing global query: {}", error.getMessage(), error);
+                return Mono.just(new QueryResult(ERROR_ANSWER, Collections.emptyList(), Collections.emptyList()));
+            });
+    }
+
+    private Mono<QueryResult> answerGlobal(String question) {
+        int batchSize = applicationProperties.getCommunity().getGlobalMapBatchSize();
+        int concurrency = applicationProperties.getCommunity().getGlobalMapConcurrency();
+        QueryTrace trace = new QueryTrace();
+
+        return trace.time("communities", communityService.findCommunitiesForGlobalQuery())
+            .defaultIfEmpty(Collections.emptyList())
+            .flatMap(communities -> {
+                log.debug("Global query over {} communities", communities.size());
+                trace.candidates("communities", communities.size());
+                return trace.time("map", Flux.fromIterable(communities).buffer(batchSize)
+                    .flatMap(batch -> mapCommunities(question, batch), concurrency)
+                    .flatMapIterable(points -> points)
+                    .collectList());
+            })
+            .flatMap(points -> {
+                trace.candidates("key-points", points.size());
+                return trace.time("reduce", reduceGlobalAnswer(question, points));
+            })
+            .map(answer -> new QueryResult(answer, Collections.emptyList(), Collections.emptyList()).withTrace(trace));
+    }
+
+    private Mono<List<KeyPoint>> mapCommunities(String question, List<Community> communities) {
         return Mono.fromCallable(() -> {
-            try {
-                String model = applicationProperties.getOpenai().getModel().getEmbedding();
-                EmbeddingRequest request = EmbeddingRequest.builder()
-                    .model(model)
-                    .input(List.of(query))
-                    .build();
+            String reports = communities.stream()
+                .map(community -> String.format("【%s】\n%s", community.getTitle(), community.getSummary()))
+                .collect(Collectors.joining("\n\n"));
+
+            return ChatCompletionRequest.builder()
+                .model(applicationProperties.getOpenai().getModel().getChat())
+                .messages(List.of(
+                    new ChatMessage(ChatMessageRole.SYSTEM.value(), String.format(GLOBAL_MAP_PROMPT, reports)),
+                    new ChatMessage(ChatMessageRole.USER.value(), question)
+                ))
+                .temperature(0.0)
+                .maxTokens(800)
+                .build();
+        })
+        .flatMap(llmGateway::createChatCompletion)
+        .map(response -> parseKeyPoints(response.getChoices().get(0).getMessage().getContent()))
+        .onErrorResume(error -> {
+            log.warn("Failed to map community batch: {}", error.getMessage());
+            return Mono.just(Collections.<KeyPoint>emptyList());
+        });
+    }
+
+    private List<KeyPoint> parseKeyPoints(String response) {
+        try {
+            Matcher matcher = JSON_PATTERN.matcher(response);
+            JsonNode root = objectMapper.readTree(matcher.find() ? matcher.group() : response);
+            List<KeyPoint> points = new ArrayList<>();
+            for (JsonNode point : root.path("points")) {
+                int score = point.path("score").asInt(0);
+                String description = point.path("description").asText("");
+                if (score > 0 && !description.isEmpty()) {
+                    points.add(new KeyPoint(description, score));
+                }
+            }
+            return points;
+        } catch (Exception e) {
+            log.warn("Failed to parse key points: {}", e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private Mono<String> reduceGlobalAnswer(String question, List<KeyPoint> points) {
+        if (points.isEmpty()) {
+            return Mono.just(NO_MATCH_ANSWER);
+        }
+
+        return Mono.fromCallable(() -> {
+            StringBuilder context = new StringBuilder();
+            for (KeyPoint point : points.stream().sorted(Comparator.comparingInt(KeyPoint::score).reversed()).toList()) {
+                String line = String.format("- [%d] %s\n", point.score(), point.description());
+                if (context.length() + line.length() > MAX_REDUCE_CONTEXT_LENGTH) {
+                    break;
+                }
+                context.append(line);
+            }
 
-                var response = openAiService.createEmbeddings(request);
+            return ChatCompletionRequest.builder()
+                .model(applicationProperties.getOpenai().getModel().getChat())
+                .messages(List.of(
+                    new ChatMessage(ChatMessageRole.SYSTEM.value(), String.format(GLOBAL_REDUCE_PROMPT, context)),
+                    new ChatMessage(ChatMessageRole.USER.value(), question)
+                ))
+                .temperature(0.3)
+                .maxTokens(1000)
+                .build();
+        })
+        .flatMap(llmGateway::createChatCompletion)
+        .map(response -> response.getChoices().get(0).getMessage().getContent());
+    }
+
+    private Mono<double[]> generateQueryEmbedding(String query) {
+        String model = applicationProperties.getOpenai().getModel().getEmbedding();
+        EmbeddingRequest request = EmbeddingRequest.builder()
+            .model(model)
+            .input(List.of(query))
+            .build();
+
+        return llmGateway.createEmbeddings(request)
+            .map(response -> {
                 if (!response.getData().isEmpty()) {
                     List<Double> embedding = response.getData().get(0).getEmbedding();
                     return embedding.stream().mapToDouble(Double::doubleValue).toArray();
                 }
 
                 throw new RuntimeException("Failed to generate embedding");
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to generate query embedding", e);
-            }
-        });
+            })
+            .onErrorMap(e -> new RuntimeException("Failed to generate query embedding", e));
     }
 
-    private Mono<RetrievedContext> retrieveRelevantContext(double[] queryEmbedding, String question) {
-        int maxChunks = applicationProperties.getOpenai().getRag().getMaxContextChunks();
+    private Mono<List<ChunkContext>> retrieveChunks(
+        Optional<double[]> queryEmbedding,
+        String question,
+        int limit,
+        Optional<ChunkFilterService.FilterSelection> selection
+    ) {
+        if (queryEmbedding.isEmpty()) {
+            return retrieveChunksByTerms(question, limit, selection);
+        }
+        return selection
+            .map(eligible -> retrieveFilteredChunks(queryEmbedding.get(), limit, eligible))
+            .orElseGet(() -> retrieveSimilarChunks(queryEmbedding.get(), limit));
+    }
 
-        return Mono.zip(
-            retrieveSimilarChunks(queryEmbedding, maxChunks),
-            retrieveRelevantEntities(queryEmbedding, question, 10)
-        )
-        .map(tuple -> new RetrievedContext(tuple.getT1(), tuple.getT2()));
+    /**
+     * Lexical retrieval for when the question cannot be embedded. Broad filters are applied to an over-fetched
+     * result, like in {@link #retrieveFilteredChunks}.
+     */
+    private Mono<List<ChunkContext>> retrieveChunksByTerms(String question, int limit, Optional<ChunkFilterService.FilterSelection> selection) {
+        Set<String> terms = new LinkedHashSet<>(ExtractiveAnswerer.terms(question));
+        if (terms.isEmpty()) {
+            return Mono.just(Collections.emptyList());
+        }
+        if (selection.isEmpty()) {
+            return documentChunkRepository.findChunkContextsContaining(terms, null, limit).collectList();
+        }
+        ApplicationProperties.OpenAI.Rag rag = applicationProperties.getOpenai().getRag();
+        ChunkFilterService.FilterSelection eligible = selection.get();
+        long count = eligible.chunkIds().getLongCardinality();
+        if (count == 0) {
+            return Mono.just(Collections.emptyList());
+        }
+        if (count <= rag.getExactSearchMaxChunks()) {
+            return documentChunkRepository.findChunkContextsContaining(terms, ChunkBitmapIndex.toList(eligible.chunkIds()), limit).collectList();
+        }
+        return documentChunkRepository.findChunkContextsContaining(terms, null, rag.getFilteredMaxCandidates())
+            .filter(chunk -> eligible.chunkIds().contains(chunk.id()))
+            .take(limit)
+            .collectList();
     }
 
-    private Mono<List<DocumentChunk>> retrieveSimilarChunks(double[] queryEmbedding, int limit) {
-        return documentChunkRepository.findSimilarChunks(queryEmbedding, limit)
-            .filter(result -> {
-                double similarity = (Double) result[1];
-                return similarity >= applicationProperties.getOpenai().getRag().getSimilarityThreshold();
-            })
-            .map(result -> (DocumentChunk) result[0])
+    private Mono<List<ChunkContext>> retrieveSimilarChunks(double[] queryEmbedding, int limit) {
+        double threshold = applicationProperties.getOpenai().getRag().getSimilarityThreshold();
+
+        return documentChunkRepository.findSimilarChunkContexts(queryEmbedding, limit, threshold)
             .collectList()
             .doOnNext(chunks -> log.debug("Retrieved {} similar chunks", chunks.size()));
     }
 
-    private Mono<List<Entity>> retrieveRelevantEntities(double[] queryEmbedding, String question, int limit) {
-        return Mono.zip(
+    private Mono<List<ChunkContext>> diversify(List<ChunkContext> candidates, int limit, QueryTrace trace) {
+        double lambda = applicationProperties.getOpenai().getRag().getMmrLambda();
+        if (candidates.size() <= limit || lambda >= 1.0) {
+            return Mono.just(candidates.stream().limit(limit).toList());
+        }
+        List<Long> chunkIds = candidates.stream().map(ChunkContext::id).toList();
+        int cached = chunkEmbeddingCache.cachedCount(chunkIds);
+        trace.cache("chunk-embeddings", cached == chunkIds.size() ? QueryTrace.HIT : cached == 0 ? QueryTrace.MISS : QueryTrace.PARTIAL);
+        return chunkEmbeddingCache.getEmbeddings(chunkIds)
+            .map(embeddings -> MaximalMarginalRelevance.select(candidates, embeddings, limit, lambda))
+            .doOnNext(chunks -> log.debug("Selected {} of {} candidate chunks by MMR", chunks.size(), candidates.size()));
+    }
+
+    /**
+     * The vector index cannot be restricted to a subset, so narrow filters are answered by an exact scan of the
+     * eligible chunks and broad ones by over-fetching from the index in proportion to the eligible share and
+     * dropping ineligible hits.
+     */
+    private Mono<List<ChunkContext>> retrieveFilteredChunks(double[] queryEmbedding, int limit, ChunkFilterService.FilterSelection selection) {
+        ApplicationProperties.OpenAI.Rag rag = applicationProperties.getOpenai().getRag();
+        long eligible = selection.chunkIds().getLongCardinality();
+        if (eligible == 0) {
+            return Mono.just(Collections.emptyList());
+        }
+
+        Flux<ChunkContext> chunks;
+        if (eligible <= rag.getExactSearchMaxChunks()) {
+            chunks = documentChunkRepository.findSimilarChunkContextsAmong(
+                queryEmbedding, ChunkBitmapIndex.toList(selection.chunkIds()), limit, rag.getSimilarityThreshold());
+        } else {
+            long candidates = Math.min(rag.getFilteredMaxCandidates(), (long) Math.ceil((double) limit * selection.totalChunks() / eligible));
+            chunks = documentChunkRepository.findSimilarChunkContexts(queryEmbedding, (int) Math.max(candidates, limit), rag.getSimilarityThreshold())
+                .filter(chunk -> selection.chunkIds().contains(chunk.id()))
+                .take(limit);
+        }
+        return chunks.collectList()
+            .doOnNext(result -> log.debug("Retrieved {} similar chunks out of {} eligible", result.size(), eligible));
+    }
+
+    private Mono<List<EntitySummary>> retrieveSimilarEntities(double[] queryEmbedding, int limit, Optional<ChunkFilterService.FilterSelection> selection) {
+        if (selection.isEmpty()) {
             // 基于向量相似度检索实体
-            entityRepository.findSimilarEntities(queryEmbedding, limit / 2)
-                .map(result -> (Entity) result[0])
-                .collectList(),
+            return entityRepository.findSimilarEntitySummaries(queryEmbedding, limit).collectList();
+        }
+        Set<Long> documentIds = selection.get().documentIds();
+        if (documentIds.isEmpty()) {
+            return Mono.just(Collections.emptyList());
+        }
+        int candidates = applicationProperties.getOpenai().getRag().getFilteredMaxCandidates();
+        return entityRepository.findSimilarEntitySummariesInDocuments(queryEmbedding, candidates, limit, documentIds).collectList();
+    }
+
+    private Mono<List<EntitySummary>> retrieveKeywordEntities(String question, int limit, Optional<ChunkFilterService.FilterSelection> selection) {
+        if (selection.isEmpty()) {
             // 基于关键词检索实体
-            extractKeywordsAndSearchEntities(question, limit / 2)
-        )
-        .map(tuple -> {
-            Set<Entity> combinedEntities = new HashSet<>(tuple.getT1());
-            combinedEntities.addAll(tuple.getT2());
-            return List.copyOf(combinedEntities);
-        })
-        .doOnNext(entities -> log.debug("Retrieved {} relevant entities", entities.size()));
+            return extractKeywordsAndSearchEntities(question, keyword -> entityRepository.findEntitySummariesByNameContaining(keyword, limit), limit);
+        }
+        Set<Long> documentIds = selection.get().documentIds();
+        if (documentIds.isEmpty()) {
+            return Mono.just(Collections.emptyList());
+        }
+        return extractKeywordsAndSearchEntities(
+            question,
+            keyword -> entityRepository.findEntitySummariesByNameContainingInDocuments(keyword, limit, documentIds),
+            limit
+        );
+    }
+
+    private List<EntitySummary> combineEntities(List<EntitySummary> similar, List<EntitySummary> byKeyword) {
+        Map<Long, EntitySummary> combinedEntities = new LinkedHashMap<>();
+        similar.forEach(entity -> combinedEntities.putIfAbsent(entity.id(), entity));
+        byKeyword.forEach(entity -> combinedEntities.putIfAbsent(entity.id(), entity));
+        log.debug("Retrieved {} relevant entities", combinedEntities.size());
+        return List.copyOf(combinedEntities.values());
     }
 
-    private Mono<List<Entity>> extractKeywordsAndSearchEntities(String question, int limit) {
+    private Mono<List<EntitySummary>> extractKeywordsAndSearchEntities(
+        String question,
+        Function<String, Flux<EntitySummary>> search,
+        int limit
+    ) {
         return Flux.fromArray(question.split("\\s+"))
             .filter(word -> word.length() > 2)
-            .flatMap(keyword -> entityRepository.findByNameContaining(keyword))
-            .distinct()
+            .flatMap(search)
+            .distinct(EntitySummary::id)
             .take(limit)
             .collectList();
     }
 
-    private Mono<QueryResult> generateAnswer(String question, RetrievedContext context) {
-        return Mono.fromCallable(() -> {
-            try {
-                String contextText = buildContextText(context.chunks());
-                String entitiesText = buildEntitiesText(context.entities());
-
-                String systemPrompt = String.format(RAG_SYSTEM_PROMPT, contextText, entitiesText);
-
-                ChatCompletionRequest request = ChatCompletionRequest.builder()
-                    .model(applicationProperties.getOpenai().getModel().getChat())
-                    .messages(List.of(
-                        new ChatMessage(ChatMessageRole.SYSTEM.value(), systemPrompt),
-                        new ChatMessage(ChatMessageRole.USER.value(), question)
-                    ))
-                    .temperature(0.3)
-                    .maxTokens(1000)
-                    .build();
-
-                var response = openAiService.createChatCompletion(request);
-                String answer = response.getChoices().get(0).getMessage().getContent();
-
-                return new QueryResult(answer, context.chunks(), context.entities());
-
-            } catch (Exception e) {
-                log.error("Failed to generate answer: {}", e.getMessage(), e);
-                throw new RuntimeException("Failed to generate answer", e);
+    private Mono<QueryResult> generateAnswer(
+        String question,
+        RetrievedContext context,
+        AnswerMode answerMode,
+        QueryDeadline deadline,
+        QueryTrace trace
+    ) {
+        return Mono.defer(() -> {
+            ApplicationProperties.OpenAI.Rag rag = applicationProperties.getOpenai().getRag();
+            Optional<ExtractiveAnswerer.Extract> extract = extractiveAnswerer.extract(question, context.chunks(), rag.getExtractiveMaxSentences());
+            if (answerMode == AnswerMode.EXTRACTIVE) {
+                return Mono.just(extract
+                    .map(found -> extractiveResult(found, context, false))
+                    .orElseGet(() -> new QueryResult(NO_MATCH_ANSWER, Collections.emptyList(), context.entities(), false, true)));
+            }
+            if (answerMode == AnswerMode.AUTO && extract.isPresent() && isConfident(extract.get(), context, rag)) {
+                log.debug("Answering extractively, coverage {}", extract.get().coverage());
+                return Mono.just(extractiveResult(extract.get(), context, false));
+            }
+            if (deadline.remaining().toMillis() < rag.getMinGenerationMs()) {
+                log.warn("Skipped answer generation, only {} ms left before the deadline", deadline.remaining().toMillis());
+                return Mono.just(partialResult(context, extract));
             }
+            ContextPacker.PackedContext packed = contextPacker.pack(
+                RAG_SYSTEM_PROMPT,
+                question,
+                context.chunks(),
+                context.entities(),
+                rag.getContextWindowTokens() - rag.getResponseReserveTokens(),
+                rag.getMaxEntityTokens()
+            );
+            log.debug("Packed {} of {} chunks and {} of {} entities into {} prompt tokens",
+                packed.chunks().size(), context.chunks().size(), packed.entities().size(), context.entities().size(), packed.promptTokens());
+            trace.promptTokens(packed.promptTokens());
+
+            ChatCompletionRequest request = ChatCompletionRequest.builder()
+                .model(applicationProperties.getOpenai().getModel().getChat())
+                .messages(List.of(
+                    new ChatMessage(ChatMessageRole.SYSTEM.value(), packed.systemPrompt()),
+                    new ChatMessage(ChatMessageRole.USER.value(), question)
+                ))
+                .temperature(0.3)
+                .maxTokens(rag.getResponseReserveTokens())
+                .build();
+
+            return llmGateway.createChatCompletion(request)
+                .timeout(deadline.remaining())
+                .map(response -> new QueryResult(response.getChoices().get(0).getMessage().getContent(), packed.chunks(), packed.entities()))
+                .onErrorResume(TimeoutException.class, error -> {
+                    log.warn("Answer generation did not finish before the deadline");
+                    return Mono.just(partialResult(context, extract));
+                })
+                .onErrorResume(error -> extract.isPresent(), error -> {
+                    log.warn("Answer generation failed, answering extractively: {}", error.toString());
+                    return Mono.just(extractiveResult(extract.get(), context, false));
+                });
+        })
+        .onErrorMap(e -> {
+            log.error("Failed to generate answer: {}", e.getMessage(), e);
+            return new RuntimeException("Failed to generate answer", e);
         });
     }
 
-    private String buildContextText(List<DocumentChunk> chunks) {
-        return chunks.stream()
-            .map(chunk -> String.format("文档片段 %d: %s", chunk.getChunkIndex(), chunk.getContent()))
-            .collect(Collectors.joining("\n\n"));
+    /**
+     * Retrieval is confident when the best chunk is close to the question and the quoted sentences contain most
+     * of its terms. Chunks retrieved by terms have a term-match ratio rather than a cosine similarity, so they
+     * never are.
+     */
+    static boolean isConfident(ExtractiveAnswerer.Extract extract, RetrievedContext context, ApplicationProperties.OpenAI.Rag rag) {
+        if (context.lexical()) {
+            return false;
+        }
+        double bestSimilarity = context.chunks().stream().mapToDouble(ChunkContext::similarity).max().orElse(0);
+        return bestSimilarity >= rag.getExtractiveMinSimilarity() && extract.coverage() >= rag.getExtractiveMinCoverage();
     }
 
-    private String buildEntitiesText(List<Entity> entities) {
-        return entities.stream()
-            .map(entity -> String.format("- %s (%s): %s",
-                entity.getName(),
-                entity.getType(),
-                entity.getDescription() != null ? entity.getDescription() : ""))
-            .collect(Collectors.joining("\n"));
+    private QueryResult extractiveResult(ExtractiveAnswerer.Extract extract, RetrievedContext context, boolean partial) {
+        return new QueryResult(extract.answer(), extract.chunks(), context.entities(), partial, true);
     }
 
-    private Mono<Void> saveQueryHistory(String question, String answer, List<DocumentChunk> contextChunks,
-                                       long responseTime, String sessionId) {
+    private QueryResult partialResult(RetrievedContext context, Optional<ExtractiveAnswerer.Extract> extract) {
+        if (extract.isPresent()) {
+            return extractiveResult(extract.get(), context, true);
+        }
+        int maxChunks = applicationProperties.getOpenai().getRag().getMaxContextChunks();
+        return new QueryResult(PARTIAL_ANSWER, context.chunks().stream().limit(maxChunks).toList(), context.entities(), true, false);
+    }
+
+    private Mono<Void> saveQueryHistory(String question, String answer, List<ChunkContext> contextChunks,
+                                       long responseTime, String sessionId, boolean shared, QueryTrace trace) {
+        queryAnalyticsService.recordQuery(Instant.now(), responseTime, shared);
         return Mono.fromCallable(() -> {
             try {
                 QueryHistory history = new QueryHistory();
@@ -215,9 +674,10 @@ public class RAGQueryService {
                 history.setCreatedDate(Instant.now());
 
                 List<Long> chunkIds = contextChunks.stream()
-                    .map(DocumentChunk::getId)
+                    .map(ChunkContext::id)
                     .collect(Collectors.toList());
                 history.setContextChunks(objectMapper.writeValueAsString(chunkIds));
+                history.setTrace(objectMapper.writeValueAsString(trace.summary()));
 
                 return history;
             } catch (Exception e) {
@@ -226,21 +686,43 @@ public class RAGQueryService {
             }
         })
         .filter(Objects::nonNull)
-        .flatMap(queryHistoryRepository::save)
+        .doOnNext(queryHistoryWriter::append)
         .then();
     }
 
-    public Mono<Void> provideFeedback(Long queryId, String feedback) {
-        return queryHistoryRepository.findById(queryId)
-            .flatMap(history -> {
-                history.setUserFeedback(feedback);
-                return queryHistoryRepository.save(history);
+    /**
+     * Records feedback for a query, identified by its query id or, for histories persisted before query ids
+     * were assigned, by its numeric id. A history that is not persisted yet is updated in the write-behind
+     * buffer and persisted with the feedback.
+     */
+    public Mono<Void> provideFeedback(String queryId, String feedback) {
+        return queryHistoryWriter.updatePending(queryId, history -> applyFeedback(history, feedback))
+            .flatMap(updated -> {
+                if (updated) {
+                    return Mono.empty();
+                }
+                Mono<QueryHistory> persisted = LEGACY_QUERY_ID.matcher(queryId).matches()
+                    ? queryHistoryRepository.findById(Long.valueOf(queryId))
+                    : queryHistoryRepository.findByQueryId(queryId);
+                return persisted.flatMap(history -> {
+                    applyFeedback(history, feedback);
+                    return queryHistoryRepository.save(history);
+                });
             })
             .then();
     }
 
+    private void applyFeedback(QueryHistory history, String feedback) {
+        queryAnalyticsService.recordFeedback(history.getCreatedDate(), history.getUserFeedback(), feedback);
+        history.setUserFeedback(feedback);
+    }
+
     public Flux<QueryHistory> getQueryHistory(String sessionId, int limit) {
-        return queryHistoryRepository.findRecentQueriesBySession(sessionId, limit);
+        // 依次为：尚未写入数据库的记录、图中的近期记录、已归档的记录
+        return Flux.fromIterable(queryHistoryWriter.findPendingBySession(sessionId))
+            .concatWith(Flux.defer(() -> queryHistoryRepository.findRecentQueriesBySession(sessionId, limit)))
+            .concatWith(Flux.defer(() -> queryHistoryArchiveService.findBySession(sessionId, limit)))
+            .take(limit);
     }
 
     public Mono<List<String>> getSuggestions(String partialQuery) {
@@ -266,6 +748,54 @@ public class RAGQueryService {
             );
     }
 
-    public record QueryResult(String answer, List<DocumentChunk> contextChunks, List<Entity> relatedEntities) {}
-    public record RetrievedContext(List<DocumentChunk> chunks, List<Entity> entities) {}
+    /**
+     * {@code partial} is set when the deadline passed before an answer was generated; the answer is then
+     * extractive or a notice, and the context is what had been retrieved by then. {@code extractive} is set
+     * when the answer quotes the context instead of being generated. {@code trace} records where the query
+     * spent its time.
+     */
+    public record QueryResult(
+        String answer,
+        List<ChunkContext> contextChunks,
+        List<EntitySummary> relatedEntities,
+        boolean partial,
+        boolean extractive,
+        QueryTrace trace
+    ) {
+        public QueryResult(String answer, List<ChunkContext> contextChunks, List<EntitySummary> relatedEntities, boolean partial, boolean extractive) {
+            this(answer, contextChunks, relatedEntities, partial, extractive, new QueryTrace());
+        }
+
+        public QueryResult(String answer, List<ChunkContext> contextChunks, List<EntitySummary> relatedEntities) {
+            this(answer, contextChunks, relatedEntities, false, false);
+        }
+
+        public QueryResult withTrace(QueryTrace trace) {
+            return new QueryResult(answer, contextChunks, relatedEntities, partial, extractive, trace);
+        }
+    }
+    /**
+     * @param lexical whether the chunks were retrieved by terms because the question could not be embedded.
+     */
+    public record RetrievedContext(List<ChunkContext> chunks, List<EntitySummary> entities, boolean lexical) {}
+    record KeyPoint(String description, int score) {}
+
+    /**
+     * Identifies queries that can share one answer: same mode, same question up to case and whitespace,
+     * same retrieval filter and answer mode.
+     */
+    record QueryKey(String mode, String question, RetrievalFilter filter, AnswerMode answerMode) {
+        static QueryKey local(String question, RetrievalFilter filter, AnswerMode answerMode) {
+            return new QueryKey("local", normalize(question), filter, answerMode);
+        }
+
+        static QueryKey global(String question) {
+            return new QueryKey("global", normalize(question), RetrievalFilter.NONE, AnswerMode.GENERATIVE);
+        }
+
+        static String normalize(String question) {
+            String normalized = Normalizer.normalize(question, Normalizer.Form.NFKC);
+            return WHITESPACE.matcher(normalized.strip()).replaceAll(" ").toLowerCase(Locale.ROOT);
+        }
+    }
 }
@@ -0,0 +1,109 @@
+package com.topsion.rag.service;
+
+import com.topsion.rag.config.ApplicationProperties;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Disk cache of generated report artifacts keyed by (report, format, version).
+ * <p>
+ * A cache hit never calls the generator, so an unchanged report is served without touching Neo4j.
+ * Concurrent misses for the same key share one generation, and older versions of a report are deleted once
+ * a newer one has been written.
+ */
+@Service
+public class ReportCacheService {
+
+    private final Logger log = LoggerFactory.getLogger(ReportCacheService.class);
+
+    private final Path directory;
+    private final ConcurrentMap<String, Mono<Path>> inFlight = new ConcurrentHashMap<>();
+
+    public ReportCacheService(ApplicationProperties applicationProperties) {
+        this.directory = Paths.get(applicationProperties.getReportCache().getDirectory());
+    }
+
+    /**
+     * Returns the cached artifact, generating it first when missing. Completes empty when the generator
+     * produces nothing, e.g. for an unknown document.
+     */
+    public Mono<Path> getOrCreate(String report, String format, long version, Supplier<Flux<DataBuffer>> generator) {
+        String fileName = report + "." + version + "." + format;
+        Path path = directory.resolve(fileName);
+        return Mono.fromCallable(() -> Files.exists(path))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(exists -> {
+                if (exists) {
+                    log.debug("Report cache hit: {}", fileName);
+                    return Mono.just(path);
+                }
+                return inFlight.computeIfAbsent(fileName, key ->
+                    generate(report, format, version, path, generator)
+                        .doFinally(signal -> inFlight.remove(key))
+                        .cache()
+                );
+            });
+    }
+
+    private Mono<Path> generate(String report, String format, long version, Path path, Supplier<Flux<DataBuffer>> generator) {
+        return Mono.fromCallable(() -> {
+            Files.createDirectories(directory);
+            return Files.createTempFile(directory, report + ".", ".tmp");
+        })
+        .subscribeOn(Schedulers.boundedElastic())
+        .flatMap(tempFile ->
+            DataBufferUtils.write(
+                Flux.defer(generator).switchIfEmpty(Mono.error(new NoSuchElementException())),
+                tempFile
+            )
+            .then(Mono.fromCallable(() -> {
+                Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                log.debug("Cached report {}", path.getFileName());
+                deleteOlderVersions(report, format, version);
+                return path;
+            }).subscribeOn(Schedulers.boundedElastic()))
+            .onErrorResume(error -> {
+                deleteQuietly(tempFile);
+                return error instanceof NoSuchElementException ? Mono.empty() : Mono.error(error);
+            })
+        );
+    }
+
+    private void deleteOlderVersions(String report, String format, long version) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, report + ".*." + format)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String fileVersion = name.substring(report.length() + 1, name.length() - format.length() - 1);
+                if (!fileVersion.isEmpty() && fileVersion.chars().allMatch(Character::isDigit) && Long.parseLong(fileVersion) < version) {
+                    deleteQuietly(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to clean up old versions of report {}: {}", report, e.getMessage());
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete {}: {}", file, e.getMessage());
+        }
+    }
+}
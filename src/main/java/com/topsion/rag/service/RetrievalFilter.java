@@ -0,0 +1,38 @@
+package com.topsion.rag.service;
+
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * Restricts local retrieval to chunks of matching documents. Criteria of different kinds are combined with
+ * AND, values within one criterion with OR; an empty criterion matches everything.
+ */
+public record RetrievalFilter(
+    Set<Long> documentIds,
+    Set<String> tags,
+    Set<String> contentTypes,
+    Instant createdAfter,
+    Instant createdBefore
+) {
+    public static final RetrievalFilter NONE = new RetrievalFilter(null, null, null, null, null);
+
+    public RetrievalFilter {
+        documentIds = documentIds != null ? Set.copyOf(documentIds) : Set.of();
+        tags = tags != null ? Set.copyOf(tags) : Set.of();
+        contentTypes = contentTypes != null ? Set.copyOf(contentTypes) : Set.of();
+    }
+
+    public boolean isEmpty() {
+        return documentIds.isEmpty() && tags.isEmpty() && contentTypes.isEmpty() && createdAfter == null && createdBefore == null;
+    }
+
+    boolean matchesCreatedDate(Instant createdDate) {
+        if (createdAfter == null && createdBefore == null) {
+            return true;
+        }
+        if (createdDate == null) {
+            return false;
+        }
+        return (createdAfter == null || !createdDate.isBefore(createdAfter)) && (createdBefore == null || createdDate.isBefore(createdBefore));
+    }
+}
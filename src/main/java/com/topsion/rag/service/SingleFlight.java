@@ -0,0 +1,53 @@
+package com.topsion.rag.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import reactor.core.publisher.Mono;
+
+/**
+ * Coalesces concurrent calls with equal keys into one execution.
+ * <p>
+ * The first caller for a key starts the call; callers arriving while it runs subscribe to the same result
+ * instead of starting their own. The key is released when the call terminates, so later callers start a new
+ * one. A shared call is not cancelled when one of its subscribers goes away, since others may still wait,
+ * so a caller can stop waiting, e.g. at its own deadline, without affecting the others.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    public Mono<Shared<V>> execute(K key, Supplier<Mono<V>> call) {
+        return execute(key, call, UnaryOperator.identity());
+    }
+
+    /**
+     * Like {@link #execute(Object, Supplier)}, applying {@code whileJoined} to the result of a call started by
+     * another caller, e.g. to wait no longer than this caller's own deadline.
+     */
+    public Mono<Shared<V>> execute(K key, Supplier<Mono<V>> call, UnaryOperator<Mono<V>> whileJoined) {
+        return Mono.defer(() -> {
+            AtomicReference<Mono<V>> started = new AtomicReference<>();
+            Mono<V> flight = inFlight.computeIfAbsent(key, k -> {
+                Mono<V> shared = Mono.defer(call)
+                    .doFinally(signal -> inFlight.remove(k, started.get()))
+                    .share();
+                started.set(shared);
+                return shared;
+            });
+            boolean joined = started.get() == null;
+            return (joined ? whileJoined.apply(flight) : flight).map(value -> new Shared<>(value, joined));
+        });
+    }
+
+    int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * @param joined whether the value was produced by another caller's execution.
+     */
+    public record Shared<V>(V value, boolean joined) {}
+}
@@ -0,0 +1,168 @@
+package com.topsion.rag.service;
+
+import com.topsion.rag.management.QueryStageEvent;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+/**
+ * Runs one query as a graph of stages.
+ * <p>
+ * Each stage declares the stages whose results it needs and starts as soon as those have completed, so
+ * stages that do not depend on each other run concurrently and a stage without inputs starts right away.
+ * A stage runs at most once however many stages consume its result. An optional stage that fails or
+ * exceeds its timeout yields its fallback instead of failing the stages that depend on it. Every stage run is
+ * also a {@link QueryStageEvent} for the flight recorder.
+ */
+public final class StageGraph {
+
+    private final Logger log = LoggerFactory.getLogger(StageGraph.class);
+
+    private final Map<Stage<?>, Mono<?>> scheduled = new ConcurrentHashMap<>();
+    private final Map<Stage<?>, Object> results = new ConcurrentHashMap<>();
+    private final Map<String, Duration> timings = new ConcurrentHashMap<>();
+    private final Set<String> fallbacks = ConcurrentHashMap.newKeySet();
+
+    /**
+     * A stage whose failure fails every stage that depends on it.
+     */
+    public <T> Stage<T> required(String name, Function<StageGraph, Mono<T>> body, Stage<?>... inputs) {
+        return new Stage<>(name, List.of(inputs), body, null, null);
+    }
+
+    /**
+     * A stage that yields {@code fallback} when it fails or does not complete within {@code timeout},
+     * which is evaluated when the stage starts.
+     */
+    public <T> Stage<T> optional(String name, Supplier<Duration> timeout, T fallback, Function<StageGraph, Mono<T>> body, Stage<?>... inputs) {
+        return new Stage<>(name, List.of(inputs), body, timeout, fallback);
+    }
+
+    /**
+     * Runs {@code stage} and, concurrently where possible, everything it depends on.
+     */
+    public <T> Mono<T> run(Stage<T> stage) {
+        return resolve(stage);
+    }
+
+    /**
+     * Result of a completed stage, for use in the body of a stage that declared it as an input.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Stage<T> stage) {
+        Object result = results.get(stage);
+        if (result == null) {
+            throw new IllegalStateException("Stage " + stage.name() + " has not completed");
+        }
+        return (T) result;
+    }
+
+    /**
+     * Result of the stage if it has completed by now.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> completed(Stage<T> stage) {
+        return Optional.ofNullable((T) results.get(stage));
+    }
+
+    /**
+     * Run time of each completed stage, excluding the time it waited for its inputs.
+     */
+    public Map<String, Duration> timings() {
+        return Map.copyOf(timings);
+    }
+
+    /**
+     * Names of the optional stages that yielded their fallback.
+     */
+    public Set<String> fallbacks() {
+        return Set.copyOf(fallbacks);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Mono<T> resolve(Stage<T> stage) {
+        return (Mono<T>) scheduled.computeIfAbsent(stage, key -> schedule(stage));
+    }
+
+    private <T> Mono<T> schedule(Stage<T> stage) {
+        // 输入在订阅时才解析，避免在 computeIfAbsent 中递归修改
+        return Mono.defer(() -> Mono.when(stage.inputs().stream().map(this::resolve).toList()))
+            .then(Mono.defer(() -> {
+                QueryStageEvent event = QueryStageEvent.start(stage.name());
+                long start = System.nanoTime();
+                Mono<T> body = Mono.defer(() -> stage.body().apply(this))
+                    .switchIfEmpty(Mono.error(() -> new IllegalStateException("Stage " + stage.name() + " produced no result")));
+                if (stage.isOptional()) {
+                    body = body
+                        .timeout(stage.timeout().get())
+                        .onErrorResume(error -> {
+                            log.warn("Stage {} fell back after {} ms: {}",
+                                stage.name(), Duration.ofNanos(System.nanoTime() - start).toMillis(), error.toString());
+                            fallbacks.add(stage.name());
+                            event.outcome = "fallback";
+                            return Mono.just(stage.fallback());
+                        });
+                }
+                return body.doOnNext(result -> {
+                    Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+                    results.put(stage, result);
+                    timings.put(stage.name(), elapsed);
+                    log.debug("Stage {} completed in {} ms", stage.name(), elapsed.toMillis());
+                })
+                .doFinally(event::finish);
+            }))
+            .share();
+    }
+
+    /**
+     * Handle of a stage in a graph. Compared by identity.
+     */
+    public static final class Stage<T> {
+
+        private final String name;
+        private final List<Stage<?>> inputs;
+        private final Function<StageGraph, Mono<T>> body;
+        private final Supplier<Duration> timeout;
+        private final T fallback;
+
+        private Stage(String name, List<Stage<?>> inputs, Function<StageGraph, Mono<T>> body, Supplier<Duration> timeout, T fallback) {
+            this.name = name;
+            this.inputs = inputs;
+            this.body = body;
+            this.timeout = timeout;
+            this.fallback = fallback;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        List<Stage<?>> inputs() {
+            return inputs;
+        }
+
+        Function<StageGraph, Mono<T>> body() {
+            return body;
+        }
+
+        Supplier<Duration> timeout() {
+            return timeout;
+        }
+
+        T fallback() {
+            return fallback;
+        }
+
+        boolean isOptional() {
+            return timeout != null;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.topsion.rag.service;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingResult;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.topsion.rag.config.ApplicationProperties;
+import org.springframework.stereotype.Service;
+
+/**
+ * {@link TokenCounter} backed by the tiktoken encoding of the configured chat model, falling back to
+ * {@code cl100k_base} for models jtokkit does not know.
+ */
+@Service
+public class TiktokenCounter implements TokenCounter {
+
+    private final Encoding encoding;
+
+    public TiktokenCounter(ApplicationProperties applicationProperties) {
+        EncodingRegistry registry = Encodings.newDefaultEncodingRegistry();
+        this.encoding = registry
+            .getEncodingForModel(applicationProperties.getOpenai().getModel().getChat())
+            .orElseGet(() -> registry.getEncoding(EncodingType.CL100K_BASE));
+    }
+
+    @Override
+    public int count(String text) {
+        return encoding.countTokensOrdinary(text);
+    }
+
+    @Override
+    public String truncate(String text, int maxTokens) {
+        if (maxTokens <= 0) {
+            return "";
+        }
+        EncodingResult result = encoding.encodeOrdinary(text, maxTokens);
+        if (!result.isTruncated()) {
+            return text;
+        }
+        String prefix = encoding.decode(result.getTokens());
+        // 截断可能落在多字节字符中间
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == '\uFFFD') {
+            end--;
+        }
+        return prefix.substring(0, end);
+    }
+}
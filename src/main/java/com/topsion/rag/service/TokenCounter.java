@@ -0,0 +1,13 @@
+package com.topsion.rag.service;
+
+/**
+ * Counts tokens the way the chat model's tokenizer does.
+ */
+public interface TokenCounter {
+    int count(String text);
+
+    /**
+     * The longest prefix of {@code text} that is at most {@code maxTokens} tokens.
+     */
+    String truncate(String text, int maxTokens);
+}
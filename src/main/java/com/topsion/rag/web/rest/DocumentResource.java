@@ -1,7 +1,9 @@
 package com.topsion.rag.web.rest;
 
 import com.topsion.rag.domain.Document;
+import com.topsion.rag.repository.projection.DocumentSummary;
 import com.topsion.rag.service.DocumentProcessingService;
+import com.topsion.rag.web.rest.vm.DocumentTimingsVM;
 import com.topsion.rag.web.rest.errors.BadRequestAlertException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,13 +13,16 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.web.bind.annotation.*;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import tech.jhipster.web.util.HeaderUtil;
 import tech.jhipster.web.util.reactive.ResponseUtil;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api")
@@ -27,6 +32,10 @@ public class DocumentResource {
 
     private static final String ENTITY_NAME = "document";
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final int MAX_PAGE_SIZE = 100;
+
     @Value("${jhipster.clientApp.name}")
     private String applicationName;
 
@@ -37,11 +46,14 @@ public class DocumentResource {
     }
 
     @PostMapping(value = "/documents/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public Mono<ResponseEntity<Document>> uploadDocument(@RequestPart("file") Mono<FilePart> filePartMono) {
-        log.debug("REST request to upload Document");
+    public Mono<ResponseEntity<Document>> uploadDocument(
+        @RequestPart("file") Mono<FilePart> filePartMono,
+        @RequestParam(required = false) List<String> tags
+    ) {
+        log.debug("REST request to upload Document with tags {}", tags);
         
         return filePartMono
-            .flatMap(documentProcessingService::uploadAndProcessDocument)
+            .flatMap(filePart -> documentProcessingService.uploadAndProcessDocument(filePart, tags != null ? tags : List.of()))
             .map(document -> {
                 try {
                     return ResponseEntity.created(new URI("/api/documents/" + document.getId()))
@@ -54,10 +66,30 @@ public class DocumentResource {
             .onErrorMap(Exception.class, ex -> new BadRequestAlertException("Failed to upload document", ENTITY_NAME, "uploadfailed"));
     }
 
+    /**
+     * Lists documents newest first, one keyset page at a time. When the page is full the {@code X-Next-Cursor}
+     * header carries the cursor of the next page.
+     */
     @GetMapping("/documents")
-    public Flux<Document> getAllDocuments() {
-        log.debug("REST request to get all Documents");
-        return documentProcessingService.getAllDocuments();
+    public Mono<ResponseEntity<List<DocumentSummary>>> getAllDocuments(
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "20") int size
+    ) {
+        log.debug("REST request to get a page of Documents, cursor: {}", cursor);
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        DocumentCursor after = cursor != null ? DocumentCursor.decode(cursor) : null;
+
+        return documentProcessingService
+            .getDocumentSummaries(after != null ? after.createdDate() : null, after != null ? after.id() : null, pageSize)
+            .collectList()
+            .map(page -> {
+                ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                if (page.size() == pageSize) {
+                    DocumentSummary last = page.get(page.size() - 1);
+                    response.header(NEXT_CURSOR_HEADER, new DocumentCursor(last.createdDate(), last.id()).encode());
+                }
+                return response.body(page);
+            });
     }
 
     @GetMapping("/documents/{id}")
@@ -68,6 +100,17 @@ public class DocumentResource {
             .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
     }
 
+    /**
+     * Where the ingestion of a document spent its time, stage by stage, with the counts it produced.
+     */
+    @GetMapping("/documents/{id}/timings")
+    public Mono<ResponseEntity<DocumentTimingsVM>> getDocumentTimings(@PathVariable Long id) {
+        log.debug("REST request to get ingestion timings of Document : {}", id);
+        return documentProcessingService.getDocumentTelemetry(id)
+            .map(document -> ResponseEntity.ok().body(DocumentTimingsVM.of(document)))
+            .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
+    }
+
     @DeleteMapping("/documents/{id}")
     public Mono<ResponseEntity<Void>> deleteDocument(@PathVariable Long id) {
         log.debug("REST request to delete Document : {}", id);
@@ -79,4 +122,30 @@ public class DocumentResource {
                 .headers(HeaderUtil.createEntityDeletionAlert(applicationName, false, ENTITY_NAME, id.toString()))
                 .build());
     }
-}
\ No newline at end of file
+
+    /**
+     * Opaque page cursor: the created date and id of the last document already returned. The date keeps its
+     * full precision, since documents created within the same millisecond are otherwise skipped, and is empty
+     * for a document without one.
+     */
+    record DocumentCursor(Instant createdDate, Long id) {
+        String encode() {
+            String raw = (createdDate != null ? createdDate.toString() : "") + "_" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static DocumentCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('_');
+                String createdDate = raw.substring(0, separator);
+                return new DocumentCursor(
+                    createdDate.isEmpty() ? null : Instant.parse(createdDate),
+                    Long.parseLong(raw.substring(separator + 1))
+                );
+            } catch (RuntimeException e) {
+                throw new BadRequestAlertException("Invalid cursor", ENTITY_NAME, "invalidcursor");
+            }
+        }
+    }
+}
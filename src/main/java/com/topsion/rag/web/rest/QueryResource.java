@@ -2,7 +2,14 @@ package com.topsion.rag.web.rest;
 
 import com.topsion.rag.domain.Entity;
 import com.topsion.rag.domain.QueryHistory;
+import com.topsion.rag.security.SecurityUtils;
+import com.topsion.rag.service.AnswerMode;
+import com.topsion.rag.service.QueryAdmissionService;
+import com.topsion.rag.service.QueryAnalyticsService;
+import com.topsion.rag.service.QueryDeadline;
 import com.topsion.rag.service.RAGQueryService;
+import com.topsion.rag.service.RetrievalFilter;
+import com.topsion.rag.web.rest.errors.ServiceUnavailableException;
 import com.topsion.rag.web.rest.vm.QueryRequestVM;
 import com.topsion.rag.web.rest.vm.FeedbackVM;
 import com.topsion.rag.web.rest.vm.QueryResponseVM;
@@ -14,55 +21,124 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import jakarta.validation.Valid;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api")
 public class QueryResource {
 
+    private static final String ANONYMOUS_USER = "anonymous";
+
+    private static final String SERVER_TIMING_HEADER = "Server-Timing";
+
     private final Logger log = LoggerFactory.getLogger(QueryResource.class);
 
     private final RAGQueryService ragQueryService;
+    private final QueryAnalyticsService queryAnalyticsService;
+    private final QueryAdmissionService queryAdmissionService;
 
-    public QueryResource(RAGQueryService ragQueryService) {
+    public QueryResource(
+        RAGQueryService ragQueryService,
+        QueryAnalyticsService queryAnalyticsService,
+        QueryAdmissionService queryAdmissionService
+    ) {
         this.ragQueryService = ragQueryService;
+        this.queryAnalyticsService = queryAnalyticsService;
+        this.queryAdmissionService = queryAdmissionService;
     }
 
+    /**
+     * Answers a question. Under overload the request is shed with 503 and a {@code Retry-After} header
+     * rather than queued indefinitely. The deadline starts when the request arrives, so time spent queued
+     * counts against it.
+     * <p>
+     * The {@code Server-Timing} header carries the duration of each stage and the total including time spent
+     * queued. With {@code explain=true} the response also reports candidate counts, similarity scores, prompt
+     * tokens and cache hits.
+     */
     @PostMapping("/query")
-    public Mono<ResponseEntity<QueryResponseVM>> query(@Valid @RequestBody QueryRequestVM queryRequest) {
+    public Mono<ResponseEntity<QueryResponseVM>> query(
+        @Valid @RequestBody QueryRequestVM queryRequest,
+        @RequestParam(defaultValue = "false") boolean explain
+    ) {
         log.debug("REST request to query knowledge base: {}", queryRequest.question());
+        long startTime = System.nanoTime();
         
         String sessionId = queryRequest.sessionId() != null ? queryRequest.sessionId() : UUID.randomUUID().toString();
         
-        return ragQueryService.queryKnowledgeBase(queryRequest.question(), sessionId)
+        QueryDeadline deadline = ragQueryService.newDeadline(queryRequest.timeoutMs());
+        Mono<RAGQueryService.QueryResult> queryResult = queryRequest.isGlobal()
+            ? ragQueryService.queryGlobal(queryRequest.question(), sessionId, deadline)
+            : ragQueryService.queryKnowledgeBase(
+                queryRequest.question(),
+                sessionId,
+                toRetrievalFilter(queryRequest.filters()),
+                AnswerMode.of(queryRequest.answerMode()),
+                deadline
+            );
+
+        return SecurityUtils.getCurrentUserLogin()
+            .defaultIfEmpty(ANONYMOUS_USER)
+            .flatMap(user -> queryAdmissionService.admit(user, () -> queryResult))
+            .onErrorMap(QueryAdmissionService.AdmissionRejectedException.class, error ->
+                new ServiceUnavailableException("Too many concurrent queries", "queryrejected", error.getRetryAfter())
+            )
             .map(result -> {
                 QueryResponseVM response = new QueryResponseVM(
                     result.answer(),
                     result.contextChunks().stream()
                         .map(chunk -> new QueryResponseVM.ContextChunk(
-                            chunk.getId(),
-                            chunk.getContent(),
-                            chunk.getDocument() != null ? chunk.getDocument().getTitle() : null,
-                            chunk.getChunkIndex()
+                            chunk.id(),
+                            chunk.content(),
+                            chunk.documentTitle(),
+                            chunk.chunkIndex()
                         ))
                         .toList(),
                     result.relatedEntities().stream()
                         .map(entity -> new QueryResponseVM.RelatedEntity(
-                            entity.getId(),
-                            entity.getName(),
-                            entity.getType(),
-                            entity.getDescription()
+                            entity.id(),
+                            entity.name(),
+                            entity.type(),
+                            entity.description()
                         ))
                         .toList(),
-                    sessionId
+                    sessionId,
+                    result.partial(),
+                    result.extractive(),
+                    explain ? result.trace().summary() : null
                 );
-                return ResponseEntity.ok(response);
+                return ResponseEntity.ok()
+                    .header(SERVER_TIMING_HEADER, result.trace().serverTiming(Duration.ofNanos(System.nanoTime() - startTime)))
+                    .body(response);
             });
     }
 
+    private static RetrievalFilter toRetrievalFilter(QueryRequestVM.Filters filters) {
+        if (filters == null) {
+            return RetrievalFilter.NONE;
+        }
+        return new RetrievalFilter(
+            toSet(filters.documentIds()),
+            toSet(filters.tags()),
+            toSet(filters.contentTypes()),
+            filters.createdAfter(),
+            filters.createdBefore()
+        );
+    }
+
+    private static <T> Set<T> toSet(List<T> values) {
+        return values == null ? null : values.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+    }
+
     @PostMapping("/query/{queryId}/feedback")
-    public Mono<ResponseEntity<Void>> provideFeedback(@PathVariable Long queryId, @Valid @RequestBody FeedbackVM feedback) {
+    public Mono<ResponseEntity<Void>> provideFeedback(@PathVariable String queryId, @Valid @RequestBody FeedbackVM feedback) {
         log.debug("REST request to provide feedback for query: {}", queryId);
         
         return ragQueryService.provideFeedback(queryId, feedback.feedback())
@@ -75,6 +151,23 @@ public class QueryResource {
         return ragQueryService.getQueryHistory(sessionId, limit);
     }
 
+    /**
+     * Query volume, latency percentiles, cache-hit ratio and feedback per hour or per day, read from the
+     * pre-aggregated rollups. Defaults to the last 24 hours by hour.
+     */
+    @GetMapping("/query/metrics")
+    public Flux<QueryAnalyticsService.RollupSummary> getQueryMetrics(
+        @RequestParam(defaultValue = "hour") String granularity,
+        @RequestParam(required = false) Instant from,
+        @RequestParam(required = false) Instant to
+    ) {
+        log.debug("REST request to get query metrics by {}", granularity);
+        String bucket = "day".equalsIgnoreCase(granularity) ? QueryAnalyticsService.DAY : QueryAnalyticsService.HOUR;
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(1, QueryAnalyticsService.DAY.equals(bucket) ? ChronoUnit.WEEKS : ChronoUnit.DAYS);
+        return queryAnalyticsService.getRollups(bucket, start, end);
+    }
+
     @GetMapping("/query/suggestions")
     public Mono<ResponseEntity<List<String>>> getSuggestions(@RequestParam String q) {
         log.debug("REST request to get suggestions for: {}", q);
@@ -1,12 +1,25 @@
 package com.topsion.rag.web.rest;
 
 import com.topsion.rag.service.DocumentOutputService;
+import com.topsion.rag.service.GraphVersionService;
+import com.topsion.rag.service.ReportCacheService;
+import com.topsion.rag.web.rest.errors.BadRequestAlertException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @RestController
@@ -15,72 +28,137 @@ public class ReportResource {
 
     private final Logger log = LoggerFactory.getLogger(ReportResource.class);
 
+    private static final int REPORT_READ_BUFFER_SIZE = 64 * 1024;
+
+    // 格式同时用作缓存文件名的一部分
+    private static final Pattern SUPPORTED_FORMAT = Pattern.compile("(?i)json|ndjson|docx|txt");
+
     private final DocumentOutputService documentOutputService;
+    private final ReportCacheService reportCacheService;
+    private final GraphVersionService graphVersionService;
 
-    public ReportResource(DocumentOutputService documentOutputService) {
+    public ReportResource(
+        DocumentOutputService documentOutputService,
+        ReportCacheService reportCacheService,
+        GraphVersionService graphVersionService
+    ) {
         this.documentOutputService = documentOutputService;
+        this.reportCacheService = reportCacheService;
+        this.graphVersionService = graphVersionService;
     }
 
     @GetMapping("/reports/documents/{documentId}")
-    public Mono<ResponseEntity<byte[]>> generateDocumentReport(
+    public Mono<ResponseEntity<Flux<DataBuffer>>> generateDocumentReport(
         @PathVariable Long documentId,
-        @RequestParam(defaultValue = "json") String format) {
-        
+        @RequestParam(defaultValue = "json") String format,
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+        ServerHttpResponse response) {
+
         log.debug("REST request to generate document report for document: {}, format: {}", documentId, format);
-        
-        return documentOutputService.generateDocumentSummaryReport(documentId, format)
-            .map(data -> {
-                String filename = "document_report_" + documentId + "." + format;
-                MediaType mediaType = getMediaType(format);
-                
-                return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .contentType(mediaType)
-                    .body(data);
-            });
+
+        String report = "document-" + documentId;
+        long version = graphVersionService.getDocumentVersion(documentId);
+        return cachedReport(report, format, version, ifNoneMatch, "document_report_" + documentId + "." + format, response, () ->
+            documentOutputService.generateDocumentSummaryReport(documentId, format).map(response.bufferFactory()::wrap).flux()
+        );
     }
 
+    /**
+     * Generated as a stream from the Neo4j cursor; use {@code format=ndjson} for one entity per line.
+     */
     @GetMapping("/reports/knowledge-graph")
-    public Mono<ResponseEntity<byte[]>> generateKnowledgeGraphReport(
-        @RequestParam(defaultValue = "json") String format) {
-        
+    public Mono<ResponseEntity<Flux<DataBuffer>>> generateKnowledgeGraphReport(
+        @RequestParam(defaultValue = "json") String format,
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+        ServerHttpResponse response) {
+
         log.debug("REST request to generate knowledge graph report, format: {}", format);
-        
-        return documentOutputService.generateKnowledgeGraphReport(format)
-            .map(data -> {
-                String filename = "knowledge_graph_report." + format;
-                MediaType mediaType = getMediaType(format);
-                
-                return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .contentType(mediaType)
-                    .body(data);
-            });
+
+        long version = graphVersionService.getGraphVersion();
+        return cachedReport("knowledge-graph", format, version, ifNoneMatch, "knowledge_graph_report." + format, response, () ->
+            documentOutputService.streamKnowledgeGraphReport(format, response.bufferFactory())
+        );
     }
 
     @GetMapping("/reports/query-analytics")
     public Mono<ResponseEntity<byte[]>> generateQueryAnalyticsReport(
-        @RequestParam String sessionId,
+        @RequestParam(required = false) String sessionId,
         @RequestParam(defaultValue = "json") String format) {
         
         log.debug("REST request to generate query analytics report for session: {}, format: {}", sessionId, format);
-        
+
+        if (!SUPPORTED_FORMAT.matcher(format).matches()) {
+            return Mono.error(new BadRequestAlertException("Unsupported format: " + format, "report", "unsupportedformat"));
+        }
         return documentOutputService.generateQueryAnalyticsReport(sessionId, format)
             .map(data -> {
-                String filename = "query_analytics_report." + format;
+                String filename = (sessionId != null ? "query_analytics_report_" + sessionId : "query_analytics_report") + "." + format;
                 MediaType mediaType = getMediaType(format);
                 
                 return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                    .header(HttpHeaders.CONTENT_DISPOSITION, attachment(filename))
                     .contentType(mediaType)
                     .body(data);
             });
     }
 
+    private Mono<ResponseEntity<Flux<DataBuffer>>> cachedReport(
+        String report,
+        String format,
+        long version,
+        String ifNoneMatch,
+        String filename,
+        ServerHttpResponse response,
+        Supplier<Flux<DataBuffer>> generator) {
+
+        if (!SUPPORTED_FORMAT.matcher(format).matches()) {
+            return Mono.error(new BadRequestAlertException("Unsupported format: " + format, "report", "unsupportedformat"));
+        }
+
+        String eTag = "\"" + report + "-" + format + "-" + version + "\"";
+        if (matchesETag(ifNoneMatch, eTag)) {
+            return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(CacheControl.noCache()).build());
+        }
+
+        return reportCacheService.getOrCreate(report, format.toLowerCase(), version, generator)
+            .map(path -> ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, attachment(filename))
+                .contentType(getMediaType(format))
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache())
+                .body(DataBufferUtils.read(path, response.bufferFactory(), REPORT_READ_BUFFER_SIZE)))
+            .switchIfEmpty(Mono.fromSupplier(() -> ResponseEntity.notFound().build()));
+    }
+
+    /**
+     * The filename may contain the client's session id, so it is encoded (RFC 6266) rather than quoted.
+     */
+    private static String attachment(String filename) {
+        return ContentDisposition.attachment().filename(filename, StandardCharsets.UTF_8).build().toString();
+    }
+
+    private static boolean matchesETag(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private MediaType getMediaType(String format) {
         switch (format.toLowerCase()) {
             case "json":
                 return MediaType.APPLICATION_JSON;
+            case "ndjson":
+                return MediaType.APPLICATION_NDJSON;
             case "docx":
                 return MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.wordprocessingml.document");
             case "txt":
@@ -224,15 +224,22 @@ public class ExceptionTranslator extends ResponseEntityExceptionHandler implemen
     }
 
     private HttpHeaders buildHeaders(Throwable err) {
-        return err instanceof BadRequestAlertException badRequestAlertException
-            ? HeaderUtil.createFailureAlert(
+        if (err instanceof BadRequestAlertException badRequestAlertException) {
+            return HeaderUtil.createFailureAlert(
                 applicationName,
                 true,
                 badRequestAlertException.getEntityName(),
                 badRequestAlertException.getErrorKey(),
                 badRequestAlertException.getMessage()
-            )
-            : null;
+            );
+        }
+        if (err instanceof ServiceUnavailableException serviceUnavailableException) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.addAll(serviceUnavailableException.getHeaders());
+            headers.setContentType(MediaType.APPLICATION_PROBLEM_JSON);
+            return headers;
+        }
+        return null;
     }
 
     private HttpHeaders updateContentType(HttpHeaders headers) {
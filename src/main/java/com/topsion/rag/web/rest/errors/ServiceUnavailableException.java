@@ -0,0 +1,31 @@
+package com.topsion.rag.web.rest.errors;
+
+import java.time.Duration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.ErrorResponseException;
+import tech.jhipster.web.rest.errors.ProblemDetailWithCause.ProblemDetailWithCauseBuilder;
+
+/**
+ * 503 response telling the client when to retry.
+ */
+@SuppressWarnings("java:S110") // Inheritance tree of classes should not be too deep
+public class ServiceUnavailableException extends ErrorResponseException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ServiceUnavailableException(String defaultMessage, String errorKey, Duration retryAfter) {
+        super(
+            HttpStatus.SERVICE_UNAVAILABLE,
+            ProblemDetailWithCauseBuilder.instance()
+                .withStatus(HttpStatus.SERVICE_UNAVAILABLE.value())
+                .withType(ErrorConstants.DEFAULT_TYPE)
+                .withTitle(defaultMessage)
+                .withProperty("message", "error." + errorKey)
+                .build(),
+            null
+        );
+        long seconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+    }
+}
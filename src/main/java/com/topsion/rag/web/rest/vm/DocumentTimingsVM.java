@@ -0,0 +1,54 @@
+package com.topsion.rag.web.rest.vm;
+
+import com.topsion.rag.domain.Document;
+import com.topsion.rag.service.IngestionTelemetry;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public record DocumentTimingsVM(
+    Long documentId,
+    String status,
+    Long processingMs,
+    String slowestStage, // 耗时最长的整文档阶段，不含按片段累加的阶段
+    List<Stage> stages,
+    Map<String, Long> counts
+) {
+    public record Stage(
+        String name,
+        long ms,
+        Double share, // ms / processingMs
+        boolean summedOverChunks // 各片段并发执行，累加值可能超过所属阶段
+    ) {}
+
+    public static DocumentTimingsVM of(Document document) {
+        Map<String, Long> timings = document.getStageTimings() != null ? document.getStageTimings() : Map.of();
+        Long processingMs = document.getProcessingMs();
+
+        List<String> names = new ArrayList<>(IngestionTelemetry.STAGES);
+        timings.keySet().stream().filter(name -> !names.contains(name)).sorted().forEach(names::add);
+        List<Stage> stages = names.stream()
+            .filter(timings::containsKey)
+            .map(name -> new Stage(
+                name,
+                timings.get(name),
+                processingMs != null && processingMs > 0 ? (double) timings.get(name) / processingMs : null,
+                IngestionTelemetry.PER_CHUNK_STAGES.contains(name)
+            ))
+            .toList();
+        String slowestStage = stages.stream()
+            .filter(stage -> !stage.summedOverChunks())
+            .max(Comparator.comparingLong(Stage::ms))
+            .map(Stage::name)
+            .orElse(null);
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        Map<String, Long> stored = document.getIngestionCounts() != null ? document.getIngestionCounts() : Map.of();
+        if (!stored.isEmpty()) {
+            IngestionTelemetry.COUNTS.forEach(name -> counts.put(name, stored.getOrDefault(name, 0L)));
+        }
+        return new DocumentTimingsVM(document.getId(), document.getStatus(), processingMs, slowestStage, stages, counts);
+    }
+}
@@ -1,12 +1,44 @@
 package com.topsion.rag.web.rest.vm;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
 import jakarta.validation.constraints.Size;
+import java.time.Instant;
+import java.util.List;
 
 public record QueryRequestVM(
     @NotBlank
     @Size(min = 1, max = 1000)
     String question,
     
-    String sessionId
-) {}
\ No newline at end of file
+    String sessionId,
+
+    String mode, // local (default) or global
+
+    Filters filters, // local mode only
+
+    @Positive
+    Long timeoutMs, // defaults to application.openai.rag.query-timeout-ms
+
+    @Pattern(regexp = "(?i)auto|generative|extractive")
+    String answerMode // local mode only: auto (default), generative or extractive
+) {
+    public static final String MODE_GLOBAL = "global";
+
+    public boolean isGlobal() {
+        return MODE_GLOBAL.equalsIgnoreCase(mode);
+    }
+
+    /**
+     * Document attributes retrieval is restricted to. Different attributes must all match, listed values of
+     * one attribute are alternatives.
+     */
+    public record Filters(
+        List<Long> documentIds,
+        List<String> tags,
+        List<String> contentTypes,
+        Instant createdAfter,
+        Instant createdBefore
+    ) {}
+}
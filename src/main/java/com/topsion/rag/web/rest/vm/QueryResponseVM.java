@@ -1,12 +1,18 @@
 package com.topsion.rag.web.rest.vm;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.topsion.rag.service.QueryTrace;
 import java.util.List;
 
 public record QueryResponseVM(
     String answer,
     List<ContextChunk> contextChunks,
     List<RelatedEntity> relatedEntities,
-    String sessionId
+    String sessionId,
+    boolean partial, // deadline passed before an answer was generated
+    boolean extractive, // answer quotes the context chunks instead of being generated
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    QueryTrace.Summary explain // only with explain=true
 ) {
     public record ContextChunk(
         Long id,
@@ -0,0 +1,18 @@
+// Uniqueness constraints, each backed by a range index. The (name, type) constraint on entities is created
+// by V0005, once V0004 has merged the duplicates earlier versions wrote.
+CREATE CONSTRAINT document_filename_unique IF NOT EXISTS FOR (d:Document) REQUIRE d.filename IS UNIQUE;
+CREATE CONSTRAINT community_key_unique IF NOT EXISTS FOR (c:Community) REQUIRE c.community_key IS UNIQUE;
+
+// Range indexes for equality, range and ordering predicates
+CREATE INDEX entity_name IF NOT EXISTS FOR (e:Entity) ON (e.name);
+CREATE INDEX entity_type IF NOT EXISTS FOR (e:Entity) ON (e.type);
+CREATE INDEX document_status_created_date IF NOT EXISTS FOR (d:Document) ON (d.status, d.created_date);
+CREATE INDEX document_chunk_index IF NOT EXISTS FOR (c:DocumentChunk) ON (c.chunk_index);
+CREATE INDEX query_history_session_created_date IF NOT EXISTS FOR (q:QueryHistory) ON (q.session_id, q.created_date);
+CREATE INDEX query_history_created_date IF NOT EXISTS FOR (q:QueryHistory) ON (q.created_date);
+CREATE INDEX community_level IF NOT EXISTS FOR (c:Community) ON (c.level);
+
+// Text indexes for CONTAINS searches
+CREATE TEXT INDEX entity_name_text IF NOT EXISTS FOR (e:Entity) ON (e.name);
+CREATE TEXT INDEX document_chunk_content_text IF NOT EXISTS FOR (c:DocumentChunk) ON (c.content);
+CREATE TEXT INDEX query_history_question_text IF NOT EXISTS FOR (q:QueryHistory) ON (q.question);
@@ -0,0 +1,10 @@
+// Native vector indexes used by db.index.vector.queryNodes for approximate nearest neighbour search.
+// The dimension matches the default text-embedding-ada-002 model; a different embedding model needs a
+// new migration that drops and recreates both indexes.
+CREATE VECTOR INDEX document_chunk_embedding IF NOT EXISTS
+FOR (c:DocumentChunk) ON (c.embedding)
+OPTIONS { indexConfig: { `vector.dimensions`: 1536, `vector.similarity_function`: 'cosine' } };
+
+CREATE VECTOR INDEX entity_embedding IF NOT EXISTS
+FOR (e:Entity) ON (e.embedding)
+OPTIONS { indexConfig: { `vector.dimensions`: 1536, `vector.similarity_function`: 'cosine' } };
@@ -0,0 +1 @@
+CREATE INDEX query_rollup_granularity_bucket IF NOT EXISTS FOR (r:QueryRollup) ON (r.granularity, r.bucket_start);
@@ -0,0 +1,32 @@
+// Entities used to be created by check-then-create, so concurrently processed chunks could create the same
+// (name, type) twice. Keep the oldest node of each group and move the chunk mentions and relations of the
+// others onto it. Community memberships are not moved; the next community detection recomputes them.
+MATCH (e:Entity)
+WHERE e.name IS NOT NULL AND e.type IS NOT NULL
+WITH e ORDER BY id(e)
+WITH e.name AS name, e.type AS type, collect(e) AS nodes
+WHERE size(nodes) > 1
+WITH head(nodes) AS keep, tail(nodes) AS duplicates
+UNWIND duplicates AS duplicate
+CALL {
+    WITH keep, duplicate
+    MATCH (c:DocumentChunk)-[:CONTAINS_ENTITY]->(duplicate)
+    MERGE (c)-[:CONTAINS_ENTITY]->(keep)
+}
+CALL {
+    WITH keep, duplicate
+    MATCH (duplicate)-[r:RELATED_TO]->(target:Entity)
+    WHERE target <> keep
+    CREATE (keep)-[copy:RELATED_TO]->(target)
+    SET copy = properties(r)
+}
+CALL {
+    WITH keep, duplicate
+    MATCH (source:Entity)-[r:RELATED_TO]->(duplicate)
+    WHERE source <> keep AND source <> duplicate
+    CREATE (source)-[copy:RELATED_TO]->(keep)
+    SET copy = properties(r)
+}
+SET keep.description = CASE WHEN coalesce(keep.description, '') = '' THEN duplicate.description ELSE keep.description END,
+    keep.embedding = coalesce(keep.embedding, duplicate.embedding)
+DETACH DELETE duplicate;
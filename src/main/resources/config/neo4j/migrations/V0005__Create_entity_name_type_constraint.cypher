@@ -0,0 +1,2 @@
+// Entities are written with MERGE on (name, type), which this constraint makes safe under concurrency
+CREATE CONSTRAINT entity_name_type_unique IF NOT EXISTS FOR (e:Entity) REQUIRE (e.name, e.type) IS UNIQUE;
@@ -0,0 +1,13 @@
+// Rollup buckets were read, merged and saved without a version check, so concurrent flushes could create the
+// same bucket twice. Histograms cannot be merged in Cypher: keep the node with the most queries of each
+// bucket and drop the others, then give every bucket the version used for optimistic locking.
+MATCH (r:QueryRollup)
+WITH r ORDER BY coalesce(r.query_count, 0) DESC, id(r)
+WITH r.granularity AS granularity, r.bucket_start AS bucketStart, collect(r) AS nodes
+WHERE size(nodes) > 1
+UNWIND tail(nodes) AS duplicate
+DETACH DELETE duplicate;
+
+MATCH (r:QueryRollup)
+WHERE r.version IS NULL
+SET r.version = 0;
@@ -0,0 +1,3 @@
+// One rollup node per bucket; replaces the non-unique index of V0003
+DROP INDEX query_rollup_granularity_bucket IF EXISTS;
+CREATE CONSTRAINT query_rollup_granularity_bucket_unique IF NOT EXISTS FOR (r:QueryRollup) REQUIRE (r.granularity, r.bucket_start) IS UNIQUE;
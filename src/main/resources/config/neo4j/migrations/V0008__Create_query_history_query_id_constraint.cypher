@@ -0,0 +1,2 @@
+// Histories are merged on the query id assigned when they are buffered; older histories have none
+CREATE CONSTRAINT query_history_query_id_unique IF NOT EXISTS FOR (q:QueryHistory) REQUIRE q.query_id IS UNIQUE;
@@ -36,17 +36,42 @@ export const Documents = () => {
   const [uploadProgress, setUploadProgress] = useState(0);
   const [message, setMessage] = useState<{ type: 'success' | 'danger', text: string } | null>(null);
   const [deleteModal, setDeleteModal] = useState<{ show: boolean; documentId?: number }>({ show: false });
+  const [nextCursor, setNextCursor] = useState<string | null>(null);
+  const [isLoadingMore, setIsLoadingMore] = useState(false);
+
+  const fetchPage = async (cursor?: string) => {
+    const response = await axios.get('/api/documents', { params: cursor ? { cursor } : {} });
+    return { items: response.data as Document[], next: (response.headers['x-next-cursor'] as string) || null };
+  };
 
   const loadDocuments = useCallback(async () => {
     try {
-      const response = await axios.get('/api/documents');
-      setDocuments(response.data);
+      const page = await fetchPage();
+      setDocuments(page.items);
+      setNextCursor(page.next);
     } catch (error) {
       console.error('Failed to load documents:', error);
       setMessage({ type: 'danger', text: '加载文档列表失败' });
     }
   }, []);
 
+  const loadMoreDocuments = async () => {
+    if (!nextCursor) {
+      return;
+    }
+    setIsLoadingMore(true);
+    try {
+      const page = await fetchPage(nextCursor);
+      setDocuments(current => [...current, ...page.items]);
+      setNextCursor(page.next);
+    } catch (error) {
+      console.error('Failed to load documents:', error);
+      setMessage({ type: 'danger', text: '加载文档列表失败' });
+    } finally {
+      setIsLoadingMore(false);
+    }
+  };
+
   useEffect(() => {
     loadDocuments();
   }, [loadDocuments]);
@@ -259,6 +284,11 @@ export const Documents = () => {
               </tbody>
             </Table>
           )}
+          {nextCursor && (
+            <Button color="secondary" outline onClick={loadMoreDocuments} disabled={isLoadingMore}>
+              {isLoadingMore ? '加载中...' : '加载更多'}
+            </Button>
+          )}
         </CardBody>
       </Card>
 
@@ -0,0 +1,351 @@
+package com.topsion.rag.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local server speaking the parts of the OpenAI API the application calls, for load tests and tests that
+ * need the LLM without a provider.
+ * <p>
+ * Embeddings are deterministic: a text's words are hashed into a bag-of-words vector, so texts sharing words
+ * are similar and retrieval behaves plausibly. Chat answers are canned according to the JSON shape the
+ * prompt asks for: entities and relations named after words of the text, community reports, global key
+ * points, or a plain answer. Each endpoint draws its latency from a configurable distribution, and a share of
+ * requests can be answered with 429 as a rate-limited provider would.
+ * <p>
+ * Point the application at it with {@code application.openai.api-url} set to {@link #url()}.
+ */
+public final class OpenAiStubServer implements AutoCloseable {
+
+    public static final String CHAT = "/v1/chat/completions";
+    public static final String EMBEDDINGS = "/v1/embeddings";
+
+    public static final int DIMENSIONS = 1536;
+
+    private static final Logger LOG = LoggerFactory.getLogger(OpenAiStubServer.class);
+
+    private static final Pattern TOKEN = Pattern.compile("\\p{IsHan}{1,2}|[\\p{L}\\p{N}&&[^\\p{IsHan}]]+");
+    private static final Pattern LATIN_WORD = Pattern.compile("[A-Za-z][A-Za-z0-9]{4,}");
+    private static final String[] ENTITY_TYPES = { "CONCEPT", "ORGANIZATION", "PERSON", "LOCATION", "PRODUCT", "EVENT" };
+    private static final String TEXT_MARKER = "文本内容：";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, Latency> latencies = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> throttled = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private volatile double rateLimitProbability;
+    private volatile int entitiesPerChunk = 5;
+
+    private OpenAiStubServer() {
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.setExecutor(executor);
+        server.createContext(CHAT, exchange -> handle(exchange, CHAT, this::chatCompletion));
+        server.createContext(EMBEDDINGS, exchange -> handle(exchange, EMBEDDINGS, this::embeddings));
+    }
+
+    public static OpenAiStubServer start() {
+        OpenAiStubServer stub = new OpenAiStubServer();
+        stub.server.start();
+        LOG.info("OpenAI stub listening on {}", stub.url());
+        return stub;
+    }
+
+    public String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    public OpenAiStubServer chatLatency(Latency latency) {
+        latencies.put(CHAT, latency);
+        return this;
+    }
+
+    public OpenAiStubServer embeddingLatency(Latency latency) {
+        latencies.put(EMBEDDINGS, latency);
+        return this;
+    }
+
+    /**
+     * Answers the given share of requests to either endpoint with 429 and {@code Retry-After: 1}.
+     */
+    public OpenAiStubServer rateLimit(double probability) {
+        this.rateLimitProbability = probability;
+        return this;
+    }
+
+    public OpenAiStubServer entitiesPerChunk(int entitiesPerChunk) {
+        this.entitiesPerChunk = entitiesPerChunk;
+        return this;
+    }
+
+    /** Requests received on an endpoint, including throttled ones. */
+    public long requests(String endpoint) {
+        LongAdder count = requests.get(endpoint);
+        return count != null ? count.sum() : 0;
+    }
+
+    /** Requests on an endpoint answered with 429. */
+    public long throttled(String endpoint) {
+        LongAdder count = throttled.get(endpoint);
+        return count != null ? count.sum() : 0;
+    }
+
+    public void resetCounts() {
+        requests.clear();
+        throttled.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * The stub's embedding of {@code text}: hashed counts of its words and Han character pairs, normalised to
+     * unit length.
+     */
+    public static float[] embed(String text) {
+        float[] vector = new float[DIMENSIONS];
+        Matcher matcher = TOKEN.matcher(text.toLowerCase());
+        while (matcher.find()) {
+            int hash = mix(matcher.group().hashCode());
+            vector[Math.floorMod(hash, DIMENSIONS)] += (hash & 0x8000_0000) == 0 ? 1 : -1;
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            // 零向量没有余弦相似度
+            vector[0] = 1;
+            return vector;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85eb_ca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    private interface Handler {
+        JsonNode respond(JsonNode request);
+    }
+
+    private void handle(HttpExchange exchange, String endpoint, Handler handler) throws IOException {
+        try {
+            requests.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            JsonNode request = mapper.readTree(exchange.getRequestBody());
+
+            // 与真实服务一样，限流的请求立即返回
+            if (rateLimitProbability > 0 && ThreadLocalRandom.current().nextDouble() < rateLimitProbability) {
+                throttled.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+                ObjectNode error = mapper.createObjectNode();
+                error.putObject("error")
+                    .put("message", "Rate limit reached for requests")
+                    .put("type", "requests")
+                    .putNull("param")
+                    .put("code", "rate_limit_exceeded");
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                send(exchange, 429, error);
+                return;
+            }
+            sleep(latencies.getOrDefault(endpoint, Latency.NONE));
+            send(exchange, 200, handler.respond(request));
+        } catch (RuntimeException e) {
+            LOG.warn("OpenAI stub failed to answer {}: {}", endpoint, e.getMessage(), e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(Latency latency) {
+        long millis = latency.sample();
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private JsonNode embeddings(JsonNode request) {
+        List<String> inputs = new ArrayList<>();
+        JsonNode input = request.path("input");
+        if (input.isArray()) {
+            input.forEach(item -> inputs.add(item.asText()));
+        } else {
+            inputs.add(input.asText());
+        }
+
+        ObjectNode response = mapper.createObjectNode().put("object", "list").put("model", request.path("model").asText());
+        ArrayNode data = response.putArray("data");
+        int tokens = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            ObjectNode item = data.addObject().put("object", "embedding").put("index", i);
+            ArrayNode embedding = item.putArray("embedding");
+            for (float value : embed(inputs.get(i))) {
+                embedding.add(value);
+            }
+            tokens += tokens(inputs.get(i));
+        }
+        response.putObject("usage").put("prompt_tokens", tokens).put("total_tokens", tokens);
+        return response;
+    }
+
+    private JsonNode chatCompletion(JsonNode request) {
+        StringBuilder prompt = new StringBuilder();
+        String question = "";
+        for (JsonNode message : request.path("messages")) {
+            String content = message.path("content").asText();
+            prompt.append(content).append('\n');
+            if ("user".equals(message.path("role").asText())) {
+                question = content;
+            }
+        }
+        String content = answer(prompt.toString(), question);
+
+        int promptTokens = tokens(prompt.toString());
+        int completionTokens = tokens(content);
+        ObjectNode response = mapper.createObjectNode()
+            .put("id", "chatcmpl-stub-" + ids.incrementAndGet())
+            .put("object", "chat.completion")
+            .put("created", Instant.now().getEpochSecond())
+            .put("model", request.path("model").asText());
+        ObjectNode choice = response.putArray("choices").addObject().put("index", 0).put("finish_reason", "stop");
+        choice.putObject("message").put("role", "assistant").put("content", content);
+        response.putObject("usage")
+            .put("prompt_tokens", promptTokens)
+            .put("completion_tokens", completionTokens)
+            .put("total_tokens", promptTokens + completionTokens);
+        return response;
+    }
+
+    private String answer(String prompt, String question) {
+        ObjectNode json = mapper.createObjectNode();
+        if (prompt.contains("\"entities\"")) {
+            int start = prompt.lastIndexOf(TEXT_MARKER);
+            List<String> names = entityNames(start >= 0 ? prompt.substring(start + TEXT_MARKER.length()) : prompt);
+            ArrayNode entities = json.putArray("entities");
+            for (String name : names) {
+                entities.addObject()
+                    .put("name", name)
+                    .put("type", ENTITY_TYPES[Math.floorMod(name.hashCode(), ENTITY_TYPES.length)])
+                    .put("description", "Stub description of " + name);
+            }
+            ArrayNode relations = json.putArray("relations");
+            for (int i = 1; i < names.size(); i++) {
+                relations.addObject()
+                    .put("source", names.get(i - 1))
+                    .put("target", names.get(i))
+                    .put("relationship", "RELATED_TO")
+                    .put("description", names.get(i - 1) + " appears with " + names.get(i));
+            }
+            return "```json\n" + json.toPrettyString() + "\n```";
+        }
+        if (prompt.contains("\"points\"")) {
+            json.putArray("points").addObject().put("description", "Stub key point for: " + question).put("score", 80);
+            return json.toString();
+        }
+        if (prompt.contains("\"title\"") && prompt.contains("\"summary\"")) {
+            return json.put("title", "Stub community").put("summary", "Stub summary of " + tokens(prompt) + " prompt tokens").toString();
+        }
+        return "Stub answer to: " + question;
+    }
+
+    private List<String> entityNames(String text) {
+        Set<String> names = new LinkedHashSet<>();
+        Matcher matcher = LATIN_WORD.matcher(text);
+        while (matcher.find() && names.size() < entitiesPerChunk) {
+            names.add(matcher.group());
+        }
+        return new ArrayList<>(names);
+    }
+
+    private static int tokens(String text) {
+        return Math.max(1, text.getBytes(StandardCharsets.UTF_8).length / 4);
+    }
+
+    /**
+     * Log-normal latency given by its median and 99th percentile, in milliseconds.
+     */
+    public record Latency(long medianMs, long p99Ms) {
+        public static final Latency NONE = new Latency(0, 0);
+
+        private static final double Z_99 = 2.326;
+
+        public static Latency fixed(long millis) {
+            return new Latency(millis, millis);
+        }
+
+        public static Latency logNormal(long medianMs, long p99Ms) {
+            return new Latency(medianMs, p99Ms);
+        }
+
+        long sample() {
+            if (medianMs <= 0) {
+                return 0;
+            }
+            if (p99Ms <= medianMs) {
+                return medianMs;
+            }
+            double sigma = Math.log((double) p99Ms / medianMs) / Z_99;
+            return Math.round(medianMs * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+        }
+    }
+}
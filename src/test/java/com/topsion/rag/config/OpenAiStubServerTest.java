@@ -0,0 +1,96 @@
+package com.topsion.rag.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.theokanning.openai.OpenAiHttpException;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.completion.chat.ChatMessageRole;
+import com.theokanning.openai.embedding.Embedding;
+import com.theokanning.openai.embedding.EmbeddingRequest;
+import com.theokanning.openai.service.OpenAiService;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class OpenAiStubServerTest {
+
+    private final OpenAiStubServer stub = OpenAiStubServer.start();
+    private final OpenAiService openAiService = openAiService(stub.url());
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void testEmbeddingsAreDeterministicAndFollowSharedWords() {
+        List<String> texts = List.of("graph retrieval with community summaries", "community summaries of the graph", "unrelated cooking recipe");
+
+        List<List<Double>> embeddings = openAiService
+            .createEmbeddings(EmbeddingRequest.builder().model("text-embedding-ada-002").input(texts).build())
+            .getData()
+            .stream()
+            .map(Embedding::getEmbedding)
+            .toList();
+
+        assertThat(embeddings).hasSize(3).allSatisfy(embedding -> assertThat(embedding).hasSize(OpenAiStubServer.DIMENSIONS));
+        float[] first = new float[OpenAiStubServer.DIMENSIONS];
+        for (int i = 0; i < first.length; i++) {
+            first[i] = embeddings.get(0).get(i).floatValue();
+        }
+        assertThat(first).isEqualTo(OpenAiStubServer.embed(texts.get(0)));
+        assertThat(cosine(embeddings.get(0), embeddings.get(1))).isGreaterThan(cosine(embeddings.get(0), embeddings.get(2)));
+        assertThat(stub.requests(OpenAiStubServer.EMBEDDINGS)).isEqualTo(1);
+    }
+
+    @Test
+    void testExtractionPromptsGetEntitiesFromTheText() {
+        String content = chat("请按以下JSON格式返回：{\"entities\": [], \"relations\": []}\n文本内容：\nNeo4j stores the Louvain communities");
+
+        assertThat(content).contains("\"name\" : \"Neo4j\"", "\"name\" : \"stores\"", "\"name\" : \"Louvain\"", "\"relationship\" : \"RELATED_TO\"");
+    }
+
+    @Test
+    void testRateLimitedRequestsFailWith429() {
+        stub.rateLimit(1.0);
+
+        assertThatThrownBy(() -> chat("hello"))
+            .isInstanceOfSatisfying(OpenAiHttpException.class, error -> assertThat(error.statusCode).isEqualTo(429));
+        assertThat(stub.throttled(OpenAiStubServer.CHAT)).isEqualTo(1);
+    }
+
+    @Test
+    void testApiUrlWithPathIsRejected() {
+        assertThat(openAiService(stub.url().replaceAll("/$", ""))).isNotNull();
+        assertThatThrownBy(() -> openAiService(stub.url() + "openai"))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("must not have a path");
+    }
+
+    private String chat(String prompt) {
+        ChatCompletionRequest request = ChatCompletionRequest.builder()
+            .model("gpt-3.5-turbo")
+            .messages(List.of(new ChatMessage(ChatMessageRole.USER.value(), prompt)))
+            .build();
+        return openAiService.createChatCompletion(request).getChoices().get(0).getMessage().getContent();
+    }
+
+    private static OpenAiService openAiService(String apiUrl) {
+        OpenAIConfiguration configuration = new OpenAIConfiguration();
+        ReflectionTestUtils.setField(configuration, "apiKey", "stub");
+        ReflectionTestUtils.setField(configuration, "apiUrl", apiUrl);
+        ReflectionTestUtils.setField(configuration, "timeoutSeconds", 10);
+        return configuration.openAiService(configuration.openAiApi());
+    }
+
+    private static double cosine(List<Double> a, List<Double> b) {
+        double dot = 0;
+        for (int i = 0; i < a.size(); i++) {
+            dot += a.get(i) * b.get(i);
+        }
+        return dot;
+    }
+}
@@ -0,0 +1,92 @@
+package com.topsion.rag.management;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+import com.theokanning.openai.Usage;
+import com.topsion.rag.config.ApplicationProperties;
+import java.nio.file.Path;
+import java.util.List;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.SignalType;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+class FlightRecorderServiceTests {
+
+    private ApplicationProperties applicationProperties;
+
+    private FlightRecorderService flightRecorderService;
+
+    @BeforeEach
+    void setup() {
+        applicationProperties = new ApplicationProperties();
+        flightRecorderService = new FlightRecorderService(applicationProperties);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        flightRecorderService.stop();
+    }
+
+    @Test
+    void testDumpContainsApplicationEvents() throws Exception {
+        flightRecorderService.start();
+
+        QueryStageEvent.start("vector").finish(SignalType.ON_COMPLETE);
+        Usage usage = new Usage();
+        usage.setPromptTokens(120);
+        usage.setCompletionTokens(30);
+        LlmCallEvent.record(LlmCallEvent.CHAT, "gpt-4o-mini", () -> usage, result -> result);
+        HttpException tooManyRequests = new HttpException(
+            Response.error(429, ResponseBody.create("{}", MediaType.get("application/json")))
+        );
+        assertThatThrownBy(() ->
+            LlmCallEvent.record(LlmCallEvent.EMBEDDING, "text-embedding-3-small", () -> { throw tooManyRequests; }, result -> null)
+        ).isSameAs(tooManyRequests);
+
+        Path dump = flightRecorderService.dump().orElseThrow();
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+
+        assertThat(events)
+            .filteredOn(event -> event.getEventType().getName().equals("com.topsion.rag.QueryStage"))
+            .singleElement()
+            .satisfies(event -> {
+                assertThat(event.getString("stage")).isEqualTo("vector");
+                assertThat(event.getString("outcome")).isEqualTo("success");
+            });
+        List<RecordedEvent> llmCalls = events.stream().filter(event -> event.getEventType().getName().equals("com.topsion.rag.LlmCall")).toList();
+        assertThat(llmCalls)
+            .extracting(event -> event.getString("operation"), event -> event.getLong("promptTokens"), event -> event.getInt("httpStatus"))
+            .containsExactlyInAnyOrder(
+                tuple(LlmCallEvent.CHAT, 120L, 0),
+                tuple(LlmCallEvent.EMBEDDING, 0L, 429)
+            );
+    }
+
+    @Test
+    void testDumpReplacesPreviousDump() throws Exception {
+        flightRecorderService.start();
+
+        Path first = flightRecorderService.dump().orElseThrow();
+        Path second = flightRecorderService.dump().orElseThrow();
+
+        assertThat(first).doesNotExist();
+        assertThat(second).exists();
+    }
+
+    @Test
+    void testNothingIsRecordedWhenDisabled() throws Exception {
+        applicationProperties.getFlightRecorder().setEnabled(false);
+        flightRecorderService.start();
+
+        assertThat(flightRecorderService.dump()).isEmpty();
+    }
+}
@@ -0,0 +1,36 @@
+package com.topsion.rag.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class SlowQueryLogTest {
+
+    @Test
+    void testRedactsContentButKeepsShape() {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("keyword", "secret question");
+        parameters.put("queryEmbedding", new double[1536]);
+        parameters.put("chunkIds", List.of(1L, 2L, 3L));
+        parameters.put("limit", 10);
+        parameters.put("cutoff", Instant.parse("2025-01-01T00:00:00Z"));
+        parameters.put("missing", null);
+
+        assertThat(SlowQueryLog.redact(parameters)).isEqualTo(
+            "{keyword=<string:15>, queryEmbedding=<double[1536]>, chunkIds=<3 items>, limit=10, cutoff=2025-01-01T00:00:00Z, missing=null}"
+        );
+    }
+
+    @Test
+    void testOnlyReadOnlyQueriesAreProfiled() {
+        assertThat(SlowQueryLog.isReadOnly("MATCH (c:DocumentChunk) WHERE c.content CONTAINS $keyword RETURN c")).isTrue();
+        assertThat(SlowQueryLog.isReadOnly("CALL db.index.vector.queryNodes('document_chunk_embedding', $limit, $e) YIELD node RETURN node")).isTrue();
+        assertThat(SlowQueryLog.isReadOnly("MATCH (q:QueryHistory) WHERE q.created_date < $cutoff DETACH DELETE q")).isFalse();
+        assertThat(SlowQueryLog.isReadOnly("MATCH (d:Document) SET d.status = $status")).isFalse();
+        assertThat(SlowQueryLog.isReadOnly("UNWIND $rows AS row MERGE (e:Entity {name: row.name})")).isFalse();
+    }
+}
@@ -0,0 +1,123 @@
+package com.topsion.rag.security.jwt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.topsion.rag.config.ApplicationProperties;
+import com.topsion.rag.management.SecurityMetersService;
+import com.topsion.rag.security.AuthoritiesConstants;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import tech.jhipster.config.JHipsterProperties;
+
+class TokenProviderTest {
+
+    private static final String SECRET =
+        "ZmQ1NGE0NWFzNjVmZHM3MzdiOWFhZmNiMzQxMmUwN2VkOTliMjY3ZjMzNDEzMjc0NzIwZGRiYjdmNmM1ZTY0ZTlmMTQwNzVmMmQ3ZWQwNDE1OTJmMGI3NjU3YmFmOA==";
+    private static final String OTHER_SECRET = "Xfd54a45s65fds737b9aafcb3412e07ed99b267f33413274720ddbb7f6c5e64e9f14075f2d7ed041592f0b7657baf8";
+    private static final String INVALID_TOKENS_METER_NAME = "security.authentication.invalid-tokens";
+
+    private MeterRegistry meterRegistry;
+    private ApplicationProperties applicationProperties;
+    private TokenProvider tokenProvider;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        applicationProperties = new ApplicationProperties();
+        tokenProvider = newTokenProvider();
+    }
+
+    @Test
+    void testValidTokenIsCachedUntilExpiry() {
+        String token = tokenProvider.createToken(authentication("user"), false);
+
+        Optional<Authentication> first = tokenProvider.authenticate(token);
+        Optional<Authentication> second = tokenProvider.authenticate(token);
+
+        assertThat(first).isPresent();
+        assertThat(first.get().getName()).isEqualTo("user");
+        assertThat(first.get().getAuthorities()).extracting("authority").containsExactly(AuthoritiesConstants.USER);
+        assertThat(second).containsSame(first.get());
+        assertThat(invalidTokenCount()).isZero();
+    }
+
+    @Test
+    void testCacheEvictsLeastRecentlyUsedToken() {
+        applicationProperties.getTokenCache().setMaxSize(1);
+        tokenProvider = newTokenProvider();
+        String first = tokenProvider.createToken(authentication("first"), false);
+        String second = tokenProvider.createToken(authentication("second"), false);
+
+        Authentication cached = tokenProvider.authenticate(first).orElseThrow();
+        tokenProvider.authenticate(second);
+
+        assertThat(tokenProvider.authenticate(first).orElseThrow()).isNotSameAs(cached);
+    }
+
+    @Test
+    void testExpiredTokenIsCounted() {
+        String token = Jwts.builder()
+            .subject("user")
+            .claim("auth", AuthoritiesConstants.USER)
+            .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET)), Jwts.SIG.HS512)
+            .expiration(new Date(System.currentTimeMillis() - 60_000))
+            .compact();
+
+        assertThat(tokenProvider.authenticate(token)).isEmpty();
+        assertThat(invalidTokenCount("expired")).isEqualTo(1);
+    }
+
+    @Test
+    void testTokenWithDifferentSignatureIsCounted() {
+        String token = Jwts.builder()
+            .subject("user")
+            .claim("auth", AuthoritiesConstants.USER)
+            .signWith(Keys.hmacShaKeyFor(OTHER_SECRET.getBytes(StandardCharsets.UTF_8)), Jwts.SIG.HS512)
+            .expiration(new Date(System.currentTimeMillis() + 60_000))
+            .compact();
+
+        assertThat(tokenProvider.authenticate(token)).isEmpty();
+        assertThat(invalidTokenCount("invalid-signature")).isEqualTo(1);
+    }
+
+    @Test
+    void testMalformedTokenIsCounted() {
+        assertThat(tokenProvider.authenticate("not-a-jwt")).isEmpty();
+        assertThat(invalidTokenCount("malformed")).isEqualTo(1);
+    }
+
+    private TokenProvider newTokenProvider() {
+        JHipsterProperties jHipsterProperties = new JHipsterProperties();
+        jHipsterProperties.getSecurity().getAuthentication().getJwt().setBase64Secret(SECRET);
+        jHipsterProperties.getSecurity().getAuthentication().getJwt().setTokenValidityInSeconds(60);
+        return new TokenProvider(jHipsterProperties, applicationProperties, new SecurityMetersService(meterRegistry));
+    }
+
+    private static Authentication authentication(String login) {
+        return new UsernamePasswordAuthenticationToken(
+            login,
+            "",
+            Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))
+        );
+    }
+
+    private double invalidTokenCount(String cause) {
+        return meterRegistry.get(INVALID_TOKENS_METER_NAME).tag("cause", cause).counter().count();
+    }
+
+    private double invalidTokenCount() {
+        return meterRegistry.find(INVALID_TOKENS_METER_NAME).counters().stream().mapToDouble(counter -> counter.count()).sum();
+    }
+}
@@ -0,0 +1,59 @@
+package com.topsion.rag.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.topsion.rag.repository.projection.ChunkMembership;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ChunkBitmapIndexTest {
+
+    private static final Instant JANUARY = Instant.parse("2025-01-10T12:00:00Z");
+    private static final Instant MARCH = Instant.parse("2025-03-10T12:00:00Z");
+
+    private ChunkBitmapIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ChunkBitmapIndex();
+        for (long chunk = 1; chunk <= 3; chunk++) {
+            index.add(new ChunkMembership(chunk, 100L, "application/pdf", List.of("legal", "2025"), JANUARY));
+        }
+        for (long chunk = 4; chunk <= 5; chunk++) {
+            index.add(new ChunkMembership(chunk, 200L, "text/plain", List.of("legal"), MARCH));
+        }
+        index.add(new ChunkMembership(6L, 300L, "application/pdf", List.of(), MARCH));
+    }
+
+    @Test
+    void testCombinesCriteria() {
+        assertThat(select(RetrievalFilter.NONE)).containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+        assertThat(select(new RetrievalFilter(null, Set.of("legal"), null, null, null))).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(select(new RetrievalFilter(null, Set.of("legal"), Set.of("application/pdf"), null, null))).containsExactly(1L, 2L, 3L);
+        assertThat(select(new RetrievalFilter(Set.of(200L, 300L), null, null, null, null))).containsExactly(4L, 5L, 6L);
+        assertThat(select(new RetrievalFilter(null, Set.of("legal"), null, Instant.parse("2025-02-01T00:00:00Z"), null))).containsExactly(4L, 5L);
+        assertThat(select(new RetrievalFilter(null, Set.of("missing"), null, null, null))).isEmpty();
+    }
+
+    @Test
+    void testSelectsDocuments() {
+        assertThat(index.selectDocuments(new RetrievalFilter(null, null, Set.of("application/pdf"), null, null))).containsExactly(100L, 300L);
+        assertThat(index.selectDocuments(new RetrievalFilter(null, null, null, null, MARCH))).containsExactly(100L);
+    }
+
+    @Test
+    void testRemovesDocument() {
+        index.removeDocument(100L);
+
+        assertThat(index.chunkCount()).isEqualTo(3);
+        assertThat(select(new RetrievalFilter(null, Set.of("2025"), null, null, null))).isEmpty();
+        assertThat(select(new RetrievalFilter(null, null, Set.of("application/pdf"), null, null))).containsExactly(6L);
+    }
+
+    private List<Long> select(RetrievalFilter filter) {
+        return ChunkBitmapIndex.toList(index.select(filter));
+    }
+}
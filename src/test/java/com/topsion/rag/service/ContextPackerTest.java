@@ -0,0 +1,80 @@
+package com.topsion.rag.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.topsion.rag.repository.projection.ChunkContext;
+import com.topsion.rag.repository.projection.EntitySummary;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ContextPackerTest {
+
+    private static final String TEMPLATE = "context:\n%s\nentities:\n%s";
+
+    // 每个字符计为一个 token
+    private final TokenCounter characters = new TokenCounter() {
+        @Override
+        public int count(String text) {
+            return text.length();
+        }
+
+        @Override
+        public String truncate(String text, int maxTokens) {
+            return text.substring(0, Math.min(text.length(), Math.max(maxTokens, 0)));
+        }
+    };
+
+    private final ContextPacker packer = new ContextPacker(characters);
+
+    @Test
+    void testMergesAdjacentChunksAndRemovesOverlap() {
+        String shared = "overlapping text shared by both";
+        List<ChunkContext> chunks = List.of(
+            chunk(2L, 1, 10L, "first part " + shared, 0.8),
+            chunk(3L, 2, 10L, shared + " second part", 0.9),
+            chunk(4L, 5, 10L, "far away", 0.7)
+        );
+
+        List<ContextPacker.Passage> passages = ContextPacker.mergeAdjacent(chunks);
+
+        assertThat(passages).hasSize(2);
+        assertThat(passages.get(0).text()).isEqualTo("文档片段 1-2: first part " + shared + " second part");
+        assertThat(passages.get(0).score()).isEqualTo(0.9);
+        assertThat(passages.get(1).text()).isEqualTo("文档片段 5: far away");
+    }
+
+    @Test
+    void testDropsLowestScoredChunksToFitBudget() {
+        List<ChunkContext> chunks = List.of(
+            chunk(1L, 0, 10L, "a".repeat(300), 0.9),
+            chunk(2L, 0, 20L, "b".repeat(300), 0.8),
+            chunk(3L, 0, 30L, "c".repeat(300), 0.7)
+        );
+        List<EntitySummary> entities = List.of(new EntitySummary(1L, "name", "type", "d".repeat(100)));
+        String question = "question?";
+
+        ContextPacker.PackedContext packed = packer.pack(TEMPLATE, question, chunks, entities, 720, 50);
+
+        assertThat(packed.promptTokens()).isLessThanOrEqualTo(720);
+        assertThat(packed.promptTokens()).isEqualTo(packer.promptTokens(packed.systemPrompt(), question));
+        assertThat(packed.chunks()).extracting(ChunkContext::id).containsExactly(1L, 2L);
+        assertThat(packed.systemPrompt()).contains("a".repeat(300)).doesNotContain("ccc");
+        // 实体描述超出上限，不放入提示词
+        assertThat(packed.entities()).isEmpty();
+    }
+
+    @Test
+    void testTruncatesPassageThatPartlyFits() {
+        List<ChunkContext> chunks = List.of(chunk(1L, 0, 10L, "a".repeat(1000), 0.9));
+
+        ContextPacker.PackedContext packed = packer.pack(TEMPLATE, "q", chunks, List.of(), 500, 50);
+
+        assertThat(packed.promptTokens()).isLessThanOrEqualTo(500);
+        assertThat(packed.chunks()).hasSize(1);
+        assertThat(packed.systemPrompt()).contains("a".repeat(400)).doesNotContain("a".repeat(500));
+    }
+
+    private static ChunkContext chunk(Long id, int index, Long documentId, String content, double similarity) {
+        return new ChunkContext(id, content, index, documentId, "doc", similarity);
+    }
+}
@@ -0,0 +1,79 @@
+package com.topsion.rag.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.topsion.rag.config.ApplicationProperties;
+import com.topsion.rag.repository.projection.ChunkContext;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+class ExtractiveAnswererTest {
+
+    private static final ChunkContext MANUAL_ZH = new ChunkContext(
+        1L, "本产品由某公司生产。产品的保修期为两年，自购买之日起计算。如需维修请联系客服。", 0, 10L, "用户手册", 0.9);
+    private static final ChunkContext MANUAL_EN = new ChunkContext(
+        2L, "The warranty period for Model X is 24 months. Batteries are covered for 1.5 years.\nShipping is free.", 3, 11L, "Manual", 0.8);
+
+    private final ExtractiveAnswerer answerer = new ExtractiveAnswerer();
+
+    @Test
+    void testQuotesBestChineseSentenceWithCitation() {
+        Optional<ExtractiveAnswerer.Extract> extract = answerer.extract("产品的保修期是多长？", List.of(MANUAL_ZH, MANUAL_EN), 1);
+
+        assertThat(extract).isPresent();
+        assertThat(extract.get().answer()).contains("产品的保修期为两年，自购买之日起计算。 [1]").contains("[1] 《用户手册》");
+        assertThat(extract.get().answer()).doesNotContain("如需维修");
+        assertThat(extract.get().chunks()).containsExactly(MANUAL_ZH);
+        // "期是", "是多" and "多长" span word boundaries of the question and are not in the text
+        assertThat(extract.get().coverage()).isEqualTo(1.0);
+    }
+
+    @Test
+    void testWellMatchedChineseQuestionIsConfident() {
+        List<ChunkContext> chunks = List.of(MANUAL_ZH, MANUAL_EN);
+        Optional<ExtractiveAnswerer.Extract> extract = answerer.extract("产品的保修期是多长？", chunks, 3);
+
+        assertThat(extract).isPresent();
+        RAGQueryService.RetrievedContext context = new RAGQueryService.RetrievedContext(chunks, List.of(), false);
+        assertThat(RAGQueryService.isConfident(extract.get(), context, new ApplicationProperties().getOpenai().getRag())).isTrue();
+    }
+
+    @Test
+    void testMissingWordLowersCoverageOfChineseQuestion() {
+        Optional<ExtractiveAnswerer.Extract> extract = answerer.extract("Model Y 的保修期是多长？", List.of(MANUAL_ZH), 3);
+
+        assertThat(extract).isPresent();
+        assertThat(extract.get().coverage()).isLessThan(1.0);
+    }
+
+    @Test
+    void testQuotesBestEnglishSentence() {
+        Optional<ExtractiveAnswerer.Extract> extract = answerer.extract("What is the warranty period for Model X?", List.of(MANUAL_ZH, MANUAL_EN), 3);
+
+        assertThat(extract).isPresent();
+        assertThat(extract.get().answer()).contains("The warranty period for Model X is 24 months. [1]").doesNotContain("Shipping");
+        assertThat(extract.get().chunks()).containsExactly(MANUAL_EN);
+        assertThat(extract.get().coverage()).isEqualTo(1.0);
+    }
+
+    @Test
+    void testTermsMissingFromTheContextLowerCoverage() {
+        Optional<ExtractiveAnswerer.Extract> extract = answerer.extract("What is the warranty deductible?", List.of(MANUAL_ZH, MANUAL_EN), 3);
+
+        assertThat(extract).isPresent();
+        assertThat(extract.get().answer()).contains("The warranty period for Model X is 24 months. [1]");
+        assertThat(extract.get().coverage()).isLessThan(0.5);
+    }
+
+    @Test
+    void testNoMatchingSentence() {
+        assertThat(answerer.extract("火星", List.of(MANUAL_ZH, MANUAL_EN), 3)).isEmpty();
+        assertThat(answerer.extract("保修期", List.of(), 3)).isEmpty();
+    }
+
+    @Test
+    void testTermsUseWordsAndChineseBigrams() {
+        assertThat(ExtractiveAnswerer.terms("Model X 保修期，什么？")).containsExactly("model", "保修", "修期");
+    }
+}
@@ -0,0 +1,60 @@
+package com.topsion.rag.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+class IngestionTelemetryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final IngestionTelemetry telemetry = new IngestionTelemetry(meterRegistry);
+
+    @Test
+    void testTimesStageFromSubscription() {
+        Mono<String> stage = telemetry.time(IngestionTelemetry.EMBEDDING, Mono.delay(Duration.ofMillis(50)).thenReturn("done"));
+
+        assertThat(telemetry.stageTimings()).isEmpty();
+        assertThat(stage.block()).isEqualTo("done");
+
+        assertThat(telemetry.stageTimings().get(IngestionTelemetry.EMBEDDING)).isGreaterThanOrEqualTo(50L);
+        assertThat(meterRegistry.get(IngestionTelemetry.STAGE_METER_NAME).tag("stage", IngestionTelemetry.EMBEDDING).timer().count())
+            .isEqualTo(1);
+    }
+
+    @Test
+    void testPerChunkStagesAreSummed() {
+        telemetry.record(IngestionTelemetry.LLM_EXTRACTION, Duration.ofMillis(300).toNanos());
+        telemetry.record(IngestionTelemetry.LLM_EXTRACTION, Duration.ofMillis(200).toNanos());
+        telemetry.record(IngestionTelemetry.CHUNKING, Duration.ofMillis(10).toNanos());
+
+        assertThat(telemetry.stageTimings()).containsExactly(
+            entry(IngestionTelemetry.CHUNKING, 10L),
+            entry(IngestionTelemetry.LLM_EXTRACTION, 500L)
+        );
+    }
+
+    @Test
+    void testFinishReturnsNodePropertiesAndRecordsCounts() {
+        telemetry.record(IngestionTelemetry.CHUNKING, Duration.ofMillis(10).toNanos());
+        telemetry.count(IngestionTelemetry.CHUNKS, 12);
+        telemetry.count(IngestionTelemetry.LLM_CALLS, 1);
+        telemetry.count(IngestionTelemetry.LLM_CALLS, 1);
+
+        Map<String, Object> properties = telemetry.finish("success");
+
+        assertThat(properties)
+            .containsEntry("stage_ms.chunking", 10L)
+            .containsEntry("ingestion.chunks", 12L)
+            .containsEntry("ingestion.llm_calls", 2L)
+            .containsEntry("ingestion.relations", 0L)
+            .containsKey("processing_ms");
+        assertThat(meterRegistry.get(IngestionTelemetry.ITEMS_METER_NAME).tag("kind", IngestionTelemetry.CHUNKS).summary().totalAmount())
+            .isEqualTo(12);
+        assertThat(meterRegistry.get(IngestionTelemetry.DOCUMENT_METER_NAME).tag("outcome", "success").timer().count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,71 @@
+package com.topsion.rag.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.theokanning.openai.client.OpenAiApi;
+import com.theokanning.openai.embedding.EmbeddingRequest;
+import com.theokanning.openai.embedding.EmbeddingResult;
+import com.topsion.rag.config.ApplicationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.reactivex.Single;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LlmGatewayTest {
+
+    private final OpenAiApi openAiApi = mock(OpenAiApi.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ApplicationProperties properties = new ApplicationProperties();
+    private final EmbeddingResult result = new EmbeddingResult();
+
+    @BeforeEach
+    void setUp() {
+        properties.getHedging().setInitialDelayMs(20L);
+    }
+
+    @Test
+    void testHedgeWinsWhenPrimaryHangs() {
+        when(openAiApi.createEmbeddings(any())).thenReturn(Single.never(), Single.just(result));
+        LlmGateway gateway = new LlmGateway(openAiApi, properties, meterRegistry);
+
+        EmbeddingResult response = gateway.createEmbeddings(new EmbeddingRequest()).block(Duration.ofSeconds(5));
+
+        assertThat(response).isSameAs(result);
+        verify(openAiApi, times(2)).createEmbeddings(any());
+        assertThat(hedges("won")).isEqualTo(1);
+    }
+
+    @Test
+    void testBudgetSuppressesHedges() {
+        properties.getHedging().setBudgetBurst(0);
+        when(openAiApi.createEmbeddings(any())).thenReturn(Single.just(result).delay(200, TimeUnit.MILLISECONDS));
+        LlmGateway gateway = new LlmGateway(openAiApi, properties, meterRegistry);
+
+        EmbeddingResult response = gateway.createEmbeddings(new EmbeddingRequest()).block(Duration.ofSeconds(5));
+
+        assertThat(response).isSameAs(result);
+        verify(openAiApi, times(1)).createEmbeddings(any());
+        assertThat(hedges("suppressed")).isEqualTo(1);
+    }
+
+    @Test
+    void testDelayFollowsObservedPercentile() {
+        LatencyWindow window = new LatencyWindow(100, 95.0);
+        for (long latency = 1; latency <= 100; latency++) {
+            window.record(latency);
+        }
+
+        assertThat(window.percentile()).isEqualTo(95);
+    }
+
+    private double hedges(String outcome) {
+        return meterRegistry.get(LlmGateway.HEDGE_METER_NAME).tag("outcome", outcome).counter().count();
+    }
+}
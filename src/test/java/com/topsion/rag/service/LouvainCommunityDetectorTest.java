@@ -0,0 +1,50 @@
+package com.topsion.rag.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class LouvainCommunityDetectorTest {
+
+    @Test
+    void testSeparatesLooselyConnectedCliques() {
+        List<int[]> edges = new ArrayList<>();
+        for (int clique = 0; clique < 3; clique++) {
+            for (int i = 0; i < 5; i++) {
+                for (int j = i + 1; j < 5; j++) {
+                    edges.add(new int[] { clique * 5 + i, clique * 5 + j });
+                }
+            }
+        }
+        edges.add(new int[] { 0, 5 });
+        edges.add(new int[] { 5, 10 });
+
+        List<int[]> levels = detect(15, edges);
+
+        assertThat(levels).isNotEmpty();
+        int[] finest = levels.get(0);
+        for (int clique = 0; clique < 3; clique++) {
+            for (int i = 1; i < 5; i++) {
+                assertThat(finest[clique * 5 + i]).isEqualTo(finest[clique * 5]);
+            }
+        }
+        assertThat(finest[0]).isNotEqualTo(finest[5]);
+        assertThat(finest[5]).isNotEqualTo(finest[10]);
+    }
+
+    @Test
+    void testReturnsNoLevelWithoutEdges() {
+        assertThat(new LouvainCommunityDetector(1.0, 3).detect(4, new int[0], new int[0], new double[0])).isEmpty();
+    }
+
+    private List<int[]> detect(int nodeCount, List<int[]> edges) {
+        int[] sources = edges.stream().mapToInt(edge -> edge[0]).toArray();
+        int[] targets = edges.stream().mapToInt(edge -> edge[1]).toArray();
+        double[] weights = new double[edges.size()];
+        Arrays.fill(weights, 1.0);
+        return new LouvainCommunityDetector(1.0, 3).detect(nodeCount, sources, targets, weights);
+    }
+}
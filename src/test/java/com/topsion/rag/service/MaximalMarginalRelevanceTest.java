@@ -0,0 +1,45 @@
+package com.topsion.rag.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.topsion.rag.repository.projection.ChunkContext;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class MaximalMarginalRelevanceTest {
+
+    private final List<ChunkContext> candidates = List.of(chunk(1L, 0.90), chunk(2L, 0.89), chunk(3L, 0.80), chunk(4L, 0.70));
+
+    private final Map<Long, float[]> embeddings = Map.of(
+        1L, new float[] { 1f, 0f, 0f },
+        2L, new float[] { 0.99f, 0.1f, 0f },
+        3L, new float[] { 0f, 1f, 0f },
+        4L, new float[] { 0f, 0f, 1f }
+    );
+
+    @Test
+    void testSkipsNearDuplicates() {
+        List<ChunkContext> selected = MaximalMarginalRelevance.select(candidates, embeddings, 3, 0.5);
+
+        assertThat(selected).extracting(ChunkContext::id).containsExactly(1L, 3L, 4L);
+    }
+
+    @Test
+    void testKeepsSimilarityOrderWithoutDiversity() {
+        List<ChunkContext> selected = MaximalMarginalRelevance.select(candidates, embeddings, 2, 1.0);
+
+        assertThat(selected).extracting(ChunkContext::id).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void testTreatsMissingEmbeddingsAsNovel() {
+        List<ChunkContext> selected = MaximalMarginalRelevance.select(candidates, Map.of(1L, embeddings.get(1L)), 2, 0.5);
+
+        assertThat(selected).extracting(ChunkContext::id).containsExactly(1L, 2L);
+    }
+
+    private static ChunkContext chunk(Long id, double similarity) {
+        return new ChunkContext(id, "chunk " + id, id.intValue(), 1L, "doc", similarity);
+    }
+}
@@ -0,0 +1,80 @@
+package com.topsion.rag.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.topsion.rag.config.ApplicationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class QueryAdmissionServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> started = new CopyOnWriteArrayList<>();
+    private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+    private QueryAdmissionService admissionService;
+
+    @BeforeEach
+    void setUp() {
+        ApplicationProperties properties = new ApplicationProperties();
+        properties.getAdmission().setMaxConcurrent(1);
+        properties.getAdmission().setMaxQueueSize(3);
+        properties.getAdmission().setMaxQueuedPerUser(2);
+        properties.getAdmission().setQueueTimeoutMs(60_000L);
+        admissionService = new QueryAdmissionService(properties, meterRegistry);
+    }
+
+    @Test
+    void testServesQueuedUsersRoundRobin() {
+        Sinks.One<String> first = submit("alice", "alice-1");
+        Sinks.One<String> second = submit("alice", "alice-2");
+        submit("alice", "alice-3");
+        submit("bob", "bob-1");
+        assertThat(admissionService.getQueued()).isEqualTo(3);
+
+        first.tryEmitValue("done");
+        assertThat(started).containsExactly("alice-1", "alice-2");
+        second.tryEmitValue("done");
+        assertThat(started).containsExactly("alice-1", "alice-2", "bob-1");
+        assertThat(admissionService.getActive()).isEqualTo(1);
+        assertThat(admissionService.getQueued()).isEqualTo(1);
+    }
+
+    @Test
+    void testRejectsWhenQueueIsFull() {
+        submit("alice", "alice-1");
+        submit("alice", "alice-2");
+        submit("alice", "alice-3");
+        submit("alice", "alice-4");
+        submit("bob", "bob-1");
+        submit("carol", "carol-1");
+
+        assertThat(errors).hasSize(2);
+        assertThat(errors).allSatisfy(error -> assertThat(error).isInstanceOf(QueryAdmissionService.AdmissionRejectedException.class));
+        assertThat(meterRegistry.get(QueryAdmissionService.REJECTED_METER_NAME).tag("reason", "user-limit").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(QueryAdmissionService.REJECTED_METER_NAME).tag("reason", "queue-full").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testReleasesQueueSlotOnCancel() {
+        submit("alice", "alice-1");
+        admissionService.admit("bob", () -> Mono.just("never")).subscribe().dispose();
+
+        assertThat(admissionService.getQueued()).isZero();
+    }
+
+    private Sinks.One<String> submit(String user, String name) {
+        Sinks.One<String> sink = Sinks.one();
+        admissionService
+            .admit(user, () -> {
+                started.add(name);
+                return sink.asMono();
+            })
+            .subscribe(value -> {}, errors::add);
+        return sink;
+    }
+}
@@ -0,0 +1,34 @@
+package com.topsion.rag.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class QueryDeadlineTest {
+
+    @Test
+    void testRemainingCountsDown() {
+        QueryDeadline deadline = QueryDeadline.after(Duration.ofSeconds(10));
+
+        assertThat(deadline.isExpired()).isFalse();
+        assertThat(deadline.remaining()).isPositive().isLessThanOrEqualTo(Duration.ofSeconds(10));
+        assertThat(deadline.remainingBefore(Duration.ofSeconds(3))).isLessThanOrEqualTo(Duration.ofSeconds(7));
+    }
+
+    @Test
+    void testExpiredDeadlineHasNoTimeLeft() {
+        QueryDeadline deadline = QueryDeadline.after(Duration.ofMillis(-1));
+
+        assertThat(deadline.isExpired()).isTrue();
+        assertThat(deadline.remaining()).isZero();
+        assertThat(deadline.remainingBefore(Duration.ofSeconds(1))).isZero();
+    }
+
+    @Test
+    void testReserveLargerThanRemainingLeavesNothing() {
+        QueryDeadline deadline = QueryDeadline.after(Duration.ofSeconds(1));
+
+        assertThat(deadline.remainingBefore(Duration.ofSeconds(5))).isZero();
+    }
+}
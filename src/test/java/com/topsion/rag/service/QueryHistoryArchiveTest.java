@@ -0,0 +1,52 @@
+package com.topsion.rag.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.topsion.rag.domain.QueryHistory;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class QueryHistoryArchiveTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-10T12:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testFindsSessionAcrossSegmentsNewestFirst() throws Exception {
+        QueryHistoryArchive archive = new QueryHistoryArchive(directory);
+        archive.append(List.of(history(1L, "a", 30), history(2L, "b", 29), history(3L, "a", 28)));
+        archive.append(List.of(history(4L, "a", 10), history(5L, "b", 9)));
+
+        List<QueryHistory> found = archive.findBySession("a", 10);
+
+        assertThat(found).extracting(QueryHistory::getId).containsExactly(4L, 3L, 1L);
+        assertThat(archive.findBySession("a", 2)).extracting(QueryHistory::getId).containsExactly(4L, 3L);
+        assertThat(archive.findBySession("missing", 10)).isEmpty();
+    }
+
+    @Test
+    void testReopensIndexAndIgnoresDuplicates() throws Exception {
+        QueryHistoryArchive archive = new QueryHistoryArchive(directory);
+        archive.append(List.of(history(1L, "a", 30)));
+        archive.append(List.of(history(1L, "a", 30), history(2L, "a", 20)));
+
+        QueryHistoryArchive reopened = new QueryHistoryArchive(directory);
+        reopened.append(List.of(history(3L, "a", 10)));
+
+        List<QueryHistory> found = reopened.findBySession("a", 10);
+        assertThat(found).extracting(QueryHistory::getId).containsExactly(3L, 2L, 1L);
+        assertThat(found.get(2).getQuestion()).isEqualTo("question 1");
+        assertThat(found.get(2).getCreatedDate()).isEqualTo(NOW.minusSeconds(30 * 86400L));
+    }
+
+    private static QueryHistory history(Long id, String sessionId, int daysAgo) {
+        QueryHistory history = new QueryHistory("question " + id, "answer " + id).id(id).sessionId(sessionId).responseTimeMs(100L);
+        history.setCreatedDate(NOW.minusSeconds(daysAgo * 86400L));
+        return history;
+    }
+}
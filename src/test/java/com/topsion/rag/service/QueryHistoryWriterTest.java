@@ -0,0 +1,116 @@
+package com.topsion.rag.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.topsion.rag.config.ApplicationProperties;
+import com.topsion.rag.domain.QueryHistory;
+import com.topsion.rag.repository.QueryHistoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class QueryHistoryWriterTest {
+
+    private final QueryHistoryRepository repository = mock(QueryHistoryRepository.class);
+    private final ApplicationProperties properties = new ApplicationProperties();
+    private QueryHistoryWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        properties.getHistory().setBatchSize(10);
+        writer = new QueryHistoryWriter(repository, properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testAppendAssignsQueryId() {
+        QueryHistory history = history("s1");
+
+        writer.append(history);
+
+        assertThat(history.getQueryId()).isNotBlank();
+        assertThat(writer.findPendingBySession("s1")).containsExactly(history);
+    }
+
+    @Test
+    void testBatchStaysPendingUntilInsertCompletes() {
+        Sinks.One<Long> insert = Sinks.one();
+        when(repository.insertAll(any())).thenReturn(insert.asMono());
+        QueryHistory history = history("s1");
+        writer.append(history);
+
+        writer.flush().subscribe();
+
+        assertThat(writer.findPendingBySession("s1")).containsExactly(history);
+        insert.tryEmitValue(1L);
+        assertThat(writer.findPendingBySession("s1")).isEmpty();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFeedbackOnBufferedHistoryIsPersistedWithIt() {
+        when(repository.insertAll(any())).thenReturn(Mono.just(1L));
+        QueryHistory history = history("s1");
+        writer.append(history);
+
+        Boolean updated = writer.updatePending(history.getQueryId(), pending -> pending.setUserFeedback("HELPFUL")).block(Duration.ofSeconds(5));
+        writer.flush().block(Duration.ofSeconds(5));
+
+        assertThat(updated).isTrue();
+        ArgumentCaptor<List<QueryHistory>> batch = ArgumentCaptor.forClass(List.class);
+        verify(repository).insertAll(batch.capture());
+        assertThat(batch.getValue()).singleElement().extracting(QueryHistory::getUserFeedback).isEqualTo("HELPFUL");
+    }
+
+    @Test
+    void testFeedbackOnHistoryBeingWrittenWaitsForTheWrite() {
+        Sinks.One<Long> insert = Sinks.one();
+        when(repository.insertAll(any())).thenReturn(insert.asMono());
+        QueryHistory history = history("s1");
+        writer.append(history);
+        writer.flush().subscribe();
+
+        AtomicReference<Boolean> updated = new AtomicReference<>();
+        writer.updatePending(history.getQueryId(), pending -> pending.setUserFeedback("HELPFUL")).subscribe(updated::set);
+
+        assertThat(updated.get()).isNull();
+        insert.tryEmitValue(1L);
+        assertThat(updated.get()).isFalse();
+        assertThat(history.getUserFeedback()).isNull();
+    }
+
+    @Test
+    void testFeedbackOnFailedWriteUpdatesTheRebufferedHistory() {
+        Sinks.One<Long> insert = Sinks.one();
+        when(repository.insertAll(any())).thenReturn(insert.asMono());
+        QueryHistory history = history("s1");
+        writer.append(history);
+        writer.flush().subscribe();
+
+        AtomicReference<Boolean> updated = new AtomicReference<>();
+        writer.updatePending(history.getQueryId(), pending -> pending.setUserFeedback("HELPFUL")).subscribe(updated::set);
+        insert.tryEmitError(new IllegalStateException("unavailable"));
+
+        assertThat(updated.get()).isTrue();
+        assertThat(history.getUserFeedback()).isEqualTo("HELPFUL");
+        assertThat(writer.findPendingBySession("s1")).containsExactly(history);
+    }
+
+    @Test
+    void testUnknownQueryIdIsNotPending() {
+        assertThat(writer.updatePending("unknown", pending -> pending.setUserFeedback("HELPFUL")).block(Duration.ofSeconds(5))).isFalse();
+    }
+
+    private static QueryHistory history(String sessionId) {
+        return new QueryHistory("question", "answer").sessionId(sessionId);
+    }
+}
@@ -0,0 +1,50 @@
+package com.topsion.rag.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class QueryTraceTest {
+
+    @Test
+    void testServerTimingListsStagesCachesAndTotal() {
+        QueryTrace trace = new QueryTrace()
+            .stage("embedding", Duration.ofMillis(120))
+            .stage("chunks", Duration.ofNanos(35_250_000))
+            .cache("single-flight", QueryTrace.MISS);
+
+        assertThat(trace.serverTiming(Duration.ofMillis(900))).isEqualTo(
+            "embedding;dur=120.00, chunks;dur=35.25, single-flight;desc=\"miss\", total;dur=900.00"
+        );
+    }
+
+    @Test
+    void testCopyIsIndependent() {
+        QueryTrace trace = new QueryTrace().stage("generation", Duration.ofMillis(800)).promptTokens(2048).retrieved(List.of(7L, 3L));
+
+        QueryTrace joined = trace.copy().cache("single-flight", QueryTrace.HIT);
+
+        assertThat(trace.summary().cache()).isEmpty();
+        assertThat(joined.summary().cache()).containsEntry("single-flight", QueryTrace.HIT);
+        assertThat(joined.summary().promptTokens()).isEqualTo(2048);
+        assertThat(joined.summary().timingsMs()).containsEntry("generation", 800.0);
+        assertThat(joined.retrievedChunkIds()).containsExactly(7L, 3L);
+    }
+
+    @Test
+    void testSummaryReportsCandidatesSimilaritiesAndFallbacks() {
+        QueryTrace trace = new QueryTrace()
+            .candidates("chunks", 20)
+            .similarities(List.of(0.91, 0.87))
+            .fallback("keyword-entities");
+
+        QueryTrace.Summary summary = trace.summary();
+
+        assertThat(summary.candidates()).containsEntry("chunks", 20);
+        assertThat(summary.similarities()).containsExactly(0.91, 0.87);
+        assertThat(summary.fallbacks()).containsExactly("keyword-entities");
+        assertThat(summary.promptTokens()).isNull();
+    }
+}
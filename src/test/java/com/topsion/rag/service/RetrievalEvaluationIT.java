@@ -0,0 +1,302 @@
+package com.topsion.rag.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers.mockUser;
+
+import com.topsion.rag.IntegrationTest;
+import com.topsion.rag.config.ApplicationProperties;
+import com.topsion.rag.config.OpenAiStubServer;
+import com.topsion.rag.domain.Document;
+import com.topsion.rag.web.rest.TestUtil;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.data.neo4j.core.ReactiveNeo4jClient;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * Compares retrieval configurations on a {@link SyntheticCorpus}: for every combination of the swept
+ * {@link ApplicationProperties.OpenAI.Rag} settings and retrieval modes it reports recall@k, MRR, prompt
+ * tokens and latency percentiles. Tagged {@code evaluation}, so it only runs with
+ * {@code ./gradlew retrievalEvaluation}.
+ * <p>
+ * Chunk sizes need the corpus to be ingested again; all other settings are changed between query rounds.
+ * Retrieval modes are {@code index} (vector index, no filter), {@code exact} (exact scan of the chunks
+ * matching a filter) and {@code filtered-index} (vector index over-fetched for the same filter). By default
+ * the OpenAI API is played by {@link OpenAiStubServer}, whose lexical embeddings make the numbers comparable
+ * between configurations but not with production; set {@code eval.api-key} (and {@code eval.api-url}) to
+ * evaluate with real embeddings.
+ * <p>
+ * Results are logged and written to {@code build/reports/evaluation/retrieval.csv}.
+ */
+@Tag("evaluation")
+@AutoConfigureWebTestClient(timeout = "PT5M")
+@IntegrationTest
+class RetrievalEvaluationIT {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RetrievalEvaluationIT.class);
+
+    private static final Path REPORT = Path.of("build", "reports", "evaluation", "retrieval.csv");
+    private static final String TAG = "evaluation";
+
+    private static final String INDEX = "index";
+    private static final String EXACT = "exact";
+    private static final String FILTERED_INDEX = "filtered-index";
+
+    private static final OpenAiStubServer STUB = System.getProperty("eval.api-key") == null ? OpenAiStubServer.start() : null;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private RAGQueryService ragQueryService;
+
+    @Autowired
+    private DocumentProcessingService documentProcessingService;
+
+    @Autowired
+    private ReactiveNeo4jClient neo4jClient;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @DynamicPropertySource
+    static void openAi(DynamicPropertyRegistry registry) {
+        if (STUB != null) {
+            registry.add("application.openai.api-key", () -> "stub");
+            registry.add("application.openai.api-url", STUB::url);
+        } else {
+            registry.add("application.openai.api-key", () -> System.getProperty("eval.api-key"));
+            registry.add("application.openai.api-url", () -> System.getProperty("eval.api-url", "https://api.openai.com"));
+        }
+    }
+
+    @AfterAll
+    static void stopStub() {
+        if (STUB != null) {
+            STUB.close();
+        }
+    }
+
+    @Test
+    void sweep() {
+        SyntheticCorpus corpus = SyntheticCorpus.generate(
+            Long.getLong("eval.seed", 42),
+            Integer.getInteger("eval.documents", 20),
+            Integer.getInteger("eval.facts-per-document", 6),
+            Integer.getInteger("eval.filler-per-fact", 4)
+        );
+        List<Integer> chunkSizes = setting("chunk-sizes", "500,1000").stream().map(Integer::valueOf).toList();
+        List<Double> thresholds = setting("similarity-thresholds", "0.3,0.5,0.7").stream().map(Double::valueOf).toList();
+        List<Integer> maxContextChunks = setting("max-context-chunks", "5").stream().map(Integer::valueOf).toList();
+        List<Double> mmrLambdas = setting("mmr-lambdas", "1.0,0.7").stream().map(Double::valueOf).toList();
+        List<String> modes = setting("modes", INDEX + "," + EXACT + "," + FILTERED_INDEX);
+
+        ApplicationProperties.OpenAI.Rag rag = applicationProperties.getOpenai().getRag();
+        Map<String, Object> original = snapshot(rag);
+        List<String> rows = new ArrayList<>();
+        rows.add(
+            "chunk_size,similarity_threshold,max_context_chunks,mmr_lambda,mode,questions,recall_at_k,mrr,prompt_tokens," +
+            "latency_p50_ms,latency_p95_ms,latency_p99_ms,retrieval_p50_ms,retrieval_p95_ms,retrieval_p99_ms"
+        );
+        try {
+            for (int chunkSize : chunkSizes) {
+                rag.setChunkSize(chunkSize);
+                rag.setChunkOverlap(Math.min((Integer) original.get("chunkOverlap"), chunkSize / 4));
+                List<Long> documentIds = ingest(corpus);
+                Map<String, Set<Long>> relevant = relevantChunks(corpus);
+                for (int k : maxContextChunks) {
+                    for (double threshold : thresholds) {
+                        for (double lambda : mmrLambdas) {
+                            for (String mode : modes) {
+                                rag.setMaxContextChunks(k);
+                                rag.setSimilarityThreshold(threshold);
+                                rag.setMmrLambda(lambda);
+                                rag.setExactSearchMaxChunks(EXACT.equals(mode) ? Integer.MAX_VALUE : 0);
+                                RetrievalMetrics metrics = evaluate(corpus, relevant, mode, k);
+                                rows.add(row(chunkSize, threshold, k, lambda, mode, metrics));
+                            }
+                        }
+                    }
+                }
+                rag.setMaxContextChunks((Integer) original.get("maxContextChunks"));
+                delete(documentIds);
+            }
+        } finally {
+            restore(rag, original);
+        }
+        write(rows);
+
+        assertThat(rows).hasSize(1 + chunkSizes.size() * maxContextChunks.size() * thresholds.size() * mmrLambdas.size() * modes.size());
+    }
+
+    private RetrievalMetrics evaluate(SyntheticCorpus corpus, Map<String, Set<Long>> relevant, String mode, int k) {
+        RetrievalFilter filter = INDEX.equals(mode) ? RetrievalFilter.NONE : new RetrievalFilter(null, Set.of(TAG), null, null, null);
+        RetrievalMetrics metrics = new RetrievalMetrics(k);
+        for (SyntheticCorpus.LabelledQuestion question : corpus.questions()) {
+            long start = System.nanoTime();
+            RAGQueryService.QueryResult result = ragQueryService
+                .queryKnowledgeBase(question.question(), "evaluation", filter, AnswerMode.GENERATIVE, ragQueryService.newDeadline(null))
+                .block();
+            Duration total = Duration.ofNanos(System.nanoTime() - start);
+
+            Double retrievalMs = result.trace().timings().get("chunks");
+            // 按检索阶段的排序计算，而不是按 ContextPacker 放入提示词的顺序
+            metrics.record(
+                result.trace().retrievedChunkIds(),
+                relevant.getOrDefault(question.answer(), Set.of()),
+                result.trace().summary().promptTokens(),
+                total,
+                retrievalMs != null ? Duration.ofNanos(Math.round(retrievalMs * 1_000_000)) : null
+            );
+        }
+        return metrics;
+    }
+
+    private List<Long> ingest(SyntheticCorpus corpus) {
+        List<Long> ids = new ArrayList<>();
+        for (SyntheticCorpus.Document document : corpus.documents()) {
+            Document created = TestUtil.uploadDocument(webTestClient.mutateWith(mockUser("evaluation")), document.title() + ".txt", document.text(), TAG)
+                .expectStatus()
+                .isCreated()
+                .expectBody(Document.class)
+                .returnResult()
+                .getResponseBody();
+            ids.add(created.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Deletes the documents with their chunks and the entities no other chunk contains, so the next round
+     * only retrieves its own chunks.
+     */
+    private void delete(List<Long> documentIds) {
+        neo4jClient
+            .query(
+                "MATCH (d:Document)-[:HAS_CHUNK]->(c:DocumentChunk) WHERE id(d) IN $ids " +
+                "OPTIONAL MATCH (c)-[:CONTAINS_ENTITY]->(e:Entity) " +
+                "WITH collect(DISTINCT c) AS chunks, collect(DISTINCT e) AS entities " +
+                "FOREACH (c IN chunks | DETACH DELETE c) " +
+                "WITH entities UNWIND entities AS e " +
+                "WITH e WHERE NOT (e)<-[:CONTAINS_ENTITY]-() " +
+                "DETACH DELETE e"
+            )
+            .bind(documentIds)
+            .to("ids")
+            .run()
+            .block();
+        documentIds.forEach(id -> documentProcessingService.deleteDocument(id).block());
+    }
+
+    /**
+     * The chunks containing each answer, by answer.
+     */
+    private Map<String, Set<Long>> relevantChunks(SyntheticCorpus corpus) {
+        Map<String, Set<Long>> relevant = new HashMap<>();
+        for (SyntheticCorpus.LabelledQuestion question : corpus.questions()) {
+            Set<Long> chunkIds = new HashSet<>(
+                neo4jClient
+                    .query("MATCH (c:DocumentChunk) WHERE c.content CONTAINS $answer RETURN id(c) AS id")
+                    .bind(question.answer())
+                    .to("answer")
+                    .fetchAs(Long.class)
+                    .mappedBy((types, record) -> record.get("id").asLong())
+                    .all()
+                    .collectList()
+                    .block()
+            );
+            relevant.put(question.answer(), chunkIds);
+        }
+        return relevant;
+    }
+
+    private static String row(int chunkSize, double threshold, int k, double lambda, String mode, RetrievalMetrics metrics) {
+        String row = String.format(
+            Locale.ROOT,
+            "%d,%.2f,%d,%.2f,%s,%d,%.3f,%.3f,%.0f,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f",
+            chunkSize,
+            threshold,
+            k,
+            lambda,
+            mode,
+            metrics.questions(),
+            metrics.recallAtK(),
+            metrics.meanReciprocalRank(),
+            metrics.meanPromptTokens(),
+            metrics.totalLatencyMs(50),
+            metrics.totalLatencyMs(95),
+            metrics.totalLatencyMs(99),
+            metrics.retrievalLatencyMs(50),
+            metrics.retrievalLatencyMs(95),
+            metrics.retrievalLatencyMs(99)
+        );
+        LOG.info(
+            "chunkSize={} threshold={} k={} mmrLambda={} mode={}: recall@k={} MRR={} promptTokens={} latency p50/p95/p99={}/{}/{} ms",
+            chunkSize,
+            threshold,
+            k,
+            lambda,
+            mode,
+            String.format(Locale.ROOT, "%.3f", metrics.recallAtK()),
+            String.format(Locale.ROOT, "%.3f", metrics.meanReciprocalRank()),
+            Math.round(metrics.meanPromptTokens()),
+            metrics.totalLatencyMs(50),
+            metrics.totalLatencyMs(95),
+            metrics.totalLatencyMs(99)
+        );
+        return row;
+    }
+
+    private static void write(List<String> rows) {
+        try {
+            Files.createDirectories(REPORT.getParent());
+            Files.write(REPORT, rows);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<String> setting(String name, String defaultValue) {
+        return Arrays.stream(System.getProperty("eval." + name, defaultValue).split(",")).map(String::trim).filter(value -> !value.isEmpty()).toList();
+    }
+
+    private static Map<String, Object> snapshot(ApplicationProperties.OpenAI.Rag rag) {
+        return Map.of(
+            "chunkSize", rag.getChunkSize(),
+            "chunkOverlap", rag.getChunkOverlap(),
+            "maxContextChunks", rag.getMaxContextChunks(),
+            "similarityThreshold", rag.getSimilarityThreshold(),
+            "mmrLambda", rag.getMmrLambda(),
+            "exactSearchMaxChunks", rag.getExactSearchMaxChunks()
+        );
+    }
+
+    private static void restore(ApplicationProperties.OpenAI.Rag rag, Map<String, Object> original) {
+        rag.setChunkSize((Integer) original.get("chunkSize"));
+        rag.setChunkOverlap((Integer) original.get("chunkOverlap"));
+        rag.setMaxContextChunks((Integer) original.get("maxContextChunks"));
+        rag.setSimilarityThreshold((Double) original.get("similarityThreshold"));
+        rag.setMmrLambda((Double) original.get("mmrLambda"));
+        rag.setExactSearchMaxChunks((Integer) original.get("exactSearchMaxChunks"));
+    }
+}
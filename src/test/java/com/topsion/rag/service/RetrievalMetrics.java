@@ -0,0 +1,93 @@
+package com.topsion.rag.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Retrieval quality and cost of one configuration over a labelled question set.
+ * <p>
+ * Recall@k is the share of questions with at least one relevant chunk among the first k retrieved, since a
+ * synthetic fact lies in a second chunk only when it falls in the overlap. MRR averages the reciprocal rank
+ * of the first relevant chunk, counting 0 when none was retrieved.
+ */
+public final class RetrievalMetrics {
+
+    private final int k;
+    private final Histogram totalLatency = new Histogram(TimeUnit.MINUTES.toMicros(5), 3);
+    private final Histogram retrievalLatency = new Histogram(TimeUnit.MINUTES.toMicros(5), 3);
+    private int questions;
+    private int hits;
+    private double reciprocalRanks;
+    private long promptTokens;
+    private int prompts;
+
+    public RetrievalMetrics(int k) {
+        this.k = k;
+    }
+
+    /**
+     * @param promptTokens tokens of the generation prompt, or null if no prompt was sent.
+     * @param retrieval time of the chunk retrieval stage, or null if it did not run.
+     */
+    public void record(List<Long> retrieved, Set<Long> relevant, Integer promptTokens, Duration total, Duration retrieval) {
+        questions++;
+        if (hit(retrieved, relevant, k)) {
+            hits++;
+        }
+        reciprocalRanks += reciprocalRank(retrieved, relevant);
+        if (promptTokens != null) {
+            this.promptTokens += promptTokens;
+            prompts++;
+        }
+        totalLatency.recordValue(Math.min(micros(total), totalLatency.getHighestTrackableValue()));
+        if (retrieval != null) {
+            retrievalLatency.recordValue(Math.min(micros(retrieval), retrievalLatency.getHighestTrackableValue()));
+        }
+    }
+
+    public int questions() {
+        return questions;
+    }
+
+    public double recallAtK() {
+        return questions == 0 ? 0 : (double) hits / questions;
+    }
+
+    public double meanReciprocalRank() {
+        return questions == 0 ? 0 : reciprocalRanks / questions;
+    }
+
+    public double meanPromptTokens() {
+        return prompts == 0 ? 0 : (double) promptTokens / prompts;
+    }
+
+    /** Query latency at the given percentile, in milliseconds. */
+    public double totalLatencyMs(double percentile) {
+        return totalLatency.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /** Chunk retrieval latency at the given percentile, in milliseconds. */
+    public double retrievalLatencyMs(double percentile) {
+        return retrievalLatency.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    static boolean hit(List<Long> retrieved, Set<Long> relevant, int k) {
+        return retrieved.stream().limit(k).anyMatch(relevant::contains);
+    }
+
+    static double reciprocalRank(List<Long> retrieved, Set<Long> relevant) {
+        for (int rank = 0; rank < retrieved.size(); rank++) {
+            if (relevant.contains(retrieved.get(rank))) {
+                return 1.0 / (rank + 1);
+            }
+        }
+        return 0;
+    }
+
+    private static long micros(Duration duration) {
+        return Math.max(0, duration.toNanos() / 1000);
+    }
+}
@@ -0,0 +1,42 @@
+package com.topsion.rag.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class RetrievalMetricsTest {
+
+    @Test
+    void testRecallAndMrrCountTheFirstRelevantChunk() {
+        RetrievalMetrics metrics = new RetrievalMetrics(3);
+
+        metrics.record(List.of(1L, 2L, 3L), Set.of(1L), 800, Duration.ofMillis(40), Duration.ofMillis(10));
+        metrics.record(List.of(4L, 5L, 6L, 7L), Set.of(6L, 7L), 600, Duration.ofMillis(60), Duration.ofMillis(20));
+        metrics.record(List.of(8L, 9L, 10L, 11L), Set.of(11L), null, Duration.ofMillis(80), null);
+        metrics.record(List.of(), Set.of(12L), 400, Duration.ofMillis(100), Duration.ofMillis(5));
+
+        assertThat(metrics.questions()).isEqualTo(4);
+        assertThat(metrics.recallAtK()).isEqualTo(0.5);
+        assertThat(metrics.meanReciprocalRank()).isCloseTo((1 + 1.0 / 3 + 1.0 / 4 + 0) / 4, within(1e-9));
+        assertThat(metrics.meanPromptTokens()).isEqualTo(600);
+        assertThat(metrics.totalLatencyMs(100)).isCloseTo(100, within(0.1));
+        assertThat(metrics.retrievalLatencyMs(50)).isCloseTo(10, within(0.1));
+    }
+
+    @Test
+    void testSyntheticCorpusIsDeterministicAndLabelsAreUnique() {
+        SyntheticCorpus corpus = SyntheticCorpus.generate(7, 5, 4, 3);
+
+        assertThat(SyntheticCorpus.generate(7, 5, 4, 3).documents()).isEqualTo(corpus.documents());
+        assertThat(corpus.documents()).hasSize(5);
+        assertThat(corpus.questions()).hasSize(20).allSatisfy(question -> {
+            String text = corpus.documents().stream().filter(document -> document.title().equals(question.documentTitle())).findFirst().orElseThrow().text();
+            assertThat(text).containsOnlyOnce(question.answer());
+            assertThat(corpus.documents()).filteredOn(document -> document.text().contains(question.answer())).hasSize(1);
+        });
+    }
+}
@@ -0,0 +1,64 @@
+package com.topsion.rag.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    void testCoalescesConcurrentCalls() {
+        Sinks.One<String> sink = Sinks.one();
+        AtomicInteger calls = new AtomicInteger();
+        Supplier<Mono<String>> call = () -> {
+            calls.incrementAndGet();
+            return sink.asMono();
+        };
+        List<SingleFlight.Shared<String>> results = new CopyOnWriteArrayList<>();
+
+        singleFlight.execute("question", call).subscribe(results::add);
+        singleFlight.execute("question", call).subscribe(results::add);
+        assertThat(singleFlight.inFlightCount()).isEqualTo(1);
+        sink.tryEmitValue("answer");
+
+        assertThat(calls).hasValue(1);
+        assertThat(results).extracting(SingleFlight.Shared::value).containsExactly("answer", "answer");
+        assertThat(results).extracting(SingleFlight.Shared::joined).containsExactlyInAnyOrder(false, true);
+        assertThat(singleFlight.inFlightCount()).isZero();
+    }
+
+    @Test
+    void testReleasesKeyAfterFailure() {
+        assertThatThrownBy(() -> singleFlight.execute("question", () -> Mono.<String>error(new IllegalStateException("boom"))).block())
+            .isInstanceOf(IllegalStateException.class);
+
+        assertThat(singleFlight.inFlightCount()).isZero();
+        assertThat(singleFlight.execute("question", () -> Mono.just("retry")).block())
+            .isEqualTo(new SingleFlight.Shared<>("retry", false));
+    }
+
+    @Test
+    void testJoinedCallerStopsWaitingWithoutCancellingTheCall() {
+        Sinks.One<String> sink = Sinks.one();
+        List<SingleFlight.Shared<String>> results = new CopyOnWriteArrayList<>();
+
+        singleFlight.execute("question", sink::asMono, joined -> joined.timeout(Duration.ofMillis(10), Mono.just("late")))
+            .subscribe(results::add);
+        assertThat(singleFlight.execute("question", sink::asMono, joined -> joined.timeout(Duration.ofMillis(10), Mono.just("late"))).block())
+            .isEqualTo(new SingleFlight.Shared<>("late", true));
+        assertThat(singleFlight.inFlightCount()).isEqualTo(1);
+        sink.tryEmitValue("answer");
+
+        assertThat(results).containsExactly(new SingleFlight.Shared<>("answer", false));
+    }
+}
@@ -0,0 +1,93 @@
+package com.topsion.rag.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class StageGraphTest {
+
+    private final StageGraph graph = new StageGraph();
+
+    @Test
+    void testIndependentStageStartsBeforeSlowInputCompletes() {
+        Sinks.One<Integer> slow = Sinks.one();
+        List<String> started = new CopyOnWriteArrayList<>();
+        StageGraph.Stage<Integer> embedding = graph.required("embedding", results -> {
+            started.add("embedding");
+            return slow.asMono();
+        });
+        StageGraph.Stage<Integer> keywords = graph.required("keywords", results -> {
+            started.add("keywords");
+            return Mono.just(2);
+        });
+        StageGraph.Stage<Integer> answer = graph.required("answer",
+            results -> Mono.just(results.get(embedding) + results.get(keywords)),
+            embedding, keywords);
+
+        List<Integer> answers = new CopyOnWriteArrayList<>();
+        graph.run(answer).subscribe(answers::add);
+
+        assertThat(started).containsExactlyInAnyOrder("embedding", "keywords");
+        assertThat(graph.completed(keywords)).contains(2);
+        assertThat(answers).isEmpty();
+
+        slow.tryEmitValue(40);
+
+        assertThat(answers).containsExactly(42);
+        assertThat(graph.timings()).containsKeys("embedding", "keywords", "answer");
+    }
+
+    @Test
+    void testSharedInputRunsOnce() {
+        AtomicInteger calls = new AtomicInteger();
+        StageGraph.Stage<Integer> embedding = graph.required("embedding", results -> Mono.fromCallable(calls::incrementAndGet));
+        StageGraph.Stage<Integer> chunks = graph.required("chunks", results -> Mono.just(results.get(embedding)), embedding);
+        StageGraph.Stage<Integer> entities = graph.required("entities", results -> Mono.just(results.get(embedding)), embedding);
+        StageGraph.Stage<Integer> answer = graph.required("answer",
+            results -> Mono.just(results.get(chunks) + results.get(entities)),
+            chunks, entities);
+
+        assertThat(graph.run(answer).block()).isEqualTo(2);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void testOptionalStageFallsBackOnTimeout() {
+        StageGraph.Stage<List<String>> entities = graph.optional("entities", () -> Duration.ofMillis(50), List.of(),
+            results -> Mono.<List<String>>never());
+        StageGraph.Stage<Integer> answer = graph.required("answer", results -> Mono.just(results.get(entities).size()), entities);
+
+        assertThat(graph.run(answer).block(Duration.ofSeconds(5))).isZero();
+        assertThat(graph.fallbacks()).containsExactly("entities");
+    }
+
+    @Test
+    void testOptionalStageFallsBackOnError() {
+        StageGraph.Stage<String> entities = graph.optional("entities", () -> Duration.ofSeconds(5), "none",
+            results -> Mono.error(new IllegalStateException("lookup failed")));
+        StageGraph.Stage<String> answer = graph.required("answer", results -> Mono.just(results.get(entities)), entities);
+
+        assertThat(graph.run(answer).block()).isEqualTo("none");
+    }
+
+    @Test
+    void testRequiredStageFailureFailsDependents() {
+        AtomicInteger answered = new AtomicInteger();
+        StageGraph.Stage<Integer> embedding = graph.required("embedding",
+            results -> Mono.error(new IllegalStateException("embedding failed")));
+        StageGraph.Stage<Integer> answer = graph.required("answer", results -> {
+            answered.incrementAndGet();
+            return Mono.just(results.get(embedding));
+        }, embedding);
+
+        assertThatThrownBy(() -> graph.run(answer).block()).hasMessageContaining("embedding failed");
+        assertThat(answered).hasValue(0);
+    }
+}
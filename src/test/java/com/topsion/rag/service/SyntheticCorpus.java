@@ -0,0 +1,103 @@
+package com.topsion.rag.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A generated corpus with questions whose answers are known to be in exactly one place.
+ * <p>
+ * Every document states a number of facts, "The {attribute} of {entity} is {value}.", between filler
+ * sentences. Entities are invented names unique to one fact and values are unique numbers, so the chunks
+ * that answer a question are the ones containing its {@link LabelledQuestion#answer()}, however the text is
+ * chunked. Attributes repeat across documents, so every question has many near misses.
+ */
+public final class SyntheticCorpus {
+
+    private static final String[] SYLLABLES = { "zor", "vex", "qua", "lin", "dra", "mor", "tes", "kal", "bri", "nox", "pel", "rua", "sim", "tor" };
+    private static final String[] ATTRIBUTES = {
+        "melting point", "founding year", "annual output", "orbital period", "population", "maximum load", "service life", "patent count",
+    };
+    private static final String[] FILLER = {
+        "Records from the archive were reviewed again last season.",
+        "Several committees discussed the findings without reaching agreement.",
+        "The regional office published a short summary of the survey.",
+        "Independent observers described the process as slow but careful.",
+        "Most of the measurements were repeated to rule out instrument drift.",
+        "A later report questioned the sampling method used in the study.",
+        "The figures were compiled from public filings and field notes.",
+        "Funding for the second phase was approved after a long delay.",
+    };
+
+    private final List<Document> documents;
+    private final List<LabelledQuestion> questions;
+
+    private SyntheticCorpus(List<Document> documents, List<LabelledQuestion> questions) {
+        this.documents = documents;
+        this.questions = questions;
+    }
+
+    /**
+     * @param fillerPerFact filler sentences after each fact; more filler means more chunks without answers.
+     */
+    public static SyntheticCorpus generate(long seed, int documentCount, int factsPerDocument, int fillerPerFact) {
+        Random random = new Random(seed);
+        Set<String> usedNames = new HashSet<>();
+        Set<Integer> usedValues = new HashSet<>();
+        List<Document> documents = new ArrayList<>();
+        List<LabelledQuestion> questions = new ArrayList<>();
+
+        for (int d = 0; d < documentCount; d++) {
+            String title = "synthetic-" + d;
+            StringBuilder text = new StringBuilder();
+            for (int f = 0; f < factsPerDocument; f++) {
+                String entity = uniqueName(random, usedNames);
+                String attribute = ATTRIBUTES[random.nextInt(ATTRIBUTES.length)];
+                int value;
+                do {
+                    value = 100_000 + random.nextInt(900_000);
+                } while (!usedValues.add(value));
+
+                text.append("The ").append(attribute).append(" of ").append(entity).append(" is ").append(value).append(". ");
+                for (int i = 0; i < fillerPerFact; i++) {
+                    text.append(FILLER[random.nextInt(FILLER.length)]).append(' ');
+                }
+                questions.add(new LabelledQuestion("What is the " + attribute + " of " + entity + "?", title, String.valueOf(value)));
+            }
+            documents.add(new Document(title, text.toString().trim()));
+        }
+        Collections.shuffle(questions, random);
+        return new SyntheticCorpus(List.copyOf(documents), List.copyOf(questions));
+    }
+
+    public List<Document> documents() {
+        return documents;
+    }
+
+    public List<LabelledQuestion> questions() {
+        return questions;
+    }
+
+    private static String uniqueName(Random random, Set<String> used) {
+        while (true) {
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 3; i++) {
+                name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+            if (used.add(name.toString())) {
+                return name.toString();
+            }
+        }
+    }
+
+    public record Document(String title, String text) {}
+
+    /**
+     * @param answer text that occurs in the source document only where the question is answered.
+     */
+    public record LabelledQuestion(String question, String documentTitle, String answer) {}
+}
@@ -0,0 +1,30 @@
+package com.topsion.rag.web.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.topsion.rag.web.rest.errors.BadRequestAlertException;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+class DocumentCursorTest {
+
+    @Test
+    void testKeepsSubMillisecondPrecision() {
+        DocumentResource.DocumentCursor cursor = new DocumentResource.DocumentCursor(Instant.parse("2025-01-10T12:00:00.123456789Z"), 42L);
+
+        assertThat(DocumentResource.DocumentCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void testDocumentWithoutCreatedDate() {
+        DocumentResource.DocumentCursor cursor = new DocumentResource.DocumentCursor(null, 7L);
+
+        assertThat(DocumentResource.DocumentCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void testRejectsGarbage() {
+        assertThatThrownBy(() -> DocumentResource.DocumentCursor.decode("not-a-cursor")).isInstanceOf(BadRequestAlertException.class);
+    }
+}
@@ -0,0 +1,270 @@
+package com.topsion.rag.web.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers.mockUser;
+
+import com.topsion.rag.IntegrationTest;
+import com.topsion.rag.config.OpenAiStubServer;
+import com.topsion.rag.config.OpenAiStubServer.Latency;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * Load test of ingestion and querying against embedded Neo4j, with the OpenAI API played by
+ * {@link OpenAiStubServer}. Tagged {@code load}, so it only runs with {@code ./gradlew loadTest}.
+ * <p>
+ * Each workload reports throughput, latency percentiles and status counts to the log and to
+ * {@code build/reports/load/load-test.txt}. The workload sizes, the concurrency, the stub latencies and the
+ * share of throttled LLM calls are set with {@code -Ploadtest.<name>=<value>}, see {@link #setting}.
+ */
+@Tag("load")
+@AutoConfigureWebTestClient(timeout = "PT2M")
+@IntegrationTest
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class GraphRagLoadIT {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GraphRagLoadIT.class);
+
+    private static final Path REPORT = Path.of("build", "reports", "load", "load-test.txt");
+
+    private static final int DOCUMENTS = setting("documents", 20);
+    private static final int QUERIES = setting("queries", 200);
+    private static final int CONCURRENCY = setting("concurrency", 8);
+    private static final int RATE_LIMIT_PERCENT = setting("rate-limit-percent", 10);
+
+    private static final OpenAiStubServer STUB = OpenAiStubServer.start()
+        .chatLatency(Latency.logNormal(setting("chat-median-ms", 400), setting("chat-p99-ms", 2000)))
+        .embeddingLatency(Latency.logNormal(setting("embedding-median-ms", 50), setting("embedding-p99-ms", 300)));
+
+    // 合成语料的词表：每篇文档偏重一个主题，查询从同一词表取词
+    private static final String[] TOPICS = { "neo4j", "louvain", "embedding", "tokenizer", "retrieval", "community", "ingestion", "benchmark" };
+    private static final String[] WORDS = {
+        "graph", "vector", "index", "cluster", "summary", "latency", "throughput", "prompt", "answer", "entity",
+        "relation", "document", "chunk", "cache", "query", "model", "storage", "cypher", "report", "score",
+    };
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @DynamicPropertySource
+    static void openAiStub(DynamicPropertyRegistry registry) {
+        registry.add("application.openai.api-key", () -> "stub");
+        registry.add("application.openai.api-url", STUB::url);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @Test
+    @Order(1)
+    void ingestion() {
+        Result result = run("ingestion", DOCUMENTS, i -> upload("load-" + i + ".txt", document(i)));
+
+        assertThat(result.count(201)).as("documents ingested").isEqualTo(DOCUMENTS);
+    }
+
+    @Test
+    @Order(2)
+    void localQuery() {
+        Result result = run("local query", QUERIES, i -> query(question(i), null));
+
+        assertThat(result.count(200)).as("queries answered").isPositive();
+        assertThat(result.serverErrors()).as("server errors other than shed queries").isZero();
+    }
+
+    @Test
+    @Order(3)
+    void globalQuery() {
+        Result result = run("global query", Math.max(1, QUERIES / 10), i -> query(question(i), "global"));
+
+        assertThat(result.count(200)).as("queries answered").isPositive();
+        assertThat(result.serverErrors()).as("server errors other than shed queries").isZero();
+    }
+
+    @Test
+    @Order(4)
+    void localQueryWithThrottledLlm() {
+        STUB.rateLimit(RATE_LIMIT_PERCENT / 100.0);
+        try {
+            run("local query, " + RATE_LIMIT_PERCENT + "% of LLM calls throttled", QUERIES, i -> query(question(i), null));
+        } finally {
+            STUB.rateLimit(0);
+        }
+    }
+
+    private int upload(String filename, String content) {
+        return TestUtil.uploadDocument(webTestClient.mutateWith(mockUser("loadtest")), filename, content)
+            .expectBody()
+            .returnResult()
+            .getStatus()
+            .value();
+    }
+
+    private int query(String question, String mode) {
+        Map<String, String> request = mode == null ? Map.of("question", question) : Map.of("question", question, "mode", mode);
+        return webTestClient
+            .mutateWith(mockUser("loadtest"))
+            .post()
+            .uri("/api/query")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(request)
+            .exchange()
+            .expectBody()
+            .returnResult()
+            .getStatus()
+            .value();
+    }
+
+    /**
+     * Sends {@code requests} requests from {@link #CONCURRENCY} threads and reports how they went.
+     */
+    private Result run(String workload, int requests, IntFunction<Integer> request) {
+        STUB.resetCounts();
+        Result result = new Result();
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    long sent = System.nanoTime();
+                    int status;
+                    try {
+                        status = request.apply(index);
+                    } catch (RuntimeException | AssertionError e) {
+                        LOG.warn("Request {} of {} failed: {}", index, workload, e.getMessage());
+                        status = 0;
+                    }
+                    result.record(status, System.nanoTime() - sent);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Load test " + workload + " was interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        report(workload, result, Duration.ofNanos(System.nanoTime() - start));
+        return result;
+    }
+
+    private static void report(String workload, Result result, Duration elapsed) {
+        Histogram latencies = result.latencies;
+        String line = String.format(
+            Locale.ROOT,
+            "%-50s requests=%d concurrency=%d throughput=%.2f/s p50=%dms p95=%dms p99=%dms max=%dms statuses=%s chat=%d(429: %d) embeddings=%d(429: %d)",
+            workload,
+            latencies.getTotalCount(),
+            CONCURRENCY,
+            latencies.getTotalCount() / (elapsed.toNanos() / 1e9),
+            latencies.getValueAtPercentile(50),
+            latencies.getValueAtPercentile(95),
+            latencies.getValueAtPercentile(99),
+            latencies.getMaxValue(),
+            result.statuses(),
+            STUB.requests(OpenAiStubServer.CHAT),
+            STUB.throttled(OpenAiStubServer.CHAT),
+            STUB.requests(OpenAiStubServer.EMBEDDINGS),
+            STUB.throttled(OpenAiStubServer.EMBEDDINGS)
+        );
+        LOG.info("Load test: {}", line);
+        try {
+            Files.createDirectories(REPORT.getParent());
+            Files.writeString(REPORT, line + System.lineSeparator(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String document(int index) {
+        Random random = new Random(index);
+        String topic = TOPICS[index % TOPICS.length];
+        StringBuilder text = new StringBuilder();
+        for (int sentence = 0; sentence < 60; sentence++) {
+            text.append(topic);
+            for (int word = 0; word < 12; word++) {
+                text.append(' ').append(random.nextInt(3) == 0 ? topic : WORDS[random.nextInt(WORDS.length)]);
+            }
+            text.append(". ");
+        }
+        return text.toString();
+    }
+
+    private static String question(int index) {
+        Random random = new Random(-index - 1L);
+        return "How does " + TOPICS[random.nextInt(TOPICS.length)] + " affect " + WORDS[random.nextInt(WORDS.length)] + " "
+            + WORDS[random.nextInt(WORDS.length)] + "?";
+    }
+
+    private static int setting(String name, int defaultValue) {
+        return Integer.getInteger("loadtest." + name, defaultValue);
+    }
+
+    private static final class Result {
+
+        // 毫秒精度，最长记录 10 分钟
+        private final Histogram latencies = new ConcurrentHistogram(TimeUnit.MINUTES.toMillis(10), 3);
+        private final Map<Integer, LongAdder> statuses = new ConcurrentSkipListMap<>();
+
+        void record(int status, long nanos) {
+            latencies.recordValue(Math.min(TimeUnit.NANOSECONDS.toMillis(nanos), latencies.getHighestTrackableValue()));
+            statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+        }
+
+        long count(int status) {
+            LongAdder count = statuses.get(status);
+            return count != null ? count.sum() : 0;
+        }
+
+        /** Responses with a 5xx status other than 503, which the admission control answers by design. */
+        long serverErrors() {
+            return statuses.entrySet().stream()
+                .filter(entry -> entry.getKey() >= 500 && entry.getKey() != 503)
+                .mapToLong(entry -> entry.getValue().sum())
+                .sum();
+        }
+
+        Map<Integer, Long> statuses() {
+            Map<Integer, Long> counts = new ConcurrentSkipListMap<>();
+            statuses.forEach((status, count) -> counts.put(status, count.sum()));
+            return counts;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
 import org.hamcrest.Description;
@@ -12,6 +13,11 @@ import org.hamcrest.TypeSafeMatcher;
 import org.springframework.cglib.proxy.Enhancer;
 import org.springframework.cglib.proxy.MethodInterceptor;
 import org.springframework.cglib.proxy.MethodProxy;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
 
 /**
  * Utility class for testing REST controllers.
@@ -159,5 +165,36 @@ public final class TestUtil {
         return (T) e.create();
     }
 
+    /**
+     * Upload a plain text document through {@code POST /api/documents/upload}.
+     *
+     * @param webTestClient the client, already authenticated.
+     * @param filename the name of the uploaded file.
+     * @param content the text of the document.
+     * @param tags the tags to give the document.
+     * @return the response, for the caller to check.
+     */
+    public static WebTestClient.ResponseSpec uploadDocument(WebTestClient webTestClient, String filename, String content, String... tags) {
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body
+            .part("file", new ByteArrayResource(content.getBytes(StandardCharsets.UTF_8)) {
+                @Override
+                public String getFilename() {
+                    return filename;
+                }
+            })
+            .contentType(MediaType.TEXT_PLAIN);
+        return webTestClient
+            .post()
+            .uri(uri -> {
+                uri.path("/api/documents/upload");
+                // 不带值的 tags 参数会被绑定成一个空标签
+                return tags.length > 0 ? uri.queryParam("tags", (Object[]) tags).build() : uri.build();
+            })
+            .contentType(MediaType.MULTIPART_FORM_DATA)
+            .body(BodyInserters.fromMultipartData(body.build()))
+            .exchange();
+    }
+
     private TestUtil() {}
 }